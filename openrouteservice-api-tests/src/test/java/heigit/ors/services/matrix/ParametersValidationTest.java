@@ -375,4 +375,20 @@ public class ParametersValidationTest extends ServiceTest {
 		.body("error.code", is(602))
 		.statusCode(400);
 	}
+
+	@Test
+	public void maxDurationValueTest() {
+		given()
+		.param("profile", "driving-car")
+		.param("locations", "8.5,48.7|8.6,49.1")
+		.param("sources", "all")
+		.param("destinations", "all")
+		.param("max_duration", "-600")
+		.when()
+		.get(getEndPointName())
+		.then()
+		.assertThat()
+		.body("error.code", is(603))
+		.statusCode(400);
+	}
 }
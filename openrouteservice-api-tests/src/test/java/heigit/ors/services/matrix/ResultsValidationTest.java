@@ -22,6 +22,9 @@ package heigit.ors.services.matrix;
 
 import static io.restassured.RestAssured.*;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import org.junit.Test;
 
 import org.json.JSONArray;
@@ -30,6 +33,7 @@ import org.json.JSONObject;
 import heigit.ors.services.common.EndPointAnnotation;
 import heigit.ors.services.common.ServiceTest;
 import io.restassured.response.Response;
+import io.restassured.specification.RequestSpecification;
 import junit.framework.Assert;
 
 @EndPointAnnotation(name="matrix")
@@ -172,6 +176,111 @@ public class ResultsValidationTest extends ServiceTest {
 		Assert.assertEquals(true, jResponse.getJSONArray("sources").getJSONObject(0).has("name"));
 	}
 
+	@Test
+	public void binaryFormatTest() {
+		Response response = given()
+				.param("locations", getParameter("locations"))
+				.param("sources", getParameter("sources1"))
+				.param("destinations", getParameter("destinations1"))
+				.param("metrics", "distance|duration")
+				.param("profile", "driving-car")
+				.param("format", "binary")
+				.when()
+				.get(getEndPointName());
+
+		Assert.assertEquals(response.getStatusCode(), 200);
+		Assert.assertEquals(true, response.getContentType().startsWith("application/octet-stream"));
+
+		byte[] bytes = response.asByteArray();
+		Assert.assertEquals(20 + 2 * 2 * 1 * 4, bytes.length);
+
+		ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+		Assert.assertEquals(0x4D53524F, buffer.getInt());
+		Assert.assertEquals(1, buffer.getInt());
+		Assert.assertEquals(2, buffer.getInt());
+		Assert.assertEquals(1, buffer.getInt());
+		Assert.assertEquals(3, buffer.getInt());
+	}
+
+	@Test
+	public void bucketMatchesDijkstraTest() {
+		// the rows of a bucket matrix share one metrics extractor, so paths of
+		// later sources reuse the edge metrics cached for earlier ones
+		String locations = "8.681495,49.41461|8.686507,49.41943|8.687872,49.420318|8.694136,49.411985|8.705437,49.412337|8.709588,49.403744|8.690733,49.387283|8.686409,49.426272";
+
+		JSONObject jBucket = getMatrix(locations, "bucket", true);
+		JSONObject jDijkstra = getMatrix(locations, null, false);
+
+		checkTablesEqual(jDijkstra, jBucket, "durations", 8);
+		checkTablesEqual(jDijkstra, jBucket, "distances", 8);
+	}
+
+	@Test
+	public void parallelDijkstraMatchesSequentialTest() {
+		// the test configuration computes the rows of a flexible mode matrix in parallel,
+		// a matrix with a single source is always computed sequentially
+		String locations = "8.681495,49.41461|8.686507,49.41943|8.687872,49.420318|8.694136,49.411985|8.705437,49.412337|8.709588,49.403744|8.690733,49.387283|8.686409,49.426272";
+
+		JSONObject jParallel = getMatrix(locations, null, null, false);
+
+		for (int i = 0; i < 8; i++)
+		{
+			JSONObject jSequential = getMatrix(locations, Integer.toString(i), null, false);
+
+			for (String tableName : new String[] { "durations", "distances" })
+			{
+				checkTableDimensions(jSequential, tableName, 1, 8);
+
+				JSONArray jExpected = jSequential.getJSONArray(tableName).getJSONArray(0);
+				JSONArray jActual = jParallel.getJSONArray(tableName).getJSONArray(i);
+				for (int j = 0; j < 8; j++)
+					Assert.assertEquals(jExpected.getDouble(j), jActual.getDouble(j), 0.0);
+			}
+		}
+	}
+
+	private JSONObject getMatrix(String locations, String algorithm, boolean optimized)
+	{
+		return getMatrix(locations, null, algorithm, optimized);
+	}
+
+	private JSONObject getMatrix(String locations, String sources, String algorithm, boolean optimized)
+	{
+		RequestSpecification request = given()
+				.param("locations", locations)
+				.param("metrics", "distance|duration")
+				.param("profile", "driving-car")
+				.param("optimized", Boolean.toString(optimized));
+
+		if (sources != null)
+			request = request.param("sources", sources);
+		if (algorithm != null)
+			request = request.param("algorithm", algorithm);
+
+		Response response = request.when().get(getEndPointName());
+
+		Assert.assertEquals(200, response.getStatusCode());
+		return new JSONObject(response.body().asString());
+	}
+
+	private void checkTablesEqual(JSONObject expected, JSONObject actual, String tableName, int size)
+	{
+		checkTableDimensions(actual, tableName, size, size);
+
+		for (int i = 0; i < size; i++)
+		{
+			JSONArray jExpected = expected.getJSONArray(tableName).getJSONArray(i);
+			JSONArray jActual = actual.getJSONArray(tableName).getJSONArray(i);
+
+			for (int j = 0; j < size; j++)
+			{
+				double value = jExpected.getDouble(j);
+				// paths of equal weight may differ slightly
+				Assert.assertEquals(value, jActual.getDouble(j), Math.max(1.0, value * 0.01));
+			}
+		}
+	}
+
 	private void checkTableDimensions(JSONObject json, String tableName, int rows, int columns)
 	{
 		Assert.assertEquals(true, json.has(tableName));
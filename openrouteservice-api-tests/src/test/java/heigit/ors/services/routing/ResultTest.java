@@ -23,6 +23,13 @@ package heigit.ors.services.routing;
 import static io.restassured.RestAssured.*;
 import static org.hamcrest.Matchers.*;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.Test;
@@ -30,6 +37,7 @@ import org.junit.Test;
 import heigit.ors.services.common.EndPointAnnotation;
 import heigit.ors.services.common.ServiceTest;
 import io.restassured.response.Response;
+import io.restassured.specification.RequestSpecification;
 import junit.framework.Assert;
 
 @EndPointAnnotation(name = "routes")
@@ -615,6 +623,117 @@ public class ResultTest extends ServiceTest {
 		}
 	}
 
+	@Test
+	public void testOneWayWithDynamicWeights() throws InterruptedException {
+		// both locations are on the one-way Ploeck, the shortest weighting is
+		// answered on the customizable contraction hierarchy of the hgv profile
+		// once its metric has been customized
+		for (int i = 0; i < 2; i++)
+		{
+			double forward = getRouteDistance("8.697108,49.408802|8.700648,49.409245", "shortest", "driving-hgv");
+			double backward = getRouteDistance("8.700648,49.409245|8.697108,49.408802", "shortest", "driving-hgv");
+
+			// the direction against the one-way has to take a detour
+			Assert.assertEquals(Math.max(forward, backward) > 2 * Math.min(forward, backward), true);
+
+			awaitCustomization();
+		}
+	}
+
+	@Test
+	public void expectCCHRoutesToMatchFlexibleRoutes() throws InterruptedException {
+		long seed = System.currentTimeMillis();
+		Random random = new Random(seed);
+
+		// the metric without restrictions may have been customized by other tests already
+		compareWithFlexibleRoutes(getRandomCoordinates(random, 6), null, seed);
+
+		// random dimensions need a metric of their own, so the first request is
+		// answered by the flexible search while the metric is customized
+		JSONObject profileParams = new JSONObject();
+		profileParams.put("height", String.format(Locale.US, "%.2f", 3.0 + random.nextInt(150) / 100.0));
+		profileParams.put("weight", String.format(Locale.US, "%.1f", 7.5 + random.nextInt(300) / 10.0));
+		JSONObject options = new JSONObject();
+		options.put("vehicle_type", "hgv");
+		options.put("profile_params", profileParams);
+
+		compareWithFlexibleRoutes(getRandomCoordinates(random, 6), options.toString(), seed);
+	}
+
+	private void compareWithFlexibleRoutes(String coordinates, String options, long seed) throws InterruptedException
+	{
+		Response flexible = getHgvRoute(coordinates, options);
+		awaitCustomization();
+		Response cch = getHgvRoute(coordinates, options);
+
+		String message = "seed " + seed + ", coordinates " + coordinates + ", options " + options;
+		Assert.assertEquals(message, flexible.getStatusCode(), cch.getStatusCode());
+		if (flexible.getStatusCode() != 200)
+			return;
+
+		JSONArray jFlexible = new JSONObject(flexible.body().asString()).getJSONArray("routes").getJSONObject(0).getJSONArray("segments");
+		JSONArray jCCH = new JSONObject(cch.body().asString()).getJSONArray("routes").getJSONObject(0).getJSONArray("segments");
+		Assert.assertEquals(message, jFlexible.length(), jCCH.length());
+
+		for (int i = 0; i < jFlexible.length(); i++)
+		{
+			// the shortest weighting only allows paths of equal distance
+			double distance = jFlexible.getJSONObject(i).getDouble("distance");
+			Assert.assertEquals(message + ", segment " + i, distance, jCCH.getJSONObject(i).getDouble("distance"), Math.max(1.0, distance * 0.001));
+		}
+	}
+
+	private Response getHgvRoute(String coordinates, String options)
+	{
+		RequestSpecification request = given()
+		.param("coordinates", coordinates)
+		.param("preference", "shortest")
+		.param("profile", "driving-hgv")
+		.param("geometry", "false");
+
+		if (options != null)
+			request = request.param("options", options);
+
+		return request.when().get(getEndPointName());
+	}
+
+	private String getRandomCoordinates(Random random, int count)
+	{
+		List<String> locations = new ArrayList<String>(Arrays.asList("8.681495,49.41461", "8.686507,49.41943", "8.687872,49.420318", "8.694136,49.411985", 
+				"8.705437,49.412337", "8.709588,49.403744", "8.690733,49.387283", "8.686409,49.426272", "8.680916,49.410973", "8.714733,49.393267", 
+				"8.687782,49.424597", "8.676281,49.414715"));
+		Collections.shuffle(locations, random);
+
+		return String.join("|", locations.subList(0, count));
+	}
+
+	/**
+	 * Waits for the CCH metrics requested before, which are customized in the
+	 * background. Customizing the Heidelberg graph takes a fraction of it.
+	 */
+	private void awaitCustomization() throws InterruptedException
+	{
+		Thread.sleep(2000);
+	}
+
+	private double getRouteDistance(String coordinates, String preference, Object profile)
+	{
+		Response response = given()
+		.param("coordinates", coordinates)
+		.param("preference", preference)
+		.param("profile", profile)
+		.param("geometry", "false")
+		.when()
+		.get(getEndPointName());
+
+		response.then()
+		.assertThat()
+		.statusCode(200);
+
+		JSONObject jResponse = new JSONObject(response.body().asString());
+		return jResponse.getJSONArray("routes").getJSONObject(0).getJSONObject("summary").getDouble("distance");
+	}
+
 	// test fitness params bike..
 
 }
@@ -0,0 +1,119 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.common;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+
+import heigit.ors.config.AppConfig;
+
+/**
+ * The one pool of threads which computes the parallel parts of requests of all
+ * services: the segments of routes, the pairs of batch requests, the source 
+ * blocks and rows of matrices and the blocks of matrix jobs. Its size is the
+ * setting compute.threads, which also is the default size of the request 
+ * executors of the services, so that the number of busy cores does not grow
+ * with the number of features computing in parallel.
+ */
+public class ComputeExecutor 
+{
+	private static int threads = Runtime.getRuntime().availableProcessors();
+	private static ForkJoinPool _pool;
+
+	static
+	{
+		String value = AppConfig.Global().getParameter("compute", "threads");
+		if (value != null && Integer.parseInt(value) > 0)
+			threads = Integer.parseInt(value);
+	}
+
+	/**
+	 * Returns the number of threads computing in parallel, by default the 
+	 * number of available processors.
+	 */
+	public static int getThreads()
+	{
+		return threads;
+	}
+
+	public static <T> Future<T> submit(Callable<T> task)
+	{
+		return getPool().submit(task);
+	}
+
+	/**
+	 * Runs the task and waits for its result. An exception thrown by the task
+	 * is rethrown.
+	 */
+	public static <T> T invoke(Callable<T> task) throws Exception
+	{
+		try
+		{
+			return submit(task).get();
+		}
+		catch (ExecutionException ex)
+		{
+			if (ex.getCause() instanceof Exception)
+				throw (Exception)ex.getCause();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Runs the tasks and waits for all of them. The first exception thrown by 
+	 * a task is rethrown.
+	 */
+	public static <T> void invokeAll(List<Callable<T>> tasks) throws Exception
+	{
+		for (Future<T> future : getPool().invokeAll(tasks))
+		{
+			try
+			{
+				future.get();
+			}
+			catch (ExecutionException ex)
+			{
+				if (ex.getCause() instanceof Exception)
+					throw (Exception)ex.getCause();
+				throw ex;
+			}
+		}
+	}
+
+	private static synchronized ForkJoinPool getPool()
+	{
+		if (_pool == null)
+		{
+			_pool = new ForkJoinPool(threads, pool -> {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("ORS-compute-" + thread.getPoolIndex());
+				thread.setDaemon(true);
+				return thread;
+			}, null, false);
+		}
+
+		return _pool;
+	}
+}
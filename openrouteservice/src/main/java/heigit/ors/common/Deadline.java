@@ -0,0 +1,108 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.common;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import heigit.ors.exceptions.SearchTimeoutException;
+
+/**
+ * The point in time by which a request has to be answered. Searches call 
+ * {@link #check()} every {@link #CHECK_INTERVAL} settled nodes, which keeps the
+ * cost of reading the clock negligible, and abort once the deadline has passed
+ * or the request has been cancelled, e.g. because it has already been answered
+ * with an error.
+ */
+public class Deadline 
+{
+	public static final int CHECK_INTERVAL = 1024;
+
+	public static final Deadline NONE = new Deadline(0, null);
+
+	private final long _timeout;
+	private final long _expirationTime;
+	private final AtomicBoolean _cancelled;
+
+	private Deadline(long timeout, AtomicBoolean cancelled)
+	{
+		_timeout = timeout;
+		_expirationTime = System.nanoTime() + timeout * 1000000L;
+		_cancelled = cancelled;
+	}
+
+	/**
+	 * Creates a deadline which expires after the given number of milliseconds
+	 * or {@link #NONE} if the timeout is not positive.
+	 */
+	public static Deadline fromTimeout(long timeout)
+	{
+		return timeout > 0 ? new Deadline(timeout, null) : NONE;
+	}
+
+	/**
+	 * Creates a deadline which expires after the given number of milliseconds,
+	 * if the timeout is positive, or as soon as the flag is set.
+	 */
+	public static Deadline fromTimeout(long timeout, AtomicBoolean cancelled)
+	{
+		if (cancelled == null)
+			return fromTimeout(timeout);
+
+		return new Deadline(Math.max(0, timeout), cancelled);
+	}
+
+	/**
+	 * Returns the deadline of a part of the request, like a pair of a batch, 
+	 * which expires after the given number of milliseconds or with this
+	 * deadline, whichever comes first.
+	 */
+	public Deadline limit(long timeout)
+	{
+		if (timeout <= 0 || (_timeout > 0 && _expirationTime - System.nanoTime() <= timeout * 1000000L))
+			return this;
+
+		return new Deadline(timeout, _cancelled);
+	}
+
+	public boolean isSet()
+	{
+		return _timeout > 0 || _cancelled != null;
+	}
+
+	public long getTimeout()
+	{
+		return _timeout;
+	}
+
+	public boolean isExpired()
+	{
+		return (_timeout > 0 && System.nanoTime() - _expirationTime >= 0) || (_cancelled != null && _cancelled.get());
+	}
+
+	/**
+	 * Throws a {@link SearchTimeoutException} if the deadline has passed.
+	 */
+	public void check()
+	{
+		if (isExpired())
+			throw new SearchTimeoutException(_timeout);
+	}
+}
@@ -26,6 +26,11 @@ public class StatusCode
      * Status code (200) indicating the request succeeded normally.
      */
     public static final int OK = javax.servlet.http.HttpServletResponse.SC_OK;
+    /**
+     * Status code (202) indicating that a request was accepted for
+     * processing, but was not completed.
+     */
+    public static final int ACCEPTED = javax.servlet.http.HttpServletResponse.SC_ACCEPTED;
 	 /**
      * Status code (400) indicating the request sent by the client was
      * syntactically incorrect.
@@ -36,8 +41,20 @@ public class StatusCode
     * <code><em>Request-Line</em></code> is not allowed for the resource
     * identified by the <code><em>Request-URI</em></code>.
     */
+   /**
+    * Status code (404) indicating that the requested resource is not
+    * available.
+    */
+   public static int NOT_FOUND = javax.servlet.http.HttpServletResponse.SC_NOT_FOUND;
+   
    public static int METHOD_NOT_ALLOWED = javax.servlet.http.HttpServletResponse.SC_METHOD_NOT_ALLOWED;
    
+   /**
+    * Status code (409) indicating that the request could not be
+    * completed due to a conflict with the current state of the resource.
+    */
+   public static int CONFLICT = javax.servlet.http.HttpServletResponse.SC_CONFLICT;
+   
    /**
     * Status code (500) indicating an error inside the HTTP server
     * which prevented it from fulfilling the request.
@@ -0,0 +1,46 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.exceptions;
+
+/**
+ * Thrown by a search that is still running when the deadline of its request
+ * has passed. It is unchecked, as it has to leave the search loops of the
+ * algorithms, and is converted into a {@link StatusCodeException} with the 
+ * timeout error code of the service which started the search.
+ */
+public class SearchTimeoutException extends RuntimeException 
+{
+	private static final long serialVersionUID = 4893521867311742206L;
+
+	private final long _timeout;
+
+	public SearchTimeoutException(long timeout)
+	{
+		super("The search has not finished within " + timeout + " ms.");
+
+		_timeout = timeout;
+	}
+
+	public long getTimeout()
+	{
+		return _timeout;
+	}
+}
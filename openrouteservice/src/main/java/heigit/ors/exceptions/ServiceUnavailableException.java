@@ -0,0 +1,45 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.exceptions;
+
+import heigit.ors.common.StatusCode;
+
+public class ServiceUnavailableException extends StatusCodeException 
+{
+	private static final long serialVersionUID = -3419820731695471625L;
+
+	private int _retryAfter;
+
+	public ServiceUnavailableException(int errorCode, String message, int retryAfter)
+	{
+		super(StatusCode.SERVICE_UNAVAILABLE, errorCode, message);
+
+		_retryAfter = retryAfter;
+	}
+
+	/**
+	 * Returns the number of seconds after which the client may repeat the request.
+	 */
+	public int getRetryAfter()
+	{
+		return _retryAfter;
+	}
+}
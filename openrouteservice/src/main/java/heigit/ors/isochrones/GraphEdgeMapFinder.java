@@ -79,6 +79,7 @@ public class GraphEdgeMapFinder {
 		DijkstraCostCondition dijkstraAlg = new DijkstraCostCondition(graph, weighting, parameters.getMaximumRange(), parameters.getReverseDirection(),
 				TraversalMode.NODE_BASED);
 		dijkstraAlg.setEdgeFilter(searchCntx.getEdgeFilter());
+		dijkstraAlg.setDeadline(searchCntx.getDeadline());
 		dijkstraAlg.calcPath(fromId, Integer.MIN_VALUE);
 
 		IntObjectMap<SPTEntry> edgeMap = dijkstraAlg.getMap();
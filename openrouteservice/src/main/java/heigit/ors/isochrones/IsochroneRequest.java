@@ -165,6 +165,7 @@ public class IsochroneRequest extends ServiceRequest
 		parameters.setLocation(traveller.getLocation());
 		parameters.setRangeType(traveller.getRangeType() );
 		parameters.setCalcMethod(_calcMethod);
+		parameters.setDeadline(getDeadline());
 		parameters.setRouteParameters(traveller.getRouteSearchParameters());
 		if ("destination".equalsIgnoreCase(traveller.getLocationType()))
 			parameters.setReverseDirection(true);
@@ -22,6 +22,7 @@ package heigit.ors.isochrones;
 
 import com.vividsolutions.jts.geom.Coordinate;
 
+import heigit.ors.common.Deadline;
 import heigit.ors.common.TravelRangeType;
 import heigit.ors.routing.RouteSearchParameters;
 
@@ -33,6 +34,7 @@ public class IsochroneSearchParameters {
 	private double[] _ranges;
 	private RouteSearchParameters _parameters;
 	private String _calcMethod;
+	private Deadline _deadline = Deadline.NONE;
 
 	public IsochroneSearchParameters(int travellerId, Coordinate location, double[] ranges) {
 		_travellerId = travellerId;
@@ -120,4 +122,14 @@ public class IsochroneSearchParameters {
 	{
 		_calcMethod = calcMethod;
 	}
+
+	public Deadline getDeadline() 
+	{
+		return _deadline;
+	}
+
+	public void setDeadline(Deadline deadline) 
+	{
+		_deadline = deadline;
+	}
 }
@@ -28,5 +28,7 @@ public class IsochronesErrorCodes
 	public static int INVALID_PARAMETER_VALUE = 303;
 	public static int PARAMETER_VALUE_EXCEEDS_MAXIMUM = 304;
 	public static int FEATURE_NOT_SUPPORTED = 305;
+	public static int SERVICE_OVERLOADED = 306;
+	public static int SEARCH_TIMEOUT = 307;
 	public static int UNKNOWN = 399;
 }
@@ -64,4 +64,16 @@ public class MatrixLocations {
 	{
 		return _hasValidNodes;
 	}
+
+	/**
+	 * Returns a copy of the locations in the range [fromIndex, toIndex).
+	 */
+	public MatrixLocations getRange(int fromIndex, int toIndex)
+	{
+		MatrixLocations res = new MatrixLocations(toIndex - fromIndex, false);
+		for (int i = fromIndex; i < toIndex; i++)
+			res.setData(i - fromIndex, _nodeIds[i], _locations[i]);
+
+		return res;
+	}
 }
@@ -37,6 +37,8 @@ public class MatrixRequest extends ServiceRequest
 	private boolean _resolveLocations = false;
 	private boolean _flexibleMode = false;
 	private String _algorithm;
+	private double _maximumDuration = -1;
+	private double _maximumDistance = -1;
 
 	public MatrixRequest()
 	{
@@ -126,4 +128,32 @@ public class MatrixRequest extends ServiceRequest
 	public void setAlgorithm(String _algorithm) {
 		this._algorithm = _algorithm;
 	}
+
+	/**
+	 * Returns the maximum duration in seconds of the returned cells or -1 if
+	 * the durations are not bounded.
+	 */
+	public double getMaximumDuration() {
+		return _maximumDuration;
+	}
+
+	public void setMaximumDuration(double maximumDuration) {
+		_maximumDuration = maximumDuration;
+	}
+
+	/**
+	 * Returns the maximum distance, in the units of the request, of the
+	 * returned cells or -1 if the distances are not bounded.
+	 */
+	public double getMaximumDistance() {
+		return _maximumDistance;
+	}
+
+	public void setMaximumDistance(double maximumDistance) {
+		_maximumDistance = maximumDistance;
+	}
+
+	public boolean hasCostBounds() {
+		return _maximumDuration > 0 || _maximumDistance > 0;
+	}
 }
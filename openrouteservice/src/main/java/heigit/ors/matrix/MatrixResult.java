@@ -42,6 +42,29 @@ public class MatrixResult {
 	  return _tables[metric];
   }
 
+  /**
+   * Marks all cells whose value in the table of the given metric exceeds
+   * maxValue as not reachable (-1) in every table.
+   */
+  public void removeValuesAbove(int metric, double maxValue)
+  {
+	  float[] values = _tables[metric];
+	  if (values == null)
+		  return;
+
+	  for (int i = 0; i < values.length; i++)
+	  {
+		  if (values[i] > maxValue)
+		  {
+			  for (float[] table : _tables)
+			  {
+				  if (table != null)
+					  table[i] = -1;
+			  }
+		  }
+	  }
+  }
+
   public ResolvedLocation[] getDestinations()
   {
 	  return _destinations;
@@ -31,6 +31,7 @@ import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.ByteArrayBuffer;
+import com.graphhopper.util.Helper;
 import com.graphhopper.util.shapes.GHPoint3D;
 import com.vividsolutions.jts.geom.Coordinate;
 
@@ -40,6 +41,8 @@ public class MatrixSearchContextBuilder {
 	private LocationIndex _locIndex;
 	private EdgeFilter _edgeFilter;
 	private ByteArrayBuffer _buffer;
+	// snapped destinations as found by the location index, before a query graph has changed them
+	private Map<Coordinate, QueryResult> _destinationsCache;
 
 	class LocationEntry
 	{
@@ -56,6 +59,15 @@ public class MatrixSearchContextBuilder {
 		_resolveNames = resolveNames;
 	}
 
+	/**
+	 * Keeps the snapped destinations for further contexts, so that the blocks 
+	 * of sources of a matrix job snap the same destinations only once.
+	 */
+	public void setCacheDestinations(boolean cacheDestinations)
+	{
+		_destinationsCache = cacheDestinations ? new HashMap<Coordinate, QueryResult>() : null;
+	}
+
 	public MatrixSearchContext create(Graph graph, Coordinate[] sources, Coordinate[] destinations, double maxSearchRadius) throws Exception
 	{
 		if (_locationCache == null)
@@ -66,8 +78,8 @@ public class MatrixSearchContextBuilder {
 		QueryGraph queryGraph = new QueryGraph(graph);
 		List<QueryResult> queryResults = new ArrayList<QueryResult>(sources.length + destinations.length);
 		
-		resolveLocations(sources, queryResults, maxSearchRadius);
-		resolveLocations(destinations, queryResults, maxSearchRadius);
+		resolveLocations(sources, queryResults, maxSearchRadius, null);
+		resolveLocations(destinations, queryResults, maxSearchRadius, _destinationsCache);
 
 		queryGraph.lookup(queryResults, _buffer);
 		
@@ -77,7 +89,7 @@ public class MatrixSearchContextBuilder {
 		return new  MatrixSearchContext(queryGraph, mlSources, mlDestinations);
 	}
 	
-	private void resolveLocations(Coordinate[] coords, List<QueryResult> queryResults, double maxSearchRadius)
+	private void resolveLocations(Coordinate[] coords, List<QueryResult> queryResults, double maxSearchRadius, Map<Coordinate, QueryResult> snapCache)
 	{
 		Coordinate p = null;
 		
@@ -88,7 +100,20 @@ public class MatrixSearchContextBuilder {
 			LocationEntry ld = _locationCache.get(p);
 			if (ld == null)
 			{  
-				QueryResult qr = _locIndex.findClosest(p.y, p.x, _edgeFilter, _buffer);
+				QueryResult qr = null;
+				if (snapCache != null)
+				{
+					QueryResult cachedQr = snapCache.get(p);
+					if (cachedQr != null)
+						qr = copyQueryResult(cachedQr);
+					else
+					{
+						qr = _locIndex.findClosest(p.y, p.x, _edgeFilter, _buffer);
+						snapCache.put(p, copyQueryResult(qr));
+					}
+				}
+				else
+					qr = _locIndex.findClosest(p.y, p.x, _edgeFilter, _buffer);
 				
 				ld = new LocationEntry();
 				ld.queryResult = qr;
@@ -111,6 +136,27 @@ public class MatrixSearchContextBuilder {
 		}
 	}
  	
+	/**
+	 * Copies a result of the location index, as the lookup of a query graph 
+	 * replaces its closest node by a virtual one.
+	 */
+	private static QueryResult copyQueryResult(QueryResult qr)
+	{
+		QueryResult res = new QueryResult(qr.getQueryPoint().lat, qr.getQueryPoint().lon);
+
+		if (qr.isValid())
+		{
+			res.setClosestNode(qr.getClosestNode());
+			res.setClosestEdge(qr.getClosestEdge());
+			res.setWayIndex(qr.getWayIndex());
+			res.setSnappedPosition(qr.getSnappedPosition());
+			res.setQueryDistance(qr.getQueryDistance());
+			res.calcSnappedPoint(Helper.DIST_PLANE);
+		}
+
+		return res;
+	}
+
 	private MatrixLocations createLocations(Coordinate[] coords) throws Exception
 	{
 		MatrixLocations mlRes = new MatrixLocations(coords.length, _resolveNames);
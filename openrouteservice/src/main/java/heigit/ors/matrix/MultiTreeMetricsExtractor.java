@@ -44,6 +44,7 @@ public class MultiTreeMetricsExtractor {
 	}
 
 	private int _metrics;
+	private int _unpackMetrics;
 	private Graph _graph;
 	private CHGraph _chGraph;
 	private Weighting _weighting;
@@ -56,10 +57,12 @@ public class MultiTreeMetricsExtractor {
 	private boolean _unpackDistance = true;
 	private GHLongObjectHashMap<MetricsItem> _edgeMetrics;
 	private long _maxEdgeId = 0;
+	private ShortcutMetricsCache _shortcutCache;
 
 	public MultiTreeMetricsExtractor(int metrics, Graph graph, FlagEncoder encoder, Weighting weighting,
 			DistanceUnit units) {
 		_metrics = metrics;
+		_unpackMetrics = metrics;
 		_graph = graph;
 		_weighting = weighting;
 		_timeWeighting = new FastestWeighting(encoder);
@@ -78,6 +81,16 @@ public class MultiTreeMetricsExtractor {
 		_maxEdgeId = _chGraph.getAllEdges().getMaxId();
 	}
 
+	/**
+	 * Uses the given cache for the values of unpacked shortcuts. Since the
+	 * cache is shared by requests with different metrics, all metrics are
+	 * computed when a shortcut is unpacked.
+	 */
+	public void setShortcutMetricsCache(ShortcutMetricsCache cache) {
+		_shortcutCache = cache;
+		_unpackMetrics = cache == null ? _metrics : MatrixMetricsType.Duration | MatrixMetricsType.Distance | MatrixMetricsType.Weight;
+	}
+
 	public void setEmptyValues(int sourceIndex, MatrixLocations srcData, MatrixLocations dstData, float[] times,
 			float[] distances, float[] weights) {
 		int i = sourceIndex * dstData.size();
@@ -97,6 +110,15 @@ public class MultiTreeMetricsExtractor {
 
 	public void calcValues(MultiTreeSPEntry[] targets, MatrixLocations srcData, MatrixLocations dstData, float[] times,
 			float[] distances, float[] weights) throws Exception {
+		calcValues(targets, srcData, dstData, 0, times, distances, weights);
+	}
+
+	/**
+	 * Writes the values of the given sources to the table rows starting at
+	 * srcIndexOffset, which allows to fill a table block by block.
+	 */
+	public void calcValues(MultiTreeSPEntry[] targets, MatrixLocations srcData, MatrixLocations dstData, int srcIndexOffset, float[] times,
+			float[] distances, float[] weights) throws Exception {
 		if (targets == null)
 			throw new IllegalStateException("Target destinations not set");
 
@@ -118,7 +140,7 @@ public class MultiTreeMetricsExtractor {
 				pathDistance = -1;
 				pathWeight = -1;
 
-				index = j * dstData.size() + i;
+				index = (srcIndexOffset + j) * dstData.size() + i;
 
 				if (srcData.getNodeId(j) != -1) {
 					MultiTreeSPEntry targetEntry = targets[i];
@@ -130,7 +152,12 @@ public class MultiTreeMetricsExtractor {
 
 						sptItem = targetEntry.getItem(srcNode);
 
-						if (sptItem.parent != null) {
+						// a weight of 0 marks a tree that has not reached the target
+						if (sptItem.weight == 0.0) {
+							pathTime = -1;
+							pathDistance = -1;
+							pathWeight = -1;
+						} else if (sptItem.parent != null) {
 							while (EdgeIterator.Edge.isValid(sptItem.edge)) {
 								edgeMetricsItem = null;
 								if (_edgeMetrics != null) {
@@ -145,13 +172,20 @@ public class MultiTreeMetricsExtractor {
 
 										if (calcWeight || calcTime || _unpackDistance) {
 											if (iterState.isShortcut()) {
-												if (_chGraph.getLevel(iterState.getBaseNode()) > _chGraph
-														.getLevel(iterState.getAdjNode())) {
-													_reverseOrder = true;
-													extractEdgeValues(iterState, false);
+												boolean downward = _chGraph.getLevel(iterState.getBaseNode()) > _chGraph
+														.getLevel(iterState.getAdjNode());
+												int cacheIndex = _shortcutCache == null ? -1 : _shortcutCache.getIndex(iterState.getEdge(), downward);
+
+												if (cacheIndex >= 0 && _shortcutCache.contains(cacheIndex)) {
+													_edgeDistance = _shortcutCache.getDistance(cacheIndex);
+													_edgeTime = _shortcutCache.getTime(cacheIndex);
+													_edgeWeight = _shortcutCache.getWeight(cacheIndex);
 												} else {
-													_reverseOrder = false;
-													extractEdgeValues(iterState, true);
+													_reverseOrder = downward;
+													extractEdgeValues(iterState, !downward);
+
+													if (cacheIndex >= 0)
+														_shortcutCache.put(cacheIndex, _edgeDistance, _edgeTime, _edgeWeight);
 												}
 											} else {
 												extractEdgeValues(iterState, false);
@@ -244,22 +278,22 @@ public class MultiTreeMetricsExtractor {
 
 			expandEdge(iterState, reverse);
 		} else {
-			if (MatrixMetricsType.isSet(_metrics, MatrixMetricsType.Distance))
+			if (MatrixMetricsType.isSet(_unpackMetrics, MatrixMetricsType.Distance))
 				_edgeDistance = iterState.getDistance();
-			if (MatrixMetricsType.isSet(_metrics, MatrixMetricsType.Duration))
+			if (MatrixMetricsType.isSet(_unpackMetrics, MatrixMetricsType.Duration))
 				_edgeTime = _weighting.calcMillis(iterState, reverse, EdgeIterator.NO_EDGE) / 1000.0;
-			if (MatrixMetricsType.isSet(_metrics, MatrixMetricsType.Weight))
+			if (MatrixMetricsType.isSet(_unpackMetrics, MatrixMetricsType.Weight))
 				_edgeWeight = _weighting.calcWeight(iterState, reverse, EdgeIterator.NO_EDGE);
 		}
 	}
 
 	private void expandEdge(CHEdgeIteratorState iterState, boolean reverse) {
 		if (!iterState.isShortcut()) {
-			if (MatrixMetricsType.isSet(_metrics, MatrixMetricsType.Distance))
+			if (MatrixMetricsType.isSet(_unpackMetrics, MatrixMetricsType.Distance))
 				_edgeDistance += iterState.getDistance();
-			if (MatrixMetricsType.isSet(_metrics, MatrixMetricsType.Duration))
+			if (MatrixMetricsType.isSet(_unpackMetrics, MatrixMetricsType.Duration))
 				_edgeTime += _weighting.calcMillis(iterState, reverse, EdgeIterator.NO_EDGE) / 1000.0;
-			if (MatrixMetricsType.isSet(_metrics, MatrixMetricsType.Weight))
+			if (MatrixMetricsType.isSet(_unpackMetrics, MatrixMetricsType.Weight))
 				_edgeWeight += _weighting.calcWeight(iterState, reverse, EdgeIterator.NO_EDGE);
 			return;
 		}
@@ -220,9 +220,14 @@ public class PathMetricsExtractor {
 		}
 	}
 
+	/**
+	 * Returns the key of the edge of the entry traversed towards its adjacent
+	 * node. Edge id and node are packed into the upper and lower half of the 
+	 * key, so that the metrics of different edges or directions never share it.
+	 */
 	private long getSPTEntryHash(SPTEntry entry)
 	{
-		return entry.adjNode + entry.edge;
+		return ((long)entry.edge << 32) | (entry.adjNode & 0xFFFFFFFFL);
 	}
 
 	private void extractEdgeValues(CHEdgeIteratorState iterState, boolean reverse)
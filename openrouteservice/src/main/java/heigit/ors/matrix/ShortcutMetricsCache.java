@@ -0,0 +1,127 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.matrix;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.graphhopper.storage.CHGraph;
+
+/**
+ * Keeps the unpacked distance, time and weight of CH shortcuts so that they
+ * are expanded only once per graph and weighting. Values are stored in
+ * primitive arrays indexed by the shortcut edge id and its direction. The
+ * arrays are split into blocks which are allocated when the first value
+ * falling into them is stored, as long as the shared memory budget allows it;
+ * values of blocks beyond the budget are simply not cached. Entries are
+ * written without locking: concurrent writers store identical values and a
+ * state flag, set after the values, publishes them to readers.
+ */
+public class ShortcutMetricsCache {
+	private static final int BLOCK_SHIFT = 16;
+	private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+	private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+	// three float values and one int state per slot
+	private static final long BLOCK_BYTES = BLOCK_SIZE * 16L;
+
+	private final int _maxEdgeId;
+	private final AtomicReferenceArray<Block> _blocks;
+	private final AtomicLong _remainingMemory;
+
+	private static class Block {
+		private final float[] _distances = new float[BLOCK_SIZE];
+		private final float[] _times = new float[BLOCK_SIZE];
+		private final float[] _weights = new float[BLOCK_SIZE];
+		private final AtomicIntegerArray _states = new AtomicIntegerArray(BLOCK_SIZE);
+	}
+
+	/**
+	 * @param remainingMemory bytes the blocks may still allocate, shared by all caches of a graph
+	 */
+	public ShortcutMetricsCache(CHGraph chGraph, AtomicLong remainingMemory) {
+		_maxEdgeId = chGraph.getAllEdges().getMaxId();
+		_remainingMemory = remainingMemory;
+
+		int size = (_maxEdgeId + 1) * 2;
+		_blocks = new AtomicReferenceArray<Block>((size + BLOCK_MASK) >>> BLOCK_SHIFT);
+	}
+
+	/**
+	 * Returns the slot of the shortcut traversed in the given direction or -1
+	 * if the edge does not belong to the CH graph (e.g. a virtual edge).
+	 */
+	public int getIndex(int edge, boolean downward) {
+		if (edge < 0 || edge > _maxEdgeId)
+			return -1;
+
+		return (edge << 1) | (downward ? 1 : 0);
+	}
+
+	public boolean contains(int index) {
+		Block block = _blocks.get(index >>> BLOCK_SHIFT);
+		return block != null && block._states.get(index & BLOCK_MASK) != 0;
+	}
+
+	public double getDistance(int index) {
+		return _blocks.get(index >>> BLOCK_SHIFT)._distances[index & BLOCK_MASK];
+	}
+
+	public double getTime(int index) {
+		return _blocks.get(index >>> BLOCK_SHIFT)._times[index & BLOCK_MASK];
+	}
+
+	public double getWeight(int index) {
+		return _blocks.get(index >>> BLOCK_SHIFT)._weights[index & BLOCK_MASK];
+	}
+
+	public void put(int index, double distance, double time, double weight) {
+		Block block = getOrCreateBlock(index >>> BLOCK_SHIFT);
+		if (block == null)
+			return;
+
+		int slot = index & BLOCK_MASK;
+		block._distances[slot] = (float) distance;
+		block._times[slot] = (float) time;
+		block._weights[slot] = (float) weight;
+		block._states.set(slot, 1);
+	}
+
+	private Block getOrCreateBlock(int blockIndex) {
+		Block block = _blocks.get(blockIndex);
+		if (block != null)
+			return block;
+
+		if (_remainingMemory.addAndGet(-BLOCK_BYTES) < 0) {
+			_remainingMemory.addAndGet(BLOCK_BYTES);
+			return null;
+		}
+
+		block = new Block();
+		if (!_blocks.compareAndSet(blockIndex, null, block)) {
+			// another thread allocated the block in the meantime
+			_remainingMemory.addAndGet(BLOCK_BYTES);
+			block = _blocks.get(blockIndex);
+		}
+
+		return block;
+	}
+}
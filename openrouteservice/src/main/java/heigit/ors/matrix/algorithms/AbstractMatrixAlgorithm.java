@@ -20,18 +20,33 @@
  */
 package heigit.ors.matrix.algorithms;
 
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
 import com.graphhopper.GraphHopper;
 import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.ShortestWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
 
+import heigit.ors.common.ComputeExecutor;
+import heigit.ors.common.Deadline;
+import heigit.ors.common.DistanceUnit;
 import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.util.DistanceUnitUtil;
 
 public abstract class AbstractMatrixAlgorithm implements MatrixAlgorithm {
+  private static final double MAX_WEIGHT_MARGIN = 1.001;
+
   protected GraphHopper _graphHopper;
   protected Graph _graph;
   protected FlagEncoder _encoder;
   protected Weighting _weighting;
+  protected double _maxWeight = Double.MAX_VALUE;
+  protected Deadline _deadline = Deadline.NONE;
+  private final AtomicLong _visitedNodes = new AtomicLong();
   
   public void init(MatrixRequest req, GraphHopper gh, Graph graph, FlagEncoder encoder, Weighting weighting)
   {
@@ -39,5 +54,53 @@ public abstract class AbstractMatrixAlgorithm implements MatrixAlgorithm {
 	  _graph = graph;
 	  _encoder = encoder;
 	  _weighting = weighting;
+	  _maxWeight = getMaximumWeight(req, weighting);
+	  _deadline = req.getDeadline();
+  }
+
+  public long getVisitedNodes()
+  {
+	  return _visitedNodes.get();
+  }
+
+  protected void addVisitedNodes(int visitedNodes)
+  {
+	  _visitedNodes.addAndGet(visitedNodes);
+  }
+
+  /**
+   * Returns the weight beyond which the searches may stop. The cost bounds of
+   * a request can only be applied to weights of fastest and shortest
+   * weightings, where the weight of a path equals its duration in seconds or
+   * its distance in meters. Other weightings search without limit and rely
+   * on the filtering of the results. A small margin keeps paths whose weight
+   * and extracted metric differ by rounding.
+   */
+  protected static double getMaximumWeight(MatrixRequest req, Weighting weighting)
+  {
+	  if (req.getMaximumDuration() > 0 && weighting.getClass() == FastestWeighting.class)
+		  return req.getMaximumDuration() * MAX_WEIGHT_MARGIN;
+	  if (req.getMaximumDistance() > 0 && weighting.getClass() == ShortestWeighting.class)
+	  {
+		  try
+		  {
+			  return DistanceUnitUtil.convert(req.getMaximumDistance(), req.getUnits(), DistanceUnit.Meters) * MAX_WEIGHT_MARGIN;
+		  }
+		  catch (Exception ex)
+		  {
+			  // unsupported units are only filtered after the search
+		  }
+	  }
+
+	  return Double.MAX_VALUE;
+  }
+
+  /**
+   * Runs the tasks on the shared compute pool and waits for all of them. The
+   * first exception thrown by a task is rethrown.
+   */
+  protected static void invokeAll(List<Callable<Void>> tasks) throws Exception
+  {
+	  ComputeExecutor.invokeAll(tasks);
   }
 }
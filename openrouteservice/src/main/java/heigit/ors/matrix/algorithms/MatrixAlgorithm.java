@@ -33,4 +33,9 @@ public interface MatrixAlgorithm {
   public void init(MatrixRequest req, GraphHopper gh, Graph graph, FlagEncoder encoder, Weighting weighting);
   
   public MatrixResult compute(MatrixLocations srcData, MatrixLocations dstData, int metrics) throws Exception;
+
+  /**
+   * Returns the number of nodes visited by all searches of the last computations.
+   */
+  public long getVisitedNodes();
 }
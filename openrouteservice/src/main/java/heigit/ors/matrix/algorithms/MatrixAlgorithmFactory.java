@@ -22,20 +22,59 @@ package heigit.ors.matrix.algorithms;
 
 import com.graphhopper.GraphHopper;
 import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.util.Helper;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 
 import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.matrix.algorithms.bucket.BucketManyToManyMatrixAlgorithm;
 import heigit.ors.matrix.algorithms.dijkstra.DijkstraMatrixAlgorithm;
 import heigit.ors.matrix.algorithms.rphast.RPHASTMatrixAlgorithm;
 
 public class MatrixAlgorithmFactory {
+	public static final String ALGORITHM_RPHAST = "rphast";
+	public static final String ALGORITHM_BUCKET = "bucket";
+
+	// RPHAST sweeps the whole target subgraph, which grows with the area covered 
+	// by the locations, whereas the bucket approach only visits the CH search 
+	// spaces of the locations themselves.
+	private static final double BUCKET_MIN_SPREAD = 100000.0; // meters
+
 	public static MatrixAlgorithm createAlgorithm(MatrixRequest req, GraphHopper gh, FlagEncoder encoder) {
 		MatrixAlgorithm alg = null;
 
 		if (!req.getFlexibleMode() && gh.isCHEnabled())
-			alg = new RPHASTMatrixAlgorithm();
+		{
+			String algName = req.getAlgorithm();
+			if (Helper.isEmpty(algName))
+				algName = useBuckets(req) ? ALGORITHM_BUCKET : ALGORITHM_RPHAST;
+
+			if (ALGORITHM_BUCKET.equalsIgnoreCase(algName))
+				alg = new BucketManyToManyMatrixAlgorithm();
+			else
+				alg = new RPHASTMatrixAlgorithm();
+		}
 		else
 			alg = new DijkstraMatrixAlgorithm();
 
 		return alg;
 	}
+
+	public static boolean isSupportedAlgorithm(String algName) {
+		return ALGORITHM_RPHAST.equalsIgnoreCase(algName) || ALGORITHM_BUCKET.equalsIgnoreCase(algName);
+	}
+
+	private static boolean useBuckets(MatrixRequest req) {
+		// a single column means one backward search and a forward search per source
+		if (req.getDestinations().length == 1)
+			return true;
+
+		Envelope env = new Envelope();
+		for (Coordinate c : req.getSources())
+			env.expandToInclude(c);
+		for (Coordinate c : req.getDestinations())
+			env.expandToInclude(c);
+
+		return Helper.DIST_EARTH.calcDist(env.getMinY(), env.getMinX(), env.getMaxY(), env.getMaxX()) >= BUCKET_MIN_SPREAD;
+	}
 }
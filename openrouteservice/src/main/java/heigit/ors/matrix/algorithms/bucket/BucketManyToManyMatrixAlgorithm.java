@@ -0,0 +1,106 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.matrix.algorithms.bucket;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.ch.PrepareContractionHierarchies;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.SPTEntry;
+
+import heigit.ors.matrix.MatrixLocations;
+import heigit.ors.matrix.MatrixMetricsType;
+import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.matrix.MatrixResult;
+import heigit.ors.matrix.PathMetricsExtractor;
+import heigit.ors.matrix.algorithms.AbstractMatrixAlgorithm;
+import heigit.ors.routing.algorithms.BucketManyToManyAlgorithm;
+
+public class BucketManyToManyMatrixAlgorithm extends AbstractMatrixAlgorithm {
+	private PrepareContractionHierarchies _prepareCH;
+	private PathMetricsExtractor _pathMetricsExtractor;
+
+	public void init(MatrixRequest req, GraphHopper gh, Graph graph, FlagEncoder encoder, Weighting weighting) {
+		super.init(req, gh, graph, encoder, weighting);
+
+		_prepareCH = _graphHopper.getCHFactoryDecorator().getPreparations().get(0);
+		// the searches run on the preparation wrapper of the weighting of the contraction
+		// hierarchy, whose weights equal those of the weighting it wraps
+		_maxWeight = getMaximumWeight(req, _prepareCH.getWeighting());
+		_pathMetricsExtractor = new PathMetricsExtractor(req.getMetrics(), graph, _encoder, weighting, req.getUnits());
+	}
+
+	@Override
+	public MatrixResult compute(MatrixLocations srcData, MatrixLocations dstData, int metrics) throws Exception {
+		MatrixResult mtxResult = new MatrixResult(srcData.getLocations(), dstData.getLocations());
+
+		float[] times = null;
+		float[] distances = null;
+		float[] weights = null;
+
+		int tableSize = srcData.size() * dstData.size();
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Duration))
+			times = new float[tableSize];
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Distance))
+			distances = new float[tableSize];
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Weight))
+			weights = new float[tableSize];
+
+		if (!srcData.hasValidNodes() || !dstData.hasValidNodes())
+		{
+			for (int srcIndex = 0; srcIndex < srcData.size(); srcIndex++) 
+				_pathMetricsExtractor.setEmptyValues(srcIndex, srcData, dstData, times, distances, weights);
+		}
+		else
+		{
+			BucketManyToManyAlgorithm algorithm = new BucketManyToManyAlgorithm(_graph, _prepareCH.getPrepareWeighting());
+			algorithm.setMaxWeight(_maxWeight);
+			algorithm.setDeadline(_deadline);
+			algorithm.prepare(dstData.getNodeIds());
+
+			for (int srcIndex = 0; srcIndex < srcData.size(); srcIndex++) {
+				int sourceId = srcData.getNodeId(srcIndex);
+
+				if (sourceId == -1)
+				{
+					_pathMetricsExtractor.setEmptyValues(srcIndex, srcData, dstData, times, distances, weights);
+				}
+				else
+				{
+					SPTEntry[] targets = algorithm.calcPaths(sourceId);
+					_pathMetricsExtractor.calcValues(srcIndex, targets, srcData, dstData, times, distances, weights);
+				}
+			}
+
+			addVisitedNodes(algorithm.getVisitedNodes());
+		}
+
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Duration))
+			mtxResult.setTable(MatrixMetricsType.Duration, times);
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Distance))
+			mtxResult.setTable(MatrixMetricsType.Distance, distances);
+		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Weight))
+			mtxResult.setTable(MatrixMetricsType.Weight, weights);
+
+		return mtxResult;
+	}
+}
@@ -20,6 +20,11 @@
  */
 package heigit.ors.matrix.algorithms.dijkstra;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import com.graphhopper.GraphHopper;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.TraversalMode;
@@ -27,6 +32,7 @@ import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.SPTEntry;
 
+import heigit.ors.common.DistanceUnit;
 import heigit.ors.matrix.MatrixMetricsType;
 import heigit.ors.matrix.MatrixRequest;
 import heigit.ors.matrix.MatrixResult;
@@ -38,14 +44,30 @@ import heigit.ors.services.matrix.MatrixServiceSettings;
 
 public class DijkstraMatrixAlgorithm extends AbstractMatrixAlgorithm {
 	private PathMetricsExtractor _pathMetricsExtractor;
+	private int _metrics;
+	private DistanceUnit _units;
+	private Callable<Weighting> _weightingFactory;
 
 	public void init(MatrixRequest req, GraphHopper gh, Graph graph, FlagEncoder encoder, Weighting weighting)
 	{
 		super.init(req, gh, graph, encoder, weighting);
 
+		_metrics = req.getMetrics();
+		_units = req.getUnits();
+
 		_pathMetricsExtractor = new PathMetricsExtractor(req.getMetrics(), _graph, _encoder, _weighting, req.getUnits());
 	}
 
+	/**
+	 * Sets the factory which created the weighting passed to init. The rows
+	 * are only computed in parallel if it is set, as every worker needs a
+	 * weighting of its own.
+	 */
+	public void setWeightingFactory(Callable<Weighting> weightingFactory)
+	{
+		_weightingFactory = weightingFactory;
+	}
+
 	@Override
 	public MatrixResult compute(MatrixLocations srcData, MatrixLocations dstData, int metrics) throws Exception {
 		MatrixResult mtxResult = new MatrixResult(srcData.getLocations(), dstData.getLocations());
@@ -67,35 +89,20 @@ public class DijkstraMatrixAlgorithm extends AbstractMatrixAlgorithm {
 			for (int srcIndex = 0; srcIndex < srcData.size(); srcIndex++) 
 				_pathMetricsExtractor.setEmptyValues(srcIndex, srcData, dstData, times, distances, weights);
 		}
+		else if (_weightingFactory != null && MatrixServiceSettings.getParallelism() > 1 && srcData.size() > 1)
+		{
+			computeParallel(srcData, dstData, times, distances, weights);
+		}
 		else
 		{
 			DijkstraOneToManyAlgorithm algorithm = new DijkstraOneToManyAlgorithm(_graph, _weighting, TraversalMode.NODE_BASED);
 			algorithm.prepare(srcData.getNodeIds(),  dstData.getNodeIds());
 			algorithm.setMaxVisitedNodes(MatrixServiceSettings.getMaximumVisitedNodes());
-			
-			int sourceId = -1;
+			algorithm.setMaxWeight(_maxWeight);
+			algorithm.setDeadline(_deadline);
 
-			for (int srcIndex = 0; srcIndex < srcData.size(); srcIndex++) {
-				sourceId = srcData.getNodeId(srcIndex);
-
-				if (sourceId == -1)
-				{
-					_pathMetricsExtractor.setEmptyValues(srcIndex, srcData, dstData, times, distances, weights);
-				}
-				else
-				{
-					algorithm.reset();
-					SPTEntry[] targets = algorithm.calcPaths(sourceId, dstData.getNodeIds());
-
-					if (algorithm.getFoundTargets() != algorithm.getTargetsCount())
-						throw new Exception("Search exceeds the limit of visited nodes.");
-
-					if (targets != null)
-					{
-						_pathMetricsExtractor.calcValues(srcIndex, targets, srcData, dstData, times, distances, weights);
-					}
-				}
-			}
+			for (int srcIndex = 0; srcIndex < srcData.size(); srcIndex++) 
+				computeRow(algorithm, _pathMetricsExtractor, srcIndex, srcData, dstData, times, distances, weights);
 		}
 
 		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Duration))
@@ -107,4 +114,66 @@ public class DijkstraMatrixAlgorithm extends AbstractMatrixAlgorithm {
 
 		return mtxResult;
 	}
+
+	/**
+	 * Computes the rows on the matrix thread pool. Every worker has its own
+	 * algorithm, weighting and metrics extractor and takes the next source
+	 * until all rows are done.
+	 */
+	private void computeParallel(MatrixLocations srcData, MatrixLocations dstData, float[] times, float[] distances, float[] weights) throws Exception
+	{
+		final AtomicInteger nextSource = new AtomicInteger();
+		int workers = Math.min(MatrixServiceSettings.getParallelism(), srcData.size());
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(workers);
+
+		for (int i = 0; i < workers; i++)
+		{
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					// weightings keep per-instance buffers and may not be shared between threads
+					Weighting weighting = _weightingFactory.call();
+					PathMetricsExtractor pathMetricsExtractor = new PathMetricsExtractor(_metrics, _graph, _encoder, weighting, _units);
+					DijkstraOneToManyAlgorithm algorithm = new DijkstraOneToManyAlgorithm(_graph, weighting, TraversalMode.NODE_BASED);
+					algorithm.prepare(srcData.getNodeIds(),  dstData.getNodeIds());
+					algorithm.setMaxVisitedNodes(MatrixServiceSettings.getMaximumVisitedNodes());
+					algorithm.setMaxWeight(_maxWeight);
+					algorithm.setDeadline(_deadline);
+
+					int srcIndex;
+					while ((srcIndex = nextSource.getAndIncrement()) < srcData.size())
+						computeRow(algorithm, pathMetricsExtractor, srcIndex, srcData, dstData, times, distances, weights);
+
+					return null;
+				}
+			});
+		}
+
+		invokeAll(tasks);
+	}
+
+	private void computeRow(DijkstraOneToManyAlgorithm algorithm, PathMetricsExtractor pathMetricsExtractor, int srcIndex, MatrixLocations srcData, MatrixLocations dstData, float[] times, float[] distances, float[] weights) throws Exception
+	{
+		int sourceId = srcData.getNodeId(srcIndex);
+
+		if (sourceId == -1)
+		{
+			pathMetricsExtractor.setEmptyValues(srcIndex, srcData, dstData, times, distances, weights);
+		}
+		else
+		{
+			algorithm.reset();
+			SPTEntry[] targets = algorithm.calcPaths(sourceId, dstData.getNodeIds());
+			addVisitedNodes(algorithm.getVisitedNodes());
+
+			// a bounded search leaves the targets beyond the bound unreached
+			if (algorithm.getFoundTargets() != algorithm.getTargetsCount() && (!algorithm.hasMaxWeight() || algorithm.getVisitedNodes() > MatrixServiceSettings.getMaximumVisitedNodes()))
+				throw new Exception("Search exceeds the limit of visited nodes.");
+
+			if (targets != null)
+			{
+				pathMetricsExtractor.calcValues(srcIndex, targets, srcData, dstData, times, distances, weights);
+			}
+		}
+	}
 }
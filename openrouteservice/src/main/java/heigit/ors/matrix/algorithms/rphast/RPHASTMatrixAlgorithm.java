@@ -22,6 +22,7 @@ package heigit.ors.matrix.algorithms.rphast;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import com.graphhopper.GraphHopper;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
@@ -30,27 +31,49 @@ import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.Graph;
 
+import heigit.ors.common.DistanceUnit;
 import heigit.ors.matrix.MatrixLocations;
 import heigit.ors.matrix.MatrixMetricsType;
 import heigit.ors.matrix.MatrixRequest;
 import heigit.ors.matrix.MatrixResult;
 import heigit.ors.matrix.MultiTreeMetricsExtractor;
+import heigit.ors.matrix.ShortcutMetricsCache;
 import heigit.ors.matrix.algorithms.AbstractMatrixAlgorithm;
 import heigit.ors.routing.algorithms.RPHASTAlgorithm;
+import heigit.ors.routing.algorithms.SubGraph;
 import heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntry;
+import heigit.ors.services.matrix.MatrixServiceSettings;
 
 public class RPHASTMatrixAlgorithm extends AbstractMatrixAlgorithm {
 	private PrepareContractionHierarchies _prepareCH;
 	private MultiTreeMetricsExtractor _pathMetricsExtractor;
+	private int _metrics;
+	private DistanceUnit _units;
+	private RPHASTTargetGraphCache _targetGraphCache;
+	private ShortcutMetricsCache _shortcutCache;
 
 	public void init(MatrixRequest req, GraphHopper gh, Graph graph, FlagEncoder encoder, Weighting weighting) {
 		super.init(req, gh, graph, encoder, weighting);
 
 		_prepareCH = _graphHopper.getCHFactoryDecorator().getPreparations().get(0);
+		// the searches run on the preparation wrapper of the weighting of the contraction
+		// hierarchy, whose weights equal those of the weighting it wraps
+		_maxWeight = getMaximumWeight(req, _prepareCH.getWeighting());
+		_metrics = req.getMetrics();
+		_units = req.getUnits();
 		_pathMetricsExtractor = new MultiTreeMetricsExtractor(req.getMetrics(), graph, _encoder, weighting,
 				req.getUnits());
 	}
 
+	public void setTargetGraphCache(RPHASTTargetGraphCache cache) {
+		_targetGraphCache = cache;
+	}
+
+	public void setShortcutMetricsCache(ShortcutMetricsCache cache) {
+		_shortcutCache = cache;
+		_pathMetricsExtractor.setShortcutMetricsCache(cache);
+	}
+
 	@Override
 	public MatrixResult compute(MatrixLocations srcData, MatrixLocations dstData, int metrics) throws Exception {
 		MatrixResult mtxResult = new MatrixResult(srcData.getLocations(), dstData.getLocations());
@@ -72,6 +95,10 @@ public class RPHASTMatrixAlgorithm extends AbstractMatrixAlgorithm {
 			for (int srcIndex = 0; srcIndex < srcData.size(); srcIndex++) 
 				_pathMetricsExtractor.setEmptyValues(srcIndex, srcData, dstData, times, distances, weights);
 		}
+		else if (MatrixServiceSettings.getSourceBlockSize() > 0 && srcData.size() > MatrixServiceSettings.getSourceBlockSize())
+		{
+			computeBlocks(srcData, dstData, times, distances, weights);
+		}
 		else
 		{
 			RPHASTAlgorithm algorithm = new RPHASTAlgorithm(_graph, _prepareCH.getPrepareWeighting(),
@@ -80,23 +107,14 @@ public class RPHASTMatrixAlgorithm extends AbstractMatrixAlgorithm {
 			int[] srcIds = getValidNodeIds(srcData.getNodeIds());
 			int[] destIds = getValidNodeIds(dstData.getNodeIds());
 			
-			algorithm.prepare(srcIds, destIds);
+			algorithm.setMaxWeight(_maxWeight);
+			algorithm.setDeadline(_deadline);
+			algorithm.prepare(srcIds, createTargetGraph(algorithm, destIds));
 
 			MultiTreeSPEntry[] destTrees = algorithm.calcPaths(srcIds, destIds);
+			addVisitedNodes(algorithm.getVisitedNodes());
 
-			MultiTreeSPEntry[] originalDestTrees = new MultiTreeSPEntry[dstData.size()];
-			
-			int j = 0;
-			for (int i = 0; i < dstData.size(); i++) {
-				if (dstData.getNodeIds()[i] != -1) {
-					originalDestTrees[i] = destTrees[j];
-					++j;
-				} else {
-					originalDestTrees[i] = null;
-				}
-			}
-
-			_pathMetricsExtractor.calcValues(originalDestTrees, srcData, dstData, times, distances, weights);
+			_pathMetricsExtractor.calcValues(getOriginalDestTrees(destTrees, dstData), srcData, dstData, times, distances, weights);
 		}
 
 		if (MatrixMetricsType.isSet(metrics, MatrixMetricsType.Duration))
@@ -109,6 +127,92 @@ public class RPHASTMatrixAlgorithm extends AbstractMatrixAlgorithm {
 		return mtxResult;
 	}
 	
+	/**
+	 * Splits the sources into blocks which are computed concurrently. All
+	 * blocks share the target graph and write into disjoint rows of the tables.
+	 */
+	private void computeBlocks(MatrixLocations srcData, MatrixLocations dstData, float[] times, float[] distances, float[] weights) throws Exception
+	{
+		RPHASTAlgorithm targetAlgorithm = new RPHASTAlgorithm(_graph, _prepareCH.getPrepareWeighting(), TraversalMode.NODE_BASED);
+		int[] destIds = getValidNodeIds(dstData.getNodeIds());
+		SubGraph targetGraph = createTargetGraph(targetAlgorithm, destIds);
+
+		int blockSize = MatrixServiceSettings.getSourceBlockSize();
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+		for (int blockStart = 0; blockStart < srcData.size(); blockStart += blockSize)
+		{
+			final int srcIndexOffset = blockStart;
+			final MatrixLocations blockData = srcData.getRange(blockStart, Math.min(blockStart + blockSize, srcData.size()));
+
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					MultiTreeMetricsExtractor pathMetricsExtractor = new MultiTreeMetricsExtractor(_metrics, _graph, _encoder, _weighting, _units);
+					pathMetricsExtractor.setShortcutMetricsCache(_shortcutCache);
+
+					if (!blockData.hasValidNodes())
+					{
+						for (int srcIndex = 0; srcIndex < blockData.size(); srcIndex++) 
+							pathMetricsExtractor.setEmptyValues(srcIndexOffset + srcIndex, blockData, dstData, times, distances, weights);
+					}
+					else
+					{
+						RPHASTAlgorithm algorithm = new RPHASTAlgorithm(_graph, _prepareCH.getPrepareWeighting(), TraversalMode.NODE_BASED);
+						int[] srcIds = getValidNodeIds(blockData.getNodeIds());
+						algorithm.setMaxWeight(_maxWeight);
+						algorithm.setDeadline(_deadline);
+						algorithm.prepare(srcIds, targetGraph);
+
+						MultiTreeSPEntry[] destTrees = algorithm.calcPaths(srcIds, destIds);
+						addVisitedNodes(algorithm.getVisitedNodes());
+
+						pathMetricsExtractor.calcValues(getOriginalDestTrees(destTrees, dstData), blockData, dstData, srcIndexOffset, times, distances, weights);
+					}
+
+					return null;
+				}
+			});
+		}
+
+		invokeAll(tasks);
+	}
+
+	private SubGraph createTargetGraph(RPHASTAlgorithm algorithm, int[] destIds)
+	{
+		if (_targetGraphCache == null)
+			return algorithm.createTargetGraph(destIds);
+
+		int[] towerNodes = algorithm.getTowerNodes(destIds);
+		String weightingName = _prepareCH.getPrepareWeighting().toString();
+
+		SubGraph towerTargetGraph = _targetGraphCache.get(weightingName, towerNodes);
+		if (towerTargetGraph == null)
+		{
+			towerTargetGraph = algorithm.createTowerTargetGraph(towerNodes);
+			_targetGraphCache.put(weightingName, towerNodes, towerTargetGraph);
+		}
+
+		return algorithm.createTargetGraph(destIds, towerTargetGraph);
+	}
+
+	private MultiTreeSPEntry[] getOriginalDestTrees(MultiTreeSPEntry[] destTrees, MatrixLocations dstData)
+	{
+		MultiTreeSPEntry[] originalDestTrees = new MultiTreeSPEntry[dstData.size()];
+
+		int j = 0;
+		for (int i = 0; i < dstData.size(); i++) {
+			if (dstData.getNodeIds()[i] != -1) {
+				originalDestTrees[i] = destTrees[j];
+				++j;
+			} else {
+				originalDestTrees[i] = null;
+			}
+		}
+
+		return originalDestTrees;
+	}
+
 	private int[] getValidNodeIds(int[] nodeIds)
 	{
 		List<Integer> nodeList = new ArrayList<Integer>();
@@ -0,0 +1,106 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.matrix.algorithms.rphast;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import heigit.ors.routing.algorithms.SubGraph;
+
+/**
+ * Bounded LRU cache of RPHAST target graphs built on the CH graph of one
+ * routing profile. Entries are keyed by the CH weighting and the sorted ids
+ * of the target tower nodes. A new instance has to be used whenever the
+ * graph of the profile is replaced.
+ */
+public class RPHASTTargetGraphCache {
+	private static class CacheKey {
+		private final String _weighting;
+		private final int[] _nodes;
+		private final int _hashCode;
+
+		public CacheKey(String weighting, int[] nodes) {
+			_weighting = weighting;
+			_nodes = nodes;
+			_hashCode = 31 * weighting.hashCode() + Arrays.hashCode(nodes);
+		}
+
+		@Override
+		public int hashCode() {
+			return _hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof CacheKey))
+				return false;
+
+			CacheKey other = (CacheKey) obj;
+			return _hashCode == other._hashCode && _weighting.equals(other._weighting) && Arrays.equals(_nodes, other._nodes);
+		}
+	}
+
+	private final Map<CacheKey, SubGraph> _entries;
+	private final AtomicLong _hits = new AtomicLong();
+	private final AtomicLong _misses = new AtomicLong();
+
+	public RPHASTTargetGraphCache(final int maxSize) {
+		_entries = new LinkedHashMap<CacheKey, SubGraph>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<CacheKey, SubGraph> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	public synchronized SubGraph get(String weighting, int[] towerNodes) {
+		SubGraph graph = _entries.get(new CacheKey(weighting, towerNodes));
+
+		if (graph == null)
+			_misses.incrementAndGet();
+		else
+			_hits.incrementAndGet();
+
+		return graph;
+	}
+
+	public synchronized void put(String weighting, int[] towerNodes, SubGraph graph) {
+		_entries.put(new CacheKey(weighting, towerNodes), graph);
+	}
+
+	public synchronized int size() {
+		return _entries.size();
+	}
+
+	public long getHits() {
+		return _hits.get();
+	}
+
+	public long getMisses() {
+		return _misses.get();
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.matrix.jobs;
+
+import java.io.File;
+
+import heigit.ors.matrix.MatrixRequest;
+
+public class MatrixJob {
+	private String _id;
+	private MatrixRequest _request;
+	private File _file;
+	private MatrixJobResultFile _resultFile;
+	private volatile MatrixJobStatus _status = MatrixJobStatus.Queued;
+	private volatile int _completedRows;
+	private volatile String _errorMessage;
+	private long _submissionTime;
+	private volatile long _finishTime;
+
+	public MatrixJob(String id, MatrixRequest request, File file) {
+		_id = id;
+		_request = request;
+		_file = file;
+		_submissionTime = System.currentTimeMillis();
+	}
+
+	public String getId() {
+		return _id;
+	}
+
+	public MatrixRequest getRequest() {
+		return _request;
+	}
+
+	public File getFile() {
+		return _file;
+	}
+
+	public MatrixJobResultFile getResultFile() {
+		return _resultFile;
+	}
+
+	void setResultFile(MatrixJobResultFile resultFile) {
+		_resultFile = resultFile;
+	}
+
+	public MatrixJobStatus getStatus() {
+		return _status;
+	}
+
+	void setStatus(MatrixJobStatus status) {
+		_status = status;
+
+		if (status == MatrixJobStatus.Finished || status == MatrixJobStatus.Failed || status == MatrixJobStatus.Cancelled)
+			_finishTime = System.currentTimeMillis();
+	}
+
+	public boolean isDone() {
+		return _finishTime > 0;
+	}
+
+	public int getRows() {
+		return _request.getSources().length;
+	}
+
+	public int getColumns() {
+		return _request.getDestinations().length;
+	}
+
+	/**
+	 * Returns the number of source rows which are completely written and can
+	 * be fetched.
+	 */
+	public int getCompletedRows() {
+		return _completedRows;
+	}
+
+	void setCompletedRows(int rows) {
+		_completedRows = rows;
+	}
+
+	public String getErrorMessage() {
+		return _errorMessage;
+	}
+
+	void setErrorMessage(String message) {
+		_errorMessage = message;
+	}
+
+	public long getSubmissionTime() {
+		return _submissionTime;
+	}
+
+	public long getFinishTime() {
+		return _finishTime;
+	}
+}
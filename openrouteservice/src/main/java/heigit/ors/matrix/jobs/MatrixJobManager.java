@@ -0,0 +1,270 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.matrix.jobs;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import heigit.ors.common.ComputeExecutor;
+import heigit.ors.common.StatusCode;
+import heigit.ors.exceptions.StatusCodeException;
+import heigit.ors.matrix.MatrixErrorCodes;
+import heigit.ors.matrix.MatrixMetricsType;
+import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.matrix.MatrixResult;
+import heigit.ors.matrix.MatrixSearchContextBuilder;
+import heigit.ors.routing.RoutingProfile;
+import heigit.ors.routing.RoutingProfileManager;
+import heigit.ors.services.matrix.MatrixServiceSettings;
+
+/**
+ * Computes large matrices in the background. A job is split into blocks of
+ * source rows which are computed by the regular matrix engine and written to
+ * a memory-mapped result file. Every profile has its own executor, so the
+ * number of jobs computed at the same time is limited per profile while
+ * further jobs wait in its queue. The blocks themselves are computed on the
+ * shared compute pool. All threads of the manager are daemons which are 
+ * stopped by {@link #release()}.
+ */
+public class MatrixJobManager {
+	private static final Logger LOGGER = Logger.getLogger(MatrixJobManager.class.getName());
+	private static final String FILE_PREFIX = "matrix-job-";
+	private static final int[] TABLES = new int[] { MatrixMetricsType.Duration, MatrixMetricsType.Distance, MatrixMetricsType.Weight };
+
+	private static MatrixJobManager mInstance;
+
+	private Map<String, MatrixJob> _jobs = new ConcurrentHashMap<String, MatrixJob>();
+	private Map<Integer, ExecutorService> _executors = new ConcurrentHashMap<Integer, ExecutorService>();
+	private ScheduledExecutorService _cleanupExecutor;
+	private File _directory;
+
+	public static synchronized MatrixJobManager getInstance() {
+		if (mInstance == null)
+			mInstance = new MatrixJobManager();
+
+		return mInstance;
+	}
+
+	public static synchronized void release() {
+		if (mInstance != null) {
+			mInstance.destroy();
+			mInstance = null;
+		}
+	}
+
+	private MatrixJobManager() {
+		_directory = new File(MatrixServiceSettings.getJobsDirectory());
+		_directory.mkdirs();
+
+		// result files of a previous run can not be fetched anymore
+		File[] files = _directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (file.getName().startsWith(FILE_PREFIX))
+					file.delete();
+			}
+		}
+
+		_cleanupExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "ORS-matrix-jobs-cleanup");
+			thread.setDaemon(true);
+			return thread;
+		});
+		_cleanupExecutor.scheduleWithFixedDelay(() -> removeExpiredJobs(), 1, 1, TimeUnit.MINUTES);
+	}
+
+	public MatrixJob submit(MatrixRequest req) throws Exception {
+		MatrixJob job;
+
+		synchronized (_jobs) {
+			if (_jobs.size() >= MatrixServiceSettings.getJobsMaximumCount())
+				throw new StatusCodeException(StatusCode.SERVICE_UNAVAILABLE, MatrixErrorCodes.UNKNOWN, "The maximum number of matrix jobs has been reached. Try again later.");
+
+			String id = UUID.randomUUID().toString();
+			job = new MatrixJob(id, req, new File(_directory, FILE_PREFIX + id + ".bin"));
+			_jobs.put(id, job);
+		}
+
+		ExecutorService executor = _executors.computeIfAbsent(req.getProfileType(), profileType -> createExecutor(profileType));
+		final MatrixJob runJob = job;
+		executor.execute(() -> run(runJob));
+
+		return job;
+	}
+
+	private static ExecutorService createExecutor(int profileType) {
+		AtomicInteger threads = new AtomicInteger();
+
+		return Executors.newFixedThreadPool(MatrixServiceSettings.getJobsMaximumConcurrent(), runnable -> {
+			Thread thread = new Thread(runnable, "ORS-matrix-jobs-" + profileType + "-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public MatrixJob getJob(String id) {
+		return _jobs.get(id);
+	}
+
+	/**
+	 * Removes the job. Queued jobs are skipped, running jobs stop after the
+	 * current block and delete their result file.
+	 */
+	public boolean cancel(String id) {
+		MatrixJob job = _jobs.remove(id);
+		if (job == null)
+			return false;
+
+		synchronized (job) {
+			if (!job.isDone())
+				job.setStatus(MatrixJobStatus.Cancelled);
+			else
+				deleteResultFile(job);
+		}
+
+		return true;
+	}
+
+	public void destroy() {
+		_cleanupExecutor.shutdownNow();
+
+		for (ExecutorService executor : _executors.values())
+			executor.shutdownNow();
+
+		for (MatrixJob job : _jobs.values()) {
+			synchronized (job) {
+				if (!job.isDone())
+					job.setStatus(MatrixJobStatus.Cancelled);
+				else
+					deleteResultFile(job);
+			}
+		}
+
+		_jobs.clear();
+	}
+
+	private void run(MatrixJob job) {
+		synchronized (job) {
+			if (job.getStatus() != MatrixJobStatus.Queued)
+				return;
+
+			job.setStatus(MatrixJobStatus.Running);
+		}
+
+		MatrixRequest req = job.getRequest();
+
+		try {
+			MatrixJobResultFile resultFile = new MatrixJobResultFile(job.getFile(), job.getRows(), job.getColumns(), req.getMetrics());
+			job.setResultFile(resultFile);
+
+			int blockSize = MatrixServiceSettings.getJobsBlockSize();
+
+			// all blocks are computed on the graph the job started on and share its snapped destinations
+			RoutingProfile.GraphGeneration gen = RoutingProfileManager.getInstance().acquireMatrixGraph(req);
+			try {
+				MatrixSearchContextBuilder builder = RoutingProfileManager.getInstance().createMatrixJobContextBuilder(req, gen);
+
+				for (int blockStart = 0; blockStart < job.getRows() && job.getStatus() == MatrixJobStatus.Running; blockStart += blockSize) {
+					int blockEnd = Math.min(blockStart + blockSize, job.getRows());
+					MatrixRequest blockReq = createBlockRequest(req, blockStart, blockEnd);
+					MatrixResult mtxResult = ComputeExecutor.invoke(() -> RoutingProfileManager.getInstance().computeMatrixJobBlock(blockReq, gen, builder));
+
+					for (int table : TABLES) {
+						if (resultFile.hasTable(table))
+							resultFile.writeRows(table, blockStart, mtxResult.getTable(table));
+					}
+
+					job.setCompletedRows(blockEnd);
+				}
+			} finally {
+				gen.release();
+			}
+		} catch (Exception ex) {
+			LOGGER.error(ex);
+			job.setErrorMessage(ex.getMessage());
+		}
+
+		synchronized (job) {
+			if (job.getStatus() == MatrixJobStatus.Cancelled) {
+				deleteResultFile(job);
+			} else if (job.getErrorMessage() != null) {
+				job.setStatus(MatrixJobStatus.Failed);
+				deleteResultFile(job);
+			} else
+				job.setStatus(MatrixJobStatus.Finished);
+		}
+	}
+
+	private static MatrixRequest createBlockRequest(MatrixRequest req, int fromIndex, int toIndex) {
+		MatrixRequest blockReq = new MatrixRequest();
+		blockReq.setId(req.getId());
+		blockReq.setProfileType(req.getProfileType());
+		blockReq.setSources(Arrays.copyOfRange(req.getSources(), fromIndex, toIndex));
+		blockReq.setDestinations(req.getDestinations());
+		blockReq.setMetrics(req.getMetrics());
+		blockReq.setWeightingMethod(req.getWeightingMethod());
+		blockReq.setUnits(req.getUnits());
+		blockReq.setFlexibleMode(req.getFlexibleMode());
+		blockReq.setAlgorithm(req.getAlgorithm());
+		blockReq.setMaximumDuration(req.getMaximumDuration());
+		blockReq.setMaximumDistance(req.getMaximumDistance());
+
+		return blockReq;
+	}
+
+	private void removeExpiredJobs() {
+		long expirationTime = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(MatrixServiceSettings.getJobsExpirationTime());
+
+		Iterator<MatrixJob> iter = _jobs.values().iterator();
+		while (iter.hasNext()) {
+			MatrixJob job = iter.next();
+
+			synchronized (job) {
+				if (job.isDone() && job.getFinishTime() < expirationTime) {
+					iter.remove();
+					deleteResultFile(job);
+				}
+			}
+		}
+	}
+
+	private static void deleteResultFile(MatrixJob job) {
+		try {
+			if (job.getResultFile() != null)
+				job.getResultFile().delete();
+			else
+				job.getFile().delete();
+		} catch (Exception ex) {
+			LOGGER.error(ex);
+		}
+	}
+}
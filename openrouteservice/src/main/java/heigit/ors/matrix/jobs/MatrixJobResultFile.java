@@ -0,0 +1,170 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.matrix.jobs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.graphhopper.util.Helper;
+
+import heigit.ors.matrix.MatrixMetricsType;
+import heigit.ors.services.matrix.requestprocessors.binary.BinaryMatrixRequestProcessor;
+
+/**
+ * Memory-mapped file holding the tables of a matrix job. The file has the
+ * layout of a binary matrix response, so finished files can be served or
+ * copied as they are. Every table is mapped separately and is accessed with
+ * absolute positions only, which allows to read finished rows while further
+ * rows are written. Closing the file unmaps the tables, later reads and
+ * writes fail.
+ */
+public class MatrixJobResultFile {
+	private static final int[] TABLES = new int[] { MatrixMetricsType.Duration, MatrixMetricsType.Distance, MatrixMetricsType.Weight };
+
+	private File _file;
+	private RandomAccessFile _randomAccessFile;
+	private MappedByteBuffer _header;
+	private MappedByteBuffer[] _tables;
+	private int _rows;
+	private int _columns;
+
+	public MatrixJobResultFile(File file, int rows, int columns, int metrics) throws IOException {
+		_file = file;
+		_rows = rows;
+		_columns = columns;
+		_tables = new MappedByteBuffer[MatrixMetricsType.Weight + 1];
+
+		long tableSize = (long)rows * columns * 4;
+		if (tableSize > Integer.MAX_VALUE)
+			throw new IOException("Matrix tables larger than 2 GB are not supported.");
+
+		int tablesCount = 0;
+		for (int table : TABLES) {
+			if (MatrixMetricsType.isSet(metrics, table))
+				tablesCount++;
+		}
+
+		_randomAccessFile = new RandomAccessFile(file, "rw");
+		_randomAccessFile.setLength(BinaryMatrixRequestProcessor.HEADER_SIZE + tablesCount * tableSize);
+
+		FileChannel channel = _randomAccessFile.getChannel();
+
+		_header = channel.map(FileChannel.MapMode.READ_WRITE, 0, BinaryMatrixRequestProcessor.HEADER_SIZE);
+		_header.order(ByteOrder.LITTLE_ENDIAN);
+		_header.putInt(BinaryMatrixRequestProcessor.MAGIC);
+		_header.putInt(BinaryMatrixRequestProcessor.VERSION);
+		_header.putInt(rows);
+		_header.putInt(columns);
+		_header.putInt(metrics & (MatrixMetricsType.Duration | MatrixMetricsType.Distance | MatrixMetricsType.Weight));
+
+		long offset = BinaryMatrixRequestProcessor.HEADER_SIZE;
+		for (int table : TABLES) {
+			if (MatrixMetricsType.isSet(metrics, table)) {
+				_tables[table] = channel.map(FileChannel.MapMode.READ_WRITE, offset, tableSize);
+				_tables[table].order(ByteOrder.LITTLE_ENDIAN);
+				offset += tableSize;
+			}
+		}
+	}
+
+	public int getRows() {
+		return _rows;
+	}
+
+	public int getColumns() {
+		return _columns;
+	}
+
+	public synchronized boolean hasTable(int metric) {
+		return _tables[metric] != null;
+	}
+
+	/**
+	 * Writes complete rows starting at startRow. Unreachable cells (-1) are
+	 * stored as NaN like in binary matrix responses.
+	 */
+	public synchronized void writeRows(int metric, int startRow, float[] values) {
+		MappedByteBuffer table = getTable(metric);
+		long index = (long)startRow * _columns * 4;
+
+		for (float value : values) {
+			table.putFloat((int)index, value == -1 ? Float.NaN : value);
+			index += 4;
+		}
+	}
+
+	/**
+	 * Reads a tile of the given table. Unreachable cells are returned as -1.
+	 */
+	public synchronized float[] readTile(int metric, int startRow, int rows, int startColumn, int columns) {
+		MappedByteBuffer table = getTable(metric);
+		float[] values = new float[rows * columns];
+		int i = 0;
+
+		for (int row = startRow; row < startRow + rows; row++) {
+			long index = ((long)row * _columns + startColumn) * 4;
+			for (int column = 0; column < columns; column++) {
+				float value = table.getFloat((int)index);
+				values[i++] = Float.isNaN(value) ? -1 : value;
+				index += 4;
+			}
+		}
+
+		return values;
+	}
+
+	private MappedByteBuffer getTable(int metric) {
+		MappedByteBuffer table = _tables[metric];
+		if (table == null)
+			throw new IllegalStateException("The result file is closed or does not contain the requested table.");
+
+		return table;
+	}
+
+	/**
+	 * Unmaps the tables and closes the file. Further calls do nothing.
+	 */
+	public synchronized void close() throws IOException {
+		if (_header == null)
+			return;
+
+		// the mappings would otherwise stay until the buffers are garbage collected
+		Helper.cleanMappedByteBuffer(_header);
+		for (int i = 0; i < _tables.length; i++) {
+			if (_tables[i] != null) {
+				Helper.cleanMappedByteBuffer(_tables[i]);
+				_tables[i] = null;
+			}
+		}
+
+		_header = null;
+		_randomAccessFile.close();
+	}
+
+	public void delete() throws IOException {
+		close();
+		_file.delete();
+	}
+}
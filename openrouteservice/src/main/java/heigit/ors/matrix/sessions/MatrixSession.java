@@ -0,0 +1,229 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.matrix.sessions;
+
+import java.util.Arrays;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+import heigit.ors.matrix.MatrixMetricsType;
+import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.matrix.MatrixResult;
+import heigit.ors.matrix.ResolvedLocation;
+
+/**
+ * A square matrix of a set of locations which is kept in memory between
+ * requests. Every location is a source and a destination, the tables are
+ * stored row by row in the order of the locations.
+ */
+public class MatrixSession {
+	static final int[] TABLES = new int[] { MatrixMetricsType.Duration, MatrixMetricsType.Distance, MatrixMetricsType.Weight };
+
+	private String _id;
+	private MatrixRequest _request;
+	private Coordinate[] _locations = new Coordinate[0];
+	private ResolvedLocation[] _resolvedLocations = new ResolvedLocation[0];
+	private float[][] _tables = new float[TABLES.length][];
+	private volatile long _lastAccessTime;
+	private int _version;
+	// bytes accounted for the session by the manager, guarded by the manager
+	long _memory;
+
+	public MatrixSession(String id, MatrixRequest request) {
+		_id = id;
+		_request = request;
+
+		for (int i = 0; i < TABLES.length; i++) {
+			if (MatrixMetricsType.isSet(request.getMetrics(), TABLES[i]))
+				_tables[i] = new float[0];
+		}
+
+		touch();
+	}
+
+	public String getId() {
+		return _id;
+	}
+
+	/**
+	 * Returns the request with the options of the session. Its sources and
+	 * destinations are not used.
+	 */
+	public MatrixRequest getRequest() {
+		return _request;
+	}
+
+	public int size() {
+		return _locations.length;
+	}
+
+	public Coordinate[] getLocations() {
+		return _locations;
+	}
+
+	public ResolvedLocation[] getResolvedLocations() {
+		return _resolvedLocations;
+	}
+
+	public float[] getTable(int metric) {
+		for (int i = 0; i < TABLES.length; i++) {
+			if (TABLES[i] == metric)
+				return _tables[i];
+		}
+
+		return null;
+	}
+
+	public long getLastAccessTime() {
+		return _lastAccessTime;
+	}
+
+	void touch() {
+		_lastAccessTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the number of changes made to the locations of the session.
+	 */
+	int getVersion() {
+		return _version;
+	}
+
+	/**
+	 * Returns the number of bytes used by the tables of a session with the
+	 * given number of locations.
+	 */
+	long getMemorySize(int locations) {
+		int tables = 0;
+		for (float[] table : _tables) {
+			if (table != null)
+				tables++;
+		}
+
+		return (long) locations * locations * tables * 4;
+	}
+
+	/**
+	 * Returns the locations which are kept when the locations with the given
+	 * indices are removed.
+	 */
+	Coordinate[] getRemainingLocations(int[] indices) {
+		if (indices == null)
+			return _locations;
+
+		int[] kept = getKeptIndices(indices);
+		Coordinate[] locations = new Coordinate[kept.length];
+		for (int i = 0; i < kept.length; i++)
+			locations[i] = _locations[kept[i]];
+
+		return locations;
+	}
+
+	private int[] getKeptIndices(int[] indices) {
+		boolean[] removed = new boolean[_locations.length];
+		for (int index : indices)
+			removed[index] = true;
+
+		int[] kept = new int[_locations.length];
+		int size = 0;
+		for (int i = 0; i < _locations.length; i++) {
+			if (!removed[i])
+				kept[size++] = i;
+		}
+
+		return Arrays.copyOf(kept, size);
+	}
+
+	/**
+	 * Removes the locations with the given indices together with their rows
+	 * and columns.
+	 */
+	void removeLocations(int[] indices) {
+		int[] kept = getKeptIndices(indices);
+		int size = kept.length;
+
+		if (size == _locations.length)
+			return;
+
+		Coordinate[] locations = new Coordinate[size];
+		ResolvedLocation[] resolvedLocations = new ResolvedLocation[size];
+		for (int i = 0; i < size; i++) {
+			locations[i] = _locations[kept[i]];
+			resolvedLocations[i] = _resolvedLocations[kept[i]];
+		}
+
+		for (int t = 0; t < _tables.length; t++) {
+			float[] table = _tables[t];
+			if (table == null)
+				continue;
+
+			float[] newTable = new float[size * size];
+			for (int i = 0; i < size; i++) {
+				int rowOffset = kept[i] * _locations.length;
+				for (int j = 0; j < size; j++)
+					newTable[i * size + j] = table[rowOffset + kept[j]];
+			}
+
+			_tables[t] = newTable;
+		}
+
+		_locations = locations;
+		_resolvedLocations = resolvedLocations;
+		_version++;
+	}
+
+	/**
+	 * Appends the locations. rows holds the tables from the added locations
+	 * to all locations including the added ones, columns the tables from the
+	 * existing locations to the added ones. columns may be null if the session
+	 * has no locations yet.
+	 */
+	void addLocations(Coordinate[] added, MatrixResult rows, MatrixResult columns) {
+		int oldSize = _locations.length;
+		int size = oldSize + added.length;
+
+		for (int t = 0; t < _tables.length; t++) {
+			float[] table = _tables[t];
+			if (table == null)
+				continue;
+
+			float[] newTable = new float[size * size];
+			float[] rowValues = rows.getTable(TABLES[t]);
+			float[] columnValues = columns == null ? null : columns.getTable(TABLES[t]);
+
+			for (int i = 0; i < oldSize; i++) {
+				System.arraycopy(table, i * oldSize, newTable, i * size, oldSize);
+				System.arraycopy(columnValues, i * added.length, newTable, i * size + oldSize, added.length);
+			}
+
+			System.arraycopy(rowValues, 0, newTable, oldSize * size, added.length * size);
+
+			_tables[t] = newTable;
+		}
+
+		_locations = Arrays.copyOf(_locations, size);
+		System.arraycopy(added, 0, _locations, oldSize, added.length);
+
+		_resolvedLocations = Arrays.copyOf(_resolvedLocations, size);
+		System.arraycopy(rows.getSources(), 0, _resolvedLocations, oldSize, added.length);
+		_version++;
+	}
+}
@@ -0,0 +1,294 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.matrix.sessions;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.vividsolutions.jts.geom.Coordinate;
+
+import heigit.ors.common.StatusCode;
+import heigit.ors.exceptions.ParameterOutOfRangeException;
+import heigit.ors.exceptions.ParameterValueException;
+import heigit.ors.exceptions.StatusCodeException;
+import heigit.ors.matrix.MatrixErrorCodes;
+import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.matrix.MatrixResult;
+import heigit.ors.routing.RoutingProfile;
+import heigit.ors.routing.RoutingProfileManager;
+import heigit.ors.services.matrix.MatrixServiceSettings;
+
+/**
+ * Keeps matrix sessions in memory. Adding k locations to a session of n
+ * locations computes a k x (n + k) matrix for the new rows and a n x k matrix
+ * for the new columns, removing locations only drops their rows and columns.
+ * Snapping the locations again is cheap as the location index of a profile
+ * caches snapped positions. Sessions which have not been used for the
+ * configured time are removed, and the least recently used sessions are
+ * removed when the tables of all sessions exceed the memory limit.
+ * <p>
+ * The matrices of an update are computed without holding the lock of the
+ * session, so reading a session is never blocked by a running computation.
+ * The memory of the new tables is reserved before the computation and the
+ * update is rejected if the session has been changed in the meantime.
+ */
+public class MatrixSessionManager {
+	private static MatrixSessionManager mInstance;
+
+	private Map<String, MatrixSession> _sessions = new ConcurrentHashMap<String, MatrixSession>();
+	// bytes accounted for all registered sessions, guarded by this
+	private long _usedMemory;
+	private ScheduledExecutorService _cleanupExecutor;
+
+	public static synchronized MatrixSessionManager getInstance() {
+		if (mInstance == null)
+			mInstance = new MatrixSessionManager();
+
+		return mInstance;
+	}
+
+	public static synchronized void release() {
+		if (mInstance != null) {
+			mInstance.destroy();
+			mInstance = null;
+		}
+	}
+
+	private MatrixSessionManager() {
+		_cleanupExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "ORS-matrix-sessions-cleanup");
+			thread.setDaemon(true);
+			return thread;
+		});
+		_cleanupExecutor.scheduleWithFixedDelay(() -> removeExpiredSessions(), 1, 1, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Creates a session with the options of the request and computes the
+	 * matrix of its sources.
+	 */
+	public MatrixSession create(MatrixRequest req) throws Exception {
+		MatrixSession session = new MatrixSession(UUID.randomUUID().toString(), req);
+		_sessions.put(session.getId(), session);
+
+		try {
+			update(session, null, req.getSources());
+		} catch (Exception ex) {
+			unregister(session);
+			throw ex;
+		}
+
+		return session;
+	}
+
+	public MatrixSession getSession(String id) {
+		MatrixSession session = _sessions.get(id);
+		if (session != null)
+			session.touch();
+
+		return session;
+	}
+
+	public boolean remove(String id) {
+		MatrixSession session = _sessions.get(id);
+		return session != null && unregister(session);
+	}
+
+	/**
+	 * Removes the locations with the given indices and then appends the added
+	 * locations. Only the rows and columns of the added locations are computed.
+	 * The session is changed only after all of them have been computed, so a
+	 * failed update leaves it as it was. An update fails with a conflict if
+	 * another update has changed the session while its matrices were computed.
+	 */
+	public void update(MatrixSession session, int[] removed, Coordinate[] added) throws Exception {
+		int addedCount = added == null ? 0 : added.length;
+		int version;
+		Coordinate[] locations;
+		long reserved = 0;
+
+		try {
+			synchronized (session) {
+				checkSession(session);
+
+				session.touch();
+
+				if (removed != null) {
+					for (int index : removed) {
+						if (index < 0 || index >= session.size())
+							throw new ParameterValueException(MatrixErrorCodes.INVALID_PARAMETER_VALUE, "remove", Integer.toString(index));
+					}
+				}
+
+				int removedCount = removed == null ? 0 : (int) Arrays.stream(removed).distinct().count();
+				int size = session.size() - removedCount + addedCount;
+
+				if (size > MatrixServiceSettings.getSessionsMaximumLocations())
+					throw new ParameterOutOfRangeException(MatrixErrorCodes.PARAMETER_VALUE_EXCEEDS_MAXIMUM, "locations", Integer.toString(size), Integer.toString(MatrixServiceSettings.getSessionsMaximumLocations()));
+
+				if (addedCount == 0) {
+					if (removed != null) {
+						long oldMemory = session.getMemorySize(session.size());
+						session.removeLocations(removed);
+						updateMemory(session, session.getMemorySize(session.size()) - oldMemory);
+					}
+					return;
+				}
+
+				// the old and the new tables exist side by side until the update is applied
+				reserved = session.getMemorySize(size);
+				reserveMemory(session, reserved);
+
+				version = session.getVersion();
+				// the locations that remain after the removal, in the order removeLocations keeps them
+				locations = session.getRemainingLocations(removed);
+			}
+
+			Coordinate[] allLocations = new Coordinate[locations.length + addedCount];
+			System.arraycopy(locations, 0, allLocations, 0, locations.length);
+			System.arraycopy(added, 0, allLocations, locations.length, addedCount);
+
+			// rows and columns of the new locations are computed on the same graph
+			MatrixResult rows = null;
+			MatrixResult columns = null;
+			RoutingProfile.GraphGeneration gen = RoutingProfileManager.getInstance().acquireMatrixGraph(session.getRequest());
+			try {
+				rows = RoutingProfileManager.getInstance().computeMatrix(createRequest(session.getRequest(), added, allLocations), gen);
+				if (locations.length > 0)
+					columns = RoutingProfileManager.getInstance().computeMatrix(createRequest(session.getRequest(), locations, added), gen);
+			} finally {
+				gen.release();
+			}
+
+			synchronized (session) {
+				checkSession(session);
+
+				if (session.getVersion() != version)
+					throw new StatusCodeException(StatusCode.CONFLICT, MatrixErrorCodes.INVALID_PARAMETER_VALUE, "Matrix session '" + session.getId() + "' has been changed by another request.");
+
+				long oldMemory = session.getMemorySize(session.size());
+				if (removed != null)
+					session.removeLocations(removed);
+				session.addLocations(added, rows, columns);
+
+				updateMemory(session, session.getMemorySize(session.size()) - oldMemory - reserved);
+				reserved = 0;
+			}
+		} finally {
+			if (reserved != 0)
+				updateMemory(session, -reserved);
+		}
+	}
+
+	public synchronized void destroy() {
+		_cleanupExecutor.shutdownNow();
+		_sessions.clear();
+		_usedMemory = 0;
+	}
+
+	private void checkSession(MatrixSession session) throws Exception {
+		if (_sessions.get(session.getId()) != session)
+			throw new StatusCodeException(StatusCode.NOT_FOUND, MatrixErrorCodes.INVALID_PARAMETER_VALUE, "Matrix session '" + session.getId() + "' not found.");
+	}
+
+	/**
+	 * Adds the given number of bytes to the memory of the session, removing the
+	 * least recently used other sessions until they fit into the memory limit.
+	 * Nothing is reserved if they do not fit.
+	 */
+	private synchronized void reserveMemory(MatrixSession session, long size) throws Exception {
+		long maxMemory = MatrixServiceSettings.getSessionsMaximumMemory() * 1024L * 1024L;
+		if (size > maxMemory)
+			throw new StatusCodeException(StatusCode.BAD_REQUEST, MatrixErrorCodes.PARAMETER_VALUE_EXCEEDS_MAXIMUM, "The tables of the matrix session exceed the memory limit.");
+
+		while (_usedMemory + size > maxMemory) {
+			MatrixSession oldest = null;
+			for (MatrixSession s : _sessions.values()) {
+				if (s != session && (oldest == null || s.getLastAccessTime() < oldest.getLastAccessTime()))
+					oldest = s;
+			}
+
+			if (oldest == null)
+				throw new StatusCodeException(StatusCode.SERVICE_UNAVAILABLE, MatrixErrorCodes.SERVICE_OVERLOADED, "The memory of the matrix sessions is in use, try again later.");
+
+			unregister(oldest);
+		}
+
+		session._memory += size;
+		_usedMemory += size;
+	}
+
+	/**
+	 * Adds the given number of bytes, which may be negative, to the memory of
+	 * the session if it is still registered.
+	 */
+	private synchronized void updateMemory(MatrixSession session, long size) {
+		if (_sessions.get(session.getId()) != session)
+			return;
+
+		session._memory += size;
+		_usedMemory += size;
+	}
+
+	/**
+	 * Removes the session and releases its memory.
+	 */
+	private synchronized boolean unregister(MatrixSession session) {
+		if (!_sessions.remove(session.getId(), session))
+			return false;
+
+		_usedMemory -= session._memory;
+		session._memory = 0;
+		return true;
+	}
+
+	private static MatrixRequest createRequest(MatrixRequest req, Coordinate[] sources, Coordinate[] destinations) {
+		MatrixRequest newReq = new MatrixRequest();
+		newReq.setId(req.getId());
+		newReq.setProfileType(req.getProfileType());
+		newReq.setSources(sources);
+		newReq.setDestinations(destinations);
+		newReq.setMetrics(req.getMetrics());
+		newReq.setWeightingMethod(req.getWeightingMethod());
+		newReq.setUnits(req.getUnits());
+		newReq.setResolveLocations(req.getResolveLocations());
+		newReq.setFlexibleMode(req.getFlexibleMode());
+		newReq.setAlgorithm(req.getAlgorithm());
+		newReq.setMaximumDuration(req.getMaximumDuration());
+		newReq.setMaximumDistance(req.getMaximumDistance());
+
+		return newReq;
+	}
+
+	private void removeExpiredSessions() {
+		long expirationTime = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(MatrixServiceSettings.getSessionsExpirationTime());
+
+		for (MatrixSession session : _sessions.values()) {
+			if (session.getLastAccessTime() < expirationTime)
+				unregister(session);
+		}
+	}
+}
@@ -26,5 +26,6 @@ public class OptimizationErrorCodes {
    public static int INVALID_PARAMETER_FORMAT = 702;
    public static int INVALID_PARAMETER_VALUE = 703;
    public static int PARAMETER_VALUE_EXCEEDS_MAXIMUM = 704;
+   public static int SERVICE_OVERLOADED = 705;
    public static int UNKNOWN = 799; 
 }
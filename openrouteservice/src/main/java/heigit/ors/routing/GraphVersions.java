@@ -0,0 +1,128 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * Manages the versions of the graph of a routing profile. Every update is
+ * built into its own directory under {@code <graph path>/versions} and the
+ * file {@code <graph path>/current} names the version in use, so that a new
+ * graph is activated by renaming a single file instead of copying it.
+ * Graphs that were built before versions were introduced lie directly in the
+ * graph path, which is used as long as there is no current version.
+ */
+public class GraphVersions 
+{
+	private static final String VERSIONS_DIRECTORY = "versions";
+	private static final String CURRENT_FILE = "current";
+
+	/**
+	 * Returns the directory of the graph version in use.
+	 */
+	public static String getCurrentLocation(String graphPath) throws IOException
+	{
+		Path pathCurrent = Paths.get(graphPath, CURRENT_FILE);
+		if (Files.exists(pathCurrent))
+		{
+			String version = new String(Files.readAllBytes(pathCurrent), StandardCharsets.UTF_8).trim();
+			Path pathVersion = Paths.get(graphPath, VERSIONS_DIRECTORY, version);
+			if (Files.isDirectory(pathVersion))
+				return pathVersion.toString();
+		}
+
+		return graphPath;
+	}
+
+	/**
+	 * Returns the graph path a graph location belongs to, which unlike the 
+	 * location itself does not change from one version to the next.
+	 */
+	public static String getGraphPath(String location)
+	{
+		Path path = Paths.get(location);
+		Path parent = path.getParent();
+		if (parent != null && parent.getParent() != null && VERSIONS_DIRECTORY.equals(parent.getFileName().toString()))
+			return parent.getParent().toString();
+
+		return path.toString();
+	}
+
+	/**
+	 * Creates an empty directory for a new version of the graph.
+	 */
+	public static String createVersion(String graphPath) throws IOException
+	{
+		String version = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+		Path pathVersion = Paths.get(graphPath, VERSIONS_DIRECTORY, version);
+		for (int i = 1; Files.exists(pathVersion); i++)
+			pathVersion = Paths.get(graphPath, VERSIONS_DIRECTORY, version + "_" + i);
+
+		Files.createDirectories(pathVersion);
+
+		return pathVersion.toString();
+	}
+
+	/**
+	 * Makes the version in the given location the one in use. The pointer is
+	 * written to a temporary file first and then renamed, so that it never 
+	 * refers to a partially written name.
+	 */
+	public static void activate(String graphPath, String location) throws IOException
+	{
+		Path pathTemp = Paths.get(graphPath, CURRENT_FILE + ".tmp");
+		Files.write(pathTemp, Paths.get(location).getFileName().toString().getBytes(StandardCharsets.UTF_8));
+		Files.move(pathTemp, Paths.get(graphPath, CURRENT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Deletes the files of a version which is no longer in use. 
+	 */
+	public static void remove(String graphPath, String location) throws IOException
+	{
+		File dir = new File(location);
+		if (dir.getCanonicalPath().equals(new File(graphPath).getCanonicalPath()))
+		{
+			// a graph from before the versions shares the directory with them
+			File[] files = dir.listFiles();
+			if (files != null)
+			{
+				for (File file : files)
+				{
+					if (file.isFile() && !CURRENT_FILE.equals(file.getName()))
+						Files.delete(file.toPath());
+				}
+			}
+		}
+		else
+			FileUtils.deleteDirectory(dir);
+	}
+}
@@ -23,9 +23,13 @@ package heigit.ors.routing;
 import com.graphhopper.routing.util.PathProcessor;
 import com.graphhopper.util.ByteArrayBuffer;
 
+import heigit.ors.common.Deadline;
+
 public class RouteProcessContext {
 	private PathProcessor _pathProcessor;
 	private ByteArrayBuffer _arrayBuffer;
+	private RouteSearchContext _searchContext;
+	private Deadline _deadline = Deadline.NONE;
 	
    public RouteProcessContext(PathProcessor pathProcessor)
    {
@@ -44,4 +48,37 @@ public class RouteProcessContext {
 	   
 	   return _arrayBuffer;
    }
+
+   /**
+    * Sets the buffer of the location lookups, e.g. a buffer carrying the 
+    * locations snapped before.
+    */
+   public void setArrayBuffer(ByteArrayBuffer arrayBuffer)
+   {
+	   _arrayBuffer = arrayBuffer;
+   }
+
+   /**
+    * Returns the search context shared by the segments of the request or null
+    * if no segment has been computed yet.
+    */
+   public RouteSearchContext getSearchContext()
+   {
+	   return _searchContext;
+   }
+
+   public void setSearchContext(RouteSearchContext searchContext)
+   {
+	   _searchContext = searchContext;
+   }
+
+   public Deadline getDeadline()
+   {
+	   return _deadline;
+   }
+
+   public void setDeadline(Deadline deadline)
+   {
+	   _deadline = deadline;
+   }
 }
@@ -25,18 +25,31 @@ import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.util.PMap;
 
+import heigit.ors.common.Deadline;
+import heigit.ors.routing.traffic.TrafficSnapshot;
+
+/**
+ * The edge filter, encoder and weighting properties of a search. A context is
+ * immutable, it is built once per request and reused for all of its segments;
+ * it must not be shared between threads as some edge filters keep internal 
+ * buffers.
+ */
 public class RouteSearchContext {
-	private GraphHopper _graphhopper;
-	private EdgeFilter _edgeFilter;
-	private FlagEncoder _encoder;
-	
-	private PMap _properties;
+	private final GraphHopper _graphhopper;
+	private final EdgeFilter _edgeFilter;
+	private final FlagEncoder _encoder;
+	private final PMap _properties;
+	private final Deadline _deadline;
+	private final TrafficSnapshot _trafficSnapshot;
 
-	public RouteSearchContext(GraphHopper gh, EdgeFilter edgeFilter, FlagEncoder encoder)
+	public RouteSearchContext(GraphHopper gh, EdgeFilter edgeFilter, FlagEncoder encoder, PMap properties, Deadline deadline, TrafficSnapshot trafficSnapshot)
 	{
 		_graphhopper = gh;   
 		_edgeFilter = edgeFilter;
 		_encoder = encoder;
+		_properties = properties;
+		_deadline = deadline;
+		_trafficSnapshot = trafficSnapshot;
 	}
 
 	public FlagEncoder getEncoder() {
@@ -55,9 +68,21 @@ public class RouteSearchContext {
 	{
 		return _properties;
 	}
-	
-	public void setProperties(PMap value)
+
+	/**
+	 * Returns the deadline by which the searches of the request have to finish.
+	 */
+	public Deadline getDeadline()
+	{
+		return _deadline;
+	}
+
+	/**
+	 * Returns the traffic snapshot the edge filter has been built from or null
+	 * if the search does not consider traffic.
+	 */
+	public TrafficSnapshot getTrafficSnapshot()
 	{
-		_properties = value;
+		return _trafficSnapshot;
 	}
 }
@@ -31,10 +31,20 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.log4j.Logger;
 
+import heigit.ors.common.Deadline;
+import heigit.ors.common.StatusCode;
+import heigit.ors.routing.admission.AdmissionQueue;
+import heigit.ors.routing.admission.RequestClass;
+import heigit.ors.routing.algorithms.cch.CCHMetric;
 import heigit.ors.routing.graphhopper.extensions.GraphProcessContext;
 import heigit.ors.routing.graphhopper.extensions.HeavyVehicleAttributes;
 import heigit.ors.routing.graphhopper.extensions.ORSDefaultFlagEncoderFactory;
@@ -51,6 +61,8 @@ import heigit.ors.isochrones.statistics.StatisticsProvider;
 import heigit.ors.isochrones.statistics.StatisticsProviderConfiguration;
 import heigit.ors.isochrones.statistics.StatisticsProviderFactory;
 import heigit.ors.exceptions.InternalServerException;
+import heigit.ors.exceptions.SearchTimeoutException;
+import heigit.ors.exceptions.StatusCodeException;
 import heigit.ors.isochrones.Isochrone;
 import heigit.ors.isochrones.IsochroneMap;
 import heigit.ors.isochrones.IsochroneMapBuilderFactory;
@@ -61,12 +73,17 @@ import heigit.ors.mapmatching.MapMatcher;
 import heigit.ors.mapmatching.RouteSegmentInfo;
 import heigit.ors.mapmatching.hmm.HiddenMarkovMapMatcher;
 import heigit.ors.matrix.MatrixErrorCodes;
+import heigit.ors.matrix.MatrixMetricsType;
 import heigit.ors.matrix.MatrixRequest;
 import heigit.ors.matrix.MatrixResult;
 import heigit.ors.matrix.MatrixSearchContext;
 import heigit.ors.matrix.MatrixSearchContextBuilder;
+import heigit.ors.matrix.ShortcutMetricsCache;
 import heigit.ors.matrix.algorithms.MatrixAlgorithm;
 import heigit.ors.matrix.algorithms.MatrixAlgorithmFactory;
+import heigit.ors.matrix.algorithms.dijkstra.DijkstraMatrixAlgorithm;
+import heigit.ors.matrix.algorithms.rphast.RPHASTMatrixAlgorithm;
+import heigit.ors.matrix.algorithms.rphast.RPHASTTargetGraphCache;
 import heigit.ors.optimization.OptimizationErrorCodes;
 import heigit.ors.optimization.RouteOptimizationRequest;
 import heigit.ors.optimization.RouteOptimizationResult;
@@ -76,6 +93,7 @@ import heigit.ors.optimization.solvers.OptimizationSolution;
 import heigit.ors.routing.configuration.RouteProfileConfiguration;
 import heigit.ors.routing.traffic.RealTrafficDataProvider;
 import heigit.ors.routing.traffic.TrafficEdgeAnnotator;
+import heigit.ors.routing.traffic.TrafficSnapshot;
 import heigit.ors.services.isochrones.IsochronesServiceSettings;
 import heigit.ors.services.matrix.MatrixServiceSettings;
 import heigit.ors.services.optimization.OptimizationServiceSettings;
@@ -89,6 +107,7 @@ import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.reader.dem.ElevationProvider;
 import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.DestinationDependentEdgeFilter;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.FlagEncoder;
@@ -99,6 +118,7 @@ import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.GraphHopperStorage;
 import com.graphhopper.storage.GraphStorage;
 import com.graphhopper.storage.StorableProperties;
+import com.graphhopper.storage.index.QueryResult;
 import com.graphhopper.util.ByteArrayBuffer;
 import com.graphhopper.util.CmdArgs;
 import com.graphhopper.util.EdgeIteratorState;
@@ -118,23 +138,22 @@ public class RoutingProfile
 	private static int profileIdentifier = 0;
 	private static final Object lockObj = new Object();
 
-	private ORSGraphHopper mGraphHopper;
+	private final AtomicReference<GraphGeneration> _graph;
+	private final Object _updateLock = new Object();
+	private volatile boolean _closed;
 	private boolean mUseTrafficInfo;
 	private Integer[] mRoutePrefs;
-	private Integer mUseCounter;
-	private boolean mUpdateRun;
-	private MapMatcher mMapMatcher;
 
 	private RouteProfileConfiguration _config;
 	private String _astarApproximation;
 	private Double _astarEpsilon; 
+	private AdmissionQueue[] _admissionQueues;
 
 	public RoutingProfile(String osmFile, RouteProfileConfiguration rpc, RoutingProfilesCollection profiles, RoutingProfileLoadContext loadCntx) throws Exception {
 		mRoutePrefs = rpc.getProfilesTypes();
-		mUseCounter = 0;
 		mUseTrafficInfo = /*mHasDynamicWeights &&*/ hasCarPreferences() ? rpc.getUseTrafficInformation() : false;
 
-		mGraphHopper = initGraphHopper(osmFile, rpc, profiles, loadCntx);
+		_graph = new AtomicReference<GraphGeneration>(new GraphGeneration(initGraphHopper(osmFile, rpc, profiles, loadCntx)));
 
 		_config = rpc;
 
@@ -146,10 +165,21 @@ public class RoutingProfile
 			if (optsExecute.hasPath("methods.astar.epsilon"))
 				_astarEpsilon = Double.parseDouble(optsExecute.getString("methods.astar.epsilon"));
 		}
+
+		_admissionQueues = new AdmissionQueue[RequestClass.values().length];
+		for (Map.Entry<String, Map<String, String>> entry : _config.getAdmissionLimits().entrySet())
+		{
+			RequestClass requestClass = RequestClass.fromName(entry.getKey());
+			if (requestClass == null)
+				throw new Exception("Unknown request class '" + entry.getKey() + "' in the admission limits.");
+
+			_admissionQueues[requestClass.ordinal()] = AdmissionQueue.create(requestClass, entry.getValue());
+		}
 	}
 
 	public static ORSGraphHopper initGraphHopper(String osmFile, RouteProfileConfiguration config, RoutingProfilesCollection profiles, RoutingProfileLoadContext loadCntx) throws Exception {
-		CmdArgs args = createGHSettings(osmFile, config);
+		String graphLocation = GraphVersions.getCurrentLocation(config.getGraphPath());
+		CmdArgs args = createGHSettings(osmFile, config, graphLocation);
 
 		RoutingProfile refProfile = null;
 
@@ -170,7 +200,7 @@ public class RoutingProfile
 
 		if (LOGGER.isInfoEnabled())
 		{
-			LOGGER.info(String.format("[%d] Profiles: '%s', location: '%s'.", profileId, config.getProfiles(), config.getGraphPath()));
+			LOGGER.info(String.format("[%d] Profiles: '%s', location: '%s'.", profileId, config.getProfiles(), graphLocation));
 		}
 
 		GraphProcessContext gpc = new GraphProcessContext(config);
@@ -206,7 +236,7 @@ public class RoutingProfile
 
 		// Make a stamp which help tracking any changes in the size of OSM file.
 		File file = new File(osmFile);
-		Path pathTimestamp = Paths.get(config.getGraphPath(), "stamp.txt");
+		Path pathTimestamp = Paths.get(graphLocation, "stamp.txt");
 		File file2 = pathTimestamp.toFile();
 		if (!file2.exists())
 			Files.write(pathTimestamp, Long.toString(file.length()).getBytes());
@@ -216,16 +246,16 @@ public class RoutingProfile
 
 	public long getCapacity()
 	{
-		GraphHopperStorage graph = mGraphHopper.getGraphHopperStorage();
+		GraphHopperStorage graph = getGraphhopper().getGraphHopperStorage();
 		return graph.getCapacity() + GraphStorageUtils.getCapacity(graph.getExtension());
 	}
 
-	private static CmdArgs createGHSettings(String sourceFile, RouteProfileConfiguration config)  
+	private static CmdArgs createGHSettings(String sourceFile, RouteProfileConfiguration config, String graphLocation)  
 	{
 		CmdArgs args = new CmdArgs();
 		args.put("graph.dataaccess", "RAM_STORE");
 		args.put("datareader.file", sourceFile);
-		args.put("graph.location", config.getGraphPath());
+		args.put("graph.location", graphLocation);
 		args.put("graph.bytes_for_flags", config.getEncoderFlagsSize());
 
 		if (config.getInstructions() == false)
@@ -297,6 +327,10 @@ public class RoutingProfile
 							args.put("prepare.lm.landmarks", lmOpts.getInt("landmarks"));
 					}
 				}
+
+				// overrides the setting cch_enabled of the routing service for the profile
+				if (opts.hasPath("methods.cch.enabled"))
+					args.put("prepare.cch.enabled", opts.getBoolean("methods.cch.enabled"));
 			}
 		}
 
@@ -347,28 +381,33 @@ public class RoutingProfile
 	}
 
 	public HashMap<Integer, Long> getTmcEdges() {
-		return mGraphHopper.getTmcGraphEdges();
+		return getGraphhopper().getTmcGraphEdges();
 	}
 
 	public HashMap<Long, ArrayList<Integer>> getOsmId2edgeIds() {
-		return mGraphHopper.getOsmId2EdgeIds();
+		return getGraphhopper().getOsmId2EdgeIds();
 	}
 
+	/**
+	 * Returns the current graph. Callers that run searches on it should pin it
+	 * with {@link #acquireGraph()} instead, since it may be replaced and closed
+	 * at any time.
+	 */
 	public ORSGraphHopper getGraphhopper() {
-		return mGraphHopper;
+		return _graph.get().getGraphHopper();
 	}
 
 	public BBox getBounds() {
-		return mGraphHopper.getGraphHopperStorage().getBounds();
+		return getGraphhopper().getGraphHopperStorage().getBounds();
 	}
 
 	public StorableProperties getGraphProperties() {
-		StorableProperties props = mGraphHopper.getGraphHopperStorage().getProperties();
+		StorableProperties props = getGraphhopper().getGraphHopperStorage().getProperties();
 		return props;
 	}
 
 	public String getGraphLocation() {
-		return mGraphHopper == null ? null : mGraphHopper.getGraphHopperStorage().getDirectory().toString();
+		return getGraphhopper().getGraphHopperStorage().getDirectory().toString();
 	}
 
 	public RouteProfileConfiguration getConfiguration() {
@@ -390,108 +429,101 @@ public class RoutingProfile
 
 
 	public boolean isCHEnabled() {
-		return mGraphHopper != null && mGraphHopper.isCHEnabled();
+		return getGraphhopper().isCHEnabled();
 	}
 
 	public boolean useTrafficInformation() {
 		return mUseTrafficInfo;
 	}
 
-	public void close() {
-		mGraphHopper.close();
+	public RPHASTTargetGraphCache getTargetGraphCache() {
+		return _graph.get().getTargetGraphCache();
 	}
 
-	private synchronized boolean isGHUsed() {
-		return mUseCounter > 0;
+	private static RPHASTTargetGraphCache createTargetGraphCache() {
+		return MatrixServiceSettings.getTargetGraphCacheSize() > 0 ? new RPHASTTargetGraphCache(MatrixServiceSettings.getTargetGraphCacheSize()) : null;
 	}
 
-	private synchronized void beginUseGH() {
-		mUseCounter++;
+	public void close() {
+		synchronized (_updateLock) {
+			if (_closed)
+				return;
+
+			_closed = true;
+			_graph.get().release();
+		}
 	}
 
-	private synchronized void endUseGH() {
-		mUseCounter--;
+	/**
+	 * Pins the current graph for the duration of a request. All searches of the
+	 * request have to run on the returned generation, which must be handed back
+	 * with {@link GraphGeneration#release()}.
+	 */
+	public GraphGeneration acquireGraph() {
+		while (true) {
+			if (_closed)
+				throw new IllegalStateException("The routing profile has been closed.");
+
+			GraphGeneration gen = _graph.get();
+			if (gen.tryAcquire()) {
+				if (!_closed)
+					return gen;
+
+				gen.release();
+				continue;
+			}
+
+			// a generation that has been replaced is drained after its successor
+			// has been set, so a drained current one has been closed
+			if (_graph.get() == gen)
+				throw new IllegalStateException("The graph of the routing profile has been closed.");
+		}
 	}
 
-	public void updateGH(GraphHopper gh) throws Exception {
+	/**
+	 * Replaces the graph by a new version built with {@link GraphVersions} in a
+	 * directory of its own. The new graph is already loaded, so activating it
+	 * neither copies nor reloads any files. Requests that are running keep using
+	 * the previous graph, which is closed and deleted once the last of them has
+	 * finished, while new requests start on the new one right away.
+	 */
+	public void updateGH(ORSGraphHopper gh) throws Exception {
 		if (gh == null)
 			throw new Exception("GraphHopper instance is null.");
 
-		try {
-			mUpdateRun = true;
-			while (true) {
-				if (!isGHUsed()) {
-					GraphHopper ghOld = mGraphHopper;
-
-					ghOld.close();
-					ghOld.clean();
-
-					gh.close();
-					// gh.clean(); // do not remove on-disk files, we need to
-					// copy them as follows
-
-					RuntimeUtility.clearMemory(LOGGER);
-
-					// Change the content of the graph folder
-					String oldLocation = ghOld.getGraphHopperLocation();
-					File dstDir = new File(oldLocation);
-					File srcDir = new File(gh.getGraphHopperLocation());
-					FileUtils.copyDirectory(srcDir, dstDir, true);
-					FileUtils.deleteDirectory(srcDir);
-
-					RoutingProfileLoadContext loadCntx = new RoutingProfileLoadContext();
-
-					mGraphHopper = initGraphHopper(ghOld.getDataReaderFile(), _config, RoutingProfileManager.getInstance().getProfiles(), loadCntx);
-
-					loadCntx.release();
+		synchronized (_updateLock) {
+			if (_closed)
+				throw new Exception("The routing profile has been closed.");
 
-					break;
-				}
-
-				Thread.sleep(2000);
-			}
-		} catch (Exception ex) {
-			LOGGER.error(ex.getMessage());
-		}
+			GraphGeneration oldGen = _graph.get();
 
-		mUpdateRun = false;
-	}
-
-	private void waitForUpdateCompletion() throws Exception {
-		if (mUpdateRun) {
-			long startTime = System.currentTimeMillis();
+			GraphVersions.activate(_config.getGraphPath(), gh.getGraphHopperLocation());
 
-			while (mUpdateRun) {
-				long curTime = System.currentTimeMillis();
-				if (curTime - startTime > 600000) {
-					throw new Exception("The route profile is currently being updated.");
-				}
+			_graph.set(new GraphGeneration(gh));
+			oldGen.retire(_config.getGraphPath());
 
-				Thread.sleep(1000);
-			}
+			RuntimeUtility.clearMemory(LOGGER);
 		}
 	}
 
 	public IsochroneMap buildIsochrone(IsochroneSearchParameters parameters, String[] attributes) throws Exception {
 		IsochroneMap result = null;
 
-		waitForUpdateCompletion();
-
-		beginUseGH();
+		GraphGeneration gen = acquireGraph();
 
 		try {
-			RouteSearchContext searchCntx = createSearchContext(parameters.getRouteParameters(), RouteSearchMode.Isochrones, null);
+			RouteSearchContext searchCntx = createSearchContext(gen.getGraphHopper(), parameters.getRouteParameters(), RouteSearchMode.Isochrones, null, parameters.getDeadline());
 
 			IsochroneMapBuilderFactory isochroneMapBuilderFactory = new IsochroneMapBuilderFactory(searchCntx);
 			result = isochroneMapBuilderFactory.buildMap(parameters);
-
-			endUseGH();
+		} catch (SearchTimeoutException ex) {
+			throw new StatusCodeException(StatusCode.SERVICE_UNAVAILABLE, IsochronesErrorCodes.SEARCH_TIMEOUT, "Unable to build an isochrone map within " + ex.getTimeout() + " ms.");
 		} catch (Exception ex) {
-			endUseGH();
-
 			LOGGER.error(ex);
 
 			throw new InternalServerException(IsochronesErrorCodes.UNKNOWN, "Unable to build an isochrone map.");
+		} finally {
+			gen.release();
 		}
 
 		if (attributes != null && result.getIsochronesCount() > 0)
@@ -547,7 +579,51 @@ public class RoutingProfile
 	{
 		MatrixResult mtxResult = null;
 
-		GraphHopper gh = getGraphhopper();
+		GraphGeneration gen = acquireGraph();
+		try
+		{
+			mtxResult = computeMatrix(gen, req);
+		}
+		finally
+		{
+			gen.release();
+		}
+
+		return mtxResult;
+	}
+
+	/**
+	 * Computes the matrix on a graph pinned with {@link #acquireGraph()}.
+	 */
+	public MatrixResult computeMatrix(GraphGeneration gen, MatrixRequest req) throws Exception
+	{
+		return computeMatrix(gen, req, null);
+	}
+
+	/**
+	 * Creates the builder of the search contexts of the blocks of a matrix job,
+	 * which snaps the destinations shared by all blocks only once.
+	 */
+	public MatrixSearchContextBuilder createMatrixJobContextBuilder(GraphGeneration gen, MatrixRequest req)
+	{
+		GraphHopper gh = gen.getGraphHopper();
+		FlagEncoder flagEncoder = gh.getEncodingManager().getEncoder(RoutingProfileType.getEncoderName(req.getProfileType()));
+
+		MatrixSearchContextBuilder builder = new MatrixSearchContextBuilder(gh.getLocationIndex(), new DefaultEdgeFilter(flagEncoder), new ByteArrayBuffer(), req.getResolveLocations());
+		builder.setCacheDestinations(true);
+		return builder;
+	}
+
+	/**
+	 * Computes the matrix on a graph pinned with {@link #acquireGraph()} with
+	 * the given builder of search contexts, which has to be created for the
+	 * same graph, or a new one if it is null.
+	 */
+	public MatrixResult computeMatrix(GraphGeneration gen, MatrixRequest req, MatrixSearchContextBuilder builder) throws Exception
+	{
+		MatrixResult mtxResult = null;
+
+		GraphHopper gh = gen.getGraphHopper();
 		String encoderName = RoutingProfileType.getEncoderName(req.getProfileType());
 		FlagEncoder flagEncoder = gh.getEncodingManager().getEncoder(encoderName);
 
@@ -565,16 +641,61 @@ public class RoutingProfile
 			else
 				graph = gh.getGraphHopperStorage().getBaseGraph();
 
-			MatrixSearchContextBuilder builder = new MatrixSearchContextBuilder(gh.getLocationIndex(), new DefaultEdgeFilter(flagEncoder), new ByteArrayBuffer(), req.getResolveLocations());
+			if (builder == null)
+				builder = new MatrixSearchContextBuilder(gh.getLocationIndex(), new DefaultEdgeFilter(flagEncoder), new ByteArrayBuffer(), req.getResolveLocations());
 			MatrixSearchContext mtxSearchCntx = builder.create(graph, req.getSources(), req.getDestinations(), MatrixServiceSettings.getMaximumSearchRadius());
 
 			HintsMap hintsMap = new HintsMap();
 			hintsMap.setWeighting(weightingStr);
-			Weighting weighting = new ORSWeightingFactory(RealTrafficDataProvider.getInstance()).createWeighting(hintsMap, gh.getTraversalMode(), flagEncoder, graph, null, gh.getGraphHopperStorage());
+			final Graph weightingGraph = graph;
+			Callable<Weighting> weightingFactory = () -> new ORSWeightingFactory(RealTrafficDataProvider.getInstance()).createWeighting(hintsMap, gh.getTraversalMode(), flagEncoder, weightingGraph, null, gh.getGraphHopperStorage());
+			Weighting weighting = weightingFactory.call();
+
+			// the metrics of the cost bounds are needed to filter the cells even if they are not requested
+			int metrics = req.getMetrics();
+			int boundMetrics = (req.getMaximumDuration() > 0 ? MatrixMetricsType.Duration : 0) | (req.getMaximumDistance() > 0 ? MatrixMetricsType.Distance : 0);
+
+			try
+			{
+				req.setMetrics(metrics | boundMetrics);
+
+				alg.init(req, gh, mtxSearchCntx.getGraph(), flagEncoder, weighting);
+				if (alg instanceof RPHASTMatrixAlgorithm)
+				{
+					RPHASTMatrixAlgorithm rphastAlg = (RPHASTMatrixAlgorithm)alg;
+					rphastAlg.setTargetGraphCache(gen.getTargetGraphCache());
+					if (MatrixServiceSettings.getShortcutCache() && graph instanceof CHGraph)
+						rphastAlg.setShortcutMetricsCache(gen.getShortcutMetricsCache(weighting, (CHGraph)graph));
+				}
+				else if (alg instanceof DijkstraMatrixAlgorithm)
+				{
+					// the workers of a parallel matrix create their weightings the same way
+					((DijkstraMatrixAlgorithm)alg).setWeightingFactory(weightingFactory);
+				}
 
-			alg.init(req, gh, mtxSearchCntx.getGraph(), flagEncoder, weighting);
+				mtxResult = alg.compute(mtxSearchCntx.getSources(), mtxSearchCntx.getDestinations(), req.getMetrics()); 
 
-			mtxResult = alg.compute(mtxSearchCntx.getSources(), mtxSearchCntx.getDestinations(), req.getMetrics()); 
+				if (LOGGER.isDebugEnabled())
+					LOGGER.debug("matrix.visited_nodes - " + alg.getVisitedNodes());
+			}
+			finally
+			{
+				req.setMetrics(metrics);
+			}
+
+			if (req.getMaximumDuration() > 0)
+				mtxResult.removeValuesAbove(MatrixMetricsType.Duration, req.getMaximumDuration());
+			if (req.getMaximumDistance() > 0)
+				mtxResult.removeValuesAbove(MatrixMetricsType.Distance, req.getMaximumDistance());
+
+			if (!MatrixMetricsType.isSet(metrics, MatrixMetricsType.Duration))
+				mtxResult.setTable(MatrixMetricsType.Duration, null);
+			if (!MatrixMetricsType.isSet(metrics, MatrixMetricsType.Distance))
+				mtxResult.setTable(MatrixMetricsType.Distance, null);
+		}
+		catch(SearchTimeoutException ex)
+		{
+			throw new StatusCodeException(StatusCode.SERVICE_UNAVAILABLE, MatrixErrorCodes.SEARCH_TIMEOUT, "Unable to compute a distance/duration matrix within " + ex.getTimeout() + " ms.");
 		}
 		catch(Exception ex)
 		{
@@ -641,37 +762,38 @@ public class RoutingProfile
 		return optResult;
 	}
 
-	private RouteSearchContext createSearchContext(RouteSearchParameters searchParams, RouteSearchMode mode, EdgeFilter customEdgeFilter) throws Exception
+	private RouteSearchContext createSearchContext(ORSGraphHopper gh, RouteSearchParameters searchParams, RouteSearchMode mode, EdgeFilter customEdgeFilter, Deadline deadline) throws Exception
 	{
 		int profileType = searchParams.getProfileType();
 		int weightingMethod = searchParams.getWeightingMethod();
 		String encoderName = RoutingProfileType.getEncoderName(profileType);
 		EdgeFilter edgeFilter = null;
-		FlagEncoder flagEncoder = mGraphHopper.getEncodingManager().getEncoder(encoderName);
+		FlagEncoder flagEncoder = gh.getEncodingManager().getEncoder(encoderName);
 		//String algorithm = null;
 		PMap props = new PMap();
+		TrafficSnapshot trafficSnapshot = null;
 
 		if (searchParams.hasAvoidAreas()) {
 			if (encoderName.isEmpty())
 				throw new InternalServerException(RoutingErrorCodes.UNKNOWN, "vehicle parameter is empty.");
 
-			if (!mGraphHopper.getEncodingManager().supports(encoderName)) {
+			if (!gh.getEncodingManager().supports(encoderName)) {
 				throw new IllegalArgumentException("Vehicle " + encoderName + " unsupported. " + "Supported are: "
-						+ mGraphHopper.getEncodingManager());
+						+ gh.getEncodingManager());
 			}
 
-			edgeFilter = new AvoidAreasEdgeFilter(flagEncoder, searchParams.getAvoidAreas());
+			edgeFilter = new AvoidAreasEdgeFilter(flagEncoder, searchParams.getAvoidAreas(), gh.getGraphHopperStorage().getBaseGraph(), gh.getLocationIndex());
 		}
 
 		if (RoutingProfileType.isDriving(profileType)) {
 			if (RoutingProfileType.isHeavyVehicle(profileType)) {
-				edgeFilter = createHeavyVehicleEdgeFilter(searchParams, flagEncoder, edgeFilter);
+				edgeFilter = createHeavyVehicleEdgeFilter(gh, searchParams, flagEncoder, edgeFilter);
 			} else if (searchParams.hasParameters(VehicleParameters.class)) {
 				//edgeFilter = createWayRestrictionsEdgeFilter(searchParams, flagEncoder, edgeFilter);
 			}
 		} else if (profileType == RoutingProfileType.WHEELCHAIR) {
 			if (searchParams.hasParameters(WheelchairParameters.class)) {
-				edgeFilter = createWheelchairRestrictionsEdgeFilter(searchParams,  flagEncoder,
+				edgeFilter = createWheelchairRestrictionsEdgeFilter(gh, searchParams,  flagEncoder,
 						edgeFilter);
 			}
 		}
@@ -684,7 +806,7 @@ public class RoutingProfile
 				if (searchParams.getAvoidFeatureTypes() != AvoidFeatureFlags.Hills)
 				{
 					EdgeFilter ef = new AvoidFeaturesEdgeFilter(flagEncoder, searchParams,
-							mGraphHopper.getGraphHopperStorage());
+							gh.getGraphHopperStorage());
 					edgeFilter = createEdgeFilter(ef, edgeFilter);
 				}
 
@@ -711,13 +833,13 @@ public class RoutingProfile
 
 			if (cyclingParams.getMaximumGradient() > 0)
 			{
-				EdgeFilter ef = new AvoidSteepnessEdgeFilter(flagEncoder, mGraphHopper.getGraphHopperStorage(), cyclingParams.getMaximumGradient());
+				EdgeFilter ef = new AvoidSteepnessEdgeFilter(flagEncoder, gh.getGraphHopperStorage(), cyclingParams.getMaximumGradient());
 				edgeFilter = createEdgeFilter(ef, edgeFilter);
 			}
 
 			if (cyclingParams.getMaximumTrailDifficulty() > 0)
 			{
-				EdgeFilter ef = new TrailDifficultyEdgeFilter(flagEncoder, mGraphHopper.getGraphHopperStorage(), cyclingParams.getMaximumTrailDifficulty());
+				EdgeFilter ef = new TrailDifficultyEdgeFilter(flagEncoder, gh.getGraphHopperStorage(), cyclingParams.getMaximumTrailDifficulty());
 				edgeFilter = createEdgeFilter(ef, edgeFilter);
 			}
 		}
@@ -727,13 +849,13 @@ public class RoutingProfile
 
 			if (walkingParams.getMaximumGradient() > 0)
 			{
-				EdgeFilter ef = new AvoidSteepnessEdgeFilter(flagEncoder, mGraphHopper.getGraphHopperStorage(), walkingParams.getMaximumGradient());
+				EdgeFilter ef = new AvoidSteepnessEdgeFilter(flagEncoder, gh.getGraphHopperStorage(), walkingParams.getMaximumGradient());
 				edgeFilter = createEdgeFilter(ef, edgeFilter);
 			}
 
 			if (walkingParams.getMaximumTrailDifficulty() > 0)
 			{
-				EdgeFilter ef = new TrailDifficultyEdgeFilter(flagEncoder, mGraphHopper.getGraphHopperStorage(), walkingParams.getMaximumTrailDifficulty());
+				EdgeFilter ef = new TrailDifficultyEdgeFilter(flagEncoder, gh.getGraphHopperStorage(), walkingParams.getMaximumTrailDifficulty());
 				edgeFilter = createEdgeFilter(ef, edgeFilter);
 			}
 		}
@@ -759,9 +881,8 @@ public class RoutingProfile
 					&& RealTrafficDataProvider.getInstance().isInitialized()) {
 				props.put("weighting_traffic_block", true);
 
-				EdgeFilter ef = new BlockedEdgesEdgeFilter(flagEncoder, RealTrafficDataProvider.getInstance()
-						.getBlockedEdges(mGraphHopper.getGraphHopperStorage()), RealTrafficDataProvider.getInstance()
-						.getHeavyVehicleBlockedEdges(mGraphHopper.getGraphHopperStorage()));
+				trafficSnapshot = RealTrafficDataProvider.getInstance().getTrafficSnapshot(gh.getGraphHopperStorage());
+				EdgeFilter ef = new BlockedEdgesEdgeFilter(flagEncoder, trafficSnapshot);
 
 				edgeFilter = createEdgeFilter(ef, edgeFilter);
 			}
@@ -770,45 +891,30 @@ public class RoutingProfile
 		if (edgeFilter == null)
 			edgeFilter = new DefaultEdgeFilter(flagEncoder);
 
-		RouteSearchContext searchCntx = new RouteSearchContext(mGraphHopper, edgeFilter, flagEncoder);
-		searchCntx.setProperties(props);
-
-		return searchCntx;		
+		return new RouteSearchContext(gh, edgeFilter, flagEncoder, props, deadline, trafficSnapshot);
 	}
 
 	public RouteSegmentInfo[] getMatchedSegments(Coordinate[] locations, double searchRadius, boolean bothDirections)
 			throws Exception {
 		RouteSegmentInfo[] rsi = null;
 
-		waitForUpdateCompletion();
-
-		beginUseGH();
+		GraphGeneration gen = acquireGraph();
 
 		try {
-			rsi = getMatchedSegmentsInternal(locations, searchRadius, null, bothDirections);
-
-			endUseGH();
-		} catch (Exception ex) {
-			endUseGH();
-
-			throw ex;
+			rsi = getMatchedSegmentsInternal(gen.getMapMatcher(), locations, searchRadius, null, bothDirections);
+		} finally {
+			gen.release();
 		}
 
 		return rsi;
 	}
 
-	private RouteSegmentInfo[] getMatchedSegmentsInternal(Coordinate[] locations,
+	private RouteSegmentInfo[] getMatchedSegmentsInternal(MapMatcher mapMatcher, Coordinate[] locations,
 			double searchRadius, EdgeFilter edgeFilter, boolean bothDirections) {
-		if (mMapMatcher ==  null)
-		{
-			mMapMatcher = new HiddenMarkovMapMatcher();
-			mMapMatcher.setGraphHopper(mGraphHopper);
-		}
+		mapMatcher.setSearchRadius(searchRadius);
+		mapMatcher.setEdgeFilter(edgeFilter);
 
-		mMapMatcher.setSearchRadius(searchRadius);
-		mMapMatcher.setEdgeFilter(edgeFilter);
-
-		return mMapMatcher.match(locations, bothDirections);
+		return mapMatcher.match(locations, bothDirections);
 	}
 
 	public boolean canProcessRequest(double totalDistance, double longestSegmentDistance, int wayPoints) {
@@ -821,16 +927,37 @@ public class RoutingProfile
 	public GHResponse computeRoute(double lat0, double lon0, double lat1, double lon1, WayPointBearing[] bearings, double[] radiuses, boolean directedSegment, RouteSearchParameters searchParams, EdgeFilter customEdgeFilter, boolean simplifyGeometry, RouteProcessContext routeProcCntx)
 			throws Exception {
 
-		GHResponse resp = null; 
+		GraphGeneration gen = acquireGraph();
+
+		try {
+			return computeRoute(gen, lat0, lon0, lat1, lon1, bearings, radiuses, directedSegment, searchParams, customEdgeFilter, simplifyGeometry, routeProcCntx);
+		} finally {
+			gen.release();
+		}
+	}
 
-		waitForUpdateCompletion();
+	/**
+	 * Computes the route on a graph pinned with {@link #acquireGraph()}, so that 
+	 * all segments of a request and its path processor refer to the same graph.
+	 */
+	public GHResponse computeRoute(GraphGeneration gen, double lat0, double lon0, double lat1, double lon1, WayPointBearing[] bearings, double[] radiuses, boolean directedSegment, RouteSearchParameters searchParams, EdgeFilter customEdgeFilter, boolean simplifyGeometry, RouteProcessContext routeProcCntx)
+			throws Exception {
 
-		beginUseGH();
+		GHResponse resp = null; 
 
 		try {
+			ORSGraphHopper gh = gen.getGraphHopper();
 			int profileType = searchParams.getProfileType();
 			int weightingMethod = searchParams.getWeightingMethod();
-			RouteSearchContext searchCntx = createSearchContext(searchParams, RouteSearchMode.Routing, customEdgeFilter);
+			// the context is built for the first segment of a request and reused for
+			// the following ones unless the graph has been replaced in the meantime
+			RouteSearchContext searchCntx = routeProcCntx.getSearchContext();
+			if (searchCntx == null || searchCntx.getGraphHopper() != gh)
+			{
+				// the deadline of a route is checked through its process context
+				searchCntx = createSearchContext(gh, searchParams, RouteSearchMode.Routing, customEdgeFilter, Deadline.NONE);
+				routeProcCntx.setSearchContext(searchCntx);
+			}
 
 			boolean flexibleMode = searchParams.getFlexibleMode();
 			GHRequest req = null;
@@ -887,22 +1014,28 @@ public class RoutingProfile
 			}
 
 			if (RoutingProfileType.isDriving(profileType) && RealTrafficDataProvider.getInstance().isInitialized())
-				req.setEdgeAnnotator(new TrafficEdgeAnnotator(mGraphHopper.getGraphHopperStorage()));
+				req.setEdgeAnnotator(new TrafficEdgeAnnotator(gh.getGraphHopperStorage()));
 
-			req.setEdgeFilter(searchCntx.getEdgeFilter());
+			// the GraphHopper algorithms are checked for the deadline by their edge filter
+			req.setEdgeFilter(DeadlineEdgeFilter.create(searchCntx.getEdgeFilter(), routeProcCntx.getDeadline()));
 			req.setPathProcessor(routeProcCntx.getPathProcessor());
 
 			if (useDynamicWeights(searchParams) || flexibleMode)
 			{
-				if (mGraphHopper.isCHEnabled())  
+				if (gh.isCHEnabled())  
 					req.getHints().put("ch.disable", true);
-				if (mGraphHopper.getLMFactoryDecorator().isEnabled())
+				// landmarks are chosen per request by ORSGraphHopper, which falls back
+				// to dijkstrabi if their bounds are not admissible for the weighting
+				if (gh.getLMFactoryDecorator().isEnabled())
+				{
 					req.setAlgorithm("astarbi");
-				req.getHints().put("lm.disable", false);
+					req.getHints().put(ORSGraphHopper.LANDMARKS_HINT, true);
+				}
+				req.getHints().put("lm.disable", true);
 			} 
 			else
 			{
-				if (mGraphHopper.isCHEnabled())  
+				if (gh.isCHEnabled())  
 					req.getHints().put("lm.disable", true);
 				else
 					req.getHints().put("ch.disable", true);
@@ -920,20 +1053,21 @@ public class RoutingProfile
 			if (_astarApproximation != null)
 				req.getHints().put("astarbi.approximation", _astarApproximation);
 
+			if ((useDynamicWeights(searchParams) || flexibleMode) && useCCH(gh, searchParams, bearings, customEdgeFilter) && !isDestinationDependent(gh, searchCntx.getEdgeFilter(), lat1, lon1, routeProcCntx))
+				applyCCHMetric(gh, req, searchParams, searchCntx);
+
 			/*if (directedSegment)
-				resp = mGraphHopper.directRoute(req); NOTE IMPLEMENTED!!!
+				resp = gh.directRoute(req); NOTE IMPLEMENTED!!!
 			else */
-			resp = mGraphHopper.route(req, routeProcCntx.getArrayBuffer());
+			resp = gh.route(req, routeProcCntx.getArrayBuffer());
 
 			if (DebugUtility.isDebug())
 			{
 				System.out.println("visited_nodes.average - " + resp.getHints().get("visited_nodes.average", ""));
 			}
-
-			endUseGH();
+		} catch (SearchTimeoutException ex) {
+			throw new StatusCodeException(StatusCode.SERVICE_UNAVAILABLE, RoutingErrorCodes.SEARCH_TIMEOUT, "Unable to compute a route within " + ex.getTimeout() + " ms.");
 		} catch (Exception ex) {
-			endUseGH();
-
 			LOGGER.error(ex);
 
 			throw new InternalServerException(RoutingErrorCodes.UNKNOWN, "Unable to compute a route");
@@ -942,6 +1076,118 @@ public class RoutingProfile
 		return resp;
 	}
 
+	/**
+	 * Returns whether the request can be answered on a customized CCH metric.
+	 * Metrics are only customized per configuration of encoder, weighting and
+	 * options like avoid features or vehicle dimensions, as fleets use a few 
+	 * of them. Avoid areas, custom edge filters, maximum speeds and the 
+	 * restrictions of wheelchair users vary with every request and are applied
+	 * by the filter of a flexible search instead. Turn restrictions, bearings 
+	 * and the acceleration weighting of emergency vehicles depend on the 
+	 * previous edge.
+	 */
+	private boolean useCCH(ORSGraphHopper gh, RouteSearchParameters searchParams, WayPointBearing[] bearings, EdgeFilter customEdgeFilter)
+	{
+		if (!gh.isCCHEnabled() || searchParams.hasAvoidAreas() || searchParams.getConsiderTurnRestrictions() || searchParams.getMaximumSpeed() > 0
+				|| customEdgeFilter != null || (bearings != null && bearings[0] != null) || searchParams.getProfileType() == RoutingProfileType.DRIVING_EMERGENCY)
+			return false;
+
+		return !searchParams.hasParameters(WheelchairParameters.class);
+	}
+
+	/**
+	 * Returns whether the filter depends on the destination of the route and
+	 * thus cannot be answered by a metric shared by several requests. Metrics
+	 * of heavy vehicles close the roads with destination access for their 
+	 * vehicle type, like delivery zones, so only routes to such roads depend 
+	 * on their destination.
+	 */
+	private static boolean isDestinationDependent(ORSGraphHopper gh, EdgeFilter edgeFilter, double lat, double lon, RouteProcessContext routeProcCntx)
+	{
+		EdgeFilter destinationFilter = getEdgeFilter(edgeFilter, DestinationDependentEdgeFilter.class);
+		if (destinationFilter == null)
+			return false;
+		if (!(destinationFilter instanceof HeavyVehicleEdgeFilter))
+			return true;
+
+		QueryResult qr = gh.getLocationIndex().findClosest(lat, lon, edgeFilter, routeProcCntx.getArrayBuffer());
+		return qr.isValid() && ((HeavyVehicleEdgeFilter)destinationFilter).hasDestinationEdges(qr.getClosestEdge(), gh.getGraphHopperStorage().getBaseGraph());
+	}
+
+	private static EdgeFilter getEdgeFilter(EdgeFilter edgeFilter, Class<?> type)
+	{
+		if (edgeFilter instanceof EdgeFilterSequence)
+			return ((EdgeFilterSequence)edgeFilter).getEdgeFilter(type);
+
+		return type.isInstance(edgeFilter) ? edgeFilter : null;
+	}
+
+	private void applyCCHMetric(ORSGraphHopper gh, GHRequest req, RouteSearchParameters searchParams, RouteSearchContext searchCntx) throws Exception
+	{
+		// the key covers everything the weighting and the edge filter are built
+		// from, useCCH rules out the options which vary with every request
+		StringBuilder key = new StringBuilder(searchCntx.getEncoder().toString());
+		key.append('|').append(new TreeMap<String, String>(req.getHints().toMap()));
+		key.append('|').append(searchParams.getAvoidFeatureTypes());
+		key.append('|').append(searchParams.getVehicleType());
+		ProfileParameters profileParams = searchParams.getProfileParameters();
+		if (profileParams instanceof CyclingParameters)
+			key.append('|').append(profileParams.getMaximumGradient()).append('|').append(((CyclingParameters)profileParams).getMaximumTrailDifficulty());
+		else if (profileParams instanceof WalkingParameters)
+			key.append('|').append(profileParams.getMaximumGradient()).append('|').append(((WalkingParameters)profileParams).getMaximumTrailDifficulty());
+		else if (profileParams instanceof VehicleParameters)
+		{
+			VehicleParameters vehicleParams = (VehicleParameters)profileParams;
+			key.append('|').append(vehicleParams.getLength()).append('|').append(vehicleParams.getHeight()).append('|').append(vehicleParams.getWidth());
+			key.append('|').append(vehicleParams.getWeight()).append('|').append(vehicleParams.getAxleload()).append('|').append(vehicleParams.getLoadCharacteristics());
+		}
+		// a missing metric is customized in the background with its own edge filter, 
+		// the request is answered by the flexible search meanwhile. Metrics which 
+		// consider traffic are customized again with every new traffic snapshot and
+		// are used with the previous snapshot until the new metric is ready.
+		final HintsMap hints = new HintsMap();
+		hints.merge(req.getHints());
+		CCHMetric metric = gh.getCCHMetric(key.toString(), searchCntx.getTrafficSnapshot() != null, () -> {
+			RouteSearchContext customizationCntx = createSearchContext(gh, searchParams, RouteSearchMode.Routing, null, Deadline.NONE);
+			EdgeFilter heavyVehicleFilter = getEdgeFilter(customizationCntx.getEdgeFilter(), HeavyVehicleEdgeFilter.class);
+			if (heavyVehicleFilter != null)
+				((HeavyVehicleEdgeFilter)heavyVehicleFilter).setRouteMode();
+
+			// the weighting uses the same snapshot as the edge filter
+			GraphHopperStorage ghStorage = gh.getGraphHopperStorage();
+			Weighting weighting = new ORSWeightingFactory(RealTrafficDataProvider.getInstance(), customizationCntx.getTrafficSnapshot()).createWeighting(hints, gh.getTraversalMode(), customizationCntx.getEncoder(), ghStorage.getBaseGraph(), gh.getLocationIndex(), ghStorage);
+			return gh.customizeCCHMetric(weighting, customizationCntx.getEdgeFilter());
+		});
+		if (metric == null)
+			return;
+
+		req.getHints().put(ORSGraphHopper.CCH_METRIC_HINT, key.toString());
+		req.getHints().put("ch.disable", true);
+		req.getHints().put("lm.disable", true);
+	}
+
+	/**
+	 * Returns the admission queue of a request class or null if the searches
+	 * of this class are not limited.
+	 */
+	public AdmissionQueue getAdmissionQueue(RequestClass requestClass)
+	{
+		return _admissionQueues[requestClass.ordinal()];
+	}
+
+	/**
+	 * Returns whether a route request is answered by a contraction hierarchy
+	 * or needs a flexible search, following the decisions of computeRoute.
+	 */
+	public RequestClass getRequestClass(RouteSearchParameters searchParams)
+	{
+		int profileType = searchParams.getProfileType();
+		boolean flexibleMode = searchParams.getFlexibleMode() || useDynamicWeights(searchParams)
+				|| ((profileType == RoutingProfileType.CYCLING_TOUR || profileType == RoutingProfileType.CYCLING_MOUNTAIN) && searchParams.getWeightingMethod() == WeightingMethod.FASTEST);
+
+		return (!flexibleMode && isCHEnabled()) ? RequestClass.CH : RequestClass.FLEXIBLE;
+	}
+
 	private boolean useDynamicWeights(RouteSearchParameters searchParams)
 	{
 		boolean dynamicWeights = (searchParams.hasAvoidAreas() || searchParams.hasAvoidFeatures() || searchParams.getMaximumSpeed() > 0 || (RoutingProfileType.isDriving(searchParams.getProfileType()) && (searchParams.hasParameters(VehicleParameters.class) || searchParams.getConsiderTraffic())) || (searchParams.getWeightingMethod() == WeightingMethod.SHORTEST || searchParams.getWeightingMethod() == WeightingMethod.RECOMMENDED) || searchParams.getConsiderTurnRestrictions() /*|| RouteExtraInformationFlag.isSet(extraInfo, value) searchParams.getIncludeWaySurfaceInfo()*/);
@@ -966,24 +1212,24 @@ public class RoutingProfile
 		}
 	}
 
-	private EdgeFilter createWheelchairRestrictionsEdgeFilter(RouteSearchParameters searchParams, 
+	private EdgeFilter createWheelchairRestrictionsEdgeFilter(ORSGraphHopper gh, RouteSearchParameters searchParams, 
 			FlagEncoder flagEncoder, EdgeFilter edgeFilter) throws Exception {
 		if (searchParams.hasParameters(WheelchairParameters.class))
 		{
 			EdgeFilter ef = null;
-			GraphStorage gs = mGraphHopper.getGraphHopperStorage();
+			GraphStorage gs = gh.getGraphHopperStorage();
 			ef = new WheelchairEdgeFilter((WheelchairParameters)searchParams.getProfileParameters(), (WheelchairFlagEncoder) flagEncoder, gs);
 			edgeFilter = createEdgeFilter(ef, edgeFilter);
 		}
 		return edgeFilter;
 	}
 
-	private EdgeFilter createHeavyVehicleEdgeFilter(RouteSearchParameters searchParams, FlagEncoder flagEncoder,
+	private EdgeFilter createHeavyVehicleEdgeFilter(ORSGraphHopper gh, RouteSearchParameters searchParams, FlagEncoder flagEncoder,
 			EdgeFilter edgeFilter) 
 	{
 		if (searchParams.hasParameters(VehicleParameters.class))
 		{
-			GraphStorage gs = mGraphHopper.getGraphHopperStorage();
+			GraphStorage gs = gh.getGraphHopperStorage();
 
 			int vehicleType = searchParams.getVehicleType();
 			VehicleParameters vehicleParams = (VehicleParameters)searchParams.getProfileParameters();
@@ -1018,7 +1264,7 @@ public class RoutingProfile
 
 	public Geometry getEdgeGeometry(int edgeId, int mode, int adjnodeid) 	
 	{ 	
-		EdgeIteratorState iter = mGraphHopper.getGraphHopperStorage().getEdgeIteratorState(edgeId, adjnodeid); 	
+		EdgeIteratorState iter = getGraphhopper().getGraphHopperStorage().getEdgeIteratorState(edgeId, adjnodeid); 	
 		PointList points = iter.fetchWayGeometry(mode); 	
 		if (points.size() > 1) 		{ 		
 			Coordinate[] coords = new Coordinate[points.size()]; 	
@@ -1039,6 +1285,101 @@ public class RoutingProfile
 
 	public int hashCode()
 	{
-		return mGraphHopper.getGraphHopperStorage().getDirectory().getLocation().hashCode();
+		// the versions of a graph are located in different directories
+		return GraphVersions.getGraphPath(getGraphhopper().getGraphHopperStorage().getDirectory().getLocation()).hashCode();
+	}
+
+	/**
+	 * A loaded graph together with the caches that refer to it. The profile holds
+	 * one reference as long as the generation is current and every request that
+	 * runs on it holds another one, so that a replaced graph is closed only when
+	 * the last request using it has finished.
+	 */
+	public static class GraphGeneration
+	{
+		private final ORSGraphHopper _graphHopper;
+		private final RPHASTTargetGraphCache _targetGraphCache;
+		private final ConcurrentHashMap<String, ShortcutMetricsCache> _shortcutCaches = new ConcurrentHashMap<String, ShortcutMetricsCache>();
+		private final AtomicLong _shortcutCacheMemory = new AtomicLong(MatrixServiceSettings.getShortcutCacheMaximumMemory() * 1024L * 1024L);
+		private final AtomicInteger _references = new AtomicInteger(1);
+		private MapMatcher _mapMatcher;
+		private volatile String _obsoleteGraphPath;
+
+		private GraphGeneration(ORSGraphHopper gh)
+		{
+			_graphHopper = gh;
+			_targetGraphCache = createTargetGraphCache();
+		}
+
+		public ORSGraphHopper getGraphHopper()
+		{
+			return _graphHopper;
+		}
+
+		public RPHASTTargetGraphCache getTargetGraphCache()
+		{
+			return _targetGraphCache;
+		}
+
+		public ShortcutMetricsCache getShortcutMetricsCache(Weighting weighting, CHGraph chGraph)
+		{
+			return _shortcutCaches.computeIfAbsent(weighting.toString(), w -> new ShortcutMetricsCache(chGraph, _shortcutCacheMemory));
+		}
+
+		public synchronized MapMatcher getMapMatcher()
+		{
+			if (_mapMatcher == null)
+			{
+				_mapMatcher = new HiddenMarkovMapMatcher();
+				_mapMatcher.setGraphHopper(_graphHopper);
+			}
+
+			return _mapMatcher;
+		}
+
+		/**
+		 * Adds a reference unless the generation has already been closed.
+		 */
+		private boolean tryAcquire()
+		{
+			while (true)
+			{
+				int refs = _references.get();
+				if (refs == 0)
+					return false;
+				if (_references.compareAndSet(refs, refs + 1))
+					return true;
+			}
+		}
+
+		public void release()
+		{
+			if (_references.decrementAndGet() == 0)
+			{
+				_graphHopper.close();
+
+				if (_obsoleteGraphPath != null)
+				{
+					try
+					{
+						GraphVersions.remove(_obsoleteGraphPath, _graphHopper.getGraphHopperLocation());
+					}
+					catch (Exception ex)
+					{
+						LOGGER.warn("Unable to delete the graph in " + _graphHopper.getGraphHopperLocation() + ": " + ex.getMessage());
+					}
+				}
+			}
+		}
+
+		/**
+		 * Releases the reference of the profile after the generation has been
+		 * replaced, so that its files are deleted once it is closed.
+		 */
+		private void retire(String graphPath)
+		{
+			_obsoleteGraphPath = graphPath;
+			release();
+		}
 	}
 }
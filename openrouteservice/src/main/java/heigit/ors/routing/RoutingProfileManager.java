@@ -22,6 +22,7 @@ package heigit.ors.routing;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -30,9 +31,13 @@ import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
+import heigit.ors.common.ComputeExecutor;
+import heigit.ors.routing.admission.AdmissionQueue;
+import heigit.ors.routing.admission.RequestClass;
 import heigit.ors.routing.parameters.VehicleParameters;
 import heigit.ors.routing.pathprocessors.ElevationSmoothPathProcessor;
 import heigit.ors.routing.pathprocessors.ExtraInfoProcessor;
@@ -42,10 +47,12 @@ import heigit.ors.routing.traffic.RealTrafficDataProvider;
 import heigit.ors.services.routing.RoutingServiceSettings;
 import heigit.ors.util.FormatUtility;
 import heigit.ors.isochrones.IsochroneSearchParameters;
+import heigit.ors.isochrones.IsochronesErrorCodes;
 import heigit.ors.mapmatching.MapMatchingRequest;
 import heigit.ors.matrix.MatrixErrorCodes;
 import heigit.ors.matrix.MatrixRequest;
 import heigit.ors.matrix.MatrixResult;
+import heigit.ors.matrix.MatrixSearchContextBuilder;
 import heigit.ors.optimization.OptimizationErrorCodes;
 import heigit.ors.optimization.RouteOptimizationRequest;
 import heigit.ors.optimization.RouteOptimizationResult;
@@ -310,9 +317,32 @@ public class RoutingProfileManager {
 		if (req.getCoordinates().length <= 1)
 			throw new Exception("Number of coordinates must be greater than 1.");
 
+		RoutingProfile rp = getRouteProfile(req, true);
+		AdmissionQueue admissionQueue = admit(rp, rp.getRequestClass(req.getSearchParameters()), RoutingErrorCodes.SERVICE_OVERLOADED);
+
+		try
+		{
+			RoutingProfile.GraphGeneration gen = rp.acquireGraph();
+			try
+			{
+				return computeRoutes(rp, gen, req, invertFlow);
+			}
+			finally
+			{
+				gen.release();
+			}
+		}
+		finally
+		{
+			if (admissionQueue != null)
+				admissionQueue.release();
+		}
+	}
+
+	private List<RouteResult> computeRoutes(RoutingProfile rp, RoutingProfile.GraphGeneration gen, RoutingRequest req, boolean invertFlow) throws Exception
+	{
 		List<RouteResult> routes = new ArrayList<RouteResult>(req.getCoordinates().length - 1);
 
-		RoutingProfile rp = getRouteProfile(req, true);
 		RouteSearchParameters searchParams = req.getSearchParameters();
 		PathProcessor pathProcessor = null;
 
@@ -320,7 +350,7 @@ public class RoutingProfileManager {
 		{
 			// do not allow geometry simplification when extras are requested
 			req.setSimplifyGeometry(false);
-			pathProcessor = new ExtraInfoProcessor(rp.getGraphhopper(), req);
+			pathProcessor = new ExtraInfoProcessor(gen.getGraphHopper(), req);
 		}
 		else
 		{ 
@@ -332,6 +362,7 @@ public class RoutingProfileManager {
 		Coordinate c0 = coords[0];
 		int nSegments = coords.length - 1;
 		RouteProcessContext routeProcCntx = new RouteProcessContext(pathProcessor);
+		routeProcCntx.setDeadline(req.getDeadline());
 		RouteResultBuilder routeBuilder = new RouteResultBuilder();
 		EdgeFilter customEdgeFilter = rp.createAccessRestrictionFilter(coords);
 		List<GHResponse> resp =  new ArrayList<GHResponse>(); 
@@ -344,9 +375,9 @@ public class RoutingProfileManager {
 			Coordinate c1 = coords[i];
 			GHResponse gr = null;
 			if (invertFlow)
-				gr = rp.computeRoute(c0.y, c0.x, c1.y, c1.x, null, null, false, searchParams, customEdgeFilter, req.getSimplifyGeometry(), routeProcCntx);
+				gr = rp.computeRoute(gen, c0.y, c0.x, c1.y, c1.x, null, null, false, searchParams, customEdgeFilter, req.getSimplifyGeometry(), routeProcCntx);
 			else
-				gr = rp.computeRoute(c1.y, c1.x, c0.y, c0.x, null, null, false, searchParams, customEdgeFilter, req.getSimplifyGeometry(), routeProcCntx);
+				gr = rp.computeRoute(gen, c1.y, c1.x, c0.y, c0.x, null, null, false, searchParams, customEdgeFilter, req.getSimplifyGeometry(), routeProcCntx);
 
 			//if (gr.hasErrors())
 			//	throw new InternalServerException(RoutingErrorCodes.UNKNOWN, String.format("Unable to find a route between points %d (%s) and %d (%s)", i, FormatUtility.formatCoordinate(c0), i + 1, FormatUtility.formatCoordinate(c1)));
@@ -373,12 +404,76 @@ public class RoutingProfileManager {
 		return null;
 	}
 
+	/**
+	 * Returns the request class in which the route request is admitted.
+	 */
+	public RequestClass getRequestClass(RoutingRequest req) throws Exception
+	{
+		return getRouteProfile(req, false).getRequestClass(req.getSearchParameters());
+	}
+
 	public RouteResult computeRoute(RoutingRequest req) throws Exception
 	{
-		List<GHResponse> routes = new ArrayList<GHResponse>();
+		RoutingProfile rp = getRouteProfile(req, false);
+		AdmissionQueue admissionQueue = admit(rp, rp.getRequestClass(req.getSearchParameters()), RoutingErrorCodes.SERVICE_OVERLOADED);
 
+		try
+		{
+			// all segments and the extra info refer to the graph the request started on
+			RoutingProfile.GraphGeneration gen = rp.acquireGraph();
+			try
+			{
+				return computeRoute(rp, gen, req);
+			}
+			finally
+			{
+				gen.release();
+			}
+		}
+		finally
+		{
+			if (admissionQueue != null)
+				admissionQueue.release();
+		}
+	}
+
+	/**
+	 * Computes the route of one pair of a batch request. The pairs of a batch share
+	 * their options, so the search context kept by routeProcCntx is built for the
+	 * first pair computed with it and reused for the following ones.
+	 */
+	public RouteResult computeBatchRoute(RoutingRequest req, RouteProcessContext routeProcCntx) throws Exception
+	{
 		RoutingProfile rp = getRouteProfile(req, false);
-		RouteSearchParameters searchParams = req.getSearchParameters();
+		AdmissionQueue admissionQueue = admit(rp, rp.getRequestClass(req.getSearchParameters()), RoutingErrorCodes.SERVICE_OVERLOADED);
+
+		try
+		{
+			RoutingProfile.GraphGeneration gen = rp.acquireGraph();
+			try
+			{
+				return computeRoute(rp, gen, req, routeProcCntx);
+			}
+			finally
+			{
+				gen.release();
+			}
+		}
+		finally
+		{
+			if (admissionQueue != null)
+				admissionQueue.release();
+		}
+	}
+
+	private RouteResult computeRoute(RoutingProfile rp, RoutingProfile.GraphGeneration gen, RoutingRequest req) throws Exception
+	{
+		return computeRoute(rp, gen, req, null);
+	}
+
+	private RouteResult computeRoute(RoutingProfile rp, RoutingProfile.GraphGeneration gen, RoutingRequest req, RouteProcessContext sharedProcCntx) throws Exception
+	{
+		List<GHResponse> routes = new ArrayList<GHResponse>();
 		PathProcessor pathProcessor = null;
 
 		if (req.getExtraInfo() > 0)
@@ -386,7 +481,7 @@ public class RoutingProfileManager {
 			// do not allow geometry simplification when extras are requested
 			req.setSimplifyGeometry(false);
 
-			pathProcessor = new ExtraInfoProcessor(rp.getGraphhopper(), req);
+			pathProcessor = new ExtraInfoProcessor(gen.getGraphHopper(), req);
 		}
 		else
 		{ 
@@ -395,61 +490,137 @@ public class RoutingProfileManager {
 		}
 
 		Coordinate[] coords = req.getCoordinates();
-		Coordinate c0 = coords[0];
-		Coordinate c1;
 		int nSegments = coords.length - 1;
-		RouteProcessContext routeProcCntx = new RouteProcessContext(pathProcessor);
 		EdgeFilter customEdgeFilter = rp.createAccessRestrictionFilter(coords);
-		GHResponse prevResp = null;
-		WayPointBearing[] bearings = (req.getContinueStraight() || searchParams.getBearings() != null) ? new WayPointBearing[2] : null;
-		double[] radiuses = searchParams.getMaximumRadiuses() != null ? new double[2] : null;		
-		
-		for(int i = 1; i <= nSegments; ++i)
+
+		// continue_straight needs the heading of the previous segment and extra info
+		// is collected segment by segment, so both are only computed sequentially
+		if (RoutingServiceSettings.getSegmentParallelism() > 1 && nSegments > 1 && !req.getContinueStraight() && !(pathProcessor instanceof ExtraInfoProcessor))
 		{
-			c1 = coords[i];
-			
-			if (pathProcessor != null)
-				pathProcessor.setSegmentIndex(i - 1, nSegments);
+			routes = computeSegmentsParallel(rp, gen, req, customEdgeFilter, pathProcessor);
+		}
+		else
+		{
+			// a shared context carries no path processor of its own
+			RouteProcessContext routeProcCntx = (sharedProcCntx != null && pathProcessor == null) ? sharedProcCntx : new RouteProcessContext(pathProcessor);
+			routeProcCntx.setDeadline(req.getDeadline());
+			GHResponse prevResp = null;
 
-			if (bearings != null)
+			for(int i = 1; i <= nSegments; ++i)
 			{
-				bearings[0] = null;
-				if (i > 1 && req.getContinueStraight())
-				{
-					bearings[0] = new WayPointBearing(getHeadingDirection(prevResp), Double.NaN);
-				}
+				if (pathProcessor != null)
+					pathProcessor.setSegmentIndex(i - 1, nSegments);
 
-				if (searchParams.getBearings() != null)
-				{
-					bearings[0] = searchParams.getBearings()[i - 1];
-					bearings[1] = (i == nSegments && searchParams.getBearings().length != nSegments + 1) ? new WayPointBearing(Double.NaN, Double.NaN) : searchParams.getBearings()[i];
-				}
+				prevResp = computeSegment(rp, gen, req, i, prevResp, customEdgeFilter, routeProcCntx);
+				routes.add(prevResp);
 			}
+		}
 
-			if (searchParams.getMaximumRadiuses() != null)
+		return new RouteResultBuilder().createRouteResult(routes, req, (pathProcessor != null && (pathProcessor instanceof ExtraInfoProcessor)) ? ((ExtraInfoProcessor)pathProcessor).getExtras(): null);
+	}
+	
+	/**
+	 * Computes the route from waypoint i - 1 to waypoint i. prevResp is the
+	 * route of the previous segment, which is only needed for continue_straight.
+	 */
+	private GHResponse computeSegment(RoutingProfile rp, RoutingProfile.GraphGeneration gen, RoutingRequest req, int i, GHResponse prevResp, EdgeFilter customEdgeFilter, RouteProcessContext routeProcCntx) throws Exception
+	{
+		RouteSearchParameters searchParams = req.getSearchParameters();
+		Coordinate[] coords = req.getCoordinates();
+		Coordinate c0 = coords[i - 1];
+		Coordinate c1 = coords[i];
+		int nSegments = coords.length - 1;
+		WayPointBearing[] bearings = (req.getContinueStraight() || searchParams.getBearings() != null) ? new WayPointBearing[2] : null;
+		double[] radiuses = null;
+
+		if (bearings != null)
+		{
+			if (i > 1 && req.getContinueStraight())
 			{
-				radiuses[0] = searchParams.getMaximumRadiuses()[i - 1];
-				radiuses[1] = searchParams.getMaximumRadiuses()[i];
+				bearings[0] = new WayPointBearing(getHeadingDirection(prevResp), Double.NaN);
 			}
-			
-			GHResponse gr = rp.computeRoute(c0.y, c0.x, c1.y, c1.x, bearings, radiuses, c0.z == 1.0, searchParams, customEdgeFilter,  req.getSimplifyGeometry(), routeProcCntx);
-			
-			if (gr.hasErrors())
+
+			if (searchParams.getBearings() != null)
 			{
-				if (gr.getErrors().size() > 0)
-					throw new InternalServerException(RoutingErrorCodes.UNKNOWN,  gr.getErrors().get(0).getMessage());
-				else				
-					throw new InternalServerException(RoutingErrorCodes.UNKNOWN, String.format("Unable to find a route between points %d (%s) and %d (%s).", i, FormatUtility.formatCoordinate(c0), i + 1, FormatUtility.formatCoordinate(c1)));
+				bearings[0] = searchParams.getBearings()[i - 1];
+				bearings[1] = (i == nSegments && searchParams.getBearings().length != nSegments + 1) ? new WayPointBearing(Double.NaN, Double.NaN) : searchParams.getBearings()[i];
 			}
+		}
 
-			prevResp = gr;
-			routes.add(gr);
-			c0 = c1;
+		if (searchParams.getMaximumRadiuses() != null)
+		{
+			radiuses = new double[2];
+			radiuses[0] = searchParams.getMaximumRadiuses()[i - 1];
+			radiuses[1] = searchParams.getMaximumRadiuses()[i];
 		}
 
-		return new RouteResultBuilder().createRouteResult(routes, req, (pathProcessor != null && (pathProcessor instanceof ExtraInfoProcessor)) ? ((ExtraInfoProcessor)pathProcessor).getExtras(): null);
+		GHResponse gr = rp.computeRoute(gen, c0.y, c0.x, c1.y, c1.x, bearings, radiuses, c0.z == 1.0, searchParams, customEdgeFilter,  req.getSimplifyGeometry(), routeProcCntx);
+
+		if (gr.hasErrors())
+		{
+			if (gr.getErrors().size() > 0)
+				throw new InternalServerException(RoutingErrorCodes.UNKNOWN,  gr.getErrors().get(0).getMessage());
+			else				
+				throw new InternalServerException(RoutingErrorCodes.UNKNOWN, String.format("Unable to find a route between points %d (%s) and %d (%s).", i, FormatUtility.formatCoordinate(c0), i + 1, FormatUtility.formatCoordinate(c1)));
+		}
+
+		return gr;
 	}
-	
+
+	/**
+	 * Computes the independent segments of a request on the shared compute
+	 * pool. At most segment_parallelism workers are used per request, each
+	 * with its own process context. The responses are returned in the order of
+	 * the segments.
+	 */
+	private List<GHResponse> computeSegmentsParallel(RoutingProfile rp, RoutingProfile.GraphGeneration gen, RoutingRequest req, EdgeFilter customEdgeFilter, PathProcessor pathProcessor) throws Exception
+	{
+		int nSegments = req.getCoordinates().length - 1;
+		GHResponse[] responses = new GHResponse[nSegments];
+		AtomicInteger nextSegment = new AtomicInteger(1);
+		int nWorkers = Math.min(nSegments, RoutingServiceSettings.getSegmentParallelism());
+
+		List<Future<Void>> futures = new ArrayList<Future<Void>>(nWorkers);
+
+		for (int w = 0; w < nWorkers; w++)
+		{
+			futures.add(ComputeExecutor.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws Exception {
+					RouteProcessContext routeProcCntx = new RouteProcessContext(pathProcessor);
+					routeProcCntx.setDeadline(req.getDeadline());
+					int i;
+					while ((i = nextSegment.getAndIncrement()) <= nSegments)
+						responses[i - 1] = computeSegment(rp, gen, req, i, null, customEdgeFilter, routeProcCntx);
+
+					return null;
+				}
+			}));
+		}
+
+		Exception error = null;
+		for (Future<Void> future : futures)
+		{
+			try
+			{
+				future.get();
+			}
+			catch (ExecutionException ex)
+			{
+				// let the other workers stop after their current segment
+				nextSegment.set(nSegments + 1);
+
+				if (error == null)
+					error = ex.getCause() instanceof Exception ? (Exception)ex.getCause() : ex;
+			}
+		}
+
+		if (error != null)
+			throw error;
+
+		return Arrays.asList(responses);
+	}
+
 	private double getHeadingDirection(GHResponse resp)
 	{
 		PointList points = resp.getBest().getPoints();
@@ -549,18 +720,91 @@ public class RoutingProfileManager {
 	{
 		int profileType = parameters.getRouteParameters().getProfileType();
 		RoutingProfile rp = _routeProfiles.getRouteProfile(profileType, false);
+		AdmissionQueue admissionQueue = admit(rp, RequestClass.ISOCHRONES, IsochronesErrorCodes.SERVICE_OVERLOADED);
 
-		return rp.buildIsochrone(parameters, attributes);
+		try
+		{
+			return rp.buildIsochrone(parameters, attributes);
+		}
+		finally
+		{
+			if (admissionQueue != null)
+				admissionQueue.release();
+		}
 	}
 	
 	public MatrixResult computeMatrix(MatrixRequest req) throws Exception
 	{
-		 RoutingProfile rp = _routeProfiles.getRouteProfile(req.getProfileType(), !req.getFlexibleMode());
-		 
-		 if (rp == null)
-			 throw new InternalServerException(MatrixErrorCodes.UNKNOWN, "Unable to find an appropriate routing profile.");
-		 
-		return rp.computeMatrix(req);
+		RoutingProfile rp = getMatrixProfile(req);
+		AdmissionQueue admissionQueue = admit(rp, RequestClass.MATRIX, MatrixErrorCodes.SERVICE_OVERLOADED);
+
+		try
+		{
+			return rp.computeMatrix(req);
+		}
+		finally
+		{
+			if (admissionQueue != null)
+				admissionQueue.release();
+		}
+	}
+
+	/**
+	 * Pins the graph of the profile answering the given matrix request, so that 
+	 * the parts of a matrix computed by {@link #computeMatrix(MatrixRequest, RoutingProfile.GraphGeneration)} 
+	 * refer to the same graph. The generation must be released by the caller.
+	 */
+	public RoutingProfile.GraphGeneration acquireMatrixGraph(MatrixRequest req) throws Exception
+	{
+		return getMatrixProfile(req).acquireGraph();
+	}
+
+	/**
+	 * Computes a matrix on a graph pinned with {@link #acquireMatrixGraph(MatrixRequest)}.
+	 */
+	public MatrixResult computeMatrix(MatrixRequest req, RoutingProfile.GraphGeneration gen) throws Exception
+	{
+		RoutingProfile rp = getMatrixProfile(req);
+		AdmissionQueue admissionQueue = admit(rp, RequestClass.MATRIX, MatrixErrorCodes.SERVICE_OVERLOADED);
+
+		try
+		{
+			return rp.computeMatrix(gen, req);
+		}
+		finally
+		{
+			if (admissionQueue != null)
+				admissionQueue.release();
+		}
+	}
+
+	/**
+	 * Computes a block of a matrix job on a graph pinned with {@link #acquireMatrixGraph(MatrixRequest)}.
+	 * Jobs are limited by the executors of the job manager instead of the admission
+	 * queues, so that a burst of interactive requests cannot fail a job that has been
+	 * running for hours.
+	 */
+	public MatrixResult computeMatrixJobBlock(MatrixRequest req, RoutingProfile.GraphGeneration gen, MatrixSearchContextBuilder builder) throws Exception
+	{
+		return getMatrixProfile(req).computeMatrix(gen, req, builder);
+	}
+
+	/**
+	 * Creates the builder of the search contexts shared by the blocks of a matrix job.
+	 */
+	public MatrixSearchContextBuilder createMatrixJobContextBuilder(MatrixRequest req, RoutingProfile.GraphGeneration gen) throws Exception
+	{
+		return getMatrixProfile(req).createMatrixJobContextBuilder(gen, req);
+	}
+
+	private RoutingProfile getMatrixProfile(MatrixRequest req) throws Exception
+	{
+		RoutingProfile rp = _routeProfiles.getRouteProfile(req.getProfileType(), !req.getFlexibleMode());
+
+		if (rp == null)
+			throw new InternalServerException(MatrixErrorCodes.UNKNOWN, "Unable to find an appropriate routing profile.");
+
+		return rp;
 	}
 	
 	public RouteOptimizationResult computeOptimizedRoutes(RouteOptimizationRequest req) throws Exception
@@ -569,7 +813,32 @@ public class RoutingProfileManager {
 		 
 		 if (rp == null)
 			 throw new InternalServerException(OptimizationErrorCodes.UNKNOWN, "Unable to find an appropriate routing profile.");
-		 
-		 return rp.computeOptimizedRoutes(req);
+
+		// the costs of an optimization are dominated by its matrix
+		AdmissionQueue admissionQueue = admit(rp, RequestClass.MATRIX, OptimizationErrorCodes.SERVICE_OVERLOADED);
+
+		try
+		{
+			return rp.computeOptimizedRoutes(req);
+		}
+		finally
+		{
+			if (admissionQueue != null)
+				admissionQueue.release();
+		}
+	}
+
+	/**
+	 * Waits until the profile admits another search of the given class. Returns
+	 * the queue which has to be released after the search or null if the class 
+	 * is not limited.
+	 */
+	private static AdmissionQueue admit(RoutingProfile rp, RequestClass requestClass, int errorCode) throws Exception
+	{
+		AdmissionQueue admissionQueue = rp.getAdmissionQueue(requestClass);
+		if (admissionQueue != null)
+			admissionQueue.acquire(errorCode);
+
+		return admissionQueue;
 	}
 }
@@ -41,11 +41,11 @@ import java.util.logging.Logger;
 
 import org.apache.commons.io.FileUtils;
 
-import com.graphhopper.GraphHopper;
 import com.graphhopper.storage.StorableProperties;
 import com.graphhopper.util.Helper;
 
 import heigit.ors.routing.RoutingProfilesCollection;
+import heigit.ors.routing.graphhopper.extensions.ORSGraphHopper;
 import heigit.ors.routing.configuration.RouteProfileConfiguration;
 import heigit.ors.routing.configuration.RouteUpdateConfiguration;
 import heigit.ors.routing.traffic.RealTrafficDataProvider;
@@ -250,27 +250,13 @@ public class RoutingProfilesUpdater {
 				File file = new File(osmFile);
 				String newFileStamp = Long.toString(file.length());
 
-				String tempGraphLocation = Paths.get(m_config.WorkingDirectory, "graph").toString();
-
-				try
-				{
-					// Clear directory from a previous build
-					File fileGraph = new File(tempGraphLocation);
-					if (fileGraph.exists())
-						FileUtils.deleteDirectory(fileGraph);	
-				}
-				catch(Exception ex)
-				{}
-
-				FileUtility.makeDirectory(tempGraphLocation);
-
 				RoutingProfileLoadContext loadCntx = new RoutingProfileLoadContext();
 				int nUpdatedProfiles = 0;
 
 				for (RoutingProfile profile : m_routeProfiles.getUniqueProfiles()) {
 					RouteProfileConfiguration rpc = profile.getConfiguration();
 
-					Path pathTimestamp = Paths.get(rpc.getGraphPath(), "stamp.txt");
+					Path pathTimestamp = Paths.get(profile.getGraphLocation(), "stamp.txt");
 					File file2 = pathTimestamp.toFile();
 					if (file2.exists()) {
 						String oldFileStamp = FileUtils.readFileToString(file2);
@@ -294,15 +280,22 @@ public class RoutingProfilesUpdater {
 						}
 					}
 
+					String versionLocation = null;
+					boolean activated = false;
+
 					try {
 						m_updateStatus = "preparing profile '" + rpc.getProfiles() +"'";
 
+						// the graph is built next to the current one and activated without copying it
+						versionLocation = GraphVersions.createVersion(rpc.getGraphPath());
+
 						RouteProfileConfiguration rpcNew = rpc.clone();
-						rpcNew.setGraphPath(tempGraphLocation);
-						GraphHopper gh = RoutingProfile.initGraphHopper(osmFile, rpcNew, RoutingProfileManager.getInstance().getProfiles(), loadCntx);
+						rpcNew.setGraphPath(versionLocation);
+						ORSGraphHopper gh = RoutingProfile.initGraphHopper(osmFile, rpcNew, RoutingProfileManager.getInstance().getProfiles(), loadCntx);
 
 						if (gh != null) {
 							profile.updateGH(gh);
+							activated = true;
 
 							if (RealTrafficDataProvider.getInstance().isInitialized())
 							{
@@ -314,6 +307,16 @@ public class RoutingProfilesUpdater {
 						}
 					} catch (Exception ex) {
 						LOGGER.severe("Failed to update graph profile. Message:" + ex.getMessage() + "; StackTrace: " +	StackTraceUtility.getStackTrace(ex));
+
+						if (versionLocation != null && !activated)
+						{
+							try
+							{
+								GraphVersions.remove(rpc.getGraphPath(), versionLocation);
+							}
+							catch(Exception ex2)
+							{}
+						}
 					}
 
 					m_updateStatus = null;
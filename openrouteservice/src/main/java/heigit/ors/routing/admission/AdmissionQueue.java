@@ -0,0 +1,212 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.admission;
+
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import heigit.ors.exceptions.ServiceUnavailableException;
+
+/**
+ * Limits the number of searches of one request class that run at the same 
+ * time on a routing profile. Requests beyond the limit wait in a bounded queue
+ * and are rejected when the queue is full or when they have waited longer than
+ * the configured time, so that a burst of requests fails fast instead of 
+ * exhausting the heap and the worker threads.
+ */
+public class AdmissionQueue 
+{
+	private final RequestClass _requestClass;
+	private final int _maxConcurrent;
+	private final int _queueSize;
+	private final long _maxWait;
+	private final Semaphore _permits;
+	private final AtomicInteger _waiting = new AtomicInteger();
+
+	private final AtomicLong _admitted = new AtomicLong();
+	private final AtomicLong _rejected = new AtomicLong();
+	private final AtomicLong _queued = new AtomicLong();
+	private final AtomicLong _totalWaitTime = new AtomicLong();
+	private final AtomicLong _maxWaitTime = new AtomicLong();
+
+	/**
+	 * @param maxConcurrent the number of searches that may run at the same time
+	 * @param queueSize the number of requests that may wait for a free slot
+	 * @param maxWait the time in milliseconds a request may wait for a free slot
+	 */
+	public AdmissionQueue(RequestClass requestClass, int maxConcurrent, int queueSize, long maxWait)
+	{
+		_requestClass = requestClass;
+		_maxConcurrent = maxConcurrent;
+		_queueSize = queueSize;
+		_maxWait = maxWait;
+		_permits = new Semaphore(maxConcurrent, true);
+	}
+
+	/**
+	 * Creates a queue from the parameters max_concurrent, queue_size and max_wait
+	 * of the configuration of a profile.
+	 */
+	public static AdmissionQueue create(RequestClass requestClass, Map<String, String> params)
+	{
+		int maxConcurrent = Integer.parseInt(params.getOrDefault("max_concurrent", "0"));
+		if (maxConcurrent <= 0)
+			return null;
+
+		int queueSize = Integer.parseInt(params.getOrDefault("queue_size", "0"));
+		long maxWait = Long.parseLong(params.getOrDefault("max_wait", "10000"));
+
+		return new AdmissionQueue(requestClass, maxConcurrent, queueSize, maxWait);
+	}
+
+	public RequestClass getRequestClass()
+	{
+		return _requestClass;
+	}
+
+	/**
+	 * Waits for a free slot and throws a {@link ServiceUnavailableException} 
+	 * with the given error code if the request is not admitted. Every successful
+	 * call must be followed by a call to {@link #release()}.
+	 */
+	public void acquire(int errorCode) throws ServiceUnavailableException
+	{
+		try
+		{
+			// a zero timeout respects the waiting requests, unlike tryAcquire()
+			if (_permits.tryAcquire(0, TimeUnit.MILLISECONDS))
+			{
+				_admitted.incrementAndGet();
+				return;
+			}
+
+			if (_waiting.incrementAndGet() > _queueSize)
+			{
+				_waiting.decrementAndGet();
+				throw reject(errorCode);
+			}
+
+			long startTime = System.nanoTime();
+			boolean admitted = false;
+
+			try
+			{
+				admitted = _permits.tryAcquire(_maxWait, TimeUnit.MILLISECONDS);
+			}
+			finally
+			{
+				_waiting.decrementAndGet();
+				recordWaitTime((System.nanoTime() - startTime) / 1000000);
+			}
+
+			if (!admitted)
+				throw reject(errorCode);
+
+			_admitted.incrementAndGet();
+		}
+		catch (InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw reject(errorCode);
+		}
+	}
+
+	public void release()
+	{
+		_permits.release();
+	}
+
+	private ServiceUnavailableException reject(int errorCode)
+	{
+		_rejected.incrementAndGet();
+
+		int retryAfter = (int)Math.max(1, (_maxWait + 999) / 1000);
+		return new ServiceUnavailableException(errorCode, "The server is currently processing too many " + _requestClass.getName() + " requests for this profile.", retryAfter);
+	}
+
+	private void recordWaitTime(long waitTime)
+	{
+		_queued.incrementAndGet();
+		_totalWaitTime.addAndGet(waitTime);
+
+		long max = _maxWaitTime.get();
+		while (waitTime > max && !_maxWaitTime.compareAndSet(max, waitTime))
+			max = _maxWaitTime.get();
+	}
+
+	public int getMaximumConcurrent()
+	{
+		return _maxConcurrent;
+	}
+
+	public int getQueueSize()
+	{
+		return _queueSize;
+	}
+
+	/**
+	 * Returns the number of searches that are running at the moment.
+	 */
+	public int getRunning()
+	{
+		return _maxConcurrent - _permits.availablePermits();
+	}
+
+	public int getWaiting()
+	{
+		return _waiting.get();
+	}
+
+	public long getAdmitted()
+	{
+		return _admitted.get();
+	}
+
+	public long getRejected()
+	{
+		return _rejected.get();
+	}
+
+	/**
+	 * Returns the number of requests that had to wait for a free slot.
+	 */
+	public long getQueued()
+	{
+		return _queued.get();
+	}
+
+	/**
+	 * Returns the average time in milliseconds the queued requests have waited.
+	 */
+	public double getAverageWaitTime()
+	{
+		long queued = _queued.get();
+		return queued == 0 ? 0 : (double)_totalWaitTime.get() / queued;
+	}
+
+	public long getMaximumWaitTime()
+	{
+		return _maxWaitTime.get();
+	}
+}
@@ -30,6 +30,7 @@ import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.EdgeExplorer;
 import com.graphhopper.util.EdgeIterator;
 
+import heigit.ors.common.Deadline;
 import heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntry;
 
 public abstract class AbstractManyToManyRoutingAlgorithm implements ManyToManyRoutingAlgorithm {
@@ -42,6 +43,8 @@ public abstract class AbstractManyToManyRoutingAlgorithm implements ManyToManyRo
 	protected EdgeExplorer _outEdgeExplorer;
 	protected int _maxVisitedNodes = Integer.MAX_VALUE;
 	private EdgeFilter _additionalEdgeFilter;
+	private Deadline _deadline = Deadline.NONE;
+	private int _deadlineCounter;
 
 	/**
 	 * @param graph
@@ -71,6 +74,20 @@ public abstract class AbstractManyToManyRoutingAlgorithm implements ManyToManyRo
 		return this;
 	}
 
+	public void setDeadline(Deadline deadline) {
+		_deadline = deadline;
+	}
+
+	/**
+	 * Called once per settled node, checks the deadline every {@link Deadline#CHECK_INTERVAL} calls.
+	 */
+	protected void checkDeadline() {
+		if (++_deadlineCounter == Deadline.CHECK_INTERVAL) {
+			_deadlineCounter = 0;
+			_deadline.check();
+		}
+	}
+
 	protected boolean accept(EdgeIterator iter, int prevOrNextEdgeId) {
 		if (!_traversalMode.hasUTurnSupport() && iter.getEdge() == prevOrNextEdgeId)
 			return false;
@@ -31,6 +31,8 @@ import com.graphhopper.storage.SPTEntry;
 import com.graphhopper.util.EdgeExplorer;
 import com.graphhopper.util.EdgeIterator;
 
+import heigit.ors.common.Deadline;
+
 public abstract class AbstractOneToManyRoutingAlgorithm implements OneToManyRoutingAlgorithm {
     protected final Graph graph;
     protected final Weighting weighting;
@@ -41,6 +43,8 @@ public abstract class AbstractOneToManyRoutingAlgorithm implements OneToManyRout
     protected EdgeExplorer outEdgeExplorer;
     protected int maxVisitedNodes = Integer.MAX_VALUE;
     private EdgeFilter additionalEdgeFilter;
+    private Deadline deadline = Deadline.NONE;
+    private int deadlineCounter;
 
     /**
      * @param graph         specifies the graph where this algorithm will run on
@@ -67,6 +71,20 @@ public abstract class AbstractOneToManyRoutingAlgorithm implements OneToManyRout
         return this;
     }
 
+    public void setDeadline(Deadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Called once per settled node, checks the deadline every {@link Deadline#CHECK_INTERVAL} calls.
+     */
+    protected void checkDeadline() {
+        if (++deadlineCounter == Deadline.CHECK_INTERVAL) {
+            deadlineCounter = 0;
+            deadline.check();
+        }
+    }
+
     protected boolean accept(EdgeIterator iter, int prevOrNextEdgeId) {
         if (!traversalMode.hasUTurnSupport() && iter.getEdge() == prevOrNextEdgeId)
             return false;
@@ -0,0 +1,243 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms;
+
+import java.util.Arrays;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.QueryGraph;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.CHGraph;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+import heigit.ors.common.Deadline;
+import heigit.ors.routing.graphhopper.extensions.edgefilters.CHLevelEdgeFilter;
+import heigit.ors.routing.graphhopper.extensions.edgefilters.DownwardSearchEdgeFilter;
+import heigit.ors.routing.graphhopper.extensions.edgefilters.UpwardSearchEdgeFilter;
+
+/**
+ * Bucket-based many-to-many algorithm on a contraction hierarchy. A backward
+ * upward search from every target stores (target, weight) pairs in buckets at
+ * the settled nodes. The forward upward search of a source then only scans the
+ * buckets of the nodes it settles.
+ */
+public class BucketManyToManyAlgorithm {
+	private final Graph _graph;
+	private final Weighting _weighting;
+	private final EdgeExplorer _explorer;
+	private final UpwardSearchEdgeFilter _upwardEdgeFilter;
+	private final DownwardSearchEdgeFilter _downwardEdgeFilter;
+	private final IndexedMinHeap _heap;
+	private int _visitedNodes;
+	private double _maxWeight = Double.MAX_VALUE;
+	private Deadline _deadline = Deadline.NONE;
+
+	private int[] _targets;
+	private IntObjectMap<SPTEntry>[] _targetTrees;
+	// buckets are linked lists stored in flat arrays, _bucketHeads maps a node to its first entry
+	private IntIntHashMap _bucketHeads;
+	private int[] _bucketTargets;
+	private double[] _bucketWeights;
+	private int[] _bucketNext;
+	private int _bucketSize;
+
+	public BucketManyToManyAlgorithm(Graph graph, Weighting weighting) {
+		_graph = graph;
+		_weighting = weighting;
+
+		CHGraph chGraph = null;
+		if (graph instanceof CHGraph)
+			chGraph = (CHGraph) graph;
+		else if (graph instanceof QueryGraph)
+			chGraph = (CHGraph) ((QueryGraph) graph).getMainGraph();
+
+		_upwardEdgeFilter = new UpwardSearchEdgeFilter(chGraph, weighting.getFlagEncoder());
+		_downwardEdgeFilter = new DownwardSearchEdgeFilter(chGraph, weighting.getFlagEncoder());
+		_explorer = graph.createEdgeExplorer();
+		_heap = new IndexedMinHeap(200);
+	}
+
+	/**
+	 * Limits the searches to paths with a weight of at most maxWeight. Targets
+	 * beyond the limit are returned as not reachable. Must be called before
+	 * {@link #prepare(int[])}.
+	 */
+	public void setMaxWeight(double maxWeight) {
+		_maxWeight = maxWeight;
+	}
+
+	public void setDeadline(Deadline deadline) {
+		_deadline = deadline;
+	}
+
+	/**
+	 * Runs the backward searches of all targets and fills the buckets. Targets
+	 * with a node id of -1 are skipped.
+	 */
+	@SuppressWarnings("unchecked")
+	public void prepare(int[] targets) {
+		_targets = targets;
+		_targetTrees = new IntObjectMap[targets.length];
+		_bucketHeads = new IntIntHashMap(targets.length * 100);
+		_bucketSize = 0;
+		_bucketTargets = new int[targets.length * 100];
+		_bucketWeights = new double[_bucketTargets.length];
+		_bucketNext = new int[_bucketTargets.length];
+
+		for (int i = 0; i < targets.length; i++) {
+			if (targets[i] < 0)
+				continue;
+
+			IntObjectMap<SPTEntry> tree = runSearch(targets[i], _downwardEdgeFilter, true);
+			_targetTrees[i] = tree;
+
+			for (IntObjectCursor<SPTEntry> c : tree)
+				addBucketEntry(c.key, i, c.value.weight);
+		}
+	}
+
+	/**
+	 * Returns for every target the shortest path tree entry of the target node
+	 * with its parents leading back to the source, or null if the target cannot
+	 * be reached.
+	 */
+	public SPTEntry[] calcPaths(int from) {
+		IntObjectMap<SPTEntry> sourceTree = runSearch(from, _upwardEdgeFilter, false);
+
+		double[] bestWeights = new double[_targets.length];
+		int[] meetingNodes = new int[_targets.length];
+		Arrays.fill(bestWeights, Double.POSITIVE_INFINITY);
+
+		for (IntObjectCursor<SPTEntry> c : sourceTree) {
+			int index = _bucketHeads.getOrDefault(c.key, -1);
+
+			while (index >= 0) {
+				int target = _bucketTargets[index];
+				double weight = c.value.weight + _bucketWeights[index];
+				if (weight < bestWeights[target] && weight <= _maxWeight) {
+					bestWeights[target] = weight;
+					meetingNodes[target] = c.key;
+				}
+
+				index = _bucketNext[index];
+			}
+		}
+
+		SPTEntry[] res = new SPTEntry[_targets.length];
+
+		for (int i = 0; i < _targets.length; i++) {
+			if (Double.isInfinite(bestWeights[i]))
+				continue;
+
+			res[i] = joinPaths(sourceTree.get(meetingNodes[i]), _targetTrees[i].get(meetingNodes[i]));
+		}
+
+		return res;
+	}
+
+	public int getVisitedNodes() {
+		return _visitedNodes;
+	}
+
+	/**
+	 * Appends the path from the meeting node to the target, which is stored in
+	 * reverse in the backward tree, to the path from the source.
+	 */
+	private SPTEntry joinPaths(SPTEntry sourceEntry, SPTEntry targetEntry) {
+		SPTEntry res = sourceEntry;
+		double weight = sourceEntry.weight;
+
+		while (EdgeIterator.Edge.isValid(targetEntry.edge)) {
+			SPTEntry next = targetEntry.parent;
+			weight += targetEntry.weight - next.weight;
+
+			SPTEntry entry = new SPTEntry(targetEntry.edge, next.adjNode, weight);
+			entry.parent = res;
+			res = entry;
+			targetEntry = next;
+		}
+
+		return res;
+	}
+
+	private IntObjectMap<SPTEntry> runSearch(int startNode, CHLevelEdgeFilter edgeFilter, boolean reverse) {
+		IntObjectMap<SPTEntry> tree = new GHIntObjectHashMap<SPTEntry>(100);
+		SPTEntry currEntry = new SPTEntry(EdgeIterator.NO_EDGE, startNode, 0);
+		tree.put(startNode, currEntry);
+
+		_heap.clear();
+		_heap.update(startNode, 0);
+
+		while (!_heap.isEmpty()) {
+			currEntry = tree.get(_heap.poll());
+			if (++_visitedNodes % Deadline.CHECK_INTERVAL == 0)
+				_deadline.check();
+
+			EdgeIterator iter = _explorer.setBaseNode(currEntry.adjNode);
+			edgeFilter.setBaseNode(currEntry.adjNode);
+
+			while (iter.next()) {
+				if (!edgeFilter.accept(iter))
+					continue;
+
+				double weight = _weighting.calcWeight(iter, reverse, EdgeIterator.NO_EDGE) + currEntry.weight;
+				if (Double.isInfinite(weight) || weight > _maxWeight)
+					continue;
+
+				SPTEntry entry = tree.get(iter.getAdjNode());
+				if (entry == null) {
+					entry = new SPTEntry(iter.getEdge(), iter.getAdjNode(), weight);
+					entry.parent = currEntry;
+					tree.put(iter.getAdjNode(), entry);
+					_heap.update(iter.getAdjNode(), weight);
+				} else if (entry.weight > weight) {
+					entry.edge = iter.getEdge();
+					entry.weight = weight;
+					entry.parent = currEntry;
+					_heap.update(iter.getAdjNode(), weight);
+				}
+			}
+		}
+
+		return tree;
+	}
+
+	private void addBucketEntry(int node, int target, double weight) {
+		if (_bucketSize == _bucketTargets.length) {
+			int capacity = _bucketSize + (_bucketSize >> 1) + 16;
+			_bucketTargets = Arrays.copyOf(_bucketTargets, capacity);
+			_bucketWeights = Arrays.copyOf(_bucketWeights, capacity);
+			_bucketNext = Arrays.copyOf(_bucketNext, capacity);
+		}
+
+		int index = _bucketSize++;
+		_bucketTargets[index] = target;
+		_bucketWeights[index] = weight;
+		_bucketNext[index] = _bucketHeads.getOrDefault(node, -1);
+		_bucketHeads.put(node, index);
+	}
+}
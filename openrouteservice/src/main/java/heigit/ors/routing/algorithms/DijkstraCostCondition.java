@@ -26,21 +26,107 @@ import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.SPTEntry;
 import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+import heigit.ors.common.Deadline;
 
 public class DijkstraCostCondition extends Dijkstra
 {
 	private double weightLimit = -1;
+	private Deadline deadline = Deadline.NONE;
+	private int deadlineCounter;
+	private boolean _reverseDirection;
+	private IndexedMinHeap _fromHeap;
+
     public DijkstraCostCondition(Graph g, Weighting weighting, double maxCost, boolean reverseDirection, TraversalMode tMode)
     {
         super(g, weighting, tMode, -1);
 
         initCollections(1000);
         this.weightLimit = maxCost;
+        _reverseDirection = reverseDirection;
         setReverseDirection(reverseDirection);
     }
 
+    @Override
+    protected void initCollections(int size) {
+        super.initCollections(size);
+        _fromHeap = new IndexedMinHeap(size);
+    }
+
+    /**
+     * Same search as {@link Dijkstra#runAlgo()}, but the open set is an {@link IndexedMinHeap} keyed by
+     * traversal id, so improving an entry is a decrease-key instead of a remove and re-add. Only the
+     * queue handling differs, DijkstraCostConditionTest checks the weights against the stock search.
+     */
+    @Override
+    protected void runAlgo() {
+        EdgeExplorer explorer = _reverseDirection ? inEdgeExplorer : outEdgeExplorer;
+        while (true) {
+            visitedNodes++;
+            if (isMaxVisitedNodesExceeded() || finished())
+                break;
+
+            int startNode = currEdge.adjNode;
+            EdgeIterator iter = explorer.setBaseNode(startNode);
+            while (iter.next()) {
+                if (!accept(iter, currEdge.edge))
+                    continue;
+
+                int traversalId = traversalMode.createTraversalId(iter, _reverseDirection);
+                double tmpWeight = weighting.calcWeight(iter, _reverseDirection, currEdge.edge) + currEdge.weight;
+                if (Double.isInfinite(tmpWeight))
+                    continue;
+
+                SPTEntry nEdge = fromMap.get(traversalId);
+                if (nEdge == null) {
+                    nEdge = new SPTEntry(iter.getEdge(), iter.getAdjNode(), tmpWeight);
+                    nEdge.parent = currEdge;
+                    fromMap.put(traversalId, nEdge);
+                    _fromHeap.update(traversalId, tmpWeight);
+                } else if (nEdge.weight > tmpWeight) {
+                    nEdge.edge = iter.getEdge();
+                    nEdge.weight = tmpWeight;
+                    nEdge.parent = currEdge;
+                    _fromHeap.update(traversalId, tmpWeight);
+                } else
+                    continue;
+
+                updateBestPath(iter, nEdge, traversalId);
+            }
+
+            if (_fromHeap.isEmpty())
+                break;
+
+            currEdge = fromMap.get(_fromHeap.poll());
+            if (currEdge == null)
+                throw new AssertionError("Empty edge cannot happen");
+        }
+    }
+
+    public void setDeadline(Deadline deadline)
+    {
+    	this.deadline = deadline;
+    }
+
+    /**
+     * Called by the search once per settled node, which is also where the deadline is checked.
+     */
     @Override
     protected boolean finished() {
+        if (isFinished())
+            return true;
+
+        if (++deadlineCounter == Deadline.CHECK_INTERVAL) {
+            deadlineCounter = 0;
+            deadline.check();
+        }
+
+        return false;
+    }
+
+    private boolean isFinished() {
         return  super.finished() || currEdge.weight > weightLimit;
     }
     
@@ -51,7 +137,7 @@ public class DijkstraCostCondition extends Dijkstra
     
     public SPTEntry getCurrentEdge()
     {
-    	if (currEdge == null || !finished())
+    	if (currEdge == null || !isFinished())
     		return  null;
     	else
     		return currEdge;
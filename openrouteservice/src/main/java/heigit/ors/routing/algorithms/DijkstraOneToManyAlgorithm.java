@@ -30,17 +30,16 @@ import com.graphhopper.util.EdgeExplorer;
 import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.Parameters;
 
-import java.util.PriorityQueue;
-
 public class DijkstraOneToManyAlgorithm extends AbstractOneToManyRoutingAlgorithm {
     protected IntObjectMap<SPTEntry> _fromMap;
-    protected PriorityQueue<SPTEntry> _fromHeap;
+    protected IndexedMinHeap _fromHeap;
     protected SPTEntry _currEdge;
     private int _visitedNodes;
     
     private int _targetsFound = 0;
     private IntObjectMap<SPTEntry> _targets;
     private int _targetsCount = 0;
+    private double _maxWeight = Double.MAX_VALUE;
 
     public DijkstraOneToManyAlgorithm(Graph graph, Weighting weighting, TraversalMode tMode) {
         super(graph, weighting, tMode);
@@ -49,7 +48,7 @@ public class DijkstraOneToManyAlgorithm extends AbstractOneToManyRoutingAlgorith
     }
 
     protected void initCollections(int size) {
-        _fromHeap = new PriorityQueue<SPTEntry>(size);
+        _fromHeap = new IndexedMinHeap(size);
         _fromMap = new GHIntObjectHashMap<SPTEntry>(size);
         _targets = new GHIntObjectHashMap<SPTEntry>();
     }
@@ -59,6 +58,21 @@ public class DijkstraOneToManyAlgorithm extends AbstractOneToManyRoutingAlgorith
     	_fromHeap.clear();
     	_fromMap.clear();
     	_targetsFound = 0;
+    	_visitedNodes = 0;
+    }
+    
+    /**
+     * Limits the search to paths with a weight of at most maxWeight. Targets
+     * beyond the limit are left unreached.
+     */
+    public void setMaxWeight(double maxWeight)
+    {
+    	_maxWeight = maxWeight;
+    }
+    
+    public boolean hasMaxWeight()
+    {
+    	return _maxWeight < Double.MAX_VALUE;
     }
     
     public int getFoundTargets()
@@ -116,6 +130,8 @@ public class DijkstraOneToManyAlgorithm extends AbstractOneToManyRoutingAlgorith
             if (isMaxVisitedNodesExceeded() || finished())
                 break;
 
+            checkDeadline();
+
             int startNode = _currEdge.adjNode;
             EdgeIterator iter = explorer.setBaseNode(startNode);
             while (iter.next()) {
@@ -124,7 +140,7 @@ public class DijkstraOneToManyAlgorithm extends AbstractOneToManyRoutingAlgorith
 
                 int traversalId = traversalMode.createTraversalId(iter, false);
                 double tmpWeight = weighting.calcWeight(iter, false, _currEdge.edge) + _currEdge.weight;
-                if (Double.isInfinite(tmpWeight))
+                if (Double.isInfinite(tmpWeight) || tmpWeight > _maxWeight)
                     continue;
 
                 SPTEntry nEdge = _fromMap.get(traversalId);
@@ -132,13 +148,12 @@ public class DijkstraOneToManyAlgorithm extends AbstractOneToManyRoutingAlgorith
                     nEdge = new SPTEntry(iter.getEdge(), iter.getAdjNode(), tmpWeight);
                     nEdge.parent = _currEdge;
                     _fromMap.put(traversalId, nEdge);
-                    _fromHeap.add(nEdge);
+                    _fromHeap.update(traversalId, tmpWeight);
                 } else if (nEdge.weight > tmpWeight) {
-                    _fromHeap.remove(nEdge);
                     nEdge.edge = iter.getEdge();
                     nEdge.weight = tmpWeight;
                     nEdge.parent = _currEdge;
-                    _fromHeap.add(nEdge);
+                    _fromHeap.update(traversalId, tmpWeight);
                 } else
                     continue;
             }
@@ -146,7 +161,7 @@ public class DijkstraOneToManyAlgorithm extends AbstractOneToManyRoutingAlgorith
             if (_fromHeap.isEmpty())
                 break;
 
-            _currEdge = _fromHeap.poll();
+            _currEdge = _fromMap.get(_fromHeap.poll());
             if (_currEdge == null)
                 throw new AssertionError("Empty edge cannot happen");
         }
@@ -0,0 +1,177 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms;
+
+import com.carrotsearch.hppc.IntIntHashMap;
+
+/**
+ * Binary min-heap of int keys (node, traversal or slot ids) ordered by a double
+ * value. The heap position of every key is tracked, so that changing the
+ * value of an already queued key costs O(log n) instead of the O(n) remove
+ * of {@link java.util.PriorityQueue}.
+ */
+public class IndexedMinHeap {
+	private int[] _keys;
+	private double[] _values;
+	private IntIntHashMap _positions;
+	private int _size;
+
+	public IndexedMinHeap(int capacity) {
+		capacity = Math.max(capacity, 16);
+		_keys = new int[capacity];
+		_values = new double[capacity];
+		_positions = new IntIntHashMap(capacity);
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	public boolean isEmpty() {
+		return _size == 0;
+	}
+
+	public boolean contains(int key) {
+		return _positions.containsKey(key);
+	}
+
+	public void clear() {
+		_size = 0;
+		_positions.clear();
+	}
+
+	/**
+	 * Inserts the key or, if it is already queued, moves it to the position
+	 * matching its new value.
+	 */
+	public void update(int key, double value) {
+		int index = _positions.indexOf(key);
+
+		if (_positions.indexExists(index)) {
+			int pos = _positions.indexGet(index);
+			double oldValue = _values[pos];
+			_values[pos] = value;
+
+			if (value < oldValue)
+				siftUp(pos);
+			else if (value > oldValue)
+				siftDown(pos);
+		} else {
+			if (_size == _keys.length)
+				grow();
+
+			int pos = _size++;
+			_keys[pos] = key;
+			_values[pos] = value;
+			_positions.indexInsert(index, key, pos);
+			siftUp(pos);
+		}
+	}
+
+	public int peekKey() {
+		if (_size == 0)
+			throw new IllegalStateException("Heap is empty");
+
+		return _keys[0];
+	}
+
+	public double peekValue() {
+		if (_size == 0)
+			throw new IllegalStateException("Heap is empty");
+
+		return _values[0];
+	}
+
+	/**
+	 * Removes the key with the smallest value and returns it.
+	 */
+	public int poll() {
+		int key = peekKey();
+		_positions.remove(key);
+
+		_size--;
+		if (_size > 0) {
+			_keys[0] = _keys[_size];
+			_values[0] = _values[_size];
+			_positions.put(_keys[0], 0);
+			siftDown(0);
+		}
+
+		return key;
+	}
+
+	private void siftUp(int pos) {
+		int key = _keys[pos];
+		double value = _values[pos];
+
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (_values[parent] <= value)
+				break;
+
+			moveTo(parent, pos);
+			pos = parent;
+		}
+
+		_keys[pos] = key;
+		_values[pos] = value;
+		_positions.put(key, pos);
+	}
+
+	private void siftDown(int pos) {
+		int key = _keys[pos];
+		double value = _values[pos];
+		int half = _size >>> 1;
+
+		while (pos < half) {
+			int child = 2 * pos + 1;
+			int right = child + 1;
+			if (right < _size && _values[right] < _values[child])
+				child = right;
+
+			if (value <= _values[child])
+				break;
+
+			moveTo(child, pos);
+			pos = child;
+		}
+
+		_keys[pos] = key;
+		_values[pos] = value;
+		_positions.put(key, pos);
+	}
+
+	private void moveTo(int from, int to) {
+		_keys[to] = _keys[from];
+		_values[to] = _values[from];
+		_positions.put(_keys[to], to);
+	}
+
+	private void grow() {
+		int capacity = _keys.length + (_keys.length >> 1);
+		int[] keys = new int[capacity];
+		double[] values = new double[capacity];
+		System.arraycopy(_keys, 0, keys, 0, _size);
+		System.arraycopy(_values, 0, values, 0, _size);
+		_keys = keys;
+		_values = values;
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms;
+
+import java.util.List;
+
+import com.graphhopper.routing.AStarBidirection;
+import com.graphhopper.routing.AlgorithmOptions;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.RoutingAlgorithmFactory;
+import com.graphhopper.routing.lm.PrepareLandmarks;
+import com.graphhopper.routing.weighting.FastestWeighting;
+import com.graphhopper.routing.weighting.PriorityWeighting;
+import com.graphhopper.routing.weighting.ShortestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.PMap;
+
+/**
+ * Creates landmark based bidirectional A* algorithms for flexible requests.
+ * Landmarks are matched by the exact weighting of the request instead of the
+ * weighting name, so that custom weightings sharing the name of a prepared
+ * one (e.g. recommended or avoid hills on top of fastest) never receive
+ * inadmissible bounds. When the request weighting is known to be bounded from
+ * below by a multiple of the landmark weighting, the landmark bounds are
+ * scaled by that factor. Edge filters only remove edges and therefore keep
+ * the bounds admissible. All other requests fall back to dijkstrabi.
+ */
+public class LandmarksRoutingAlgorithmFactory implements RoutingAlgorithmFactory {
+	/** A priority weighting divides the fastest weight by a value between 0.5 and 1.5. */
+	private static final double PRIORITY_MIN_FACTOR = 1.0 / 1.5;
+	private static final double PRIORITY_MAX_FACTOR = 1.0 / 0.5;
+
+	private final List<PrepareLandmarks> _preparations;
+	private final RoutingAlgorithmFactory _fallbackFactory;
+
+	public LandmarksRoutingAlgorithmFactory(List<PrepareLandmarks> preparations, RoutingAlgorithmFactory fallbackFactory) {
+		_preparations = preparations;
+		_fallbackFactory = fallbackFactory;
+	}
+
+	@Override
+	public RoutingAlgorithm createAlgo(Graph g, AlgorithmOptions opts) {
+		Weighting weighting = opts.getWeighting();
+		PrepareLandmarks bestPreparation = null;
+		double bestFactor = 0.0;
+
+		if (!opts.getTraversalMode().isEdgeBased()) {
+			for (PrepareLandmarks preparation : _preparations) {
+				Weighting lmWeighting = preparation.getWeighting();
+				if (!lmWeighting.getFlagEncoder().toString().equals(weighting.getFlagEncoder().toString()))
+					continue;
+
+				double factor = getBoundFactor(weighting, lmWeighting);
+				if (factor > bestFactor) {
+					bestFactor = factor;
+					bestPreparation = preparation;
+				}
+			}
+		}
+
+		if (bestPreparation == null)
+			return _fallbackFactory.createAlgo(g, AlgorithmOptions.start(opts).algorithm("dijkstrabi").build());
+
+		AStarBidirection algo = new AStarBidirection(g, weighting, opts.getTraversalMode());
+		algo.setMaxVisitedNodes(opts.getMaxVisitedNodes());
+
+		// the landmark approximation is multiplied by the epsilon of the request
+		PMap hints = new PMap().merge(opts.getHints());
+		hints.put("astarbi.epsilon", bestFactor * opts.getHints().getDouble("astarbi.epsilon", 1.0));
+
+		return bestPreparation.getDecoratedAlgorithm(g, algo, AlgorithmOptions.start(opts).hints(hints).build());
+	}
+
+	/**
+	 * Returns the largest factor c with weighting(e) >= c * lmWeighting(e) for
+	 * every edge or 0 if no such factor is known.
+	 */
+	public static double getBoundFactor(Weighting weighting, Weighting lmWeighting) {
+		Class<?> weightingClass = weighting.getClass();
+		Class<?> lmWeightingClass = lmWeighting.getClass();
+
+		if (weightingClass == lmWeightingClass && (weightingClass == FastestWeighting.class || weightingClass == PriorityWeighting.class || weightingClass == ShortestWeighting.class))
+			return 1.0;
+		if (weightingClass == PriorityWeighting.class && lmWeightingClass == FastestWeighting.class)
+			return PRIORITY_MIN_FACTOR;
+		if (weightingClass == FastestWeighting.class && lmWeightingClass == PriorityWeighting.class)
+			return 1.0 / PRIORITY_MAX_FACTOR;
+
+		return 0.0;
+	}
+}
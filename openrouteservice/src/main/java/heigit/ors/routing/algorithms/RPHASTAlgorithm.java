@@ -20,10 +20,11 @@
  */
 package heigit.ors.routing.algorithms;
 
+import java.util.Arrays;
 import java.util.PriorityQueue;
 
-import com.carrotsearch.hppc.IntObjectMap;
-import com.graphhopper.coll.GHIntObjectHashMap;
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.coll.GHIntHashSet;
 import com.graphhopper.routing.QueryGraph;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.TraversalMode;
@@ -36,15 +37,17 @@ import com.graphhopper.util.EdgeIterator;
 import heigit.ors.routing.graphhopper.extensions.edgefilters.DownwardSearchEdgeFilter;
 import heigit.ors.routing.graphhopper.extensions.edgefilters.UpwardSearchEdgeFilter;
 import heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntry;
-import heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPEntryItem;
+import heigit.ors.routing.graphhopper.extensions.storages.MultiTreeSPStore;
 
 public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 	//private final Logger logger = LoggerFactory.getLogger(getClass());
 
-	private IntObjectMap<MultiTreeSPEntry> _bestWeightMapFrom;
-	private MultiTreeSPEntry _currFrom;
-	private MultiTreeSPEntry _currTo;
-	private PriorityQueue<MultiTreeSPEntry> _prioQueue;
+	private CHGraph _chGraph;
+	private MultiTreeSPStore _treeStore;
+	private int _storeCapacity;
+	private int _currFrom;
+	private int _currTo;
+	private IndexedMinHeap _prioQueue;
 	private UpwardSearchEdgeFilter _upwardEdgeFilter;
 	private DownwardSearchEdgeFilter _downwardEdgeFilter;
 	private SubGraph _targetGraph;
@@ -53,9 +56,8 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 	private int _visitedCountFrom;
 	private int _visitedCountTo;
 	private int _treeEntrySize;
+	private double _maxWeight = Double.MAX_VALUE;
 	
-	private MultiTreeSPEntryItem _msptItem;
-	private MultiTreeSPEntryItem _msptSubItem;
 	private boolean _addToQueue = false;
 	private double _edgeWeight, _entryWeight, _tmpWeight;
 	
@@ -73,6 +75,7 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 			QueryGraph qGraph = (QueryGraph) graph;
 			chGraph = (CHGraph) qGraph.getMainGraph();
 		}
+		_chGraph = chGraph;
 
 		setMaxVisitedNodes(Integer.MAX_VALUE);
 		FlagEncoder encoder = weighting.getFlagEncoder();
@@ -85,8 +88,17 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 	}
 
 	protected void initCollections(int size) {
-		_prioQueue = new PriorityQueue<MultiTreeSPEntry>(size);
-		_bestWeightMapFrom = new GHIntObjectHashMap<MultiTreeSPEntry>(size);
+		_prioQueue = new IndexedMinHeap(size);
+		_storeCapacity = size;
+	}
+
+	/**
+	 * Limits the search to paths with a weight of at most maxWeight. Trees
+	 * beyond the limit are not extended, so the targets they would reach are
+	 * returned as null.
+	 */
+	public void setMaxWeight(double maxWeight) {
+		_maxWeight = maxWeight;
 	}
 
 	@Override
@@ -94,36 +106,136 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 		_finishedFrom = false;
 		_finishedTo = false;
 		_prioQueue.clear();
-		_bestWeightMapFrom.clear();
+		if (_treeStore != null)
+			_treeStore.clear();
 	}
 
 	@Override
 	public void prepare(int[] sources, int[] targets) {
-		PriorityQueue<Integer> prioQueue = new PriorityQueue<>(100);
+		prepare(sources, createTargetGraph(targets));
+	}
+
+	/**
+	 * Prepares the search with a target graph that has already been built by
+	 * {@link #createTargetGraph(int[])}. The graph is only read during the
+	 * search, so several instances may share it.
+	 */
+	public void prepare(int[] sources, SubGraph targetGraph) {
 		_treeEntrySize = sources.length;
+		_targetGraph = targetGraph;
+		_treeStore = new MultiTreeSPStore(_treeEntrySize, _storeCapacity);
+	}
+
+	public SubGraph createTargetGraph(int[] targets) {
+		PriorityQueue<Integer> prioQueue = new PriorityQueue<>(100);
 
 		// Phase I: build shortest path tree from all target nodes to the
 		// highest node
-		_targetGraph = new SubGraph(_graph);
+		SubGraph targetGraph = new SubGraph(_graph);
+
+		addNodes(targetGraph, prioQueue, targets);
+		fillTargetGraph(targetGraph, prioQueue, _outEdgeExplorer, 0);
+
+		//if (logger.isInfoEnabled())
+		//	targetGraph.print();
+
+		return targetGraph;
+	}
+
+	/**
+	 * Builds the target graph of the given tower nodes on the CH graph itself,
+	 * so that it does not depend on the virtual nodes of a query graph and can
+	 * be reused by other requests.
+	 */
+	public SubGraph createTowerTargetGraph(int[] towerNodes) {
+		PriorityQueue<Integer> prioQueue = new PriorityQueue<>(100);
+		SubGraph targetGraph = new SubGraph(_chGraph);
+
+		addNodes(targetGraph, prioQueue, towerNodes);
+		fillTargetGraph(targetGraph, prioQueue, _chGraph.createEdgeExplorer(), 0);
 
-		addNodes(_targetGraph, prioQueue, targets);
+		return targetGraph;
+	}
+
+	/**
+	 * Builds the target graph from a shared target graph of the tower nodes
+	 * returned by {@link #getTowerNodes(int[])}. Only the edges leading to
+	 * virtual target nodes are added; the tower target graph is not modified.
+	 */
+	public SubGraph createTargetGraph(int[] targets, SubGraph towerTargetGraph) {
+		PriorityQueue<Integer> prioQueue = new PriorityQueue<>(100);
+		SubGraph targetGraph = new SubGraph(_graph, towerTargetGraph);
+		int maxNodes = _chGraph.getNodes();
+
+		for (int i = 0; i < targets.length; i++) {
+			if (targets[i] >= maxNodes) {
+				targetGraph.addEdge(targets[i], null, true);
+				prioQueue.add(targets[i]);
+			}
+		}
+
+		fillTargetGraph(targetGraph, prioQueue, _graph.createEdgeExplorer(), maxNodes);
+
+		return targetGraph;
+	}
+
+	/**
+	 * Returns the sorted ids of all target nodes that are tower nodes together
+	 * with the tower nodes next to the virtual target nodes.
+	 */
+	public int[] getTowerNodes(int[] targets) {
+		int maxNodes = _chGraph.getNodes();
+		GHIntHashSet towerNodes = new GHIntHashSet();
+		GHIntHashSet virtualNodes = new GHIntHashSet();
+		IntArrayList queue = new IntArrayList();
+
+		for (int i = 0; i < targets.length; i++) {
+			int nodeId = targets[i];
+			if (nodeId < 0)
+				continue;
+
+			if (nodeId < maxNodes)
+				towerNodes.add(nodeId);
+			else if (virtualNodes.add(nodeId))
+				queue.add(nodeId);
+		}
 
+		EdgeExplorer explorer = _graph.createEdgeExplorer();
+		while (!queue.isEmpty()) {
+			EdgeIterator iter = explorer.setBaseNode(queue.remove(queue.size() - 1));
+			while (iter.next()) {
+				int adjNode = iter.getAdjNode();
+				if (adjNode < maxNodes)
+					towerNodes.add(adjNode);
+				else if (virtualNodes.add(adjNode))
+					queue.add(adjNode);
+			}
+		}
+
+		int[] res = towerNodes.toArray();
+		Arrays.sort(res);
+
+		return res;
+	}
+
+	/**
+	 * Adds the downward edges of the queued nodes. The search does not continue
+	 * from nodes with ids below minNode.
+	 */
+	private void fillTargetGraph(SubGraph targetGraph, PriorityQueue<Integer> prioQueue, EdgeExplorer explorer, int minNode) {
 		while (!prioQueue.isEmpty()) {
 			int adjNode = prioQueue.poll();
-			EdgeIterator iter = _outEdgeExplorer.setBaseNode(adjNode);
+			EdgeIterator iter = explorer.setBaseNode(adjNode);
 			_downwardEdgeFilter.setBaseNode(adjNode);
 
 			while (iter.next()) {
 				if (!_downwardEdgeFilter.accept(iter))
 					continue;
 
-				if (_targetGraph.addEdge(adjNode, iter, true))
+				if (targetGraph.addEdge(adjNode, iter, true) && iter.getAdjNode() >= minNode)
 					prioQueue.add(iter.getAdjNode());
 			}
 		}
-
-		//if (logger.isInfoEnabled())
-		//	_targetGraph.print();
 	}
 
 	private void addNodes(SubGraph graph, PriorityQueue<Integer> prioQueue, int[] nodes) {
@@ -158,8 +270,10 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 		if (_prioQueue.isEmpty())
 			return false;
 
+		checkDeadline();
+
 		_currFrom = _prioQueue.poll();
-		fillEdgesUpward(_currFrom, _prioQueue, _bestWeightMapFrom, _outEdgeExplorer);
+		fillEdgesUpward(_currFrom, _prioQueue, _treeStore, _outEdgeExplorer);
 		_visitedCountFrom++;
 
 		return true;
@@ -169,8 +283,10 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 		if (_prioQueue.isEmpty())
 			return false;
 
+		checkDeadline();
+
 		_currTo = _prioQueue.poll();
-		fillEdgesDownward(_currTo, _prioQueue, _bestWeightMapFrom, _outEdgeExplorer);
+		fillEdgesDownward(_currTo, _prioQueue, _treeStore, _outEdgeExplorer);
 		_visitedCountTo++;
 
 		return true;
@@ -178,79 +294,71 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 
 	@Override
 	public MultiTreeSPEntry[] calcPaths(int[] from, int[] to) {
+		if (_treeStore == null)
+			throw new IllegalStateException("prepare must be called before calcPaths");
+
 		for (int i = 0; i < from.length; i++) {
 			if (from[i] == -1)
 			  continue;
 			
-			_currFrom = new MultiTreeSPEntry(from[i], EdgeIterator.NO_EDGE, 0.0, true, null, from.length);
-			_currFrom.getItem(i).weight = 0.0001;
-			_currFrom.visited = true;
-			_prioQueue.add(_currFrom);
-
-			if (!_traversalMode.isEdgeBased()) 
-				_bestWeightMapFrom.put(from[i], _currFrom);
-			else
+			if (_traversalMode.isEdgeBased())
 				throw new IllegalStateException("Edge-based behavior not supported");
+
+			// several sources may be snapped to the same node, they then share one slot
+			_currFrom = _treeStore.getSlot(from[i]);
+			if (_currFrom < 0) {
+				_currFrom = _treeStore.addSlot(from[i], EdgeIterator.NO_EDGE, 0.0, true, -1);
+				_treeStore.setVisited(_currFrom);
+			}
+
+			_treeStore.setWeight(_currFrom, i, 0.0001);
+			_treeStore.updateWeights(_currFrom);
+			_prioQueue.update(_currFrom, _treeStore.getTotalWeight(_currFrom));
 		}
  
 		_outEdgeExplorer = _graph.createEdgeExplorer();
-	//	StopWatch sw = new StopWatch();
-	//	sw.start();
 
 		runUpwardSearch();
 
-	//	sw.stop();
-		
-	//	if (logger.isInfoEnabled())
-	//	{
-	//		logger.info(Long.toString(sw.getTime()));
-	//		logger.info("HN: " + Integer.toString(_upwardEdgeFilter.getHighestNode()));
-	//	}
-
-		_currFrom = _bestWeightMapFrom.get(_upwardEdgeFilter.getHighestNode());
-		_currFrom.visited = true;
-		_currFrom.resetUpdate(true);
 		_prioQueue.clear();
-		_prioQueue.add(_currFrom);
+
+		if (_maxWeight < Double.MAX_VALUE) {
+			// A bounded upward search may stop below the highest node of the
+			// target graph, so the downward search starts from every reached
+			// node of the target graph.
+			for (int slot = 0; slot < _treeStore.size(); slot++) {
+				if (_treeStore.getTotalWeight(slot) > 0.0 && _targetGraph.containsNode(_treeStore.getNode(slot))) {
+					_treeStore.setVisited(slot);
+					_treeStore.resetUpdate(slot, true);
+					_prioQueue.update(slot, _treeStore.getTotalWeight(slot));
+				}
+			}
+		} else {
+			_currFrom = _treeStore.getSlot(_upwardEdgeFilter.getHighestNode());
+			_treeStore.setVisited(_currFrom);
+			_treeStore.resetUpdate(_currFrom, true);
+			_prioQueue.update(_currFrom, _treeStore.getTotalWeight(_currFrom));
+		}
 
 		_outEdgeExplorer = _targetGraph.createExplorer();
-	//	sw = new StopWatch();
-	//	sw.start();
 		runDownwardSearch();
-	//	sw.stop();
-		
-	//	if (logger.isInfoEnabled())
-	//	{
-	//		logger.info(Long.toString(sw.getTime()));
-			
-	//		logger.info("Iters: " + upwardIters + " " + downwardIters);
-	//		logger.info("Total: " + upwardItersTotal + " " + downwardItersTotal);
-	//		logger.info("Skipped: " + upwardItersSkipped + " " + downwardItersSkipped);
-	//	}
 		
-		MultiTreeSPEntry[] targets = new MultiTreeSPEntry[to.length];
+		int[] targetSlots = new int[to.length];
 
 		for (int i = 0; i < to.length; ++i)
-			targets[i] = _bestWeightMapFrom.get(to[i]);
+			targetSlots[i] = _treeStore.getSlot(to[i]);
 
-		return targets;
+		return _treeStore.toEntries(targetSlots);
 	}
 
-/*	private int downwardIters = 0;
-	private int upwardIters = 0;
-	private int downwardItersTotal = 0;
-	private int upwardItersTotal = 0;
-	private int downwardItersSkipped = 0;
-	private int upwardItersSkipped = 0;*/
-
-	private void fillEdgesUpward(MultiTreeSPEntry currEdge, PriorityQueue<MultiTreeSPEntry> prioQueue,
-			IntObjectMap<MultiTreeSPEntry> shortestWeightMap, EdgeExplorer explorer) {
-		EdgeIterator iter = explorer.setBaseNode(currEdge.adjNode);
+	private void fillEdgesUpward(int currSlot, IndexedMinHeap prioQueue,
+			MultiTreeSPStore treeStore, EdgeExplorer explorer) {
+		EdgeIterator iter = explorer.setBaseNode(treeStore.getNode(currSlot));
 
 		if (iter == null) // we reach one of the target nodes
 			return;
 
-		_upwardEdgeFilter.setBaseNode(currEdge.adjNode);
+		_upwardEdgeFilter.setBaseNode(treeStore.getNode(currSlot));
 
 		while (iter.next()) {
 			if (!_upwardEdgeFilter.accept(iter))
@@ -261,61 +369,50 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 			_edgeWeight = _weighting.calcWeight(iter, false, 0);
 
 			if (!Double.isInfinite(_edgeWeight)) {
-				MultiTreeSPEntry ee = shortestWeightMap.get(iter.getAdjNode());
+				int eeSlot = treeStore.getSlot(iter.getAdjNode());
 
-				if (ee == null) {
-					ee = new MultiTreeSPEntry(iter.getAdjNode(), iter.getEdge(), _edgeWeight, true, currEdge, currEdge.getSize());
-
-					shortestWeightMap.put(iter.getAdjNode(), ee);
-					prioQueue.add(ee);
+				if (eeSlot < 0) {
+					eeSlot = treeStore.addSlot(iter.getAdjNode(), iter.getEdge(), _edgeWeight, true, currSlot);
+					if (treeStore.removeWeightsAbove(eeSlot, _maxWeight))
+						prioQueue.update(eeSlot, treeStore.getTotalWeight(eeSlot));
 				} else {
 					_addToQueue = false;
 					
 					for (int i = 0; i < _treeEntrySize; ++i) {
-						_msptItem = currEdge.getItem(i);
-						_entryWeight = _msptItem.weight;
+						_entryWeight = treeStore.getWeight(currSlot, i);
 						
 						if (_entryWeight == 0.0)
 							continue;
 
-						_msptSubItem = ee.getItem(i);
-
-						if (_msptItem.update == false) {
-		//					upwardItersSkipped++;
+						if (!treeStore.isUpdate(currSlot, i))
 							continue;
-						}
 						
 						_tmpWeight = _edgeWeight + _entryWeight;
+						if (_tmpWeight > _maxWeight)
+							continue;
 
-						if (_msptSubItem.weight > _tmpWeight || _msptSubItem.weight == 0.0) {
-							_msptSubItem.weight = _tmpWeight;
-							_msptSubItem.edge = iter.getEdge();
-							_msptSubItem.parent = currEdge;
-							_msptSubItem.update = true;
-							
+						double eeWeight = treeStore.getWeight(eeSlot, i);
+						if (eeWeight > _tmpWeight || eeWeight == 0.0) {
+							treeStore.setItem(eeSlot, i, _tmpWeight, iter.getEdge(), currSlot);
 							_addToQueue = true;
-		//					upwardIters++;
-
-						} //else
-		//					upwardItersTotal++;
+						}
 					}
 
 					if (_addToQueue) {
-						ee.updateWeights();
-						prioQueue.remove(ee);
-						prioQueue.add(ee);
+						treeStore.updateWeights(eeSlot);
+						prioQueue.update(eeSlot, treeStore.getTotalWeight(eeSlot));
 					}
 				}
 			}
 		}
 		
-		currEdge.resetUpdate(false);
+		treeStore.resetUpdate(currSlot, false);
 	}
 
-	private void fillEdgesDownward(MultiTreeSPEntry currEdge, PriorityQueue<MultiTreeSPEntry> prioQueue,
-			IntObjectMap<MultiTreeSPEntry> shortestWeightMap, EdgeExplorer explorer) {
+	private void fillEdgesDownward(int currSlot, IndexedMinHeap prioQueue,
+			MultiTreeSPStore treeStore, EdgeExplorer explorer) {
 
-		EdgeIterator iter = explorer.setBaseNode(currEdge.adjNode);
+		EdgeIterator iter = explorer.setBaseNode(treeStore.getNode(currSlot));
 
 		if (iter == null)
 			return;
@@ -324,68 +421,53 @@ public class RPHASTAlgorithm extends AbstractManyToManyRoutingAlgorithm {
 			_edgeWeight = _weighting.calcWeight(iter, false, 0);
 
 			if (!Double.isInfinite(_edgeWeight)) {
-				MultiTreeSPEntry ee = shortestWeightMap.get(iter.getAdjNode());
+				int eeSlot = treeStore.getSlot(iter.getAdjNode());
 
-				if (ee == null) {
-					ee = new MultiTreeSPEntry(iter.getAdjNode(), iter.getEdge(), _edgeWeight, true, currEdge, currEdge.getSize());
-					ee.visited = true;
-
-					shortestWeightMap.put(iter.getAdjNode(), ee);
-					prioQueue.add(ee);
+				if (eeSlot < 0) {
+					eeSlot = treeStore.addSlot(iter.getAdjNode(), iter.getEdge(), _edgeWeight, true, currSlot);
+					treeStore.setVisited(eeSlot);
+					if (treeStore.removeWeightsAbove(eeSlot, _maxWeight))
+						prioQueue.update(eeSlot, treeStore.getTotalWeight(eeSlot));
 				} else {
 					_addToQueue = false;
 					
 					for (int i = 0; i < _treeEntrySize; ++i) {
-						_msptItem = currEdge.getItem(i);
-						_entryWeight = _msptItem.weight;
+						_entryWeight = treeStore.getWeight(currSlot, i);
 						
 						if (_entryWeight == 0.0)
 							continue;
 
-						if (_msptItem.update == false) {
-		//					downwardItersSkipped++;
+						if (!treeStore.isUpdate(currSlot, i))
 							continue;
-						}
 
 						_tmpWeight = _edgeWeight + _entryWeight;
+						if (_tmpWeight > _maxWeight)
+							continue;
 
-						MultiTreeSPEntryItem eeItem = ee.getItem(i);
-
-						if (eeItem.weight > _tmpWeight || eeItem.weight == 0.0) {
-							eeItem.weight = _tmpWeight;
-							eeItem.edge = iter.getEdge();
-							eeItem.parent = currEdge;
-							eeItem.update = true;
-							
+						double eeWeight = treeStore.getWeight(eeSlot, i);
+						if (eeWeight > _tmpWeight || eeWeight == 0.0) {
+							treeStore.setItem(eeSlot, i, _tmpWeight, iter.getEdge(), currSlot);
 							_addToQueue = true;
-		//					downwardIters++;
-						} //else
-						//	downwardItersTotal++;
+						}
 					}
 					
-					ee.updateWeights();
+					treeStore.updateWeights(eeSlot);
 					
-					if (ee.visited == false) {
-						// // This is the case if the node has been assigned a
-						// weight in
-						// // the upwards pass (fillEdges). We need to use it in
-						// the
-						// // downwards pass to access lower level nodes, though
-						// the
-						// weight
-						// // does not have to be reset necessarily //
-						ee.visited = true;
-						ee.resetUpdate(true);
-						prioQueue.add(ee);
+					if (!treeStore.isVisited(eeSlot)) {
+						// This is the case if the node has been assigned a weight in
+						// the upwards pass (fillEdges). We need to use it in the
+						// downwards pass to access lower level nodes, though the weight
+						// does not have to be reset necessarily
+						treeStore.setVisited(eeSlot);
+						treeStore.resetUpdate(eeSlot, true);
+						prioQueue.update(eeSlot, treeStore.getTotalWeight(eeSlot));
 					} else if (_addToQueue) {
-						ee.visited = true;
-						prioQueue.remove(ee);
-						prioQueue.add(ee);
+						prioQueue.update(eeSlot, treeStore.getTotalWeight(eeSlot));
 					}
 				}
 			}
 		}
 		
-		currEdge.resetUpdate(false);
+		treeStore.resetUpdate(currSlot, false);
 	}
 }
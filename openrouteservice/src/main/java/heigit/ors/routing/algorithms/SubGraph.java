@@ -39,6 +39,7 @@ public class SubGraph {
 
 	private GHIntObjectHashMap<EdgeIteratorLink> _node2edgesMap;
 	private Graph _baseGraph;
+	private SubGraph _parentGraph;
 
 	class EdgeIteratorLink  {
 		public EdgeIteratorState state;
@@ -248,6 +249,18 @@ public class SubGraph {
 		_node2edgesMap = new GHIntObjectHashMap<EdgeIteratorLink>(Math.min(Math.max(200, graph.getNodes() / 10), 2000));
 	}
 
+	/**
+	 * Creates a graph which extends the given parent graph. Edges are only
+	 * added to this graph; the parent graph is never modified, so that it can
+	 * be shared between several graphs.
+	 */
+	public SubGraph(Graph graph, SubGraph parentGraph)
+	{
+		_baseGraph = graph;
+		_parentGraph = parentGraph;
+		_node2edgesMap = new GHIntObjectHashMap<EdgeIteratorLink>(16);
+	}
+
 	/**
 	 * Returns true/false depending on whether node is already in the graph or not.
 	 */
@@ -272,6 +285,13 @@ public class SubGraph {
 		}
 
 		EdgeIteratorLink link = _node2edgesMap.get(adjNode);
+		if (link == null && _parentGraph != null)
+		{
+			link = _parentGraph.copyLinks(adjNode);
+			if (link != null)
+				_node2edgesMap.put(adjNode, link);
+		}
+
 		if (link == null)
 		{
 			link = new EdgeIteratorLink(iterState);
@@ -292,15 +312,36 @@ public class SubGraph {
 
 	public boolean containsNode(int adjNode)
 	{
-		return _node2edgesMap.containsKey(adjNode);
+		return _node2edgesMap.containsKey(adjNode) || (_parentGraph != null && _parentGraph.containsNode(adjNode));
 	}
 
 	public EdgeIterator setBaseNode(int baseNode)
 	{
 		EdgeIteratorLink link = _node2edgesMap.get(baseNode);
+		if (link == null && _parentGraph != null)
+			return _parentGraph.setBaseNode(baseNode);
+
 		return link == null ? null: new EdgeIteratorLinkIterator(link);
 	}
 
+	private EdgeIteratorLink copyLinks(int node)
+	{
+		EdgeIteratorLink link = _node2edgesMap.get(node);
+		if (link == null)
+			return _parentGraph == null ? null : _parentGraph.copyLinks(node);
+
+		EdgeIteratorLink res = new EdgeIteratorLink(link.state);
+		EdgeIteratorLink last = res;
+		while (link.next != null)
+		{
+			link = link.next;
+			last.next = new EdgeIteratorLink(link.state);
+			last = last.next;
+		}
+
+		return res;
+	}
+
 	public EdgeExplorer createExplorer()
 	{
 		return new SubGraphEdgeExplorer(this);
@@ -0,0 +1,201 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms.cch;
+
+import java.util.Arrays;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+/**
+ * Weights of the arcs of a {@link CCHTopology} for one weighting and edge
+ * filter. Edge directions which are closed for the flag encoder of the 
+ * weighting or rejected by the filter get an infinite weight, so that one-way
+ * roads, avoid features and blocked edges are handled by the customization
+ * instead of the query. The filters accept an edge if any of its directions
+ * is open, the direction itself is therefore checked here.
+ * 
+ * Every arc keeps two weights: upward from its tail to its head rank and
+ * downward in the opposite direction. The via value of a direction is the id
+ * of the original edge, -1 if the arc is not traversable or -(rank + 2) of the
+ * middle node of the lower triangle the weight was derived from.
+ */
+public class CCHMetric
+{
+	public static final int NO_VIA = -1;
+
+	private final CCHTopology _topology;
+	private final Weighting _weighting;
+	private final double[] _upWeights;
+	private final double[] _downWeights;
+	private final int[] _upVias;
+	private final int[] _downVias;
+
+	private CCHMetric(CCHTopology topology, Weighting weighting)
+	{
+		int arcs = topology.getArcs();
+
+		_topology = topology;
+		_weighting = weighting;
+		_upWeights = new double[arcs];
+		_downWeights = new double[arcs];
+		_upVias = new int[arcs];
+		_downVias = new int[arcs];
+
+		Arrays.fill(_upWeights, Double.POSITIVE_INFINITY);
+		Arrays.fill(_downWeights, Double.POSITIVE_INFINITY);
+		Arrays.fill(_upVias, NO_VIA);
+		Arrays.fill(_downVias, NO_VIA);
+	}
+
+	/**
+	 * Assigns the weights of the original edges to their arcs and derives the
+	 * weights of all other arcs by processing the lower triangles in
+	 * ascending rank order.
+	 */
+	public static CCHMetric customize(CCHTopology topology, Graph graph, Weighting weighting, EdgeFilter edgeFilter)
+	{
+		CCHMetric metric = new CCHMetric(topology, weighting);
+		metric.applyEdges(graph, edgeFilter);
+		metric.applyTriangles();
+		return metric;
+	}
+
+	private void applyEdges(Graph graph, EdgeFilter edgeFilter)
+	{
+		FlagEncoder encoder = _weighting.getFlagEncoder();
+		AllEdgesIterator iter = graph.getAllEdges();
+		while (iter.next())
+		{
+			int baseNode = iter.getBaseNode();
+			int adjNode = iter.getAdjNode();
+			if (baseNode == adjNode)
+				continue;
+
+			int baseRank = _topology.getRank(baseNode);
+			int adjRank = _topology.getRank(adjNode);
+			boolean upward = baseRank < adjRank;
+			int arc = upward ? _topology.findArc(baseRank, adjRank) : _topology.findArc(adjRank, baseRank);
+			int edge = iter.getEdge();
+
+			double weight = Double.POSITIVE_INFINITY;
+			if (iter.isForward(encoder) && (edgeFilter == null || edgeFilter.accept(iter)))
+				weight = _weighting.calcWeight(iter, false, EdgeIterator.NO_EDGE);
+			setEdgeWeight(arc, upward, edge, weight);
+
+			weight = Double.POSITIVE_INFINITY;
+			EdgeIteratorState reverseState = graph.getEdgeIteratorState(edge, baseNode);
+			if (reverseState.isForward(encoder) && (edgeFilter == null || edgeFilter.accept(reverseState)))
+				weight = _weighting.calcWeight(reverseState, false, EdgeIterator.NO_EDGE);
+			setEdgeWeight(arc, !upward, edge, weight);
+		}
+	}
+
+	private void setEdgeWeight(int arc, boolean upward, int edge, double weight)
+	{
+		if (upward)
+		{
+			if (weight < _upWeights[arc])
+			{
+				_upWeights[arc] = weight;
+				_upVias[arc] = edge;
+			}
+		}
+		else if (weight < _downWeights[arc])
+		{
+			_downWeights[arc] = weight;
+			_downVias[arc] = edge;
+		}
+	}
+
+	private void applyTriangles()
+	{
+		int nodes = _topology.getNodes();
+
+		for (int rank = 0; rank < nodes; rank++)
+		{
+			int endArc = _topology.getEndArc(rank);
+
+			for (int arc1 = _topology.getFirstArc(rank); arc1 < endArc; arc1++)
+			{
+				double toLower = _downWeights[arc1];
+				double fromLower = _upWeights[arc1];
+				if (toLower == Double.POSITIVE_INFINITY && fromLower == Double.POSITIVE_INFINITY)
+					continue;
+
+				int lowerHead = _topology.getArcHead(arc1);
+				int via = -(rank + 2);
+
+				for (int arc2 = arc1 + 1; arc2 < endArc; arc2++)
+				{
+					int arc3 = _topology.findArc(lowerHead, _topology.getArcHead(arc2));
+
+					double weight = toLower + _upWeights[arc2];
+					if (weight < _upWeights[arc3])
+					{
+						_upWeights[arc3] = weight;
+						_upVias[arc3] = via;
+					}
+
+					weight = _downWeights[arc2] + fromLower;
+					if (weight < _downWeights[arc3])
+					{
+						_downWeights[arc3] = weight;
+						_downVias[arc3] = via;
+					}
+				}
+			}
+		}
+	}
+
+	public CCHTopology getTopology()
+	{
+		return _topology;
+	}
+
+	public Weighting getWeighting()
+	{
+		return _weighting;
+	}
+
+	public double getWeight(int arc, boolean upward)
+	{
+		return upward ? _upWeights[arc] : _downWeights[arc];
+	}
+
+	public int getVia(int arc, boolean upward)
+	{
+		return upward ? _upVias[arc] : _downVias[arc];
+	}
+
+	/**
+	 * Returns the approximate number of bytes used by the arc weights.
+	 */
+	public long getMemorySize()
+	{
+		return 24L * _topology.getArcs();
+	}
+}
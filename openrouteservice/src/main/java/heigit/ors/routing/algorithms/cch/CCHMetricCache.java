@@ -0,0 +1,222 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file
+ *  distributed with this work for additional information regarding copyright
+ *  ownership. The GIScience licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in compliance
+ *  with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms.cch;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.log4j.Logger;
+
+import heigit.ors.common.ComputeExecutor;
+
+/**
+ * LRU cache of customized metrics keyed by the configuration of the weighting
+ * and edge filter they were built for. The cache is bounded by the memory of
+ * the metrics. Missing metrics are customized in the background, so that no
+ * request waits for a customization. Metrics which depend on the traffic
+ * data are customized again by {@link #refresh()} and replaced once the new
+ * metric is ready. A new instance has to be used whenever the graph of the 
+ * profile is replaced.
+ */
+public class CCHMetricCache
+{
+	private static final Logger LOGGER = Logger.getLogger(CCHMetricCache.class.getName());
+
+	private final long _maxMemory;
+	private final LinkedHashMap<String, CCHMetric> _entries = new LinkedHashMap<String, CCHMetric>(16, 0.75f, true);
+	// keys of the customizations in progress, every key is customized only once at a time
+	private final Set<String> _pending = new HashSet<String>();
+	// customizations of the cached metrics which depend on the traffic data
+	private final Map<String, Callable<CCHMetric>> _trafficCustomizations = new HashMap<String, Callable<CCHMetric>>();
+	private long _memory;
+
+	/**
+	 * Creates a cache holding metrics of at most the given number of bytes.
+	 */
+	public CCHMetricCache(long maxMemory)
+	{
+		_maxMemory = maxMemory;
+	}
+
+	public synchronized CCHMetric get(String key)
+	{
+		return _entries.get(key);
+	}
+
+	/**
+	 * Returns the cached metric of the key. A missing metric is customized by
+	 * the compute pool and null is returned until it is ready, requests for a
+	 * key which is being customized do not start another customization. The
+	 * customization of a metric which depends on the traffic data has to use
+	 * the current traffic snapshot whenever it is called.
+	 */
+	public CCHMetric getOrCustomize(final String key, boolean trafficDependent, final Callable<CCHMetric> customization)
+	{
+		synchronized (this)
+		{
+			CCHMetric metric = _entries.get(key);
+			if (metric != null || !_pending.add(key))
+				return metric;
+		}
+
+		submit(key, trafficDependent, customization);
+
+		return null;
+	}
+
+	/**
+	 * Customizes all cached metrics which depend on the traffic data again.
+	 * Requests keep using the previous metrics until the new ones are ready.
+	 */
+	public void refresh()
+	{
+		List<String> keys = new ArrayList<String>();
+		List<Callable<CCHMetric>> customizations = new ArrayList<Callable<CCHMetric>>();
+
+		synchronized (this)
+		{
+			for (Map.Entry<String, Callable<CCHMetric>> entry : _trafficCustomizations.entrySet())
+			{
+				if (_pending.add(entry.getKey()))
+				{
+					keys.add(entry.getKey());
+					customizations.add(entry.getValue());
+				}
+			}
+		}
+
+		for (int i = 0; i < keys.size(); i++)
+			submit(keys.get(i), true, customizations.get(i));
+	}
+
+	private void submit(final String key, final boolean trafficDependent, final Callable<CCHMetric> customization)
+	{
+		try
+		{
+			ComputeExecutor.submit(() -> {
+				customize(key, trafficDependent, customization);
+				return null;
+			});
+		}
+		catch (RejectedExecutionException ex)
+		{
+			synchronized (this)
+			{
+				_pending.remove(key);
+			}
+		}
+	}
+
+	private void customize(String key, boolean trafficDependent, Callable<CCHMetric> customization)
+	{
+		CCHMetric metric = null;
+
+		try
+		{
+			metric = customization.call();
+		}
+		catch (Exception ex)
+		{
+			// failed customizations are not cached, a later request tries again
+			LOGGER.warn("Unable to customize CCH metric " + key + ": " + ex.getMessage());
+		}
+		finally
+		{
+			synchronized (this)
+			{
+				_pending.remove(key);
+				if (metric != null)
+				{
+					put(key, metric);
+					if (trafficDependent && _entries.containsKey(key))
+						_trafficCustomizations.put(key, customization);
+				}
+				else if (trafficDependent)
+				{
+					// a metric of outdated traffic data is not kept
+					remove(key);
+				}
+			}
+		}
+	}
+
+	private void remove(String key)
+	{
+		CCHMetric metric = _entries.remove(key);
+		if (metric != null)
+			_memory -= metric.getMemorySize();
+		_trafficCustomizations.remove(key);
+	}
+
+	/**
+	 * Adds the metric and evicts the least recently used ones until the cache
+	 * fits into its memory again. A metric larger than the whole cache is not
+	 * added and removes the previous metric of the key.
+	 */
+	private void put(String key, CCHMetric metric)
+	{
+		long size = metric.getMemorySize();
+		if (size > _maxMemory)
+		{
+			LOGGER.warn("CCH metric " + key + " needs " + size + " bytes and exceeds the memory of the cache.");
+			remove(key);
+			return;
+		}
+
+		CCHMetric previous = _entries.put(key, metric);
+		if (previous != null)
+			_memory -= previous.getMemorySize();
+		_memory += size;
+
+		Iterator<Map.Entry<String, CCHMetric>> iter = _entries.entrySet().iterator();
+		while (_memory > _maxMemory && iter.hasNext())
+		{
+			Map.Entry<String, CCHMetric> eldest = iter.next();
+			if (eldest.getValue() == metric)
+				break;
+
+			iter.remove();
+			_memory -= eldest.getValue().getMemorySize();
+			_trafficCustomizations.remove(eldest.getKey());
+		}
+	}
+
+	public synchronized int size()
+	{
+		return _entries.size();
+	}
+
+	/**
+	 * Returns the number of bytes of all cached metrics.
+	 */
+	public synchronized long getMemorySize()
+	{
+		return _memory;
+	}
+}
@@ -0,0 +1,368 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms.cch;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.carrotsearch.hppc.cursors.IntObjectCursor;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.SPTEntry;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+
+/**
+ * Point-to-point query on a customized {@link CCHMetric}. Both directions
+ * only follow upward arcs and the search stops as soon as the smallest queued
+ * weight of each direction exceeds the best meeting weight. Virtual nodes of
+ * a query graph are connected to the hierarchy by exploring the virtual edges
+ * until the first tower nodes are reached, which are checked by the edge 
+ * filter of the request as they are not part of the metric.
+ */
+public class CCHRoutingAlgorithm implements RoutingAlgorithm
+{
+	private final Graph _graph;
+	private final CCHMetric _metric;
+	private final CCHTopology _topology;
+	private final Weighting _weighting;
+	private final int _baseNodes;
+	private final EdgeExplorer _outEdgeExplorer;
+	private final EdgeExplorer _inEdgeExplorer;
+	private EdgeFilter _additionalEdgeFilter;
+	private int _maxVisitedNodes = Integer.MAX_VALUE;
+	private int _visitedNodes;
+	private int[] _unpackStack = new int[64];
+
+	public CCHRoutingAlgorithm(Graph graph, CCHMetric metric)
+	{
+		_graph = graph;
+		_metric = metric;
+		_topology = metric.getTopology();
+		_weighting = metric.getWeighting();
+		_baseNodes = _topology.getNodes();
+		_outEdgeExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(_weighting.getFlagEncoder(), false, true));
+		_inEdgeExplorer = graph.createEdgeExplorer(new DefaultEdgeFilter(_weighting.getFlagEncoder(), true, false));
+	}
+
+	@Override
+	public Path calcPath(int from, int to)
+	{
+		_visitedNodes = 0;
+
+		IntObjectHashMap<SPTEntry> fromSeeds = new IntObjectHashMap<SPTEntry>();
+		IntObjectHashMap<SPTEntry> toSeeds = new IntObjectHashMap<SPTEntry>();
+		SPTEntry directEntry = collectSeeds(from, to, false, fromSeeds);
+		collectSeeds(to, from, true, toSeeds);
+
+		IntObjectHashMap<SPTEntry> fwdEntries = new IntObjectHashMap<SPTEntry>();
+		IntObjectHashMap<SPTEntry> bwdEntries = new IntObjectHashMap<SPTEntry>();
+		PriorityQueue<SPTEntry> fwdQueue = new PriorityQueue<SPTEntry>();
+		PriorityQueue<SPTEntry> bwdQueue = new PriorityQueue<SPTEntry>();
+		initQueue(fromSeeds, fwdEntries, fwdQueue);
+		initQueue(toSeeds, bwdEntries, bwdQueue);
+
+		double bestWeight = directEntry == null ? Double.POSITIVE_INFINITY : directEntry.weight;
+		int meetingRank = -1;
+
+		while (true)
+		{
+			double fwdWeight = fwdQueue.isEmpty() ? Double.POSITIVE_INFINITY : fwdQueue.peek().weight;
+			double bwdWeight = bwdQueue.isEmpty() ? Double.POSITIVE_INFINITY : bwdQueue.peek().weight;
+			if (Math.min(fwdWeight, bwdWeight) >= bestWeight)
+				break;
+
+			boolean forward = fwdWeight <= bwdWeight;
+			IntObjectHashMap<SPTEntry> entries = forward ? fwdEntries : bwdEntries;
+			PriorityQueue<SPTEntry> queue = forward ? fwdQueue : bwdQueue;
+
+			SPTEntry entry = queue.poll();
+			int rank = entry.adjNode;
+			if (entry != entries.get(rank))
+				continue;
+
+			if (++_visitedNodes > _maxVisitedNodes)
+				return createEmptyPath();
+
+			SPTEntry opposite = (forward ? bwdEntries : fwdEntries).get(rank);
+			if (opposite != null && entry.weight + opposite.weight < bestWeight)
+			{
+				bestWeight = entry.weight + opposite.weight;
+				meetingRank = rank;
+			}
+
+			int endArc = _topology.getEndArc(rank);
+			for (int arc = _topology.getFirstArc(rank); arc < endArc; arc++)
+			{
+				double weight = _metric.getWeight(arc, forward);
+				if (weight == Double.POSITIVE_INFINITY)
+					continue;
+
+				weight += entry.weight;
+				int head = _topology.getArcHead(arc);
+				SPTEntry existing = entries.get(head);
+				if (existing == null || weight < existing.weight)
+				{
+					SPTEntry next = new SPTEntry(arc, head, weight);
+					next.parent = entry;
+					entries.put(head, next);
+					queue.add(next);
+				}
+			}
+		}
+
+		if (bestWeight == Double.POSITIVE_INFINITY)
+			return createEmptyPath();
+
+		SPTEntry pathEntry = null;
+		if (meetingRank < 0)
+		{
+			pathEntry = directEntry;
+		}
+		else
+		{
+			pathEntry = extractForward(fwdEntries.get(meetingRank), fromSeeds);
+			pathEntry = extractBackward(bwdEntries.get(meetingRank), toSeeds, pathEntry);
+		}
+
+		Path path = new Path(_graph, _weighting).setSPTEntry(pathEntry).extract();
+		path.setWeight(bestWeight);
+		return path;
+	}
+
+	private void initQueue(IntObjectHashMap<SPTEntry> seeds, IntObjectHashMap<SPTEntry> entries, PriorityQueue<SPTEntry> queue)
+	{
+		for (IntObjectCursor<SPTEntry> seed : seeds)
+		{
+			SPTEntry entry = new SPTEntry(EdgeIterator.NO_EDGE, seed.key, seed.value.weight);
+			entries.put(seed.key, entry);
+			queue.add(entry);
+		}
+	}
+
+	/**
+	 * Explores the graph from a virtual node until tower nodes are reached and
+	 * stores their search entries by rank. A tower node is its own seed. The
+	 * entry of the target node is returned if it can be reached via virtual
+	 * nodes only, e.g. when both points are snapped onto the same edge.
+	 */
+	private SPTEntry collectSeeds(int start, int target, boolean reverse, IntObjectHashMap<SPTEntry> seeds)
+	{
+		SPTEntry root = new SPTEntry(EdgeIterator.NO_EDGE, start, 0);
+		if (start < _baseNodes)
+		{
+			seeds.put(_topology.getRank(start), root);
+			return null;
+		}
+
+		EdgeExplorer explorer = reverse ? _inEdgeExplorer : _outEdgeExplorer;
+		IntObjectHashMap<SPTEntry> entries = new IntObjectHashMap<SPTEntry>();
+		PriorityQueue<SPTEntry> queue = new PriorityQueue<SPTEntry>();
+		SPTEntry targetEntry = null;
+
+		entries.put(start, root);
+		queue.add(root);
+
+		while (!queue.isEmpty())
+		{
+			SPTEntry entry = queue.poll();
+			int node = entry.adjNode;
+			if (entry != entries.get(node))
+				continue;
+
+			if (node != start)
+			{
+				if (node < _baseNodes)
+				{
+					seeds.put(_topology.getRank(node), entry);
+					continue;
+				}
+
+				if (node == target)
+				{
+					targetEntry = entry;
+					continue;
+				}
+			}
+
+			EdgeIterator iter = explorer.setBaseNode(node);
+			while (iter.next())
+			{
+				if (_additionalEdgeFilter != null && !_additionalEdgeFilter.accept(iter))
+					continue;
+
+				double weight = _weighting.calcWeight(iter, reverse, entry.edge);
+				if (Double.isInfinite(weight))
+					continue;
+
+				weight += entry.weight;
+				SPTEntry existing = entries.get(iter.getAdjNode());
+				if (existing == null || weight < existing.weight)
+				{
+					SPTEntry next = new SPTEntry(iter.getEdge(), iter.getAdjNode(), weight);
+					next.parent = entry;
+					entries.put(iter.getAdjNode(), next);
+					queue.add(next);
+				}
+			}
+		}
+
+		return targetEntry;
+	}
+
+	/**
+	 * Returns the entry chain of the original edges from the start node up to
+	 * the meeting node of both searches.
+	 */
+	private SPTEntry extractForward(SPTEntry meetingEntry, IntObjectHashMap<SPTEntry> seeds)
+	{
+		IntArrayList arcs = new IntArrayList();
+		SPTEntry entry = meetingEntry;
+		while (entry.parent != null)
+		{
+			arcs.add(entry.edge);
+			entry = entry.parent;
+		}
+
+		SPTEntry pathEntry = seeds.get(entry.adjNode);
+		for (int i = arcs.size() - 1; i >= 0; i--)
+			pathEntry = unpackArc(arcs.get(i), true, pathEntry);
+
+		return pathEntry;
+	}
+
+	/**
+	 * Appends the original edges from the meeting node down to the target node.
+	 */
+	private SPTEntry extractBackward(SPTEntry meetingEntry, IntObjectHashMap<SPTEntry> seeds, SPTEntry pathEntry)
+	{
+		SPTEntry entry = meetingEntry;
+		while (entry.parent != null)
+		{
+			pathEntry = unpackArc(entry.edge, false, pathEntry);
+			entry = entry.parent;
+		}
+
+		// the seed entries point from the tower node towards the target node
+		SPTEntry seedEntry = seeds.get(entry.adjNode);
+		while (seedEntry.parent != null)
+		{
+			pathEntry = appendEdge(pathEntry, seedEntry.edge, seedEntry.parent.adjNode);
+			seedEntry = seedEntry.parent;
+		}
+
+		return pathEntry;
+	}
+
+	private SPTEntry unpackArc(int arc, boolean upward, SPTEntry pathEntry)
+	{
+		int size = 0;
+		_unpackStack[size++] = (arc << 1) | (upward ? 1 : 0);
+
+		while (size > 0)
+		{
+			int item = _unpackStack[--size];
+			arc = item >>> 1;
+			upward = (item & 1) == 1;
+
+			int via = _metric.getVia(arc, upward);
+			int tail = _topology.getArcTail(arc);
+			int head = _topology.getArcHead(arc);
+
+			if (via >= 0)
+			{
+				pathEntry = appendEdge(pathEntry, via, _topology.getNode(upward ? head : tail));
+				continue;
+			}
+
+			int middle = -via - 2;
+			int lowerArc = _topology.findArc(middle, tail);
+			int upperArc = _topology.findArc(middle, head);
+
+			if (size + 2 > _unpackStack.length)
+				_unpackStack = Arrays.copyOf(_unpackStack, _unpackStack.length * 2);
+
+			// the arcs are pushed in reverse order of their traversal
+			if (upward)
+			{
+				_unpackStack[size++] = (upperArc << 1) | 1;
+				_unpackStack[size++] = lowerArc << 1;
+			}
+			else
+			{
+				_unpackStack[size++] = (lowerArc << 1) | 1;
+				_unpackStack[size++] = upperArc << 1;
+			}
+		}
+
+		return pathEntry;
+	}
+
+	private SPTEntry appendEdge(SPTEntry pathEntry, int edge, int adjNode)
+	{
+		SPTEntry entry = new SPTEntry(edge, adjNode, pathEntry.weight);
+		entry.parent = pathEntry;
+		return entry;
+	}
+
+	private Path createEmptyPath()
+	{
+		return new Path(_graph, _weighting);
+	}
+
+	@Override
+	public List<Path> calcPaths(int from, int to)
+	{
+		return Collections.singletonList(calcPath(from, to));
+	}
+
+	public RoutingAlgorithm setEdgeFilter(EdgeFilter additionalEdgeFilter)
+	{
+		_additionalEdgeFilter = additionalEdgeFilter;
+		return this;
+	}
+
+	@Override
+	public void setMaxVisitedNodes(int numberOfNodes)
+	{
+		_maxVisitedNodes = numberOfNodes;
+	}
+
+	@Override
+	public String getName()
+	{
+		return "cch";
+	}
+
+	@Override
+	public int getVisitedNodes()
+	{
+		return _visitedNodes;
+	}
+}
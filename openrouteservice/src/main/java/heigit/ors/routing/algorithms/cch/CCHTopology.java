@@ -0,0 +1,361 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms.cch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import com.graphhopper.routing.util.AllEdgesIterator;
+import com.graphhopper.storage.Graph;
+
+import heigit.ors.routing.algorithms.IndexedMinHeap;
+
+/**
+ * Metric-independent part of a customizable contraction hierarchy (CCH). The
+ * nodes of the base graph are ordered by a minimum degree elimination and
+ * every node is connected to all neighbours which are still present in the
+ * elimination graph when it is removed. The resulting upward arcs form a
+ * chordal supergraph of the road network which does not depend on any
+ * weighting, so that one topology serves all vehicles, avoid features and
+ * restrictions of a graph. Weights are assigned to the arcs by
+ * {@link CCHMetric}.
+ * 
+ * Arcs are stored in a compressed row layout indexed by the rank of their
+ * lower node and sorted by the rank of their upper node.
+ */
+public class CCHTopology
+{
+	private static final int FILE_VERSION = 2;
+
+	private final long _checksum;
+	private final int _nodes;
+	private final int[] _ranks;
+	private final int[] _nodesByRank;
+	private final int[] _firstArcs;
+	private final int[] _arcTails;
+	private final int[] _arcHeads;
+
+	private CCHTopology(long checksum, int[] ranks, int[] nodesByRank, int[] firstArcs, int[] arcHeads)
+	{
+		_checksum = checksum;
+		_nodes = ranks.length;
+		_ranks = ranks;
+		_nodesByRank = nodesByRank;
+		_firstArcs = firstArcs;
+		_arcHeads = arcHeads;
+
+		_arcTails = new int[arcHeads.length];
+		for (int rank = 0; rank < _nodes; rank++)
+			Arrays.fill(_arcTails, firstArcs[rank], firstArcs[rank + 1], rank);
+	}
+
+	/**
+	 * Computes the elimination order and the upward arcs of all edges of the
+	 * given graph regardless of their access flags. The elimination graph is 
+	 * kept in plain arrays per node, which grow with the fill-in only. 
+	 * Preparation is aborted with an {@link IllegalStateException} as soon as 
+	 * the number of arcs exceeds maxArcsFactor times the number of edges, 
+	 * since neither the memory nor the query times of such a hierarchy would
+	 * be acceptable.
+	 */
+	public static CCHTopology prepare(Graph graph, double maxArcsFactor)
+	{
+		int nodes = graph.getNodes();
+		int[][] neighbours = new int[nodes][];
+		int[] degrees = new int[nodes];
+
+		AllEdgesIterator iter = graph.getAllEdges();
+		long maxArcs = (long)(maxArcsFactor * graph.getEdges());
+		while (iter.next())
+		{
+			int baseNode = iter.getBaseNode();
+			int adjNode = iter.getAdjNode();
+			if (baseNode == adjNode || contains(neighbours[baseNode], degrees[baseNode], adjNode))
+				continue;
+
+			addNeighbour(neighbours, degrees, baseNode, adjNode);
+			addNeighbour(neighbours, degrees, adjNode, baseNode);
+		}
+
+		IndexedMinHeap heap = new IndexedMinHeap(nodes);
+		for (int node = 0; node < nodes; node++)
+			heap.update(node, degrees[node]);
+
+		int[] ranks = new int[nodes];
+		int[] nodesByRank = new int[nodes];
+		int[][] upperNodes = new int[nodes][];
+		// marks the neighbours of a node while the clique of its upper nodes is added
+		int[] marks = new int[nodes];
+		int mark = 0;
+		long arcs = 0;
+		int rank = 0;
+
+		while (!heap.isEmpty())
+		{
+			int node = heap.poll();
+			int[] upper = Arrays.copyOf(neighbours[node] == null ? new int[0] : neighbours[node], degrees[node]);
+			neighbours[node] = null;
+
+			arcs += upper.length;
+			if (arcs > maxArcs)
+				throw new IllegalStateException("The CCH topology exceeds " + maxArcs + " arcs after eliminating " + rank + " of " + nodes + " nodes.");
+
+			ranks[node] = rank;
+			nodesByRank[rank] = node;
+			upperNodes[rank] = upper;
+			rank++;
+
+			for (int i = 0; i < upper.length; i++)
+				removeNeighbour(neighbours, degrees, upper[i], node);
+
+			// the remaining neighbours form a clique in the elimination graph
+			for (int i = 0; i < upper.length; i++)
+			{
+				int upperNode = upper[i];
+				if (++mark == Integer.MAX_VALUE)
+				{
+					Arrays.fill(marks, 0);
+					mark = 1;
+				}
+
+				marks[upperNode] = mark;
+				for (int j = 0; j < degrees[upperNode]; j++)
+					marks[neighbours[upperNode][j]] = mark;
+
+				for (int j = 0; j < upper.length; j++)
+				{
+					if (marks[upper[j]] != mark)
+						addNeighbour(neighbours, degrees, upperNode, upper[j]);
+				}
+			}
+
+			for (int i = 0; i < upper.length; i++)
+				heap.update(upper[i], degrees[upper[i]]);
+		}
+
+		int[] firstArcs = new int[nodes + 1];
+		for (int r = 0; r < nodes; r++)
+			firstArcs[r + 1] = firstArcs[r] + upperNodes[r].length;
+
+		int[] arcHeads = new int[firstArcs[nodes]];
+		for (int r = 0; r < nodes; r++)
+		{
+			int[] upper = upperNodes[r];
+			int first = firstArcs[r];
+			for (int i = 0; i < upper.length; i++)
+				arcHeads[first + i] = ranks[upper[i]];
+
+			Arrays.sort(arcHeads, first, first + upper.length);
+			upperNodes[r] = null;
+		}
+
+		return new CCHTopology(getChecksum(graph), ranks, nodesByRank, firstArcs, arcHeads);
+	}
+
+	private static boolean contains(int[] values, int size, int value)
+	{
+		for (int i = 0; i < size; i++)
+		{
+			if (values[i] == value)
+				return true;
+		}
+
+		return false;
+	}
+
+	private static void addNeighbour(int[][] neighbours, int[] degrees, int node, int neighbour)
+	{
+		int[] values = neighbours[node];
+		int degree = degrees[node];
+		if (values == null)
+			values = neighbours[node] = new int[4];
+		else if (degree == values.length)
+			values = neighbours[node] = Arrays.copyOf(values, degree * 2);
+
+		values[degree] = neighbour;
+		degrees[node] = degree + 1;
+	}
+
+	private static void removeNeighbour(int[][] neighbours, int[] degrees, int node, int neighbour)
+	{
+		int[] values = neighbours[node];
+		int last = degrees[node] - 1;
+		for (int i = 0; i <= last; i++)
+		{
+			if (values[i] == neighbour)
+			{
+				values[i] = values[last];
+				degrees[node] = last;
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Returns a checksum of the nodes and edges of the graph which identifies
+	 * the graph a stored topology was prepared for.
+	 */
+	public static long getChecksum(Graph graph)
+	{
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[12];
+
+		AllEdgesIterator iter = graph.getAllEdges();
+		while (iter.next())
+		{
+			putInt(buffer, 0, iter.getEdge());
+			putInt(buffer, 4, iter.getBaseNode());
+			putInt(buffer, 8, iter.getAdjNode());
+			crc.update(buffer, 0, buffer.length);
+		}
+
+		return ((long)graph.getNodes() << 32) ^ crc.getValue();
+	}
+
+	private static void putInt(byte[] buffer, int offset, int value)
+	{
+		buffer[offset] = (byte)(value >>> 24);
+		buffer[offset + 1] = (byte)(value >>> 16);
+		buffer[offset + 2] = (byte)(value >>> 8);
+		buffer[offset + 3] = (byte)value;
+	}
+
+	/**
+	 * Loads a stored topology or returns null if it was prepared for a graph
+	 * with a different checksum.
+	 */
+	public static CCHTopology load(File file, long checksum) throws IOException
+	{
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if (in.readInt() != FILE_VERSION)
+				throw new IOException("Unsupported CCH topology version in " + file);
+
+			if (in.readLong() != checksum)
+				return null;
+
+			int nodes = in.readInt();
+			int arcs = in.readInt();
+			int[] ranks = new int[nodes];
+			int[] nodesByRank = new int[nodes];
+			int[] firstArcs = new int[nodes + 1];
+			int[] arcHeads = new int[arcs];
+
+			for (int i = 0; i < nodes; i++)
+			{
+				ranks[i] = in.readInt();
+				nodesByRank[ranks[i]] = i;
+			}
+			for (int i = 0; i <= nodes; i++)
+				firstArcs[i] = in.readInt();
+			for (int i = 0; i < arcs; i++)
+				arcHeads[i] = in.readInt();
+
+			return new CCHTopology(checksum, ranks, nodesByRank, firstArcs, arcHeads);
+		}
+	}
+
+	public void save(File file) throws IOException
+	{
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))))
+		{
+			out.writeInt(FILE_VERSION);
+			out.writeLong(_checksum);
+			out.writeInt(_nodes);
+			out.writeInt(_arcHeads.length);
+
+			for (int i = 0; i < _nodes; i++)
+				out.writeInt(_ranks[i]);
+			for (int i = 0; i <= _nodes; i++)
+				out.writeInt(_firstArcs[i]);
+			for (int i = 0; i < _arcHeads.length; i++)
+				out.writeInt(_arcHeads[i]);
+		}
+	}
+
+	public int getNodes()
+	{
+		return _nodes;
+	}
+
+	public int getArcs()
+	{
+		return _arcHeads.length;
+	}
+
+	public int getRank(int node)
+	{
+		return _ranks[node];
+	}
+
+	public int getNode(int rank)
+	{
+		return _nodesByRank[rank];
+	}
+
+	public int getFirstArc(int rank)
+	{
+		return _firstArcs[rank];
+	}
+
+	/**
+	 * Returns the index following the last upward arc of the given rank.
+	 */
+	public int getEndArc(int rank)
+	{
+		return _firstArcs[rank + 1];
+	}
+
+	public int getArcTail(int arc)
+	{
+		return _arcTails[arc];
+	}
+
+	public int getArcHead(int arc)
+	{
+		return _arcHeads[arc];
+	}
+
+	/**
+	 * Returns the arc connecting the two ranks or -1 if they are not adjacent.
+	 */
+	public int findArc(int lowerRank, int upperRank)
+	{
+		int index = Arrays.binarySearch(_arcHeads, _firstArcs[lowerRank], _firstArcs[lowerRank + 1], upperRank);
+		return index < 0 ? -1 : index;
+	}
+
+	/**
+	 * Returns the approximate number of bytes used by the topology.
+	 */
+	public long getMemorySize()
+	{
+		return 4L * (3L * _nodes + 2L * _arcHeads.length);
+	}
+}
@@ -37,6 +37,7 @@ public class RouteProfileConfiguration
 	private String _graphPath;
 	private Map<String, Map<String, String>> _extStorages;
 	private Map<String, Map<String, String>> _graphBuilders;
+	private Map<String, Map<String, String>> _admissionLimits;
 	private Double _maximumDistance = 0.0;
 	private Double _maximumSegmentDistanceWithDynamicWeights = 0.0;
 	private Integer _maximumWayPoints = 0;
@@ -61,6 +62,7 @@ public class RouteProfileConfiguration
 	{
 		_extStorages = new HashMap<String, Map<String, String>>();
 		_graphBuilders = new HashMap<String, Map<String, String>>();
+		_admissionLimits = new HashMap<String, Map<String, String>>();
 	}
 	
 	public Integer[] getProfilesTypes()
@@ -105,6 +107,7 @@ public class RouteProfileConfiguration
 
 		rpc._extStorages = this._extStorages;
 		rpc._graphBuilders = this._graphBuilders;
+		rpc._admissionLimits = this._admissionLimits;
 
 		rpc._elevationCachePath = this._elevationCachePath;
 		rpc._elevationCacheClear = this._elevationCacheClear;
@@ -176,6 +179,19 @@ public class RouteProfileConfiguration
 		return _graphBuilders;
 	}
 	
+	public void setAdmissionLimits(Map<String, Map<String, String>> value)
+	{
+		_admissionLimits = value; 
+	}
+	
+	/**
+	 * Returns the limits of concurrent searches keyed by the name of the request class.
+	 */
+	public Map<String, Map<String, String>> getAdmissionLimits()
+	{
+		return _admissionLimits;
+	}
+	
 	public void setInstructions(Boolean value)
 	{
 		_instructions = value; 
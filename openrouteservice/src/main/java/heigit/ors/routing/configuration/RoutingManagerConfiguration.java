@@ -169,6 +169,22 @@ public class RoutingManagerConfiguration
 							profile.getGraphBuilders().put(storageEntry.getKey(), storageParams);
 						}
 						break;
+					case "admission":
+						@SuppressWarnings("unchecked") 
+						Map<String, Object> admissionList = (Map<String, Object>)paramItem.getValue();
+
+						for(Map.Entry<String, Object> admissionEntry : admissionList.entrySet())
+						{
+							@SuppressWarnings("unchecked")
+							Map<String, Object> entryValue = (Map<String, Object>)admissionEntry.getValue();
+							Map<String, String> admissionParams = new HashMap<String, String>();
+
+							for(Map.Entry<String, Object> entry : entryValue.entrySet())
+								admissionParams.put(entry.getKey(), StringUtility.trimQuotes(entry.getValue().toString()));
+
+							profile.getAdmissionLimits().put(admissionEntry.getKey(), admissionParams);
+						}
+						break;
 					case "traffic":
 						profile.setUseTrafficInformation(Boolean.parseBoolean(paramItem.getValue().toString()));
 						break;
@@ -0,0 +1,196 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.QueryResult;
+import com.graphhopper.util.ByteArrayBuffer;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
+
+/**
+ * Location index which remembers the results of recent lookups. Entries are
+ * keyed by the query coordinate, quantized to 1e-6 degrees, and the edge
+ * filter. Only filters whose behaviour is fully described by their encoder
+ * and direction (DefaultEdgeFilter and ALL_EDGES) are cached, all other
+ * lookups go to the index directly. Every lookup returns a new QueryResult,
+ * since QueryGraph.lookup modifies the results it gets. Lookups with a 
+ * {@link SnappingBuffer} also keep their results in the map of the buffer, 
+ * independent of the size of the cache, which may be 0.
+ */
+public class CachedLocationIndex extends LocationIndexTree {
+	private static final double COORDINATE_FACTOR = 1e6;
+	private static final int MAX_FILTERS = 128;
+
+	static class SnapEntry {
+		int edge;
+		int adjNode;
+		int closestNode;
+		int wayIndex;
+		int position;
+		double queryDistance;
+	}
+
+	private final Graph _graph;
+	private final int _maxSize;
+	private final Map<Long, SnapEntry> _entries;
+	private final Map<String, Integer> _filterIds = new LinkedHashMap<String, Integer>();
+	private final AtomicLong _hits = new AtomicLong();
+	private final AtomicLong _misses = new AtomicLong();
+
+	public CachedLocationIndex(Graph graph, Directory dir, final int maxSize) {
+		super(graph, dir);
+
+		_graph = graph;
+		_maxSize = maxSize;
+		_entries = new LinkedHashMap<Long, SnapEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, SnapEntry> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	@Override
+	public QueryResult findClosest(double queryLat, double queryLon, EdgeFilter edgeFilter, ByteArrayBuffer byteBuffer) {
+		long key = getKey(queryLat, queryLon, edgeFilter);
+		if (key == -1)
+			return super.findClosest(queryLat, queryLon, edgeFilter, byteBuffer);
+
+		Map<Long, SnapEntry> localEntries = byteBuffer instanceof SnappingBuffer ? ((SnappingBuffer)byteBuffer).getEntries() : null;
+		SnapEntry entry = localEntries != null ? localEntries.get(key) : null;
+		if (entry == null && _maxSize > 0) {
+			synchronized (_entries) {
+				entry = _entries.get(key);
+			}
+		}
+
+		if (entry != null) {
+			_hits.incrementAndGet();
+			if (localEntries != null)
+				localEntries.putIfAbsent(key, entry);
+			return createQueryResult(queryLat, queryLon, entry);
+		}
+
+		_misses.incrementAndGet();
+
+		QueryResult res = super.findClosest(queryLat, queryLon, edgeFilter, byteBuffer);
+
+		entry = new SnapEntry();
+		entry.edge = -1;
+		if (res.isValid()) {
+			EdgeIteratorState closestEdge = res.getClosestEdge();
+			entry.edge = closestEdge.getEdge();
+			entry.adjNode = closestEdge.getAdjNode();
+			entry.closestNode = res.getClosestNode();
+			entry.wayIndex = res.getWayIndex();
+			entry.position = res.getSnappedPosition().ordinal();
+			entry.queryDistance = res.getQueryDistance();
+		}
+
+		if (_maxSize > 0) {
+			synchronized (_entries) {
+				_entries.put(key, entry);
+			}
+		}
+		if (localEntries != null)
+			localEntries.put(key, entry);
+
+		return res;
+	}
+
+	public int getCacheSize() {
+		synchronized (_entries) {
+			return _entries.size();
+		}
+	}
+
+	public long getCacheHits() {
+		return _hits.get();
+	}
+
+	public long getCacheMisses() {
+		return _misses.get();
+	}
+
+	private QueryResult createQueryResult(double queryLat, double queryLon, SnapEntry entry) {
+		QueryResult res = new QueryResult(queryLat, queryLon);
+
+		if (entry.edge != -1) {
+			res.setClosestNode(entry.closestNode);
+			res.setClosestEdge(_graph.getEdgeIteratorState(entry.edge, entry.adjNode));
+			res.setWayIndex(entry.wayIndex);
+			res.setSnappedPosition(QueryResult.Position.values()[entry.position]);
+			res.setQueryDistance(entry.queryDistance);
+			res.calcSnappedPoint(Helper.DIST_PLANE);
+		}
+
+		return res;
+	}
+
+	/**
+	 * Packs the quantized coordinate (57 bits) and the id of the edge filter
+	 * (7 bits) into one key. Returns -1 if the lookup may not be cached.
+	 */
+	private long getKey(double lat, double lon, EdgeFilter edgeFilter) {
+		int filterId = getFilterId(edgeFilter);
+		if (filterId == -1)
+			return -1;
+
+		long qLat = Math.round((lat + 90) * COORDINATE_FACTOR);
+		long qLon = Math.round((lon + 180) * COORDINATE_FACTOR);
+
+		return ((qLat << 29 | qLon) << 7) | filterId;
+	}
+
+	private int getFilterId(EdgeFilter edgeFilter) {
+		String filterKey;
+		if (edgeFilter == EdgeFilter.ALL_EDGES)
+			filterKey = "all";
+		else if (edgeFilter != null && edgeFilter.getClass() == DefaultEdgeFilter.class)
+			filterKey = edgeFilter.toString();
+		else
+			return -1;
+
+		synchronized (_filterIds) {
+			Integer id = _filterIds.get(filterKey);
+			if (id == null) {
+				if (_filterIds.size() >= MAX_FILTERS)
+					return -1;
+
+				id = _filterIds.size();
+				_filterIds.put(filterKey, id);
+			}
+
+			return id;
+		}
+	}
+}
@@ -30,24 +30,46 @@ import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.log4j.Logger;
 
 import heigit.ors.mapmatching.RouteSegmentInfo;
+import heigit.ors.routing.algorithms.LandmarksRoutingAlgorithmFactory;
+import heigit.ors.routing.algorithms.cch.CCHMetric;
+import heigit.ors.routing.algorithms.cch.CCHMetricCache;
+import heigit.ors.routing.algorithms.cch.CCHRoutingAlgorithmFactory;
+import heigit.ors.routing.algorithms.cch.CCHTopology;
 import heigit.ors.routing.RoutingProfile;
+import heigit.ors.services.routing.RoutingServiceSettings;
 
 import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.reader.DataReader;
 import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithmFactory;
 import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.HintsMap;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.util.CmdArgs;
 import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.Helper;
 import com.graphhopper.util.PointList;
 import com.graphhopper.util.shapes.GHPoint;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.GeometryFactory;
 
 public class ORSGraphHopper extends GraphHopper {
+	private static final Logger LOGGER = Logger.getLogger(ORSGraphHopper.class.getName());
+
+	/** Request hint holding the key of the customized CCH metric to route on. */
+	public static final String CCH_METRIC_HINT = "cch.metric";
+	/** Request hint enabling landmarks with admissibility checks for flexible requests. */
+	public static final String LANDMARKS_HINT = "lm.flexible";
 
 	private GraphProcessContext _procCntx;
 	private HashMap<Long, ArrayList<Integer>> osmId2EdgeIds; // one osm id can correspond to multiple edges 
@@ -56,6 +78,13 @@ public class ORSGraphHopper extends GraphHopper {
 	// A route profile for referencing which is used to extract names of adjacent streets and other objects.
 	private RoutingProfile refRouteProfile;
 
+	private int _indexResolution = 300;
+	private int _indexMaxRegionSearch = 4;
+
+	private boolean _cchEnabled = RoutingServiceSettings.getCCHEnabled();
+	private CCHTopology _cchTopology;
+	private CCHMetricCache _cchMetrics;
+
 	public ORSGraphHopper(GraphProcessContext procCntx, boolean useTmc, RoutingProfile refProfile) {
 		_procCntx = procCntx;
 		this.refRouteProfile= refProfile;
@@ -68,6 +97,28 @@ public class ORSGraphHopper extends GraphHopper {
 		_procCntx.init(this);
 	}
 	
+	@Override
+	public GraphHopper init(CmdArgs args) {
+		// the values are private in GraphHopper but needed to create the cached location index
+		_indexResolution = args.getInt("index.high_resolution", _indexResolution);
+		_indexMaxRegionSearch = args.getInt("index.max_region_search", _indexMaxRegionSearch);
+		_cchEnabled = args.getBool("prepare.cch.enabled", _cchEnabled);
+
+		return super.init(args);
+	}
+
+	@Override
+	protected LocationIndex createLocationIndex(Directory dir) {
+		// the index is also used without a cache for the snapped locations of single requests
+		CachedLocationIndex index = new CachedLocationIndex(getGraphHopperStorage(), dir, RoutingServiceSettings.getSnappingCacheSize());
+		index.setResolution(_indexResolution);
+		index.setMaxRegionSearch(_indexMaxRegionSearch);
+		if (!index.loadExisting())
+			index.prepareIndex();
+
+		return index;
+	}
+
     protected DataReader createReader(GraphHopperStorage tmpGraph) {
 
 		return initDataReader(new ORSOSMReader(tmpGraph, _procCntx, tmcEdges, osmId2EdgeIds, refRouteProfile));
@@ -134,8 +185,100 @@ public class ORSGraphHopper extends GraphHopper {
 			}
 		}
 
+		if (_cchEnabled)
+			prepareCCH();
+
 		return gh;
 	}
+
+	/**
+	 * Loads the CCH topology stored next to the graph or computes and stores it
+	 * if it is missing or was built for a different graph.
+	 */
+	private void prepareCCH() {
+		GraphHopperStorage ghStorage = getGraphHopperStorage();
+		File file = Paths.get(getGraphHopperLocation(), "cch_topology").toFile();
+		long checksum = CCHTopology.getChecksum(ghStorage.getBaseGraph());
+		CCHTopology topology = null;
+
+		try {
+			if (file.exists())
+				topology = CCHTopology.load(file, checksum);
+		} catch (IOException ioe) {
+			LOGGER.warn("Unable to load CCH topology from " + file + ": " + ioe.getMessage());
+		}
+
+		if (topology == null) {
+			long startTime = System.currentTimeMillis();
+			try {
+				topology = CCHTopology.prepare(ghStorage.getBaseGraph(), RoutingServiceSettings.getCCHMaximumArcsFactor());
+			} catch (IllegalStateException ex) {
+				LOGGER.warn("CCH is disabled for " + getGraphHopperLocation() + ": " + ex.getMessage());
+				return;
+			}
+			LOGGER.info(String.format("CCH topology with %d arcs prepared in %d ms.", topology.getArcs(), System.currentTimeMillis() - startTime));
+
+			try {
+				topology.save(file);
+			} catch (IOException ioe) {
+				LOGGER.warn("Unable to save CCH topology to " + file + ": " + ioe.getMessage());
+			}
+		}
+
+		_cchTopology = topology;
+		_cchMetrics = new CCHMetricCache(RoutingServiceSettings.getCCHMetricsMaximumMemory() * 1024L * 1024L);
+	}
+
+	public boolean isCCHEnabled() {
+		return _cchTopology != null;
+	}
+
+	/**
+	 * Returns the metric with the given key, which has to describe the
+	 * weighting and edge filter of the customization uniquely. A missing 
+	 * metric is customized once in the background and null is returned until
+	 * it is ready, the request has to be answered by a flexible search 
+	 * meanwhile. Metrics which depend on the traffic data are customized again
+	 * whenever a new traffic snapshot is published, so their customization has
+	 * to build the weighting and the filter from the current snapshot.
+	 */
+	public CCHMetric getCCHMetric(String key, boolean trafficDependent, Callable<CCHMetric> customization) {
+		return _cchMetrics.getOrCustomize(key, trafficDependent, customization);
+	}
+
+	/**
+	 * Customizes the given weighting and edge filter on the CCH topology of the
+	 * graph. Edge filters must not be shared with requests.
+	 */
+	public CCHMetric customizeCCHMetric(Weighting weighting, EdgeFilter edgeFilter) {
+		return CCHMetric.customize(_cchTopology, getGraphHopperStorage().getBaseGraph(), weighting, edgeFilter);
+	}
+
+	/**
+	 * Customizes the metrics depending on the traffic data again after a new
+	 * traffic snapshot has been published.
+	 */
+	public void refreshCCHMetrics() {
+		if (_cchMetrics != null)
+			_cchMetrics.refresh();
+	}
+
+	@Override
+	public RoutingAlgorithmFactory getAlgorithmFactory(HintsMap map) {
+		RoutingAlgorithmFactory factory = super.getAlgorithmFactory(map);
+
+		String key = map.get(CCH_METRIC_HINT, "");
+		if (_cchTopology != null && !Helper.isEmpty(key)) {
+			CCHMetric metric = _cchMetrics.get(key);
+			if (metric != null)
+				return new CCHRoutingAlgorithmFactory(metric, factory);
+		}
+
+		if (map.getBool(LANDMARKS_HINT, false) && getLMFactoryDecorator().isEnabled())
+			return new LandmarksRoutingAlgorithmFactory(getLMFactoryDecorator().getPreparations(), factory);
+
+		return factory;
+	}
 	
 	public RouteSegmentInfo getRouteSegment(double[] latitudes, double[] longitudes, String vehicle,
 			EdgeFilter edgeFilter) {
@@ -31,6 +31,7 @@ import java.util.Map;
 import heigit.ors.routing.ProfileWeighting;
 import heigit.ors.routing.graphhopper.extensions.weighting.*;
 import heigit.ors.routing.traffic.RealTrafficDataProvider;
+import heigit.ors.routing.traffic.TrafficSnapshot;
 
 import com.graphhopper.routing.weighting.DefaultWeightingFactory;
 import com.graphhopper.routing.weighting.FastestWeighting;
@@ -52,11 +53,22 @@ import com.graphhopper.util.PMap;
 public class ORSWeightingFactory extends DefaultWeightingFactory {
 
 	private RealTrafficDataProvider m_trafficDataProvider;
+	private TrafficSnapshot m_trafficSnapshot;
 	private Map<Object, TurnCostExtension> m_turnCostExtensions;
 
 	public ORSWeightingFactory(RealTrafficDataProvider trafficProvider)
+	{
+		this(trafficProvider, null);
+	}
+
+	/**
+	 * Creates a factory whose traffic weightings use the given snapshot instead 
+	 * of the current one, so that they match edge filters built from it.
+	 */
+	public ORSWeightingFactory(RealTrafficDataProvider trafficProvider, TrafficSnapshot trafficSnapshot)
 	{
 		m_trafficDataProvider = trafficProvider;
+		m_trafficSnapshot = trafficSnapshot;
 		m_turnCostExtensions = new HashMap<Object, TurnCostExtension>();
 	}
 
@@ -102,7 +114,7 @@ public class ORSWeightingFactory extends DefaultWeightingFactory {
 		if (hintsMap.getBool("weighting_traffic_block", false))
 		{
 			//String strPref = weighting.substring(weighting.indexOf("-") + 1);
-			result = new TrafficAvoidWeighting(result, encoder, m_trafficDataProvider.getAvoidEdges(graphStorage));
+			result = new TrafficAvoidWeighting(result, encoder, m_trafficSnapshot != null ? m_trafficSnapshot : m_trafficDataProvider.getTrafficSnapshot(graphStorage));
 		}
 
 		if (encoder.supports(TurnWeighting.class) && !(encoder instanceof FootFlagEncoder) && graphStorage != null && !tMode.equals(TraversalMode.NODE_BASED)) {
@@ -0,0 +1,51 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.graphhopper.util.ByteArrayBuffer;
+
+/**
+ * Lookup buffer which carries the locations snapped by one request. The
+ * {@link CachedLocationIndex} takes the results of lookups made with such a
+ * buffer from its map and adds new ones to it. Buffers created from another
+ * buffer share its map, so that the threads computing the parts of a request,
+ * like the pairs of a batch, reuse the locations snapped before.
+ */
+public class SnappingBuffer extends ByteArrayBuffer {
+	private final Map<Long, CachedLocationIndex.SnapEntry> _entries;
+
+	public SnappingBuffer() {
+		super(4);
+		_entries = new ConcurrentHashMap<Long, CachedLocationIndex.SnapEntry>();
+	}
+
+	public SnappingBuffer(SnappingBuffer buffer) {
+		super(4);
+		_entries = buffer._entries;
+	}
+
+	Map<Long, CachedLocationIndex.SnapEntry> getEntries() {
+		return _entries;
+	}
+}
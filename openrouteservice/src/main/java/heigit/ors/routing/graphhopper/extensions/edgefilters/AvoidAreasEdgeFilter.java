@@ -21,11 +21,17 @@
 package heigit.ors.routing.graphhopper.extensions.edgefilters;
 
 import java.io.Serializable;
+import java.util.BitSet;
 
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.PointList;
+import com.graphhopper.util.shapes.BBox;
 
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.CoordinateSequence;
@@ -33,14 +39,24 @@ import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
 
+/**
+ * Rejects edges which lie within or cross one of the given polygons. When the
+ * graph and its location index are passed, the edges are tested once in the
+ * constructor and accept only looks up a bitset. Edges created after that,
+ * like the virtual edges of a query graph, are still tested on demand.
+ */
 public class AvoidAreasEdgeFilter implements EdgeFilter {
 
 	private final boolean in;
 	private final boolean out;
 	private FlagEncoder encoder;
 	private Envelope env; 
-	private Polygon[] polys;
+	private PreparedGeometry[] polys;
+	private BitSet blockedEdges;
+	private int edgesCount;
 	private DefaultCoordinateSequence coordSequence;
 	private GeometryFactory geomFactory = new GeometryFactory();
 	
@@ -62,10 +78,13 @@ public class AvoidAreasEdgeFilter implements EdgeFilter {
 		this.encoder = encoder;
 		this.in = in;
 		this.out = out;
-		this.polys = polys;
 
 		if (polys != null && polys.length > 0)
 		{
+			this.polys = new PreparedGeometry[polys.length];
+			for (int i = 0; i < polys.length; i++)
+				this.polys[i] = PreparedGeometryFactory.prepare(polys[i]);
+
 			double minX = Double.MAX_VALUE;
 			double minY = Double.MAX_VALUE;
 			double maxX = Double.MIN_VALUE;
@@ -91,6 +110,45 @@ public class AvoidAreasEdgeFilter implements EdgeFilter {
 		}
 	}
 
+	/**
+	 * Creates an edges filter which tests all edges of the graph around the
+	 * polygons in advance.
+	 */
+	public AvoidAreasEdgeFilter(FlagEncoder encoder, Polygon[] polys, Graph graph, LocationIndex locIndex)
+	{
+		this(encoder, true, true, polys);
+
+		if (env != null)
+			findBlockedEdges(graph, locIndex);
+	}
+
+	private void findBlockedEdges(Graph graph, LocationIndex locIndex)
+	{
+		final EdgeExplorer explorer = graph.createEdgeExplorer();
+		final BitSet testedEdges = new BitSet();
+		final BitSet blocked = new BitSet();
+
+		locIndex.query(new BBox(env.getMinX(), env.getMaxX(), env.getMinY(), env.getMaxY()), new LocationIndex.Visitor() {
+			@Override
+			public void onNode(int nodeId) {
+				EdgeIterator iter = explorer.setBaseNode(nodeId);
+				while (iter.next())
+				{
+					int edge = iter.getEdge();
+					if (testedEdges.get(edge))
+						continue;
+
+					testedEdges.set(edge);
+					if (isBlocked(iter))
+						blocked.set(edge);
+				}
+			}
+		});
+
+		edgesCount = graph.getEdges();
+		blockedEdges = blocked;
+	}
+
 	@Override
 	public final boolean accept(EdgeIteratorState iter )
 	{
@@ -99,87 +157,86 @@ public class AvoidAreasEdgeFilter implements EdgeFilter {
 			if (env == null)
 				return true;
 
-			boolean inEnv = false;
-			//   PointList pl = iter.fetchWayGeometry(2); // does not work
-			PointList pl = iter.fetchWayGeometry(3);
-			int size = pl.getSize();
-			
-			eMinX = Double.MAX_VALUE;
-			eMinY = Double.MAX_VALUE;
-			eMaxX = Double.MIN_VALUE;
-			eMaxY = Double.MIN_VALUE;
-
-			for (int j = 0; j < pl.getSize(); j++)
+			int edge = iter.getEdge();
+			if (blockedEdges != null && edge < edgesCount)
+				return !blockedEdges.get(edge);
+
+			return !isBlocked(iter);
+		}
+
+		return false;
+	}
+
+	private boolean isBlocked(EdgeIteratorState iter)
+	{
+		boolean inEnv = false;
+		//   PointList pl = iter.fetchWayGeometry(2); // does not work
+		PointList pl = iter.fetchWayGeometry(3);
+		int size = pl.getSize();
+
+		eMinX = Double.MAX_VALUE;
+		eMinY = Double.MAX_VALUE;
+		eMaxX = Double.MIN_VALUE;
+		eMaxY = Double.MIN_VALUE;
+
+		for (int j = 0; j < pl.getSize(); j++)
+		{
+			double x = pl.getLon(j);
+			double y = pl.getLat(j);
+			if (env.contains(x, y))
 			{
-				double x = pl.getLon(j);
-				double y = pl.getLat(j);
-				if (env.contains(x, y))
-				{
-					inEnv = true;
-					break;
-				}
-				
-				if (x < eMinX)
-					eMinX = x;
-				if (y < eMinY)
-					 eMinY = y;
-				if (x > eMaxX)
-					eMaxX = x;
-				if (y > eMaxY)
-					eMaxY = y;
+				inEnv = true;
+				break;
 			}
 
-			if (inEnv || !(eMinX > env.getMaxX() || eMaxX < env.getMinX() || eMinY > env.getMaxY() || eMaxY < env.getMinY()))
+			if (x < eMinX)
+				eMinX = x;
+			if (y < eMinY)
+				eMinY = y;
+			if (x > eMaxX)
+				eMaxX = x;
+			if (y > eMaxY)
+				eMaxY = y;
+		}
+
+		if (inEnv || !(eMinX > env.getMaxX() || eMaxX < env.getMinX() || eMinY > env.getMaxY() || eMaxY < env.getMinY()))
+		{
+			if (size >= 2)
 			{
-				if (size >= 2)
+				// resize sequence if needed
+				coordSequence.resize(size);
+
+				for (int j = 0; j < size; j++)
 				{
-					// resize sequence if needed
-					coordSequence.resize(size);
+					double x = pl.getLon(j);
+					double y = pl.getLat(j);
+					Coordinate c =  coordSequence.getCoordinate(j);
 
-					for (int j = 0; j < size; j++)
+					if (c == null)
 					{
-						double x = pl.getLon(j);
-						double y = pl.getLat(j);
-						Coordinate c =  coordSequence.getCoordinate(j);
-
-						if (c == null)
-						{
-							c = new Coordinate(x, y);
-							coordSequence.setCoordinate(j, c);
-						}
-						else
-						{
-							c.x = x;
-							c.y = y;
-						}
+						c = new Coordinate(x, y);
+						coordSequence.setCoordinate(j, c);
 					}
-
-					LineString ls = geomFactory.createLineString(coordSequence);
-
-					for (int i = 0; i < polys.length; i++)
+					else
 					{
-						Polygon poly = polys[i];
-						if (poly.contains(ls) || ls.crosses(poly))
-						{
-							return false;
-						}
+						c.x = x;
+						c.y = y;
 					}
 				}
-				else
+
+				LineString ls = geomFactory.createLineString(coordSequence);
+
+				for (int i = 0; i < polys.length; i++)
 				{
-					return false;
+					PreparedGeometry poly = polys[i];
+					if (poly.contains(ls) || poly.crosses(ls))
+						return true;
 				}
 			}
-			/*else
+			else
 			{
-				// Check if edge geomery intersects env.
-				if (!(eMinX > env.getMaxX() || eMaxX < env.getMinX() || eMinY > env.getMaxY() || eMaxY < env.getMinY()))
-				{
-					
-				}
-			}	*/			
-
-			return true;
+				return true;
+			}
 		}
 
 		return false;
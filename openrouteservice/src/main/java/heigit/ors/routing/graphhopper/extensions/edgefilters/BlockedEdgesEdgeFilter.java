@@ -20,60 +20,53 @@
  */
 package heigit.ors.routing.graphhopper.extensions.edgefilters;
 
-import java.util.List;
-
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.util.EdgeIteratorState;
 
 import heigit.ors.routing.graphhopper.extensions.flagencoders.HeavyVehicleFlagEncoder;
+import heigit.ors.routing.traffic.TrafficSnapshot;
 
 public class BlockedEdgesEdgeFilter implements EdgeFilter {
 
 	private final boolean in;
 	private final boolean out;
+	private final boolean heavyVehicle;
 	private FlagEncoder encoder;
-	private List<Integer> blockedEdges;
-	private List<Integer> blockedEdges_hv;
+	private TrafficSnapshot snapshot;
 
 	/**
-	 * edges (blockedEdges) for cars and heavy vehicles
-	 * edges_hv only for heavy vehicles 
+	 * Blocked edges of the snapshot apply to cars and heavy vehicles, its heavy
+	 * vehicle blocked edges only to heavy vehicles.
 	 **/
-	public BlockedEdgesEdgeFilter(FlagEncoder encoder, List<Integer> edges, List<Integer> edges_hv) {
+	public BlockedEdgesEdgeFilter(FlagEncoder encoder, TrafficSnapshot snapshot) {
 		
-		this(encoder, true, true, edges, edges_hv);
+		this(encoder, true, true, snapshot);
 	}
 	/**
 	 * Creates an edges filter which accepts both direction of the specified
 	 * vehicle.
 	 */
-	public BlockedEdgesEdgeFilter(FlagEncoder encoder, boolean in, boolean out, List<Integer> edges, List<Integer> edges_hv) {
+	public BlockedEdgesEdgeFilter(FlagEncoder encoder, boolean in, boolean out, TrafficSnapshot snapshot) {
 		
 		this.encoder = encoder;
 		this.in = in;
 		this.out = out;
-		this.blockedEdges = edges;
-		this.blockedEdges_hv = edges_hv;
+		this.snapshot = snapshot;
+		this.heavyVehicle = encoder instanceof HeavyVehicleFlagEncoder && snapshot.hasHeavyVehicleBlockedEdges();
 	}
 
 	@Override
 	public boolean accept(EdgeIteratorState iter) {
 		if (out && iter.isForward(encoder) || in && iter.isBackward(encoder)) {
-            if (blockedEdges != null)
-            {
-            	if (blockedEdges.contains(iter.getOriginalEdge()))
-            		return false;
-            }
-            
-            if ((blockedEdges_hv.size()!=0) && ( encoder instanceof HeavyVehicleFlagEncoder))
-            {
-         
-            	if (blockedEdges_hv.contains(iter.getOriginalEdge()))
-            		return false;
-            }
-            
-            return true;
+			int edge = iter.getOriginalEdge();
+			if (snapshot.isBlocked(edge))
+				return false;
+
+			if (heavyVehicle && snapshot.isHeavyVehicleBlocked(edge))
+				return false;
+
+			return true;
 		}
 
 		return false;
@@ -83,4 +76,4 @@ public class BlockedEdgesEdgeFilter implements EdgeFilter {
 	public String toString() {
 		return encoder.toString() + ", in:" + in + ", out:" + out;
 	}
-}
\ No newline at end of file
+}
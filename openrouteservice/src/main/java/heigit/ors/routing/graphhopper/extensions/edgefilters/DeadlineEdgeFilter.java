@@ -0,0 +1,86 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.edgefilters;
+
+import com.graphhopper.routing.util.DestinationDependentEdgeFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.FlagEncoder;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIteratorState;
+
+import heigit.ors.common.Deadline;
+
+/**
+ * Checks the deadline of a request while a GraphHopper algorithm explores the 
+ * graph. The search loops of these algorithms are not accessible, but every 
+ * edge they relax passes the edge filter of the request, so the deadline is 
+ * checked every {@link Deadline#CHECK_INTERVAL} edges.
+ */
+public class DeadlineEdgeFilter implements EdgeFilter {
+	private final EdgeFilter _edgeFilter;
+	private final Deadline _deadline;
+	private int _counter;
+
+	protected DeadlineEdgeFilter(EdgeFilter edgeFilter, Deadline deadline) {
+		_edgeFilter = edgeFilter;
+		_deadline = deadline;
+	}
+
+	/**
+	 * Wraps the filter unless the deadline is not set. A filter that depends on
+	 * the destination keeps being recognized as such.
+	 */
+	public static EdgeFilter create(EdgeFilter edgeFilter, Deadline deadline) {
+		if (!deadline.isSet())
+			return edgeFilter;
+
+		if (edgeFilter instanceof DestinationDependentEdgeFilter)
+			return new DestinationDependent((DestinationDependentEdgeFilter)edgeFilter, deadline);
+
+		return new DeadlineEdgeFilter(edgeFilter, deadline);
+	}
+
+	@Override
+	public boolean accept(EdgeIteratorState iter) {
+		if (++_counter == Deadline.CHECK_INTERVAL) {
+			_counter = 0;
+			_deadline.check();
+		}
+
+		return _edgeFilter.accept(iter);
+	}
+
+	private static class DestinationDependent extends DeadlineEdgeFilter implements DestinationDependentEdgeFilter {
+		private final DestinationDependentEdgeFilter _destinationFilter;
+
+		public DestinationDependent(DestinationDependentEdgeFilter edgeFilter, Deadline deadline) {
+			super(edgeFilter, deadline);
+
+			_destinationFilter = edgeFilter;
+		}
+
+		@Override
+		public void setDestinationEdge(EdgeIteratorState edge, Graph graph, FlagEncoder encoder, TraversalMode tMode) {
+			_destinationFilter.setDestinationEdge(edge, graph, encoder, tMode);
+		}
+	}
+}
@@ -21,7 +21,6 @@
 package heigit.ors.routing.graphhopper.extensions.edgefilters;
 
 import java.util.ArrayList;
-import java.util.List;
 
 import heigit.ors.routing.parameters.VehicleParameters;
 import heigit.ors.routing.graphhopper.extensions.HeavyVehicleAttributes;
@@ -31,36 +30,24 @@ import heigit.ors.routing.graphhopper.extensions.flagencoders.HeavyVehicleFlagEn
 import heigit.ors.routing.graphhopper.extensions.storages.GraphStorageUtils;
 import heigit.ors.routing.graphhopper.extensions.storages.HeavyVehicleAttributesGraphStorage;
 
-import com.carrotsearch.hppc.IntObjectMap;
-import com.carrotsearch.hppc.cursors.IntObjectCursor;
-import com.graphhopper.routing.Dijkstra;
+import heigit.ors.routing.algorithms.IndexedMinHeap;
+import heigit.ors.services.routing.RoutingServiceSettings;
+
+import com.carrotsearch.hppc.IntDoubleHashMap;
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntObjectHashMap;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
 import com.graphhopper.routing.util.DestinationDependentEdgeFilter;
-import com.graphhopper.routing.util.EdgeFilter;
-import com.graphhopper.routing.weighting.FastestWeighting;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.util.TraversalMode;
-import com.graphhopper.routing.weighting.Weighting;
-import com.graphhopper.storage.SPTEntry;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.GraphStorage;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.EdgeIteratorState;
 
 public class HeavyVehicleEdgeFilter implements DestinationDependentEdgeFilter {
 
-	public class CustomDijkstra extends Dijkstra
-	{
-		public CustomDijkstra(Graph g, FlagEncoder encoder, Weighting weighting, TraversalMode tMode)
-		{
-			super(g, weighting, tMode);
-			initCollections(1000);
-		}
-
-		public IntObjectMap<SPTEntry> getMap()
-		{
-			return fromMap;
-		} 
-	}
-
 	private int vehicleType;
 	private boolean hasHazmat; 
 	private HeavyVehicleAttributesGraphStorage gsHeavyVehicles;
@@ -72,7 +59,9 @@ public class HeavyVehicleEdgeFilter implements DestinationDependentEdgeFilter {
 	private Integer[] indexValues;
 	private int restCount;
 	private int mode = MODE_CLOSEST_EDGE;
-	private	List<Integer> destinationEdges;
+	private IntHashSet destinationEdges;
+	// destination edges of the request by the original id of the destination edge
+	private IntObjectHashMap<IntHashSet> destinationEdgesCache;
 	private byte[] buffer;
 
 	private static final int MODE_DESTINATION_EDGES = -1;
@@ -136,38 +125,116 @@ public class HeavyVehicleEdgeFilter implements DestinationDependentEdgeFilter {
 			int nodeId = edge.getBaseNode();
 			if (nodeId != -1)
 			{
-				mode = MODE_DESTINATION_EDGES;
-				Weighting weighting = new FastestWeighting(encoder);
-				CustomDijkstra dijkstraAlg = new CustomDijkstra(graph, encoder, weighting, tMode);
-				EdgeFilter edgeFilter = this;
-				dijkstraAlg.setEdgeFilter(edgeFilter);
-				dijkstraAlg.calcPath(nodeId, Integer.MIN_VALUE);
-
-				IntObjectMap<SPTEntry> destination = dijkstraAlg.getMap();
-
-				destinationEdges = new ArrayList<Integer>(destination.size());
-				for (IntObjectCursor<SPTEntry> ee : destination) {
-					if (!destinationEdges.contains(ee.value.edge)) // was originalEdge
-						destinationEdges.add(ee.value.edge);
-				}
+				if (destinationEdgesCache == null)
+					destinationEdgesCache = new IntObjectHashMap<IntHashSet>();
 
-				if (!destinationEdges.contains(edge.getOriginalEdge()))
+				int key = edge.getOriginalEdge();
+				IntHashSet edges = destinationEdgesCache.get(key);
+				if (edges == null)
 				{
-					int vt = gsHeavyVehicles.getEdgeVehicleType(edge.getOriginalEdge(), buffer);
-					boolean dstFlag = buffer[1]!=0;// ((buffer[1] >> (vehicleType >> 1)) & 1) == 1;
-
-					if (((vt & vehicleType) == vehicleType) && (dstFlag))
-						destinationEdges.add(edge.getOriginalEdge());
+					edges = findDestinationEdges(edge, graph, encoder);
+					destinationEdgesCache.put(key, edges);
 				}
 
-				if (destinationEdges.size() == 0)
-					destinationEdges = null;
+				destinationEdges = edges.isEmpty() ? null : edges;
 			}
 		}
 
 		mode = MODE_ROUTE;
 	}
 
+	/**
+	 * Returns whether edges with destination access for the vehicle type are
+	 * connected to the given edge, so that routes to it depend on their 
+	 * destination. The mode of the filter is not changed.
+	 */
+	public boolean hasDestinationEdges(EdgeIteratorState edge, Graph graph)
+	{
+		if (destinationEdgesCache == null)
+			destinationEdgesCache = new IntObjectHashMap<IntHashSet>();
+
+		int key = edge.getOriginalEdge();
+		IntHashSet edges = destinationEdgesCache.get(key);
+		if (edges == null)
+		{
+			int currentMode = mode;
+			edges = findDestinationEdges(edge, graph, encoder);
+			mode = currentMode;
+			destinationEdgesCache.put(key, edges);
+		}
+
+		return !edges.isEmpty();
+	}
+
+	/**
+	 * Applies the restrictions of a route without any destination edges, so 
+	 * that edges with destination access for the vehicle type are rejected.
+	 */
+	public void setRouteMode()
+	{
+		destinationEdges = null;
+		mode = MODE_ROUTE;
+	}
+
+	/**
+	 * Collects the edges with destination access for the vehicle type which are
+	 * connected to the destination edge. The exploration only follows such edges
+	 * and stops at the distance given by the routing settings.
+	 */
+	private IntHashSet findDestinationEdges(EdgeIteratorState edge, Graph graph, FlagEncoder encoder)
+	{
+		IntHashSet edges = new IntHashSet();
+		double maxDistance = RoutingServiceSettings.getDestinationEdgesMaximumDistance();
+		EdgeExplorer explorer = graph.createEdgeExplorer(new DefaultEdgeFilter(encoder, false, true));
+		IntDoubleHashMap distances = new IntDoubleHashMap();
+		IndexedMinHeap heap = new IndexedMinHeap(64);
+
+		mode = MODE_DESTINATION_EDGES;
+
+		distances.put(edge.getBaseNode(), 0);
+		heap.update(edge.getBaseNode(), 0);
+
+		while (!heap.isEmpty())
+		{
+			double distance = heap.peekValue();
+			EdgeIterator iter = explorer.setBaseNode(heap.poll());
+
+			while (iter.next())
+			{
+				if (!accept(iter))
+					continue;
+
+				edges.add(iter.getOriginalEdge());
+
+				double adjDistance = distance + iter.getDistance();
+				if (adjDistance > maxDistance)
+					continue;
+
+				int adjNode = iter.getAdjNode();
+				int index = distances.indexOf(adjNode);
+				if (!distances.indexExists(index) || adjDistance < distances.indexGet(index))
+				{
+					distances.put(adjNode, adjDistance);
+					heap.update(adjNode, adjDistance);
+				}
+			}
+		}
+
+		mode = MODE_ROUTE;
+
+		int edgeId = edge.getOriginalEdge();
+		if (!edges.contains(edgeId))
+		{
+			int vt = gsHeavyVehicles.getEdgeVehicleType(edgeId, buffer);
+			boolean dstFlag = buffer[1]!=0;// ((buffer[1] >> (vehicleType >> 1)) & 1) == 1;
+
+			if (((vt & vehicleType) == vehicleType) && (dstFlag))
+				edges.add(edgeId);
+		}
+
+		return edges;
+	}
+
 	@Override
 	public boolean accept(EdgeIteratorState iter) {
 		if (out && iter.isForward(encoder) || in && iter.isBackward(encoder)) {
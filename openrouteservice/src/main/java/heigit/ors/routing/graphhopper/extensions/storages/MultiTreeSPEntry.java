@@ -77,6 +77,11 @@ public class MultiTreeSPEntry implements Cloneable, Comparable<MultiTreeSPEntry>
 		return items[index];
 	}
 
+	public double getTotalWeight()
+	{
+		return totalWeight;
+	}
+
 	public void resetUpdate(boolean value)
 	{
 		for (int i = 0; i < items.length; i++) {
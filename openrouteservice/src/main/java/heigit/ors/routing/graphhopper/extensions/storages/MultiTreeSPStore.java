@@ -0,0 +1,278 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.graphhopper.extensions.storages;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.graphhopper.util.EdgeIterator;
+
+/**
+ * Primitive struct-of-arrays alternative to a map of {@link MultiTreeSPEntry}
+ * objects. Every visited node gets a slot, and the values of all trees are
+ * stored in flat arrays at the position slot * numTrees + tree. A weight of
+ * 0.0 marks a tree that has not reached the node yet.
+ */
+public class MultiTreeSPStore {
+	private final int _numTrees;
+	private IntIntHashMap _nodeSlots;
+	private int[] _slotNodes;
+	private double[] _totalWeights;
+	private BitSet _visited;
+	private double[] _weights;
+	private int[] _edges;
+	private int[] _parents;
+	private BitSet _updates;
+	private int _size;
+
+	public MultiTreeSPStore(int numTrees, int capacity) {
+		_numTrees = numTrees;
+		capacity = Math.max(capacity, 16);
+		_nodeSlots = new IntIntHashMap(capacity);
+		_slotNodes = new int[capacity];
+		_totalWeights = new double[capacity];
+		_visited = new BitSet(capacity);
+		_weights = new double[capacity * numTrees];
+		_edges = new int[capacity * numTrees];
+		_parents = new int[capacity * numTrees];
+		_updates = new BitSet(capacity * numTrees);
+	}
+
+	public int getNumTrees() {
+		return _numTrees;
+	}
+
+	public int size() {
+		return _size;
+	}
+
+	public void clear() {
+		_nodeSlots.clear();
+		_visited.clear();
+		_updates.clear();
+		_size = 0;
+	}
+
+	/**
+	 * Returns the slot of the node or -1 if the node has not been visited.
+	 */
+	public int getSlot(int node) {
+		return _nodeSlots.getOrDefault(node, -1);
+	}
+
+	public int getNode(int slot) {
+		return _slotNodes[slot];
+	}
+
+	/**
+	 * Adds a slot for the node reached via the given edge. Every tree that
+	 * has reached the parent slot is extended by the edge weight, which
+	 * matches the {@link MultiTreeSPEntry} constructor. A parent slot of -1
+	 * creates a root slot where all trees start with weight 0.
+	 */
+	public int addSlot(int node, int edge, double edgeWeight, boolean updated, int parentSlot) {
+		if (_size == _slotNodes.length)
+			grow();
+
+		int slot = _size++;
+		_nodeSlots.put(node, slot);
+		_slotNodes[slot] = node;
+		_visited.clear(slot);
+
+		double totalWeight = 0.0;
+		int index = slot * _numTrees;
+		int parentIndex = parentSlot * _numTrees;
+
+		for (int i = 0; i < _numTrees; ++i, ++index) {
+			double entryWeight = parentSlot < 0 ? 0.0 : _weights[parentIndex + i];
+
+			if (entryWeight == 0.0 && parentSlot >= 0) {
+				_weights[index] = 0.0;
+				_edges[index] = EdgeIterator.NO_EDGE;
+				_parents[index] = -1;
+				_updates.clear(index);
+				continue;
+			}
+
+			_weights[index] = edgeWeight + entryWeight;
+			_edges[index] = edge;
+			_parents[index] = parentSlot;
+			_updates.set(index, updated);
+			totalWeight += _weights[index];
+		}
+
+		_totalWeights[slot] = totalWeight;
+
+		return slot;
+	}
+
+	public double getWeight(int slot, int tree) {
+		return _weights[slot * _numTrees + tree];
+	}
+
+	public void setWeight(int slot, int tree, double weight) {
+		_weights[slot * _numTrees + tree] = weight;
+	}
+
+	public int getEdge(int slot, int tree) {
+		return _edges[slot * _numTrees + tree];
+	}
+
+	public int getParent(int slot, int tree) {
+		return _parents[slot * _numTrees + tree];
+	}
+
+	public boolean isUpdate(int slot, int tree) {
+		return _updates.get(slot * _numTrees + tree);
+	}
+
+	/**
+	 * Sets the weight, edge and parent of one tree at the slot and marks it as updated.
+	 */
+	public void setItem(int slot, int tree, double weight, int edge, int parentSlot) {
+		int index = slot * _numTrees + tree;
+		_weights[index] = weight;
+		_edges[index] = edge;
+		_parents[index] = parentSlot;
+		_updates.set(index);
+	}
+
+	public void resetUpdate(int slot, boolean value) {
+		_updates.set(slot * _numTrees, (slot + 1) * _numTrees, value);
+	}
+
+	public boolean isVisited(int slot) {
+		return _visited.get(slot);
+	}
+
+	public void setVisited(int slot) {
+		_visited.set(slot);
+	}
+
+	/**
+	 * Marks all trees of the slot with a weight above maxWeight as not reached.
+	 * Returns whether any tree of the slot is still reached.
+	 */
+	public boolean removeWeightsAbove(int slot, double maxWeight) {
+		double totalWeight = 0.0;
+		int index = slot * _numTrees;
+
+		for (int i = 0; i < _numTrees; ++i, ++index) {
+			if (_weights[index] > maxWeight) {
+				_weights[index] = 0.0;
+				_edges[index] = EdgeIterator.NO_EDGE;
+				_parents[index] = -1;
+				_updates.clear(index);
+			}
+
+			totalWeight += _weights[index];
+		}
+
+		_totalWeights[slot] = totalWeight;
+
+		return totalWeight > 0.0;
+	}
+
+	public double getTotalWeight(int slot) {
+		return _totalWeights[slot];
+	}
+
+	public void updateWeights(int slot) {
+		double totalWeight = 0.0;
+		int index = slot * _numTrees;
+
+		for (int i = 0; i < _numTrees; ++i)
+			totalWeight += _weights[index + i];
+
+		_totalWeights[slot] = totalWeight;
+	}
+
+	/**
+	 * Creates {@link MultiTreeSPEntry} objects for the given slots and for all
+	 * slots on their parent chains. Slots of -1 are returned as null.
+	 */
+	public MultiTreeSPEntry[] toEntries(int[] slots) {
+		MultiTreeSPEntry[] entries = new MultiTreeSPEntry[_size];
+		IntArrayList stack = new IntArrayList();
+
+		// Trees of different sources may point at each other's slots, so all
+		// entries are created first and linked afterwards.
+		for (int slot : slots) {
+			if (slot >= 0 && entries[slot] == null) {
+				entries[slot] = createEntry(slot);
+				stack.add(slot);
+			}
+		}
+
+		IntArrayList created = new IntArrayList();
+		while (!stack.isEmpty()) {
+			int slot = stack.remove(stack.size() - 1);
+			created.add(slot);
+
+			for (int i = 0; i < _numTrees; ++i) {
+				int parent = _parents[slot * _numTrees + i];
+				if (parent >= 0 && entries[parent] == null) {
+					entries[parent] = createEntry(parent);
+					stack.add(parent);
+				}
+			}
+		}
+
+		for (int n = 0; n < created.size(); n++) {
+			int slot = created.get(n);
+			MultiTreeSPEntry entry = entries[slot];
+
+			for (int i = 0; i < _numTrees; ++i) {
+				int index = slot * _numTrees + i;
+				MultiTreeSPEntryItem item = entry.getItem(i);
+				item.weight = _weights[index];
+				item.edge = _edges[index];
+				item.parent = _parents[index] < 0 ? null : entries[_parents[index]];
+				item.update = _updates.get(index);
+			}
+
+			entry.updateWeights();
+		}
+
+		MultiTreeSPEntry[] res = new MultiTreeSPEntry[slots.length];
+		for (int i = 0; i < slots.length; i++)
+			res[i] = slots[i] < 0 ? null : entries[slots[i]];
+
+		return res;
+	}
+
+	private MultiTreeSPEntry createEntry(int slot) {
+		MultiTreeSPEntry entry = new MultiTreeSPEntry(_slotNodes[slot], EdgeIterator.NO_EDGE, 0.0, false, null, _numTrees);
+		entry.visited = _visited.get(slot);
+		return entry;
+	}
+
+	private void grow() {
+		int capacity = _slotNodes.length + (_slotNodes.length >> 1);
+		_slotNodes = Arrays.copyOf(_slotNodes, capacity);
+		_totalWeights = Arrays.copyOf(_totalWeights, capacity);
+		_weights = Arrays.copyOf(_weights, capacity * _numTrees);
+		_edges = Arrays.copyOf(_edges, capacity * _numTrees);
+		_parents = Arrays.copyOf(_parents, capacity * _numTrees);
+	}
+}
@@ -20,10 +20,6 @@
  */
 package heigit.ors.routing.graphhopper.extensions.weighting;
 
-
-import java.util.HashMap;
-
-
 import com.graphhopper.routing.util.CarFlagEncoder;
 import com.graphhopper.routing.util.FlagEncoder;
 import com.graphhopper.routing.weighting.AbstractWeighting;
@@ -31,10 +27,7 @@ import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.util.EdgeIteratorState;
 import com.graphhopper.util.PMap;
 
-import heigit.ors.routing.traffic.AvoidEdgeInfo;
-import heigit.ors.routing.traffic.TmcEventCodesTable;
-import heigit.ors.routing.traffic.TmcMode;
-import heigit.ors.routing.traffic.TrafficEventInfo;
+import heigit.ors.routing.traffic.TrafficSnapshot;
 
 public class TrafficAvoidWeighting extends AbstractWeighting {
 
@@ -44,7 +37,8 @@ public class TrafficAvoidWeighting extends AbstractWeighting {
      */
     protected final static double SPEED_CONV = 1;
     private double maxSpeed;
-	private HashMap<Integer, AvoidEdgeInfo> forbiddenEdges;
+	private TrafficSnapshot snapshot = TrafficSnapshot.EMPTY;
+	private boolean heavyVehicleCodes;
 
 	private int encoderIndex = -1;
 
@@ -57,6 +51,8 @@ public class TrafficAvoidWeighting extends AbstractWeighting {
 
         encoderIndex = encoder.getIndex();
         maxSpeed = encoder.getMaxSpeed() / SPEED_CONV;
+        // events for heavy vehicles do not affect cars
+        heavyVehicleCodes = !(encoder instanceof CarFlagEncoder);
     }
 
     public TrafficAvoidWeighting( FlagEncoder encoder )
@@ -65,10 +61,10 @@ public class TrafficAvoidWeighting extends AbstractWeighting {
     }
 
 
-    public TrafficAvoidWeighting(Weighting defultWeighting, FlagEncoder encoder, HashMap<Integer, AvoidEdgeInfo> forbiddenEdges)
+    public TrafficAvoidWeighting(Weighting defultWeighting, FlagEncoder encoder, TrafficSnapshot snapshot)
     {
         this(encoder, new PMap(0));
-		this.forbiddenEdges = forbiddenEdges;     
+		this.snapshot = snapshot;     
     }
 
     
@@ -86,60 +82,17 @@ public class TrafficAvoidWeighting extends AbstractWeighting {
             return Double.POSITIVE_INFINITY;
 
     
-	    AvoidEdgeInfo ei = forbiddenEdges.get(edge.getEdge());
-		if (ei!= null){
-
-			short[] codes = ei.getCodes();
-			TrafficEventInfo tec = null;
-			double givenSpeed = Double.MAX_VALUE;
-			double speedFactor = 1;
-			double givenDelay = -1;
-			for (int i = 0; i < codes.length; i++) {
-				int code = codes[i];
-				tec = TmcEventCodesTable.getEventInfo(code);
-				
-				if ((tec.getTmcMode() == TmcMode.HEAVY_VEHICLE) && (flagEncoder instanceof CarFlagEncoder))
-					continue; 				
-				
-				if (tec!=null) {
-					if (tec.isDelay()) {
-                        // use the max delay in the routing 
-						givenDelay = Math.max(givenDelay, tec.getDelay());
-					}  
-
-					if(tec.getSpeedFactor()>1){
-
-						givenSpeed = Math.min(givenSpeed, tec.getSpeedFactor());
-
-					} else {
-   
-						speedFactor = Math.min(speedFactor, tec.getSpeedFactor()); 
-
-					}
-
-				} // end for tec null 
-			} // end for codes
-			
-
-		
-			if (givenDelay > 0 ){
-				
-	            return givenDelay * 60 + calcTravelTimeInSec(edge.getDistance(), normal_speed); 			
-	       
-			} else if (givenSpeed < Double.MAX_VALUE){
-			
-				return calcTravelTimeInSec(edge.getDistance(), givenSpeed); 		
-					
-			} else if (speedFactor <= 1){
-				
-				return calcTravelTimeInSec(edge.getDistance(), speedFactor * normal_speed); 	
-
-			} else {
-				
-				 System.err.println("traffic weighting method didn't give the weight");
-				 throw new IllegalStateException("edge " + edge.getOriginalEdge() + 
-						   "has no considered event codes " + ei.getCodesAsString());
-			}
+		int slot = snapshot.getPenaltySlot(edge.getEdge(), heavyVehicleCodes);
+		if (slot >= 0) {
+			double givenDelay = snapshot.getDelay(slot);
+			double givenSpeed = snapshot.getSpeed(slot);
+
+			if (givenDelay > 0)
+				return givenDelay * 60 + calcTravelTimeInSec(edge.getDistance(), normal_speed);
+			else if (givenSpeed < Double.MAX_VALUE)
+				return calcTravelTimeInSec(edge.getDistance(), givenSpeed);
+			else
+				return calcTravelTimeInSec(edge.getDistance(), snapshot.getSpeedFactor(slot) * normal_speed);
 		}
 		
 		// if AovidFeatureInfo is null
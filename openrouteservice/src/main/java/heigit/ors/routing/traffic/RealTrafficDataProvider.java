@@ -43,6 +43,7 @@ import java.util.logging.Logger;
 
 import javax.xml.parsers.ParserConfigurationException;
 
+import heigit.ors.routing.GraphVersions;
 import heigit.ors.routing.RoutingProfile;
 import heigit.ors.routing.RoutingProfileLoadContext;
 import heigit.ors.routing.RoutingProfilesCollection;
@@ -92,6 +93,7 @@ public class RealTrafficDataProvider {
 		private RoutingProfile m_routeProfile;
 		private List<Integer> m_blockedEdges_hv; // for heavy vehicles
 		private HashMap<Integer, TrafficFeatureInfo> m_edgeId2trafficFeature;  // one edge corresponds to one TrafficFeatureInfo
+		private volatile TrafficSnapshot m_snapshot = TrafficSnapshot.EMPTY;
 
 		public RouteProfileTmcData(RoutingProfile rp) {
 			m_routeProfile = rp;
@@ -128,12 +130,18 @@ public class RealTrafficDataProvider {
 			return m_edges;
 		}
 
+		public TrafficSnapshot getSnapshot() {
+			return m_snapshot;
+		}
+
 		public void update(HashMap<Integer, EdgeInfo> edges, HashMap<Integer, AvoidEdgeInfo> avoidEdges,
 				List<Integer> blockedEdges, List<Integer> blockedEdges_hv) {
 			m_avoidEdges = avoidEdges;
 			m_blockedEdges = blockedEdges;
 			m_edges = edges;
 			m_blockedEdges_hv = blockedEdges_hv;
+			// readers only see complete snapshots
+			m_snapshot = new TrafficSnapshot(blockedEdges, blockedEdges_hv, avoidEdges);
 		}
 		
 		public void setMapEddgeId2trafficFeature(HashMap<Integer, TrafficFeatureInfo> m_edgeId2trafficFeature){
@@ -572,6 +580,8 @@ public class RealTrafficDataProvider {
 		// TODO make it thread safe.
 	    // System.out.println("edges size " +  edges.size() + " ; avoid edges size = "+ avoidEdges.size() + " ; blocked edges size = " + blockedEdges.size());
 		rptd.update(edges, avoidEdges, blockedEdges, blockedEdges_hv);
+		// the CCH metrics of the profile are customized once for the new snapshot
+		rptd.getRouteProfile().getGraphhopper().refreshCCHMetrics();
 		
 		// System.out.println("traffic edges size " + edges.keySet().toString());
 	    // System.out.println("TmcUpdateInfo size " + updateInfo.getTmcEdgeIds().size() +" info are "+ Arrays.deepToString(updateInfo.getTmcEdgeIds().toArray()));
@@ -802,9 +812,22 @@ public class RealTrafficDataProvider {
 			return rptd.getAvoidEdges();
 	}
 	
+	/**
+	 * Returns the current traffic snapshot of the given graph or an empty one
+	 * if no traffic data is available for it.
+	 */
+	public TrafficSnapshot getTrafficSnapshot(GraphStorage graphStorage) {
+		RouteProfileTmcData rptd = getRouteProfileTmcData(graphStorage);
+
+		if (rptd == null)
+			return TrafficSnapshot.EMPTY;
+		else
+			return rptd.getSnapshot();
+	}
+
 	private RouteProfileTmcData getRouteProfileTmcData(GraphStorage graphStorage)
 	{
-		return m_routeProfilesMap.get(graphStorage.getDirectory().getLocation().hashCode());
+		return m_routeProfilesMap.get(GraphVersions.getGraphPath(graphStorage.getDirectory().getLocation()).hashCode());
 	}
 	
 	
@@ -0,0 +1,161 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.traffic;
+
+import java.util.Collection;
+import java.util.Map;
+
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntIntHashMap;
+
+/**
+ * Immutable view of the traffic situation of one graph. A new snapshot is
+ * published with every update of the traffic data, so that edge filters and
+ * weightings keep a consistent state for the whole request and look up edges
+ * without boxing or locking.
+ * 
+ * The penalties of avoided edges are resolved from their event codes once
+ * per snapshot and stored in primitive arrays. Index 0 of an edge holds the
+ * values for cars, which ignore events for heavy vehicles, and index 1 the
+ * values for all other vehicles.
+ */
+public class TrafficSnapshot {
+	public static final TrafficSnapshot EMPTY = new TrafficSnapshot(null, null, null);
+
+	private final long _version;
+	private final IntHashSet _blockedEdges;
+	private final IntHashSet _heavyVehicleBlockedEdges;
+	private final IntIntHashMap _penaltyIndices;
+	private final double[] _delays;
+	private final double[] _speeds;
+	private final double[] _speedFactors;
+
+	private static long _lastVersion;
+
+	public TrafficSnapshot(Collection<Integer> blockedEdges, Collection<Integer> heavyVehicleBlockedEdges, Map<Integer, AvoidEdgeInfo> avoidEdges) {
+		_version = nextVersion();
+		_blockedEdges = toSet(blockedEdges);
+		_heavyVehicleBlockedEdges = toSet(heavyVehicleBlockedEdges);
+
+		int size = avoidEdges == null ? 0 : avoidEdges.size();
+		_penaltyIndices = new IntIntHashMap(size);
+		_delays = new double[size * 2];
+		_speeds = new double[size * 2];
+		_speedFactors = new double[size * 2];
+
+		if (size > 0) {
+			int index = 0;
+			for (AvoidEdgeInfo edgeInfo : avoidEdges.values()) {
+				_penaltyIndices.put(edgeInfo.getEdgeId(), index);
+				resolvePenalty(edgeInfo.getCodes(), false, index * 2);
+				resolvePenalty(edgeInfo.getCodes(), true, index * 2 + 1);
+				index++;
+			}
+		}
+	}
+
+	private static synchronized long nextVersion() {
+		return ++_lastVersion;
+	}
+
+	private static IntHashSet toSet(Collection<Integer> edges) {
+		IntHashSet set = new IntHashSet(edges == null ? 0 : edges.size());
+		if (edges != null) {
+			for (Integer edge : edges)
+				set.add(edge);
+		}
+		return set;
+	}
+
+	private void resolvePenalty(short[] codes, boolean heavyVehicleCodes, int slot) {
+		double delay = -1;
+		double speed = Double.MAX_VALUE;
+		double speedFactor = 1;
+
+		for (int i = 0; i < codes.length; i++) {
+			TrafficEventInfo tec = TmcEventCodesTable.getEventInfo(codes[i]);
+			if (tec == null || (!heavyVehicleCodes && tec.getTmcMode() == TmcMode.HEAVY_VEHICLE))
+				continue;
+
+			// use the max delay in the routing
+			if (tec.isDelay())
+				delay = Math.max(delay, tec.getDelay());
+
+			if (tec.getSpeedFactor() > 1)
+				speed = Math.min(speed, tec.getSpeedFactor());
+			else
+				speedFactor = Math.min(speedFactor, tec.getSpeedFactor());
+		}
+
+		_delays[slot] = delay;
+		_speeds[slot] = speed;
+		_speedFactors[slot] = speedFactor;
+	}
+
+	/**
+	 * Returns a number identifying the snapshot. Later snapshots have larger versions.
+	 */
+	public long getVersion() {
+		return _version;
+	}
+
+	public boolean isBlocked(int edge) {
+		return _blockedEdges.contains(edge);
+	}
+
+	public boolean isHeavyVehicleBlocked(int edge) {
+		return _heavyVehicleBlockedEdges.contains(edge);
+	}
+
+	public boolean hasHeavyVehicleBlockedEdges() {
+		return !_heavyVehicleBlockedEdges.isEmpty();
+	}
+
+	/**
+	 * Returns the slot of the penalty values of an avoided edge or -1 if the
+	 * edge is not affected by traffic events.
+	 */
+	public int getPenaltySlot(int edge, boolean heavyVehicleCodes) {
+		int index = _penaltyIndices.getOrDefault(edge, -1);
+		if (index < 0)
+			return -1;
+
+		return index * 2 + (heavyVehicleCodes ? 1 : 0);
+	}
+
+	/**
+	 * Returns the delay in minutes or a value <= 0 if there is none.
+	 */
+	public double getDelay(int slot) {
+		return _delays[slot];
+	}
+
+	/**
+	 * Returns the speed given by the events or Double.MAX_VALUE if there is none.
+	 */
+	public double getSpeed(int slot) {
+		return _speeds[slot];
+	}
+
+	public double getSpeedFactor(int slot) {
+		return _speedFactors[slot];
+	}
+}
@@ -33,9 +33,13 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import heigit.ors.localization.LocalizationManager;
+import heigit.ors.matrix.algorithms.rphast.RPHASTTargetGraphCache;
 import heigit.ors.routing.RoutingProfile;
 import heigit.ors.routing.RoutingProfileManager;
 import heigit.ors.routing.RoutingProfileManagerStatus;
+import heigit.ors.routing.admission.AdmissionQueue;
+import heigit.ors.routing.admission.RequestClass;
+import heigit.ors.routing.graphhopper.extensions.CachedLocationIndex;
 import heigit.ors.routing.configuration.RouteProfileConfiguration;
 import heigit.ors.routing.traffic.RealTrafficDataProvider;
 import heigit.ors.services.accessibility.AccessibilityServiceSettings;
@@ -117,6 +121,49 @@ public class ORSServicesUtils {
 					if (jProfileLimits.length() > 0)
 						jProfileProps.put("limits", jProfileLimits);
 
+					RPHASTTargetGraphCache targetGraphCache = rp.getTargetGraphCache();
+					if (targetGraphCache != null)
+					{
+						JSONObject jCacheInfo = new JSONObject(true);
+						jCacheInfo.put("size", targetGraphCache.size());
+						jCacheInfo.put("hits", targetGraphCache.getHits());
+						jCacheInfo.put("misses", targetGraphCache.getMisses());
+						jProfileProps.put("matrix_target_graph_cache", jCacheInfo);
+					}
+
+					JSONObject jAdmission = new JSONObject(true);
+					for (RequestClass requestClass : RequestClass.values())
+					{
+						AdmissionQueue admissionQueue = rp.getAdmissionQueue(requestClass);
+						if (admissionQueue != null)
+						{
+							JSONObject jQueueInfo = new JSONObject(true);
+							jQueueInfo.put("max_concurrent", admissionQueue.getMaximumConcurrent());
+							jQueueInfo.put("queue_size", admissionQueue.getQueueSize());
+							jQueueInfo.put("running", admissionQueue.getRunning());
+							jQueueInfo.put("waiting", admissionQueue.getWaiting());
+							jQueueInfo.put("admitted", admissionQueue.getAdmitted());
+							jQueueInfo.put("rejected", admissionQueue.getRejected());
+							jQueueInfo.put("queued", admissionQueue.getQueued());
+							jQueueInfo.put("average_wait_time", admissionQueue.getAverageWaitTime());
+							jQueueInfo.put("maximum_wait_time", admissionQueue.getMaximumWaitTime());
+							jAdmission.put(requestClass.getName(), jQueueInfo);
+						}
+					}
+
+					if (jAdmission.length() > 0)
+						jProfileProps.put("admission", jAdmission);
+
+					if (rp.getGraphhopper().getLocationIndex() instanceof CachedLocationIndex)
+					{
+						CachedLocationIndex locIndex = (CachedLocationIndex)rp.getGraphhopper().getLocationIndex();
+						JSONObject jCacheInfo = new JSONObject(true);
+						jCacheInfo.put("size", locIndex.getCacheSize());
+						jCacheInfo.put("hits", locIndex.getCacheHits());
+						jCacheInfo.put("misses", locIndex.getCacheMisses());
+						jProfileProps.put("snapping_cache", jCacheInfo);
+					}
+
 					jProfiles.put("profile " + Integer.toString(i), jProfileProps);
 
 					i++;
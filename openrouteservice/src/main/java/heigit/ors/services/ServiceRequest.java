@@ -20,8 +20,11 @@
  */
 package heigit.ors.services;
 
+import heigit.ors.common.Deadline;
+
 public class ServiceRequest {
 	private String _id;
+	private Deadline _deadline = Deadline.NONE;
 
 	public String getId() {
 		return _id;
@@ -30,4 +33,12 @@ public class ServiceRequest {
 	public void setId(String id) {
 		_id = id;
 	}
+
+	public Deadline getDeadline() {
+		return _deadline;
+	}
+
+	public void setDeadline(Deadline deadline) {
+		_deadline = deadline;
+	}
 }
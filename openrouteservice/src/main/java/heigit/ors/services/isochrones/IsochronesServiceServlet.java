@@ -23,8 +23,8 @@ package heigit.ors.services.isochrones;
 import javax.servlet.ServletException;
 import javax.servlet.http.*;
 
+import heigit.ors.isochrones.IsochronesErrorCodes;
 import heigit.ors.services.isochrones.requestprocessors.IsochronesServiceRequestProcessorFactory;
-import heigit.ors.servlet.http.AbstractHttpRequestProcessor;
 import heigit.ors.servlet.http.BaseHttpServlet;
 
 public class IsochronesServiceServlet extends BaseHttpServlet {
@@ -35,36 +35,15 @@ public class IsochronesServiceServlet extends BaseHttpServlet {
 	private static final long serialVersionUID = 12342412347892L;
 
 	public void init() {
+		initExecutor("isochrones", IsochronesServiceSettings.getComputeThreads(), IsochronesServiceSettings.getComputeQueueSize(), IsochronesErrorCodes.SERVICE_OVERLOADED, IsochronesServiceSettings.getRequestTimeout());
 	}
 	
 	public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException 
 	{
-		try
-		{
-			AbstractHttpRequestProcessor reqProcessor = IsochronesServiceRequestProcessorFactory.createProcessor(request);
-			reqProcessor.process(response);
-			reqProcessor.destroy();
-		}
-		catch(Exception ex)
-		{
-			writeError(response, ex);
-		}
+		processAsync(request, response, IsochronesServiceRequestProcessorFactory::createProcessor);
 	}
 	
 	public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException{
-		try
-		{
-			AbstractHttpRequestProcessor reqProcessor = IsochronesServiceRequestProcessorFactory.createProcessor(request);
-			reqProcessor.process(response);
-			reqProcessor.destroy();
-		}
-		catch(Exception ex)
-		{
-			writeError(response, ex);
-		}
+		processAsync(request, response, IsochronesServiceRequestProcessorFactory::createProcessor);
 	}
-
-    public void destroy() {
-    	
-    }
 }
@@ -44,6 +44,9 @@ public class IsochronesServiceSettings {
 	private static boolean allowComputeArea = true;
 	private static Map<String, StatisticsProviderConfiguration> statsProviders;
 	private static String attribution = "";
+	private static long requestTimeout = 0;
+	private static int computeThreads = 0;
+	private static int computeQueueSize = 100;
 
 	static 
 	{
@@ -127,6 +130,18 @@ public class IsochronesServiceSettings {
 		value = AppConfig.Global().getServiceParameter("isochrones", "attribution");
 		if (value != null)
 			attribution = value;
+
+		value = AppConfig.Global().getServiceParameter("isochrones", "request_timeout");
+		if (value != null)
+			requestTimeout = Math.max(0, Long.parseLong(value));
+
+		value = AppConfig.Global().getServiceParameter("isochrones", "compute_threads");
+		if (value != null)
+			computeThreads = Math.max(0, Integer.parseInt(value));
+
+		value = AppConfig.Global().getServiceParameter("isochrones", "compute_queue_size");
+		if (value != null)
+			computeQueueSize = Math.max(1, Integer.parseInt(value));
 	}
 
 	private static Map<Integer, Integer> getParameters(List<? extends ConfigObject> params)
@@ -163,6 +178,26 @@ public class IsochronesServiceSettings {
 		return maximumLocations;
 	}
 
+	public static long getRequestTimeout() {
+		return requestTimeout;
+	}
+
+	/**
+	 * Returns the number of threads computing the requests of the service or 0
+	 * for one thread per available core.
+	 */
+	public static int getComputeThreads() {
+		return computeThreads;
+	}
+
+	/**
+	 * Returns the number of requests which may wait for a computing thread 
+	 * before further ones are rejected.
+	 */
+	public static int getComputeQueueSize() {
+		return computeQueueSize;
+	}
+
 	public static int getMaximumRange(int profileType, TravelRangeType range) {
 		Integer res = 0;
 
@@ -36,6 +36,7 @@ import com.vividsolutions.jts.geom.LineString;
 import com.vividsolutions.jts.geom.Polygon;
 
 import heigit.ors.common.AttributeValue;
+import heigit.ors.common.Deadline;
 import heigit.ors.common.Pair;
 import heigit.ors.common.StatusCode;
 import heigit.ors.exceptions.ParameterOutOfRangeException;
@@ -71,6 +72,7 @@ public class JsonIsochronesRequestProcessor extends AbstractHttpRequestProcessor
 	@Override
 	public void process(HttpServletResponse response) throws Exception 
 	{
+		Deadline deadline = ServletUtility.getDeadline(_request, IsochronesServiceSettings.getRequestTimeout());
 		String reqMethod = _request.getMethod();
 
 		IsochroneRequest req = null;
@@ -89,6 +91,8 @@ public class JsonIsochronesRequestProcessor extends AbstractHttpRequestProcessor
 		if (req == null)
 			throw new StatusCodeException(StatusCode.BAD_REQUEST, IsochronesErrorCodes.UNKNOWN, "IsochronesRequest object is null.");
 
+		req.setDeadline(deadline);
+
 		if (!req.isValid())
 			throw new StatusCodeException(StatusCode.BAD_REQUEST, IsochronesErrorCodes.UNKNOWN, "IsochronesRequest is not valid.");
 
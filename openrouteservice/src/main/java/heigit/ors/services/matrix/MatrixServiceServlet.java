@@ -23,8 +23,8 @@ package heigit.ors.services.matrix;
 import javax.servlet.*;
 import javax.servlet.http.*;
 
+import heigit.ors.matrix.MatrixErrorCodes;
 import heigit.ors.services.matrix.requestprocessors.MatrixServiceRequestProcessorFactory;
-import heigit.ors.servlet.http.AbstractHttpRequestProcessor;
 import heigit.ors.servlet.http.BaseHttpServlet;
 
 public class MatrixServiceServlet extends BaseHttpServlet {
@@ -32,33 +32,14 @@ public class MatrixServiceServlet extends BaseHttpServlet {
 	private static final long serialVersionUID = 1243348952345L;
 
 	public void init() throws ServletException {
-	}
-
-	public void destroy() {
-		
+		initExecutor("matrix", MatrixServiceSettings.getComputeThreads(), MatrixServiceSettings.getComputeQueueSize(), MatrixErrorCodes.SERVICE_OVERLOADED, MatrixServiceSettings.getRequestTimeout());
 	}
 
 	public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException   {
-		try
-		{
-			AbstractHttpRequestProcessor reqProcessor = MatrixServiceRequestProcessorFactory.createProcessor(request);
-			reqProcessor.process(response);
-			reqProcessor.destroy();
-		}
-		catch (Exception ex) {
-			writeError(response, ex);
-		}
+		processAsync(request, response, MatrixServiceRequestProcessorFactory::createProcessor);
 	}
 
 	public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException {
-		try
-		{
-			AbstractHttpRequestProcessor reqProcessor = MatrixServiceRequestProcessorFactory.createProcessor(request);
-			reqProcessor.process(response);
-			reqProcessor.destroy();
-		}
-		catch (Exception ex) {
-			writeError(response, ex);
-		}
+		processAsync(request, response, MatrixServiceRequestProcessorFactory::createProcessor);
 	}
 }
@@ -20,6 +20,8 @@
  */
 package heigit.ors.services.matrix;
 
+import java.io.File;
+
 import heigit.ors.config.AppConfig;
 
 public class MatrixServiceSettings 
@@ -30,6 +32,26 @@ public class MatrixServiceSettings
 	private static boolean allowResolveLocations = true;
 	private static String attribution = "";
 	private static boolean enabled = true;
+	private static int sourceBlockSize = 0;
+	private static int parallelism = 1;
+	private static int targetGraphCacheSize = 0;
+	private static boolean shortcutCache = false;
+	private static int shortcutCacheMaximumMemory = 256;
+	private static boolean jobsEnabled = false;
+	private static int jobsMaximumLocations = 100000000;
+	private static int jobsMaximumConcurrent = 1;
+	private static int jobsMaximumCount = 10;
+	private static int jobsBlockSize = 250;
+	private static int jobsTileSize = 1000;
+	private static int jobsExpirationTime = 60;
+	private static String jobsDirectory = new File(System.getProperty("java.io.tmpdir"), "ors-matrix-jobs").getAbsolutePath();
+	private static boolean sessionsEnabled = false;
+	private static int sessionsMaximumLocations = 1000;
+	private static int sessionsMaximumMemory = 256;
+	private static int sessionsExpirationTime = 30;
+	private static long requestTimeout = 0;
+	private static int computeThreads = 0;
+	private static int computeQueueSize = 100;
 	
 	static 
 	{
@@ -45,12 +67,72 @@ public class MatrixServiceSettings
 		value = AppConfig.Global().getServiceParameter("matrix", "maximum_visited_nodes");
 		if (value != null)
 			maximumVisitedNodes = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "request_timeout");
+		if (value != null)
+			requestTimeout = Math.max(0, Long.parseLong(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "compute_threads");
+		if (value != null)
+			computeThreads = Math.max(0, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "compute_queue_size");
+		if (value != null)
+			computeQueueSize = Math.max(1, Integer.parseInt(value));
 		value = AppConfig.Global().getServiceParameter("matrix", " allow_resolve_locations");
 		if (value != null)
 			allowResolveLocations = Boolean.parseBoolean(value);
 		value = AppConfig.Global().getServiceParameter("matrix", "attribution");
 		if (value != null)
 			attribution = value;
+		value = AppConfig.Global().getServiceParameter("matrix", "source_block_size");
+		if (value != null)
+			sourceBlockSize = Math.max(0, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "parallelism");
+		if (value != null)
+			parallelism = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "target_graph_cache_size");
+		if (value != null)
+			targetGraphCacheSize = Math.max(0, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "shortcut_cache");
+		if (value != null)
+			shortcutCache = Boolean.parseBoolean(value);
+		value = AppConfig.Global().getServiceParameter("matrix", "shortcut_cache_maximum_memory");
+		if (value != null)
+			shortcutCacheMaximumMemory = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "jobs_enabled");
+		if (value != null)
+			jobsEnabled = Boolean.parseBoolean(value);
+		value = AppConfig.Global().getServiceParameter("matrix", "jobs_maximum_locations");
+		if (value != null)
+			jobsMaximumLocations = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "jobs_maximum_concurrent");
+		if (value != null)
+			jobsMaximumConcurrent = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "jobs_maximum_count");
+		if (value != null)
+			jobsMaximumCount = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "jobs_block_size");
+		if (value != null)
+			jobsBlockSize = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "jobs_tile_size");
+		if (value != null)
+			jobsTileSize = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "jobs_expiration_time");
+		if (value != null)
+			jobsExpirationTime = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "jobs_directory");
+		if (value != null)
+			jobsDirectory = value;
+		value = AppConfig.Global().getServiceParameter("matrix", "sessions_enabled");
+		if (value != null)
+			sessionsEnabled = Boolean.parseBoolean(value);
+		value = AppConfig.Global().getServiceParameter("matrix", "sessions_maximum_locations");
+		if (value != null)
+			sessionsMaximumLocations = Math.max(2, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "sessions_maximum_memory");
+		if (value != null)
+			sessionsMaximumMemory = Math.max(1, Integer.parseInt(value));
+		value = AppConfig.Global().getServiceParameter("matrix", "sessions_expiration_time");
+		if (value != null)
+			sessionsExpirationTime = Math.max(1, Integer.parseInt(value));
 	}
 	
 	public static Boolean getEnabled() {
@@ -68,6 +150,26 @@ public class MatrixServiceSettings
 	public static int getMaximumLocations() {
 		return maximumLocations;
 	}
+
+	public static long getRequestTimeout() {
+		return requestTimeout;
+	}
+
+	/**
+	 * Returns the number of threads computing the requests of the service or 0
+	 * for one thread per available core.
+	 */
+	public static int getComputeThreads() {
+		return computeThreads;
+	}
+
+	/**
+	 * Returns the number of requests which may wait for a computing thread 
+	 * before further ones are rejected.
+	 */
+	public static int getComputeQueueSize() {
+		return computeQueueSize;
+	}
 	
 	public static double getMaximumSearchRadius() {
 		return maximumSearchRadius;
@@ -76,4 +178,85 @@ public class MatrixServiceSettings
 	public static String getAttribution() {
 		return attribution;
 	}
+
+	public static int getSourceBlockSize() {
+		return sourceBlockSize;
+	}
+
+	public static int getParallelism() {
+		return parallelism;
+	}
+
+	public static int getTargetGraphCacheSize() {
+		return targetGraphCacheSize;
+	}
+
+	public static boolean getShortcutCache() {
+		return shortcutCache;
+	}
+
+	/**
+	 * Returns the memory in megabytes that the shortcut caches of all 
+	 * weightings of a profile graph may use.
+	 */
+	public static int getShortcutCacheMaximumMemory() {
+		return shortcutCacheMaximumMemory;
+	}
+
+	public static boolean getJobsEnabled() {
+		return jobsEnabled;
+	}
+
+	public static int getJobsMaximumLocations() {
+		return jobsMaximumLocations;
+	}
+
+	public static int getJobsMaximumConcurrent() {
+		return jobsMaximumConcurrent;
+	}
+
+	public static int getJobsMaximumCount() {
+		return jobsMaximumCount;
+	}
+
+	public static int getJobsBlockSize() {
+		return jobsBlockSize;
+	}
+
+	public static int getJobsTileSize() {
+		return jobsTileSize;
+	}
+
+	/**
+	 * Returns the time in minutes for which results of finished jobs are kept.
+	 */
+	public static int getJobsExpirationTime() {
+		return jobsExpirationTime;
+	}
+
+	public static String getJobsDirectory() {
+		return jobsDirectory;
+	}
+
+	public static boolean getSessionsEnabled() {
+		return sessionsEnabled;
+	}
+
+	public static int getSessionsMaximumLocations() {
+		return sessionsMaximumLocations;
+	}
+
+	/**
+	 * Returns the memory in megabytes that the tables of all sessions may use.
+	 */
+	public static int getSessionsMaximumMemory() {
+		return sessionsMaximumMemory;
+	}
+
+	/**
+	 * Returns the time in minutes after which unused sessions are removed.
+	 */
+	public static int getSessionsExpirationTime() {
+		return sessionsExpirationTime;
+	}
 }
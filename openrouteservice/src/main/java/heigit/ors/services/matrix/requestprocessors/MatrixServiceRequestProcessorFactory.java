@@ -28,6 +28,7 @@ import heigit.ors.exceptions.UnknownParameterValueException;
 import heigit.ors.matrix.MatrixErrorCodes;
 import heigit.ors.routing.RoutingProfileManagerStatus;
 import heigit.ors.services.matrix.MatrixServiceSettings;
+import heigit.ors.services.matrix.requestprocessors.binary.BinaryMatrixRequestProcessor;
 import heigit.ors.services.matrix.requestprocessors.json.JsonMatrixRequestProcessor;
 import heigit.ors.servlet.http.AbstractHttpRequestProcessor;
 
@@ -46,10 +47,15 @@ public class MatrixServiceRequestProcessorFactory {
 		String formatParam = request.getParameter("format");
 
 		if (Helper.isEmpty(formatParam))
-			formatParam = "json";
+		{
+			String accept = request.getHeader("Accept");
+			formatParam = (accept != null && accept.startsWith(BinaryMatrixRequestProcessor.CONTENT_TYPE)) ? "binary" : "json";
+		}
 
 		if (formatParam.equalsIgnoreCase("json"))
 			return new JsonMatrixRequestProcessor(request);
+		else if (formatParam.equalsIgnoreCase("binary"))
+			return new BinaryMatrixRequestProcessor(request);
 		else 
 			throw new UnknownParameterValueException(MatrixErrorCodes.INVALID_PARAMETER_VALUE, "format", formatParam);
 	}
@@ -0,0 +1,119 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.services.matrix.requestprocessors.binary;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import heigit.ors.matrix.MatrixMetricsType;
+import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.matrix.MatrixResult;
+import heigit.ors.services.matrix.requestprocessors.json.JsonMatrixRequestProcessor;
+
+/**
+ * Accepts the same requests as {@link JsonMatrixRequestProcessor} but writes
+ * the tables as little-endian binary data:
+ * <pre>
+ * int32   magic ("ORSM")
+ * int32   format version
+ * int32   number of sources (rows)
+ * int32   number of destinations (columns)
+ * int32   metrics bit mask (1 = duration, 2 = distance, 4 = weight)
+ * float32 rows * columns values per requested metric, in the order duration, distance, weight
+ * </pre>
+ * Unreachable destinations are encoded as NaN.
+ */
+public class BinaryMatrixRequestProcessor extends JsonMatrixRequestProcessor 
+{
+	public static final String CONTENT_TYPE = "application/octet-stream";
+
+	public static final int MAGIC = 0x4D53524F;
+	public static final int VERSION = 1;
+	public static final int HEADER_SIZE = 20;
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	public BinaryMatrixRequestProcessor(HttpServletRequest request) throws Exception
+	{
+		super(request);
+	}
+
+	@Override
+	protected void writeResponse(HttpServletResponse response, MatrixRequest request, MatrixResult mtxResult) throws Exception
+	{
+		writeTables(response, request.getSources().length, request.getDestinations().length, request.getMetrics(), mtxResult);
+	}
+
+	public static void writeTables(HttpServletResponse response, int rows, int clms, int metrics, MatrixResult mtxResult) throws Exception
+	{
+		int[] tables = new int[] { MatrixMetricsType.Duration, MatrixMetricsType.Distance, MatrixMetricsType.Weight };
+
+		int tablesCount = 0;
+		for (int table : tables)
+		{
+			if (MatrixMetricsType.isSet(metrics, table))
+				tablesCount++;
+		}
+
+		response.setContentType(CONTENT_TYPE);
+		response.setContentLength(HEADER_SIZE + tablesCount * rows * clms * 4);
+		response.addHeader("Vary", "Accept-Encoding");
+
+		OutputStream outStream = response.getOutputStream();
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(rows);
+		buffer.putInt(clms);
+		buffer.putInt(metrics & (MatrixMetricsType.Duration | MatrixMetricsType.Distance | MatrixMetricsType.Weight));
+
+		for (int table : tables)
+		{
+			if (!MatrixMetricsType.isSet(metrics, table))
+				continue;
+
+			float[] values = mtxResult.getTable(table);
+			int size = rows * clms;
+
+			for (int i = 0; i < size; i++)
+			{
+				if (buffer.remaining() < 4)
+					flush(buffer, outStream);
+
+				float value = values[i];
+				buffer.putFloat(value == -1 ? Float.NaN : value);
+			}
+		}
+
+		flush(buffer, outStream);
+		outStream.close();
+	}
+
+	private static void flush(ByteBuffer buffer, OutputStream outStream) throws Exception
+	{
+		outStream.write(buffer.array(), 0, buffer.position());
+		buffer.clear();
+	}
+}
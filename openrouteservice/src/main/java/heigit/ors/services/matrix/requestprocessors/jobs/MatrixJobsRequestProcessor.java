@@ -0,0 +1,231 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.services.matrix.requestprocessors.jobs;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+
+import com.graphhopper.util.Helper;
+
+import heigit.ors.common.StatusCode;
+import heigit.ors.exceptions.MissingParameterException;
+import heigit.ors.exceptions.ParameterOutOfRangeException;
+import heigit.ors.exceptions.ParameterValueException;
+import heigit.ors.exceptions.StatusCodeException;
+import heigit.ors.matrix.MatrixErrorCodes;
+import heigit.ors.matrix.MatrixMetricsType;
+import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.matrix.MatrixResult;
+import heigit.ors.matrix.jobs.MatrixJob;
+import heigit.ors.matrix.jobs.MatrixJobManager;
+import heigit.ors.matrix.jobs.MatrixJobResultFile;
+import heigit.ors.matrix.jobs.MatrixJobStatus;
+import heigit.ors.services.matrix.MatrixServiceSettings;
+import heigit.ors.services.matrix.requestprocessors.binary.BinaryMatrixRequestProcessor;
+import heigit.ors.services.matrix.requestprocessors.json.JsonMatrixRequestParser;
+import heigit.ors.services.matrix.requestprocessors.json.JsonMatrixRequestProcessor;
+import heigit.ors.servlet.http.AbstractHttpRequestProcessor;
+import heigit.ors.servlet.util.ServletUtility;
+import heigit.ors.util.AppInfo;
+
+/**
+ * Handles the matrix job API:
+ * <ul>
+ * <li>POST submits a job with the body of a regular matrix request</li>
+ * <li>GET with <code>id</code> returns the status of a job</li>
+ * <li>GET with <code>id</code> and <code>tile=row,column</code> returns a tile of the result</li>
+ * <li>DELETE with <code>id</code> cancels a job and removes its result</li>
+ * </ul>
+ */
+public class MatrixJobsRequestProcessor extends AbstractHttpRequestProcessor 
+{
+	private static final int[] TABLES = new int[] { MatrixMetricsType.Duration, MatrixMetricsType.Distance, MatrixMetricsType.Weight };
+	private static final String[] TABLE_NAMES = new String[] { "durations", "distances", "weights" };
+
+	public MatrixJobsRequestProcessor(HttpServletRequest request) throws Exception
+	{
+		super(request);
+	}
+
+	@Override
+	public void process(HttpServletResponse response) throws Exception 
+	{
+		switch (_request.getMethod())
+		{
+		case "POST":
+			submitJob(response);
+			break;
+		case "GET":
+			MatrixJob job = getJob();
+			if (Helper.isEmpty(_request.getParameter("tile")))
+				ServletUtility.write(response, createStatus(job));
+			else
+				writeTile(response, job, _request.getParameter("tile"));
+			break;
+		case "DELETE":
+			if (!MatrixJobManager.getInstance().cancel(getJob().getId()))
+				throw new StatusCodeException(StatusCode.NOT_FOUND, MatrixErrorCodes.INVALID_PARAMETER_VALUE, "Matrix job not found.");
+			response.setStatus(StatusCode.OK);
+			break;
+		default:
+			throw new StatusCodeException(StatusCode.METHOD_NOT_ALLOWED);
+		}
+	}
+
+	private void submitJob(HttpServletResponse response) throws Exception
+	{
+		MatrixRequest req = JsonMatrixRequestParser.parseFromStream(_request.getInputStream());
+
+		if (req == null)
+			throw new StatusCodeException(StatusCode.BAD_REQUEST, MatrixErrorCodes.UNKNOWN, "MatrixRequest object is null.");
+
+		if (req.getTotalNumberOfLocations() > MatrixServiceSettings.getJobsMaximumLocations())
+			throw new ParameterOutOfRangeException(MatrixErrorCodes.PARAMETER_VALUE_EXCEEDS_MAXIMUM, "sources/destinations", Integer.toString(req.getTotalNumberOfLocations()), Integer.toString(MatrixServiceSettings.getJobsMaximumLocations()));
+
+		MatrixJob job = MatrixJobManager.getInstance().submit(req);
+
+		response.addHeader("Location", _request.getRequestURI() + "?id=" + job.getId());
+		ServletUtility.write(response, createStatus(job), StatusCode.ACCEPTED);
+	}
+
+	private MatrixJob getJob() throws Exception
+	{
+		String id = _request.getParameter("id");
+		if (Helper.isEmpty(id))
+			throw new MissingParameterException(MatrixErrorCodes.MISSING_PARAMETER, "id");
+
+		MatrixJob job = MatrixJobManager.getInstance().getJob(id);
+		if (job == null)
+			throw new StatusCodeException(StatusCode.NOT_FOUND, MatrixErrorCodes.INVALID_PARAMETER_VALUE, "Matrix job '" + id + "' not found.");
+
+		return job;
+	}
+
+	private JSONObject createStatus(MatrixJob job)
+	{
+		int tileSize = MatrixServiceSettings.getJobsTileSize();
+
+		JSONObject jResp = new JSONObject(true);
+		jResp.put("id", job.getId());
+		jResp.put("status", job.getStatus().toString());
+		jResp.put("rows", job.getRows());
+		jResp.put("columns", job.getColumns());
+		jResp.put("completed_rows", job.getCompletedRows());
+		jResp.put("tile_size", tileSize);
+
+		JSONArray jTiles = new JSONArray(2);
+		jTiles.put((job.getRows() + tileSize - 1) / tileSize);
+		jTiles.put((job.getColumns() + tileSize - 1) / tileSize);
+		jResp.put("tiles", jTiles);
+
+		if (job.getErrorMessage() != null)
+			jResp.put("error", job.getErrorMessage());
+
+		JSONObject jInfo = new JSONObject(true);
+		jInfo.put("service", "matrix");
+		jInfo.put("engine", AppInfo.getEngineInfo());
+		if (!Helper.isEmpty(MatrixServiceSettings.getAttribution()))
+			jInfo.put("attribution", MatrixServiceSettings.getAttribution());
+		jInfo.put("timestamp", System.currentTimeMillis());
+		jResp.put("info", jInfo);
+
+		return jResp;
+	}
+
+	private void writeTile(HttpServletResponse response, MatrixJob job, String tileParam) throws Exception
+	{
+		int tileRow, tileColumn;
+		try
+		{
+			String[] values = tileParam.split(",");
+			if (values.length != 2)
+				throw new NumberFormatException();
+			tileRow = Integer.parseInt(values[0].trim());
+			tileColumn = Integer.parseInt(values[1].trim());
+		}
+		catch (NumberFormatException ex)
+		{
+			throw new ParameterValueException(MatrixErrorCodes.INVALID_PARAMETER_FORMAT, "tile", tileParam);
+		}
+
+		int tileSize = MatrixServiceSettings.getJobsTileSize();
+		int startRow = tileRow * tileSize;
+		int startColumn = tileColumn * tileSize;
+
+		if (tileRow < 0 || tileColumn < 0 || startRow >= job.getRows() || startColumn >= job.getColumns())
+			throw new ParameterValueException(MatrixErrorCodes.INVALID_PARAMETER_VALUE, "tile", tileParam);
+
+		int rows = Math.min(tileSize, job.getRows() - startRow);
+		int columns = Math.min(tileSize, job.getColumns() - startColumn);
+
+		if (job.getStatus() == MatrixJobStatus.Failed || job.getStatus() == MatrixJobStatus.Cancelled)
+			throw new StatusCodeException(StatusCode.BAD_REQUEST, MatrixErrorCodes.UNKNOWN, "Matrix job has no result.");
+		if (job.getCompletedRows() < startRow + rows)
+			throw new StatusCodeException(StatusCode.BAD_REQUEST, MatrixErrorCodes.UNKNOWN, "The requested tile has not been computed yet.");
+
+		MatrixJobResultFile resultFile = job.getResultFile();
+		int metrics = job.getRequest().getMetrics();
+		MatrixResult tileResult = new MatrixResult(null, null);
+
+		for (int table : TABLES)
+		{
+			if (resultFile.hasTable(table))
+				tileResult.setTable(table, resultFile.readTile(table, startRow, rows, startColumn, columns));
+		}
+
+		if ("binary".equalsIgnoreCase(_request.getParameter("format")))
+		{
+			BinaryMatrixRequestProcessor.writeTables(response, rows, columns, metrics, tileResult);
+			return;
+		}
+
+		response.setCharacterEncoding("UTF-8");
+		response.setContentType("application/json");
+		response.addHeader("Vary", "Accept-Encoding");
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), "UTF-8"));
+		JSONWriter jWriter = new JSONWriter(writer);
+
+		jWriter.object();
+		jWriter.key("id").value(job.getId());
+		jWriter.key("tile").array().value(tileRow).value(tileColumn).endArray();
+		jWriter.key("start_row").value(startRow);
+		jWriter.key("start_column").value(startColumn);
+
+		for (int i = 0; i < TABLES.length; i++)
+		{
+			if (MatrixMetricsType.isSet(metrics, TABLES[i]))
+				JsonMatrixRequestProcessor.writeTable(jWriter.key(TABLE_NAMES[i]), tileResult.getTable(TABLES[i]), rows, columns);
+		}
+
+		jWriter.endObject();
+
+		writer.close();
+	}
+}
@@ -41,6 +41,7 @@ import heigit.ors.exceptions.UnknownParameterValueException;
 import heigit.ors.matrix.MatrixErrorCodes;
 import heigit.ors.matrix.MatrixMetricsType;
 import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.matrix.algorithms.MatrixAlgorithmFactory;
 import heigit.ors.routing.RoutingProfileType;
 import heigit.ors.routing.WeightingMethod;
 import heigit.ors.util.ArraysUtility;
@@ -211,6 +212,22 @@ public class JsonMatrixRequestParser {
 		   }
 		}
 		
+		value = json.optString("algorithm");
+		if (!Helper.isEmpty(value))
+		{
+			if (!MatrixAlgorithmFactory.isSupportedAlgorithm(value))
+				throw new UnknownParameterValueException(MatrixErrorCodes.INVALID_PARAMETER_VALUE, "algorithm", value);
+			req.setAlgorithm(value);
+		}
+
+		value = json.optString("max_duration");
+		if (!Helper.isEmpty(value))
+			req.setMaximumDuration(parseCostBound(value, "max_duration"));
+
+		value = json.optString("max_distance");
+		if (!Helper.isEmpty(value))
+			req.setMaximumDistance(parseCostBound(value, "max_distance"));
+
 		value = json.optString("id");
 		if (!Helper.isEmpty(value))
 			req.setId(value);
@@ -331,11 +348,42 @@ public class JsonMatrixRequestParser {
 		if (!Helper.isEmpty(value))
 			req.setId(value);
 		
-		// REMOVE
-		req.setAlgorithm(request.getParameter("algorithm"));
+		value = request.getParameter("algorithm");
+		if (!Helper.isEmpty(value))
+		{
+			if (!MatrixAlgorithmFactory.isSupportedAlgorithm(value))
+				throw new UnknownParameterValueException(MatrixErrorCodes.INVALID_PARAMETER_VALUE, "algorithm", value);
+			req.setAlgorithm(value);
+		}
+
+		value = request.getParameter("max_duration");
+		if (!Helper.isEmpty(value))
+			req.setMaximumDuration(parseCostBound(value, "max_duration"));
+
+		value = request.getParameter("max_distance");
+		if (!Helper.isEmpty(value))
+			req.setMaximumDistance(parseCostBound(value, "max_distance"));
 
 		return req;
 	}
+
+	private static double parseCostBound(String value, String paramName) throws Exception
+	{
+		double res;
+		try
+		{
+			res = Double.parseDouble(value);
+		}
+		catch(NumberFormatException nfex)
+		{
+			throw new ParameterValueException(MatrixErrorCodes.INVALID_PARAMETER_FORMAT, paramName, value);
+		}
+
+		if (!(res > 0) || Double.isInfinite(res))
+			throw new ParameterValueException(MatrixErrorCodes.INVALID_PARAMETER_VALUE, paramName, value);
+
+		return res;
+	}
 	
 	private static Coordinate[] getLocations(Coordinate[] locations, String strIndex, String elemName) throws Exception
 	{
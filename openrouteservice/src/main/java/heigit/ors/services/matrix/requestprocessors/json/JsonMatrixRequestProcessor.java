@@ -20,15 +20,21 @@
  */
 package heigit.ors.services.matrix.requestprocessors.json;
 
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONWriter;
 
 import com.graphhopper.util.Helper;
 import com.vividsolutions.jts.geom.Coordinate;
 
+import heigit.ors.common.Deadline;
 import heigit.ors.common.StatusCode;
 import heigit.ors.exceptions.ParameterOutOfRangeException;
 import heigit.ors.exceptions.StatusCodeException;
@@ -56,6 +62,7 @@ public class JsonMatrixRequestProcessor extends AbstractHttpRequestProcessor
 	@Override
 	public void process(HttpServletResponse response) throws Exception 
 	{
+		Deadline deadline = ServletUtility.getDeadline(_request, MatrixServiceSettings.getRequestTimeout());
 		String reqMethod = _request.getMethod();
 
 		MatrixRequest req = null;
@@ -73,6 +80,8 @@ public class JsonMatrixRequestProcessor extends AbstractHttpRequestProcessor
 
 		if (req == null)
 			throw new StatusCodeException(StatusCode.BAD_REQUEST, MatrixErrorCodes.UNKNOWN, "MatrixRequest object is null.");
+
+		req.setDeadline(deadline);
 		
 		if (MatrixServiceSettings.getMaximumLocations() > 0 && req.getTotalNumberOfLocations() > MatrixServiceSettings.getMaximumLocations())
 			throw new ParameterOutOfRangeException(MatrixErrorCodes.PARAMETER_VALUE_EXCEEDS_MAXIMUM, "sources/destinations", Integer.toString(req.getTotalNumberOfLocations()), Integer.toString(MatrixServiceSettings.getMaximumLocations()));
@@ -82,20 +91,39 @@ public class JsonMatrixRequestProcessor extends AbstractHttpRequestProcessor
 		writeResponse(response, req, mtxResult);
 	}
 	
-	private void writeResponse(HttpServletResponse response, MatrixRequest request, MatrixResult mtxResult) throws Exception
+	protected void writeResponse(HttpServletResponse response, MatrixRequest request, MatrixResult mtxResult) throws Exception
 	{
-		JSONObject jResp = new JSONObject(true);
-		
+		int rows = request.getSources().length;
+		int clms = request.getDestinations().length;
+
+		response.setCharacterEncoding("UTF-8");
+		response.setContentType("application/json");
+		response.addHeader("Vary", "Accept-Encoding");
+
+		// rows are written one by one instead of building the whole document in memory
+		Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), "UTF-8"));
+		JSONWriter jWriter = new JSONWriter(writer);
+
+		jWriter.object();
+
 		if (MatrixMetricsType.isSet(request.getMetrics(), MatrixMetricsType.Distance))
-			jResp.put("distances", createTable(mtxResult.getTable(MatrixMetricsType.Distance), request.getSources().length, request.getDestinations().length));
+			writeTable(jWriter.key("distances"), mtxResult.getTable(MatrixMetricsType.Distance), rows, clms);
 		if (MatrixMetricsType.isSet(request.getMetrics(), MatrixMetricsType.Duration))
-			jResp.put("durations", createTable(mtxResult.getTable(MatrixMetricsType.Duration), request.getSources().length, request.getDestinations().length));
+			writeTable(jWriter.key("durations"), mtxResult.getTable(MatrixMetricsType.Duration), rows, clms);
 		if (MatrixMetricsType.isSet(request.getMetrics(), MatrixMetricsType.Weight))
-			jResp.put("weights", createTable(mtxResult.getTable(MatrixMetricsType.Weight), request.getSources().length, request.getDestinations().length));		
+			writeTable(jWriter.key("weights"), mtxResult.getTable(MatrixMetricsType.Weight), rows, clms);
 
-		jResp.put("destinations", createLocations(mtxResult.getDestinations(), request.getResolveLocations()));
-		jResp.put("sources", createLocations(mtxResult.getSources(), request.getResolveLocations()));
-		
+		jWriter.key("destinations").value(createLocations(mtxResult.getDestinations(), request.getResolveLocations()));
+		jWriter.key("sources").value(createLocations(mtxResult.getSources(), request.getResolveLocations()));
+		jWriter.key("info").value(createInfo(request));
+
+		jWriter.endObject();
+
+		writer.close();
+	}
+
+	private JSONObject createInfo(MatrixRequest request)
+	{
 		JSONObject jInfo = new JSONObject(true);
 		jInfo.put("service", "matrix");
 		jInfo.put("engine", AppInfo.getEngineInfo());
@@ -117,12 +145,11 @@ public class JsonMatrixRequestProcessor extends AbstractHttpRequestProcessor
 			jQuery.put("id", request.getId());
 
 		jInfo.put("query", jQuery);
-		jResp.put("info", jInfo);
-		
-		ServletUtility.write(response, jResp);
+
+		return jInfo;
 	}
 	
-	private JSONArray createLocations(ResolvedLocation[] locations, boolean includeLocationNames)
+	public static JSONArray createLocations(ResolvedLocation[] locations, boolean includeLocationNames)
 	{
 		JSONArray jLocations = new JSONArray(locations.length);
 		
@@ -153,30 +180,30 @@ public class JsonMatrixRequestProcessor extends AbstractHttpRequestProcessor
 		return jLocations;
 	}
 	
-	private JSONArray createTable(float[] values, int rows, int clms)
+	public static void writeTable(JSONWriter jWriter, float[] values, int rows, int clms)
 	{
-		JSONArray jMatrix = new JSONArray(rows);
+		jWriter.array();
 		
 		int rowOffset = 0;
 		float value = 0;
 		
 		for (int i = 0; i < rows; ++i)
 		{
-			JSONArray jRow = new JSONArray(clms);
+			jWriter.array();
 			rowOffset = i*clms;
 			
 			for (int j = 0; j < clms; ++j)
 			{
 				value = values[rowOffset + j];
 				if (value == -1)
-					jRow.put(JSONObject.NULL);
+					jWriter.value(JSONObject.NULL);
 				else
-					jRow.put(FormatUtility.roundToDecimals(value, 2));
+					jWriter.value(FormatUtility.roundToDecimals(value, 2));
 			}
 			
-			jMatrix.put(jRow);
+			jWriter.endArray();
 		}
 		
-		return jMatrix;
+		jWriter.endArray();
 	}
 }
@@ -0,0 +1,233 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.services.matrix.requestprocessors.sessions;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONWriter;
+
+import com.graphhopper.util.Helper;
+import com.vividsolutions.jts.geom.Coordinate;
+
+import heigit.ors.common.StatusCode;
+import heigit.ors.exceptions.MissingParameterException;
+import heigit.ors.exceptions.ParameterOutOfRangeException;
+import heigit.ors.exceptions.ParameterValueException;
+import heigit.ors.exceptions.StatusCodeException;
+import heigit.ors.matrix.MatrixErrorCodes;
+import heigit.ors.matrix.MatrixMetricsType;
+import heigit.ors.matrix.MatrixRequest;
+import heigit.ors.matrix.ResolvedLocation;
+import heigit.ors.matrix.sessions.MatrixSession;
+import heigit.ors.matrix.sessions.MatrixSessionManager;
+import heigit.ors.services.matrix.MatrixServiceSettings;
+import heigit.ors.services.matrix.requestprocessors.json.JsonMatrixRequestParser;
+import heigit.ors.services.matrix.requestprocessors.json.JsonMatrixRequestProcessor;
+import heigit.ors.servlet.http.AbstractHttpRequestProcessor;
+import heigit.ors.util.AppInfo;
+import heigit.ors.util.JsonUtility;
+import heigit.ors.util.StreamUtility;
+
+/**
+ * Handles the matrix session API:
+ * <ul>
+ * <li>POST without <code>id</code> creates a session with the body of a regular matrix request</li>
+ * <li>POST with <code>id</code> updates a session with a body <code>{"remove": [indices], "add": [locations]}</code></li>
+ * <li>GET with <code>id</code> returns the matrix of a session</li>
+ * <li>DELETE with <code>id</code> removes a session</li>
+ * </ul>
+ * Removed locations are dropped first and added locations are appended, so
+ * the indices of the remaining locations keep their order.
+ */
+public class MatrixSessionsRequestProcessor extends AbstractHttpRequestProcessor 
+{
+	private static final int[] TABLES = new int[] { MatrixMetricsType.Duration, MatrixMetricsType.Distance, MatrixMetricsType.Weight };
+	private static final String[] TABLE_NAMES = new String[] { "durations", "distances", "weights" };
+
+	public MatrixSessionsRequestProcessor(HttpServletRequest request) throws Exception
+	{
+		super(request);
+	}
+
+	@Override
+	public void process(HttpServletResponse response) throws Exception 
+	{
+		switch (_request.getMethod())
+		{
+		case "POST":
+			if (Helper.isEmpty(_request.getParameter("id")))
+				createSession(response);
+			else
+				updateSession(response, getSession());
+			break;
+		case "GET":
+			writeSession(response, getSession());
+			break;
+		case "DELETE":
+			if (!MatrixSessionManager.getInstance().remove(getSession().getId()))
+				throw new StatusCodeException(StatusCode.NOT_FOUND, MatrixErrorCodes.INVALID_PARAMETER_VALUE, "Matrix session not found.");
+			response.setStatus(StatusCode.OK);
+			break;
+		default:
+			throw new StatusCodeException(StatusCode.METHOD_NOT_ALLOWED);
+		}
+	}
+
+	private void createSession(HttpServletResponse response) throws Exception
+	{
+		MatrixRequest req = JsonMatrixRequestParser.parseFromStream(_request.getInputStream());
+
+		if (req == null)
+			throw new StatusCodeException(StatusCode.BAD_REQUEST, MatrixErrorCodes.UNKNOWN, "MatrixRequest object is null.");
+
+		if (!Arrays.equals(req.getSources(), req.getDestinations()))
+			throw new ParameterValueException(MatrixErrorCodes.INVALID_PARAMETER_VALUE, "sources/destinations");
+
+		if (req.getSources().length > MatrixServiceSettings.getSessionsMaximumLocations())
+			throw new ParameterOutOfRangeException(MatrixErrorCodes.PARAMETER_VALUE_EXCEEDS_MAXIMUM, "locations", Integer.toString(req.getSources().length), Integer.toString(MatrixServiceSettings.getSessionsMaximumLocations()));
+
+		MatrixSession session = MatrixSessionManager.getInstance().create(req);
+
+		response.addHeader("Location", _request.getRequestURI() + "?id=" + session.getId());
+		writeSession(response, session);
+	}
+
+	private void updateSession(HttpServletResponse response, MatrixSession session) throws Exception
+	{
+		String body = StreamUtility.readStream(_request.getInputStream());
+
+		JSONObject json = null;
+		try
+		{
+			json = new JSONObject(body);
+		}
+		catch(Exception ex)
+		{
+			throw new StatusCodeException(StatusCode.BAD_REQUEST, MatrixErrorCodes.INVALID_JSON_FORMAT, "Unable to parse JSON document." + ex.getMessage());
+		}
+
+		int[] removed = null;
+		JSONArray jRemove = json.optJSONArray("remove");
+		if (jRemove != null)
+			removed = JsonUtility.parseIntArray(jRemove, "remove", MatrixErrorCodes.INVALID_PARAMETER_FORMAT);
+
+		Coordinate[] added = null;
+		JSONArray jAdd = json.optJSONArray("add");
+		if (jAdd != null && jAdd.length() > 0)
+		{
+			try
+			{
+				added = new Coordinate[jAdd.length()];
+
+				for (int i = 0; i < added.length; i++)
+				{
+					JSONArray jCoordinate = jAdd.getJSONArray(i);
+
+					if (jCoordinate.length() < 2)
+						throw new ParameterValueException(MatrixErrorCodes.INVALID_PARAMETER_VALUE, "add");
+
+					added[i] = new Coordinate(jCoordinate.getDouble(0), jCoordinate.getDouble(1));
+				}
+			}
+			catch(JSONException jex)
+			{
+				throw new ParameterValueException(MatrixErrorCodes.INVALID_PARAMETER_FORMAT, "add");
+			}
+		}
+
+		if (removed == null && added == null)
+			throw new MissingParameterException(MatrixErrorCodes.MISSING_PARAMETER, "add/remove");
+
+		MatrixSessionManager.getInstance().update(session, removed, added);
+
+		writeSession(response, session);
+	}
+
+	private MatrixSession getSession() throws Exception
+	{
+		String id = _request.getParameter("id");
+		if (Helper.isEmpty(id))
+			throw new MissingParameterException(MatrixErrorCodes.MISSING_PARAMETER, "id");
+
+		MatrixSession session = MatrixSessionManager.getInstance().getSession(id);
+		if (session == null)
+			throw new StatusCodeException(StatusCode.NOT_FOUND, MatrixErrorCodes.INVALID_PARAMETER_VALUE, "Matrix session '" + id + "' not found.");
+
+		return session;
+	}
+
+	private void writeSession(HttpServletResponse response, MatrixSession session) throws Exception
+	{
+		response.setCharacterEncoding("UTF-8");
+		response.setContentType("application/json");
+		response.addHeader("Vary", "Accept-Encoding");
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), "UTF-8"));
+		JSONWriter jWriter = new JSONWriter(writer);
+
+		// updates replace the tables instead of changing them, so the current ones
+		// are taken under the lock and written without blocking further updates
+		MatrixRequest req = session.getRequest();
+		int size;
+		float[][] tables = new float[TABLES.length][];
+		ResolvedLocation[] resolvedLocations;
+
+		synchronized (session)
+		{
+			size = session.size();
+			for (int i = 0; i < TABLES.length; i++)
+				tables[i] = session.getTable(TABLES[i]);
+			resolvedLocations = session.getResolvedLocations();
+		}
+
+		jWriter.object();
+		jWriter.key("id").value(session.getId());
+
+		for (int i = 0; i < TABLES.length; i++)
+		{
+			if (MatrixMetricsType.isSet(req.getMetrics(), TABLES[i]))
+				JsonMatrixRequestProcessor.writeTable(jWriter.key(TABLE_NAMES[i]), tables[i], size, size);
+		}
+
+		jWriter.key("locations").value(JsonMatrixRequestProcessor.createLocations(resolvedLocations, req.getResolveLocations()));
+
+		JSONObject jInfo = new JSONObject(true);
+		jInfo.put("service", "matrix");
+		jInfo.put("engine", AppInfo.getEngineInfo());
+		if (!Helper.isEmpty(MatrixServiceSettings.getAttribution()))
+			jInfo.put("attribution", MatrixServiceSettings.getAttribution());
+		jInfo.put("timestamp", System.currentTimeMillis());
+		jWriter.key("info").value(jInfo);
+
+		jWriter.endObject();
+
+		writer.close();
+	}
+}
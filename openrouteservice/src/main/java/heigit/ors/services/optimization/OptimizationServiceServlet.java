@@ -23,8 +23,8 @@ package heigit.ors.services.optimization;
 import javax.servlet.*;
 import javax.servlet.http.*;
 
+import heigit.ors.optimization.OptimizationErrorCodes;
 import heigit.ors.services.optimization.requestprocessors.OptimizationServiceRequestProcessorFactory;
-import heigit.ors.servlet.http.AbstractHttpRequestProcessor;
 import heigit.ors.servlet.http.BaseHttpServlet;
 
 public class OptimizationServiceServlet extends BaseHttpServlet {
@@ -32,33 +32,14 @@ public class OptimizationServiceServlet extends BaseHttpServlet {
 	private static final long serialVersionUID = 19433489527745L;
 
 	public void init() throws ServletException {
-	}
-
-	public void destroy() {
-		
+		initExecutor("optimization", OptimizationServiceSettings.getComputeThreads(), OptimizationServiceSettings.getComputeQueueSize(), OptimizationErrorCodes.SERVICE_OVERLOADED, 0);
 	}
 
 	public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException   {
-		try
-		{
-			AbstractHttpRequestProcessor reqProcessor = OptimizationServiceRequestProcessorFactory.createProcessor(request);
-			reqProcessor.process(response);
-			reqProcessor.destroy();
-		}
-		catch (Exception ex) {
-			writeError(response, ex);
-		}
+		processAsync(request, response, OptimizationServiceRequestProcessorFactory::createProcessor);
 	}
 
 	public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException {
-		try
-		{
-			AbstractHttpRequestProcessor reqProcessor = OptimizationServiceRequestProcessorFactory.createProcessor(request);
-			reqProcessor.process(response);
-			reqProcessor.destroy();
-		}
-		catch (Exception ex) {
-			writeError(response, ex);
-		}
+		processAsync(request, response, OptimizationServiceRequestProcessorFactory::createProcessor);
 	}
 }
@@ -30,6 +30,8 @@ public class OptimizationServiceSettings {
 	private static String solverName = "default";
 	private static Map<String, Object> solverOptions;
 	private static String attribution = "";
+	private static int computeThreads = 0;
+	private static int computeQueueSize = 100;
 	private static AppConfig _config;
 	
 	static 
@@ -66,6 +68,14 @@ public class OptimizationServiceSettings {
 		value = config.getServiceParameter("optimization", "attribution");
 		if (value != null)
 			attribution = value;
+
+		value = config.getServiceParameter("optimization", "compute_threads");
+		if (value != null)
+			computeThreads = Math.max(0, Integer.parseInt(value));
+
+		value = config.getServiceParameter("optimization", "compute_queue_size");
+		if (value != null)
+			computeQueueSize = Math.max(1, Integer.parseInt(value));
 	}
 	
 	public static boolean getEnabled()
@@ -85,6 +95,22 @@ public class OptimizationServiceSettings {
 	public static int getMaximumLocations() {
 		return maximumLocations;
 	}
+
+	/**
+	 * Returns the number of threads computing the requests of the service or 0
+	 * for one thread per available core.
+	 */
+	public static int getComputeThreads() {
+		return computeThreads;
+	}
+
+	/**
+	 * Returns the number of requests which may wait for a computing thread 
+	 * before further ones are rejected.
+	 */
+	public static int getComputeQueueSize() {
+		return computeQueueSize;
+	}
 	
  	public static String getAttribution() {
 		return attribution;
@@ -23,42 +23,75 @@ package heigit.ors.services.routing;
 import javax.servlet.*;
 import javax.servlet.http.*;
 
+import com.graphhopper.util.Helper;
+
+import heigit.ors.routing.RoutingErrorCodes;
+import heigit.ors.routing.RoutingProfileManager;
+import heigit.ors.routing.RoutingProfileManagerStatus;
+import heigit.ors.routing.RoutingRequest;
+import heigit.ors.routing.admission.RequestClass;
 import heigit.ors.services.routing.requestprocessors.RoutingServiceRequestProcessorFactory;
-import heigit.ors.servlet.http.AbstractHttpRequestProcessor;
+import heigit.ors.services.routing.requestprocessors.json.JsonRoutingRequestParser;
+import heigit.ors.services.routing.requestprocessors.json.JsonRoutingRequestProcessor;
 import heigit.ors.servlet.http.BaseHttpServlet;
+import heigit.ors.servlet.http.ServiceExecutor;
 
 public class RoutingServiceServlet extends BaseHttpServlet {
 	/** Serial Version UID */
 	private static final long serialVersionUID = 1L;
 
+	private ServiceExecutor _chExecutor;
+
 	public void init() throws ServletException {
+		initExecutor("routing", RoutingServiceSettings.getComputeThreads(), RoutingServiceSettings.getComputeQueueSize(), RoutingErrorCodes.SERVICE_OVERLOADED, RoutingServiceSettings.getRequestTimeout());
+		// requests answered by contraction hierarchies get threads of their own, so
+		// that they do not queue behind flexible ones waiting for their admission
+		_chExecutor = new ServiceExecutor("routing-ch", RoutingServiceSettings.getComputeThreads(), RoutingServiceSettings.getComputeQueueSize(), RoutingErrorCodes.SERVICE_OVERLOADED);
 	}
 
+	@Override
 	public void destroy() {
-		
+		super.destroy();
+		_chExecutor.shutdown();
 	}
 
-	public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException   {
-		try
-		{
-			AbstractHttpRequestProcessor reqProcessor = RoutingServiceRequestProcessorFactory.createProcessor(request);
-			reqProcessor.process(response);
-			reqProcessor.destroy();
-		}
-		catch (Exception ex) {
-			writeError(response, ex);
+	@Override
+	protected ServiceExecutor getExecutor(HttpServletRequest request) {
+		return isCHRequest(request) ? _chExecutor : super.getExecutor(request);
+	}
+
+	/**
+	 * Batch responses are streamed, one line per pair as soon as it is computed.
+	 */
+	@Override
+	protected boolean isStreaming(HttpServletRequest request) {
+		return "batch".equalsIgnoreCase(request.getParameter("request"));
+	}
+
+	/**
+	 * Returns whether the request is a single route request which is admitted
+	 * as a CH request. The parsed request is handed on to the processor, 
+	 * invalid parameters are reported there.
+	 */
+	private boolean isCHRequest(HttpServletRequest request) {
+		String requestParam = request.getParameter("request");
+		if (!RoutingProfileManagerStatus.isReady() || !(Helper.isEmpty(requestParam) || "route".equalsIgnoreCase(requestParam)))
+			return false;
+
+		try {
+			RoutingRequest rreq = JsonRoutingRequestParser.parseFromRequestParams(request);
+			request.setAttribute(JsonRoutingRequestProcessor.PARSED_REQUEST_ATTRIBUTE, rreq);
+			return RoutingProfileManager.getInstance().getRequestClass(rreq) == RequestClass.CH;
+		} catch (Exception ex) {
+			return false;
 		}
 	}
 
+	public void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException   {
+		processAsync(request, response, RoutingServiceRequestProcessorFactory::createProcessor);
+	}
+
 	public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException {
-		try
-		{
-			AbstractHttpRequestProcessor reqProcessor = RoutingServiceRequestProcessorFactory.createProcessor(request);
-			reqProcessor.process(response);
-			reqProcessor.destroy();
-		}
-		catch (Exception ex) {
-			writeError(response, ex);
-		}
+		processAsync(request, response, RoutingServiceRequestProcessorFactory::createProcessor);
 	}
 }
@@ -35,6 +35,18 @@ public class RoutingServiceSettings {
 	private static boolean distanceApproximation = false;
 	private static String storageFormat = "Native";
 	private static String attribution = "";
+	private static int snappingCacheSize = 0;
+	private static int segmentParallelism = 1;
+	private static int batchParallelism = 4;
+	private static int batchMaximumPairs = 1000;
+	private static long batchTimeout = 0;
+	private static boolean cchEnabled = false;
+	private static int cchMetricsMaximumMemory = 1024;
+	private static double cchMaximumArcsFactor = 10;
+	private static double destinationEdgesMaximumDistance = 10000;
+	private static long requestTimeout = 0;
+	private static int computeThreads = 0;
+	private static int computeQueueSize = 100;
 	private static AppConfig _config;
 	
 	static 
@@ -77,6 +89,54 @@ public class RoutingServiceSettings {
 		value = config.getServiceParameter("routing", "attribution");
 		if (value != null)
 			attribution = value;
+
+		value = config.getServiceParameter("routing", "snapping_cache_size");
+		if (value != null)
+			snappingCacheSize = Math.max(0, Integer.parseInt(value));
+
+		value = config.getServiceParameter("routing", "segment_parallelism");
+		if (value != null)
+			segmentParallelism = Math.max(1, Integer.parseInt(value));
+
+		value = config.getServiceParameter("routing", "batch_parallelism");
+		if (value != null)
+			batchParallelism = Math.max(1, Integer.parseInt(value));
+
+		value = config.getServiceParameter("routing", "batch_maximum_pairs");
+		if (value != null)
+			batchMaximumPairs = Math.max(1, Integer.parseInt(value));
+
+		value = config.getServiceParameter("routing", "batch_timeout");
+		if (value != null)
+			batchTimeout = Math.max(0, Long.parseLong(value));
+
+		value = config.getServiceParameter("routing", "cch_enabled");
+		if (value != null)
+			cchEnabled = Boolean.parseBoolean(value);
+
+		value = config.getServiceParameter("routing", "cch_metrics_maximum_memory");
+		if (value != null)
+			cchMetricsMaximumMemory = Math.max(1, Integer.parseInt(value));
+
+		value = config.getServiceParameter("routing", "cch_maximum_arcs_factor");
+		if (value != null)
+			cchMaximumArcsFactor = Math.max(1, Double.parseDouble(value));
+
+		value = config.getServiceParameter("routing", "destination_edges_maximum_distance");
+		if (value != null)
+			destinationEdgesMaximumDistance = Math.max(0, Double.parseDouble(value));
+
+		value = config.getServiceParameter("routing", "request_timeout");
+		if (value != null)
+			requestTimeout = Math.max(0, Long.parseLong(value));
+
+		value = config.getServiceParameter("routing", "compute_threads");
+		if (value != null)
+			computeThreads = Math.max(0, Integer.parseInt(value));
+
+		value = config.getServiceParameter("routing", "compute_queue_size");
+		if (value != null)
+			computeQueueSize = Math.max(1, Integer.parseInt(value));
 	}
 	
 	public static Boolean getEnabled()
@@ -104,6 +164,98 @@ public class RoutingServiceSettings {
 		return storageFormat;
 	}
 
+	/**
+	 * Returns the number of snapped locations kept per profile or 0 if they 
+	 * are not cached.
+	 */
+	public static int getSnappingCacheSize() {
+		return snappingCacheSize;
+	}
+
+	/**
+	 * Returns the maximum number of segments of one request computed at the 
+	 * same time on the shared compute pool. 1 computes the segments sequentially.
+	 */
+	public static int getSegmentParallelism() {
+		return segmentParallelism;
+	}
+
+	/**
+	 * Returns the maximum number of routes of one batch request computed at the same time.
+	 */
+	public static int getBatchParallelism() {
+		return batchParallelism;
+	}
+
+	public static int getBatchMaximumPairs() {
+		return batchMaximumPairs;
+	}
+
+	/**
+	 * Returns the time in milliseconds after which the remaining pairs of a 
+	 * batch request are not computed anymore or 0 if the batch is not limited.
+	 * Every pair is limited by the request timeout on its own.
+	 */
+	public static long getBatchTimeout() {
+		return batchTimeout;
+	}
+
+	/**
+	 * Returns whether a customizable contraction hierarchy is prepared for every
+	 * graph and used for requests with dynamic weights.
+	 */
+	public static boolean getCCHEnabled() {
+		return cchEnabled;
+	}
+
+	/**
+	 * Returns the memory in megabytes that the customized CCH metrics of a 
+	 * graph may use.
+	 */
+	public static int getCCHMetricsMaximumMemory() {
+		return cchMetricsMaximumMemory;
+	}
+
+	/**
+	 * Returns the maximum number of CCH arcs as a multiple of the number of 
+	 * graph edges. The preparation of a graph exceeding it is aborted.
+	 */
+	public static double getCCHMaximumArcsFactor() {
+		return cchMaximumArcsFactor;
+	}
+
+	/**
+	 * Returns the distance in meters up to which roads with destination access
+	 * are explored from the destination of a heavy vehicle route.
+	 */
+	public static double getDestinationEdgesMaximumDistance() {
+		return destinationEdgesMaximumDistance;
+	}
+
+	/**
+	 * Returns the time in milliseconds after which the searches of a request are
+	 * aborted or 0 if they are not limited.
+	 */
+	public static long getRequestTimeout() {
+		return requestTimeout;
+	}
+
+	/**
+	 * Returns the number of threads computing the requests of the service or 0
+	 * for one thread per available core.
+	 */
+	public static int getComputeThreads() {
+		return computeThreads;
+	}
+
+	/**
+	 * Returns the number of requests which may wait for a computing thread 
+	 * before further ones are rejected.
+	 */
+	public static int getComputeQueueSize() {
+		return computeQueueSize;
+	}
+
 	public static String getParameter(String paramName) 
 	{
 	   return _config.getServiceParameter("routing", paramName);	
@@ -22,6 +22,7 @@ package heigit.ors.services.routing.requestprocessors;
 
 import javax.servlet.http.HttpServletRequest;
 
+import heigit.ors.services.routing.requestprocessors.json.JsonBatchRoutingRequestProcessor;
 import heigit.ors.services.routing.requestprocessors.json.JsonRoutingRequestProcessor;
 import heigit.ors.common.StatusCode;
 import heigit.ors.exceptions.StatusCodeException;
@@ -53,6 +54,8 @@ public class RoutingServiceRequestProcessorFactory {
 		{
 		case "tmc":
 			return new TmcInformationRequestProcessor(request);
+		case "batch":
+			return new JsonBatchRoutingRequestProcessor(request);
 		case "route":
 			String formatParam = request.getParameter("format");
 			if (Helper.isEmpty(formatParam))
@@ -0,0 +1,289 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.services.routing.requestprocessors.json;
+
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.json.JSONObject;
+
+import com.graphhopper.GraphHopper;
+import com.graphhopper.routing.util.DefaultEdgeFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.storage.index.LocationIndex;
+import com.vividsolutions.jts.geom.Coordinate;
+
+import heigit.ors.common.ComputeExecutor;
+import heigit.ors.common.Deadline;
+import heigit.ors.common.StatusCode;
+import heigit.ors.exceptions.InternalServerException;
+import heigit.ors.exceptions.ServerLimitExceededException;
+import heigit.ors.exceptions.StatusCodeException;
+import heigit.ors.routing.RouteProcessContext;
+import heigit.ors.routing.RouteResult;
+import heigit.ors.routing.RoutingErrorCodes;
+import heigit.ors.routing.RoutingProfile;
+import heigit.ors.routing.RoutingProfileManager;
+import heigit.ors.routing.RoutingProfileType;
+import heigit.ors.routing.RoutingRequest;
+import heigit.ors.routing.graphhopper.extensions.SnappingBuffer;
+import heigit.ors.services.routing.RoutingServiceSettings;
+import heigit.ors.servlet.http.AbstractHttpRequestProcessor;
+import heigit.ors.servlet.util.ServletUtility;
+import heigit.ors.util.PolylineEncoder;
+
+/**
+ * Computes the routes of many origin-destination pairs with shared options in
+ * one request. The locations are snapped in one pass before the searches run
+ * on the shared compute pool, every worker reuses one search context for its
+ * pairs and the snapped locations of the batch. One line of JSON is written 
+ * per pair as soon as its route is ready, so the order of the lines is the 
+ * order of completion and every line carries the index of its pair. Every 
+ * pair is limited by the request timeout, the batch by the batch timeout.
+ */
+public class JsonBatchRoutingRequestProcessor extends AbstractHttpRequestProcessor 
+{
+	private static final String CONTENT_TYPE = "application/x-ndjson";
+
+	private static class PairResult
+	{
+		public int index;
+		public RouteResult result;
+		public Exception error;
+	}
+
+	public JsonBatchRoutingRequestProcessor(HttpServletRequest request) throws Exception 
+	{
+		super(request);
+	}
+
+	@Override
+	public void process(HttpServletResponse response) throws Exception 
+	{
+		if (!"POST".equals(_request.getMethod()))
+			throw new StatusCodeException(StatusCode.METHOD_NOT_ALLOWED);
+
+		// every pair gets a deadline of its own within the time budget of the batch
+		Deadline batchDeadline = ServletUtility.getDeadline(_request, RoutingServiceSettings.getBatchTimeout());
+		RoutingRequest[] reqs = JsonRoutingRequestParser.parseBatchFromStream(_request.getInputStream());
+
+		if (reqs.length > RoutingServiceSettings.getBatchMaximumPairs())
+			throw new ServerLimitExceededException(RoutingErrorCodes.REQUEST_EXCEEDS_SERVER_LIMIT, "The number of pairs must not be greater than " + Integer.toString(RoutingServiceSettings.getBatchMaximumPairs()) + ".");
+
+		SnappingBuffer snappingBuffer = new SnappingBuffer();
+		boolean[] snapped = snapLocations(reqs, snappingBuffer);
+
+		response.setCharacterEncoding("UTF-8");
+		response.setContentType(CONTENT_TYPE);
+
+		Writer writer = new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), "UTF-8"));
+		try
+		{
+			writePairs(reqs, snapped, snappingBuffer, batchDeadline, writer);
+		}
+		finally
+		{
+			writer.close();
+		}
+	}
+
+	private void writePairs(RoutingRequest[] reqs, boolean[] snapped, SnappingBuffer snappingBuffer, Deadline batchDeadline, Writer writer) throws Exception
+	{
+		StringBuffer buffer = new StringBuffer();
+
+		AtomicInteger nextPair = new AtomicInteger(0);
+		BlockingQueue<PairResult> results = new LinkedBlockingQueue<PairResult>();
+		int nPairs = 0;
+
+		for (int i = 0; i < reqs.length; i++)
+		{
+			if (snapped[i])
+				nPairs++;
+			else
+				writeLine(writer, createError(i, new StatusCodeException(StatusCode.BAD_REQUEST, RoutingErrorCodes.INVALID_PARAMETER_VALUE, "Unable to find a road near the locations of the pair.")));
+		}
+
+		int nWorkers = Math.min(nPairs, RoutingServiceSettings.getBatchParallelism());
+
+		for (int w = 0; w < nWorkers; w++)
+		{
+			ComputeExecutor.submit(() -> {
+				// the edge filters of a search context are not shared between threads
+				RouteProcessContext routeProcCntx = new RouteProcessContext(null);
+				routeProcCntx.setArrayBuffer(new SnappingBuffer(snappingBuffer));
+				int i;
+				while ((i = nextPair.getAndIncrement()) < reqs.length)
+				{
+					if (!snapped[i])
+						continue;
+
+					PairResult res = new PairResult();
+					res.index = i;
+
+					try
+					{
+						if (batchDeadline.isExpired())
+							throw new StatusCodeException(StatusCode.SERVICE_UNAVAILABLE, RoutingErrorCodes.SEARCH_TIMEOUT, "Unable to compute the route within the " + batchDeadline.getTimeout() + " ms of the batch.");
+
+						reqs[i].setDeadline(batchDeadline.limit(RoutingServiceSettings.getRequestTimeout()));
+						res.result = RoutingProfileManager.getInstance().computeBatchRoute(reqs[i], routeProcCntx);
+					}
+					catch (Exception ex)
+					{
+						res.error = ex;
+					}
+					catch (Throwable ex)
+					{
+						// every pair has to be reported, otherwise the writer waits forever
+						logger.error("Unable to compute the route of a batch pair.", ex);
+						res.error = new InternalServerException(RoutingErrorCodes.UNKNOWN, "Unable to compute the route of the pair.");
+					}
+
+					results.add(res);
+				}
+
+				return null;
+			});
+		}
+
+		try
+		{
+			for (int n = 0; n < nPairs; n++)
+			{
+				PairResult res = results.take();
+
+				if (res.error != null)
+					writeLine(writer, createError(res.index, res.error));
+				else
+					writeLine(writer, createResult(reqs[res.index], res.result, buffer));
+			}
+		}
+		finally
+		{
+			// a client that disconnects stops the remaining searches
+			nextPair.set(reqs.length);
+		}
+	}
+
+	/**
+	 * Snaps all distinct locations of the batch with the location index of the
+	 * profile and returns for every pair whether both of its locations have
+	 * been found. The snapped locations are kept by the buffer, whose copies
+	 * are used by the route searches of the pairs.
+	 */
+	private boolean[] snapLocations(RoutingRequest[] reqs, SnappingBuffer snappingBuffer) throws Exception
+	{
+		boolean[] res = new boolean[reqs.length];
+
+		RoutingProfile rp = null;
+		try
+		{
+			rp = RoutingProfileManager.getInstance().getRouteProfile(reqs[0], false);
+		}
+		catch (Exception ex)
+		{
+			// the limits of the profile are checked for every pair again
+		}
+
+		if (rp == null)
+		{
+			for (int i = 0; i < res.length; i++)
+				res[i] = true;
+
+			return res;
+		}
+
+		String encoderName = RoutingProfileType.getEncoderName(reqs[0].getSearchParameters().getProfileType());
+		RoutingProfile.GraphGeneration gen = rp.acquireGraph();
+		try
+		{
+			GraphHopper gh = gen.getGraphHopper();
+			EdgeFilter edgeFilter = new DefaultEdgeFilter(gh.getEncodingManager().getEncoder(encoderName));
+			LocationIndex locIndex = gh.getLocationIndex();
+			Map<Coordinate, Boolean> locations = new HashMap<Coordinate, Boolean>();
+
+			for (int i = 0; i < reqs.length; i++)
+			{
+				res[i] = true;
+
+				for (Coordinate c : reqs[i].getCoordinates())
+				{
+					Boolean found = locations.get(c);
+					if (found == null)
+					{
+						found = locIndex.findClosest(c.y, c.x, edgeFilter, snappingBuffer).isValid();
+						locations.put(c, found);
+					}
+
+					res[i] &= found;
+				}
+			}
+		}
+		finally
+		{
+			gen.release();
+		}
+
+		return res;
+	}
+
+	private JSONObject createResult(RoutingRequest req, RouteResult result, StringBuffer buffer)
+	{
+		JSONObject jResult = new JSONObject(true);
+		jResult.put("index", req.getLocationIndex());
+		jResult.put("distance", result.getSummary().getDistance());
+		jResult.put("duration", result.getSummary().getDuration());
+
+		if (req.getIncludeGeometry() && result.getGeometry() != null)
+			jResult.put("geometry", PolylineEncoder.encode(result.getGeometry(), false, buffer));
+
+		return jResult;
+	}
+
+	private JSONObject createError(int index, Exception ex)
+	{
+		JSONObject jError = new JSONObject(true);
+		jError.put("code", ex instanceof StatusCodeException ? ((StatusCodeException)ex).getInternalCode() : RoutingErrorCodes.UNKNOWN);
+		jError.put("message", ex.getMessage());
+
+		JSONObject jResult = new JSONObject(true);
+		jResult.put("index", index);
+		jResult.put("error", jError);
+
+		return jResult;
+	}
+
+	private static void writeLine(Writer writer, JSONObject json) throws Exception
+	{
+		writer.write(json.toString());
+		writer.write('\n');
+		writer.flush();
+	}
+}
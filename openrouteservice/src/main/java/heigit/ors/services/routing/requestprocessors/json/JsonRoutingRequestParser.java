@@ -20,10 +20,15 @@
  */
 package heigit.ors.services.routing.requestprocessors.json;
 
+import java.io.InputStream;
 import java.text.ParseException;
 
 import javax.servlet.http.HttpServletRequest;
 
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import com.graphhopper.util.Helper;
 import com.vividsolutions.jts.geom.Coordinate;
 
@@ -45,9 +50,131 @@ import heigit.ors.routing.WeightingMethod;
 import heigit.ors.util.ArraysUtility;
 import heigit.ors.util.CoordTools;
 import heigit.ors.util.DistanceUnitUtil;
+import heigit.ors.util.StreamUtility;
 
 public class JsonRoutingRequestParser 
 {
+	/**
+	 * Parses a batch of routes between origin-destination pairs. The requests
+	 * of all pairs share the search parameters of the document. Instructions
+	 * are not computed and geometries only if requested.
+	 */
+	public static RoutingRequest[] parseBatchFromStream(InputStream stream) throws Exception
+	{
+		String body = StreamUtility.readStream(stream);
+
+		JSONObject json = null;
+		try
+		{
+			json = new JSONObject(body);
+		}
+		catch(Exception ex)
+		{
+			throw new StatusCodeException(StatusCode.BAD_REQUEST, RoutingErrorCodes.INVALID_JSON_FORMAT, "Unable to parse JSON document." + ex.getMessage());
+		}
+
+		RouteSearchParameters searchParams = new RouteSearchParameters();
+
+		String value = json.optString("profile");
+		if (!Helper.isEmpty(value))
+		{
+			int profileType = RoutingProfileType.getFromString(value);
+
+			if (profileType == RoutingProfileType.UNKNOWN)
+				throw new UnknownParameterValueException(RoutingErrorCodes.INVALID_PARAMETER_VALUE, "profile", value);
+			searchParams.setProfileType(profileType);
+		}
+		else
+			throw new MissingParameterException(RoutingErrorCodes.MISSING_PARAMETER, "profile");
+
+		value = json.optString("preference");
+		if (!Helper.isEmpty(value))
+		{
+			int weightingMethod = WeightingMethod.getFromString(value);
+			if (weightingMethod == WeightingMethod.UNKNOWN)
+				throw new UnknownParameterValueException(RoutingErrorCodes.INVALID_PARAMETER_VALUE, "preference", value);
+
+			searchParams.setWeightingMethod(weightingMethod);
+		}
+
+		DistanceUnit units = DistanceUnit.Meters;
+		value = json.optString("units");
+		if (!Helper.isEmpty(value))
+		{
+			units = DistanceUnitUtil.getFromString(value, DistanceUnit.Unknown);
+
+			if (units == DistanceUnit.Unknown)
+				throw new ParameterValueException(RoutingErrorCodes.INVALID_PARAMETER_VALUE, "units", value);
+		}
+
+		boolean includeGeometry = json.optBoolean("geometry", false);
+
+		if (json.has("options"))
+		{
+			JSONObject jOptions = json.optJSONObject("options");
+			value = jOptions != null ? jOptions.toString() : json.optString("options");
+
+			try
+			{
+				searchParams.setOptions(value);
+			}
+			catch(ParseException ex)
+			{
+				throw new ParameterValueException(RoutingErrorCodes.INVALID_JSON_FORMAT, "Unable to parse 'options' value." + ex.getMessage());
+			}
+		}
+
+		value = json.optString("optimized");
+		if (!Helper.isEmpty(value))
+		{
+			if (!value.equalsIgnoreCase("true") && !value.equalsIgnoreCase("false"))
+				throw new ParameterValueException(RoutingErrorCodes.INVALID_PARAMETER_FORMAT, "optimized");
+
+			searchParams.setFlexibleMode(!Boolean.parseBoolean(value));
+		}
+
+		JSONArray jPairs = json.optJSONArray("pairs");
+		if (jPairs == null || jPairs.length() == 0)
+			throw new MissingParameterException(RoutingErrorCodes.MISSING_PARAMETER, "pairs");
+
+		RoutingRequest[] reqs = new RoutingRequest[jPairs.length()];
+
+		try
+		{
+			for (int i = 0; i < reqs.length; i++)
+			{
+				JSONArray jPair = jPairs.getJSONArray(i);
+				if (jPair.length() != 2)
+					throw new ParameterValueException(RoutingErrorCodes.INVALID_PARAMETER_VALUE, "pairs");
+
+				Coordinate[] coords = new Coordinate[2];
+				for (int j = 0; j < 2; j++)
+				{
+					JSONArray jCoordinate = jPair.getJSONArray(j);
+					if (jCoordinate.length() < 2)
+						throw new ParameterValueException(RoutingErrorCodes.INVALID_PARAMETER_VALUE, "pairs");
+
+					coords[j] = new Coordinate(jCoordinate.getDouble(0), jCoordinate.getDouble(1));
+				}
+
+				RoutingRequest req = new RoutingRequest();
+				req.setSearchParameters(searchParams);
+				req.setCoordinates(coords);
+				req.setUnits(units);
+				req.setIncludeInstructions(false);
+				req.setIncludeGeometry(includeGeometry);
+				req.setLocationIndex(i);
+				reqs[i] = req;
+			}
+		}
+		catch(JSONException jex)
+		{
+			throw new ParameterValueException(RoutingErrorCodes.INVALID_PARAMETER_FORMAT, "pairs");
+		}
+
+		return reqs;
+	}
+
 	public static RoutingRequest parseFromRequestParams(HttpServletRequest request) throws Exception
 	{
 		RoutingRequest req = new RoutingRequest();
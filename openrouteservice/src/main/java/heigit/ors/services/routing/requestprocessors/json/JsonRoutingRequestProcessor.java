@@ -27,13 +27,17 @@ import org.json.JSONObject;
 
 import com.graphhopper.util.Helper;
 
+import heigit.ors.common.Deadline;
 import heigit.ors.routing.RouteResult;
 import heigit.ors.routing.RoutingProfileManager;
 import heigit.ors.routing.RoutingRequest;
+import heigit.ors.services.routing.RoutingServiceSettings;
 import heigit.ors.servlet.http.AbstractHttpRequestProcessor;
 import heigit.ors.servlet.util.ServletUtility;
 
 public class JsonRoutingRequestProcessor extends AbstractHttpRequestProcessor {
+	// request already parsed by the servlet for choosing its executor
+	public static final String PARSED_REQUEST_ATTRIBUTE = "ors.routing.request";
 
 	public JsonRoutingRequestProcessor(HttpServletRequest request) throws Exception 
 	{
@@ -42,7 +46,11 @@ public class JsonRoutingRequestProcessor extends AbstractHttpRequestProcessor {
 
 	@Override
 	public void process(HttpServletResponse response) throws Exception {
-		RoutingRequest rreq = JsonRoutingRequestParser.parseFromRequestParams(_request);
+		Deadline deadline = ServletUtility.getDeadline(_request, RoutingServiceSettings.getRequestTimeout());
+		RoutingRequest rreq = (RoutingRequest)_request.getAttribute(PARSED_REQUEST_ATTRIBUTE);
+		if (rreq == null)
+			rreq = JsonRoutingRequestParser.parseFromRequestParams(_request);
+		rreq.setDeadline(deadline);
 		
 		RouteResult result = RoutingProfileManager.getInstance().computeRoute(rreq);
 		
@@ -54,7 +54,9 @@ public class CompressionFilter implements Filter
 				else*/ if(acceptEncoding.indexOf(ContentEncodingType.GZIP) != -1) {
 					GZIPResponseWrapper wrappedResponse = new GZIPResponseWrapper(response);
 					chain.doFilter(req, wrappedResponse);
-					wrappedResponse.finishResponse();
+					// asynchronous requests are still being processed, their servlet closes the output when done
+					if (!request.isAsyncStarted())
+						wrappedResponse.finishResponse();
 					return;
 				}
 				else if (acceptEncoding.indexOf(ContentEncodingType.DEFLATE) != -1) {
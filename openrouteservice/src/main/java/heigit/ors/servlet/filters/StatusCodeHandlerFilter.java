@@ -62,7 +62,9 @@ public class StatusCodeHandlerFilter implements Filter {
 		}
 
 		// 	flush to prevent servlet container to add anymore  headers or content
-		response.flushBuffer();
+		// asynchronous requests are still being processed and flushed on completion
+		if (!request.isAsyncStarted())
+			response.flushBuffer();
 	}
 
 	@Override
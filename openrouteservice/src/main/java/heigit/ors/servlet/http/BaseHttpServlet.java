@@ -20,7 +20,14 @@
  */
 package heigit.ors.servlet.http;
 
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.log4j.Logger;
@@ -29,6 +36,7 @@ import org.json.JSONObject;
 
 import heigit.ors.common.StatusCode;
 import heigit.ors.exceptions.InternalServerException;
+import heigit.ors.exceptions.ServiceUnavailableException;
 import heigit.ors.exceptions.StatusCodeException;
 import heigit.ors.servlet.util.ServletUtility;
 import heigit.ors.util.AppInfo;
@@ -39,6 +47,178 @@ public class BaseHttpServlet extends HttpServlet
 	
     protected static Logger LOGGER = Logger.getLogger(BaseHttpServlet.class.getName());
 
+    // time granted in addition to the request timeout for waiting in the queues and writing the response
+    private static final long ASYNC_TIMEOUT_MARGIN = 30000;
+    // time after which a response is given up if the service has no request timeout
+    private static final long DEFAULT_ASYNC_TIMEOUT = 600000;
+
+    private ServiceExecutor _executor;
+    private String _serviceName;
+    private int _overloadErrorCode;
+    private long _asyncTimeout;
+
+    /**
+     * Lets the requests passed to {@link #processAsync} be computed by a bounded
+     * pool of threads of the service instead of the threads of the container.
+     * Requests which are not answered within the request timeout of the service
+     * and a margin for queueing are answered with status 503 and cancelled.
+     */
+    protected void initExecutor(String serviceName, int threads, int queueSize, int overloadErrorCode, long requestTimeout)
+    {
+    	_executor = new ServiceExecutor(serviceName, threads, queueSize, overloadErrorCode);
+    	_serviceName = serviceName;
+    	_overloadErrorCode = overloadErrorCode;
+    	_asyncTimeout = requestTimeout > 0 ? requestTimeout + ASYNC_TIMEOUT_MARGIN : DEFAULT_ASYNC_TIMEOUT;
+    }
+
+    /**
+     * Returns the executor which computes the given request. Services whose 
+     * requests differ widely in cost override it, so that cheap requests do
+     * not queue behind expensive ones.
+     */
+    protected ServiceExecutor getExecutor(HttpServletRequest request)
+    {
+    	return _executor;
+    }
+
+    /**
+     * Returns whether the response to the request is streamed while it is
+     * computed. Such responses are sent in parts long before they are complete,
+     * so they are not cut off by the timeout of the service but limited by 
+     * the computation itself.
+     */
+    protected boolean isStreaming(HttpServletRequest request)
+    {
+    	return false;
+    }
+
+    @Override
+    public void destroy()
+    {
+    	if (_executor != null)
+    		_executor.shutdown();
+    }
+
+    /**
+     * Processes the request on the executor of the service and returns at once,
+     * the response is completed by the executing thread. Requests are processed
+     * on the calling thread if no executor has been initialized. On timeout the
+     * response is abandoned by the computation, which cannot write to it anymore,
+     * and the deadline of the request expires, so that its searches stop.
+     */
+    protected void processAsync(HttpServletRequest request, HttpServletResponse response, HttpRequestProcessorFactory processorFactory)
+    {
+    	ServiceExecutor executor = _executor == null ? null : getExecutor(request);
+    	if (executor == null)
+    	{
+    		process(request, response, processorFactory);
+    		return;
+    	}
+
+    	// the objects as wrapped by the filters are passed on, so the output still passes them
+    	AsyncContext asyncContext = request.startAsync(request, response);
+    	// the computation only writes through the guard, the response is completed
+    	// by whichever side abandons the guard first
+    	GuardedResponse guardedResponse = new GuardedResponse(response);
+    	AtomicBoolean cancelled = new AtomicBoolean();
+    	request.setAttribute(ServletUtility.CANCELLED_ATTRIBUTE, cancelled);
+    	asyncContext.setTimeout(isStreaming(request) ? 0 : _asyncTimeout);
+    	asyncContext.addListener(new AsyncListener() {
+    		@Override
+    		public void onTimeout(AsyncEvent event) throws IOException
+    		{
+    			if (guardedResponse.abandon())
+    			{
+    				cancelled.set(true);
+
+    				// a partly written body cannot be replaced by the error anymore
+    				if (!guardedResponse.isOutputUsed() && !response.isCommitted())
+    					writeError(response, new ServiceUnavailableException(_overloadErrorCode, "Unable to compute the " + _serviceName + " request within " + _asyncTimeout + " ms.", 1));
+
+    				completeAsync(asyncContext, response);
+    			}
+    		}
+
+    		@Override
+    		public void onComplete(AsyncEvent event) throws IOException
+    		{
+    		}
+
+    		@Override
+    		public void onError(AsyncEvent event) throws IOException
+    		{
+    		}
+
+    		@Override
+    		public void onStartAsync(AsyncEvent event) throws IOException
+    		{
+    		}
+    	});
+
+    	try
+    	{
+    		executor.execute(() -> {
+    			try
+    			{
+    				process(request, guardedResponse, processorFactory);
+    			}
+    			finally
+    			{
+    				if (guardedResponse.abandon())
+    					completeAsync(asyncContext, response);
+    			}
+    		});
+    	}
+    	catch (ServiceUnavailableException ex)
+    	{
+    		if (guardedResponse.abandon())
+    		{
+    			writeError(response, ex);
+    			completeAsync(asyncContext, response);
+    		}
+    	}
+    }
+
+    protected void process(HttpServletRequest request, HttpServletResponse response, HttpRequestProcessorFactory processorFactory)
+    {
+    	try
+    	{
+    		AbstractHttpRequestProcessor reqProcessor = processorFactory.createProcessor(request);
+    		reqProcessor.process(response);
+    		reqProcessor.destroy();
+    	}
+    	catch (Exception ex) {
+    		writeError(response, ex);
+    	}
+    }
+
+    private void completeAsync(AsyncContext asyncContext, HttpServletResponse response)
+    {
+    	// the filters have returned long before the response was written and 
+    	// cannot finish it, closing the output lets their wrappers do so instead
+    	try
+    	{
+    		response.getOutputStream().close();
+    	}
+    	catch (IllegalStateException ex)
+    	{
+    		try
+    		{
+    			response.getWriter().close();
+    		}
+    		catch (IOException e)
+    		{
+    			LOGGER.error(e);
+    		}
+    	}
+    	catch (IOException ex)
+    	{
+    		// already closed by the request processor
+    	}
+
+    	asyncContext.complete();
+    }
+
     protected void writeError(HttpServletResponse res, Exception ex)
     {
       writeError(res, ex, StatusCode.BAD_REQUEST);
@@ -72,6 +252,9 @@ public class BaseHttpServlet extends HttpServlet
 				StatusCodeException sce = (StatusCodeException)ex;
 				statusCode = sce.getStatusCode();
 				errorCode = sce.getInternalCode();
+
+				if (ex instanceof ServiceUnavailableException)
+					res.setHeader("Retry-After", Integer.toString(((ServiceUnavailableException)ex).getRetryAfter()));
 			}
 			
 			if (errorCode > 0)
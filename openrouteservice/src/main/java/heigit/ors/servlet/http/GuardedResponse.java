@@ -0,0 +1,342 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.servlet.http;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response of an asynchronously processed request, which is either written by
+ * the computing thread or, after the request has timed out, by the container, 
+ * but never by both. Every write holds the lock of the response and fails once
+ * the response has been abandoned, so that a computation which is still 
+ * running cannot write into a response that the container has recycled for 
+ * another request.
+ */
+class GuardedResponse extends HttpServletResponseWrapper 
+{
+	private boolean _abandoned;
+	private boolean _outputUsed;
+	private ServletOutputStream _stream;
+	private PrintWriter _writer;
+
+	public GuardedResponse(HttpServletResponse response)
+	{
+		super(response);
+	}
+
+	/**
+	 * Lets all further writes fail. Returns false if the response had already
+	 * been abandoned, so that exactly one caller completes it.
+	 */
+	public synchronized boolean abandon()
+	{
+		if (_abandoned)
+			return false;
+
+		_abandoned = true;
+		return true;
+	}
+
+	/**
+	 * Returns whether the computing thread has started to write the body.
+	 */
+	public synchronized boolean isOutputUsed()
+	{
+		return _outputUsed;
+	}
+
+	private void checkAbandoned() throws IOException
+	{
+		if (_abandoned)
+			throw new IOException("The response has been abandoned after the request timed out.");
+	}
+
+	@Override
+	public synchronized ServletOutputStream getOutputStream() throws IOException
+	{
+		checkAbandoned();
+
+		if (_stream == null)
+		{
+			_stream = new GuardedOutputStream(super.getOutputStream());
+			_outputUsed = true;
+		}
+
+		return _stream;
+	}
+
+	@Override
+	public synchronized PrintWriter getWriter() throws IOException
+	{
+		checkAbandoned();
+
+		if (_writer == null)
+		{
+			_writer = new PrintWriter(new GuardedWriter(super.getWriter()));
+			_outputUsed = true;
+		}
+
+		return _writer;
+	}
+
+	@Override
+	public synchronized void flushBuffer() throws IOException
+	{
+		checkAbandoned();
+		super.flushBuffer();
+	}
+
+	@Override
+	public synchronized void sendError(int sc, String msg) throws IOException
+	{
+		checkAbandoned();
+		super.sendError(sc, msg);
+	}
+
+	@Override
+	public synchronized void sendError(int sc) throws IOException
+	{
+		checkAbandoned();
+		super.sendError(sc);
+	}
+
+	@Override
+	public synchronized void sendRedirect(String location) throws IOException
+	{
+		checkAbandoned();
+		super.sendRedirect(location);
+	}
+
+	@Override
+	public synchronized void setStatus(int sc)
+	{
+		if (!_abandoned)
+			super.setStatus(sc);
+	}
+
+	@Override
+	public synchronized void setHeader(String name, String value)
+	{
+		if (!_abandoned)
+			super.setHeader(name, value);
+	}
+
+	@Override
+	public synchronized void addHeader(String name, String value)
+	{
+		if (!_abandoned)
+			super.addHeader(name, value);
+	}
+
+	@Override
+	public synchronized void setIntHeader(String name, int value)
+	{
+		if (!_abandoned)
+			super.setIntHeader(name, value);
+	}
+
+	@Override
+	public synchronized void addIntHeader(String name, int value)
+	{
+		if (!_abandoned)
+			super.addIntHeader(name, value);
+	}
+
+	@Override
+	public synchronized void setDateHeader(String name, long date)
+	{
+		if (!_abandoned)
+			super.setDateHeader(name, date);
+	}
+
+	@Override
+	public synchronized void addDateHeader(String name, long date)
+	{
+		if (!_abandoned)
+			super.addDateHeader(name, date);
+	}
+
+	@Override
+	public synchronized void setContentType(String type)
+	{
+		if (!_abandoned)
+			super.setContentType(type);
+	}
+
+	@Override
+	public synchronized void setCharacterEncoding(String charset)
+	{
+		if (!_abandoned)
+			super.setCharacterEncoding(charset);
+	}
+
+	@Override
+	public synchronized void setContentLength(int len)
+	{
+		if (!_abandoned)
+			super.setContentLength(len);
+	}
+
+	@Override
+	public synchronized void setContentLengthLong(long len)
+	{
+		if (!_abandoned)
+			super.setContentLengthLong(len);
+	}
+
+	@Override
+	public synchronized void setLocale(Locale loc)
+	{
+		if (!_abandoned)
+			super.setLocale(loc);
+	}
+
+	@Override
+	public synchronized void setBufferSize(int size)
+	{
+		if (!_abandoned)
+			super.setBufferSize(size);
+	}
+
+	@Override
+	public synchronized void reset()
+	{
+		if (!_abandoned)
+			super.reset();
+	}
+
+	@Override
+	public synchronized void resetBuffer()
+	{
+		if (!_abandoned)
+			super.resetBuffer();
+	}
+
+	private class GuardedOutputStream extends ServletOutputStream
+	{
+		private final ServletOutputStream _out;
+
+		public GuardedOutputStream(ServletOutputStream out)
+		{
+			_out = out;
+		}
+
+		@Override
+		public void write(int b) throws IOException
+		{
+			synchronized (GuardedResponse.this)
+			{
+				checkAbandoned();
+				_out.write(b);
+			}
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException
+		{
+			synchronized (GuardedResponse.this)
+			{
+				checkAbandoned();
+				_out.write(b, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+			synchronized (GuardedResponse.this)
+			{
+				checkAbandoned();
+				_out.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			synchronized (GuardedResponse.this)
+			{
+				checkAbandoned();
+				_out.close();
+			}
+		}
+
+		@Override
+		public boolean isReady()
+		{
+			return _out.isReady();
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener)
+		{
+			_out.setWriteListener(writeListener);
+		}
+	}
+
+	private class GuardedWriter extends Writer
+	{
+		private final Writer _out;
+
+		public GuardedWriter(Writer out)
+		{
+			_out = out;
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException
+		{
+			synchronized (GuardedResponse.this)
+			{
+				checkAbandoned();
+				_out.write(cbuf, off, len);
+			}
+		}
+
+		@Override
+		public void flush() throws IOException
+		{
+			synchronized (GuardedResponse.this)
+			{
+				checkAbandoned();
+				_out.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			synchronized (GuardedResponse.this)
+			{
+				checkAbandoned();
+				_out.close();
+			}
+		}
+	}
+}
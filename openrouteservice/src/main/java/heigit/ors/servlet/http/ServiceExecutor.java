@@ -0,0 +1,91 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.servlet.http;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import heigit.ors.common.ComputeExecutor;
+import heigit.ors.exceptions.ServiceUnavailableException;
+
+/**
+ * Bounded pool of threads which computes the requests of one service. The 
+ * threads of the servlet container only hand the requests over, so they stay
+ * available for accepting connections and for cheap requests like status and
+ * health checks while the computations queue here.
+ */
+public class ServiceExecutor 
+{
+	private static final int RETRY_AFTER = 1;
+
+	private final String _serviceName;
+	private final ThreadPoolExecutor _executor;
+	private final int _errorCode;
+
+	/**
+	 * @param serviceName name of the service used for the names of the threads
+	 * @param threads number of computing threads, the size of the shared compute pool if not positive
+	 * @param queueSize number of requests which may wait for a free thread
+	 * @param errorCode error code of the service for rejected requests
+	 */
+	public ServiceExecutor(String serviceName, int threads, int queueSize, int errorCode)
+	{
+		if (threads <= 0)
+			threads = ComputeExecutor.getThreads();
+
+		AtomicInteger threadNumber = new AtomicInteger();
+
+		_serviceName = serviceName;
+		_errorCode = errorCode;
+		_executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)), runnable -> {
+			Thread thread = new Thread(runnable, "ORS-" + serviceName + "-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Queues the task or throws a {@link ServiceUnavailableException} if all 
+	 * threads are busy and the queue is full.
+	 */
+	public void execute(Runnable task) throws ServiceUnavailableException
+	{
+		try
+		{
+			_executor.execute(task);
+		}
+		catch (RejectedExecutionException ex)
+		{
+			throw new ServiceUnavailableException(_errorCode, "The server is currently processing too many " + _serviceName + " requests.", RETRY_AFTER);
+		}
+	}
+
+	/**
+	 * Stops accepting requests, queued and running ones are still completed.
+	 */
+	public void shutdown()
+	{
+		_executor.shutdown();
+	}
+}
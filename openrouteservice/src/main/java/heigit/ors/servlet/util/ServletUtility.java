@@ -23,18 +23,50 @@ package heigit.ors.servlet.util;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.json.JSONObject;
 
+import heigit.ors.common.Deadline;
 import heigit.ors.common.StatusCode;
 import heigit.ors.util.StreamUtility;
 import heigit.ors.util.StringUtility;
  
 public class ServletUtility
 {
+	public static final String REQUEST_TIMEOUT_HEADER = "X-Request-Timeout";
+	// flag set once a request has been answered without waiting for its computation
+	public static final String CANCELLED_ATTRIBUTE = "ors.cancelled";
+
+	/**
+	 * Returns the deadline of a request, which starts now. Clients may shorten 
+	 * the configured timeout with the header X-Request-Timeout in milliseconds
+	 * but cannot extend it. The deadline also expires when the request is 
+	 * cancelled.
+	 */
+	public static Deadline getDeadline(HttpServletRequest request, long timeout)
+	{
+		String value = request.getHeader(REQUEST_TIMEOUT_HEADER);
+		if (value != null)
+		{
+			try
+			{
+				long requestTimeout = Long.parseLong(value.trim());
+				if (requestTimeout > 0 && (timeout <= 0 || requestTimeout < timeout))
+					timeout = requestTimeout;
+			}
+			catch (NumberFormatException ex)
+			{
+				// an invalid header falls back to the configured timeout
+			}
+		}
+
+		return Deadline.fromTimeout(timeout, (AtomicBoolean)request.getAttribute(CANCELLED_ATTRIBUTE));
+	}
+
 	public static String readRequestContent(HttpServletRequest request) throws IOException
 	{
 		InputStream in = request.getInputStream();
@@ -80,6 +80,19 @@ public class DistanceUnitUtil
 			}
 			return value;
 		}
+		else if (unitsTo == DistanceUnit.Meters)
+		{
+			switch(unitsFrom)
+			{
+			case Kilometers:
+				return value * 1000.0;
+			case Miles:
+				return value / 0.000621371192;
+			default:
+				break;
+			}
+			return value;
+		}
 		else
 			throw new Exception("Not implemented");
 	}
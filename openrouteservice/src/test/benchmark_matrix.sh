@@ -0,0 +1,48 @@
+#!/bin/bash
+# Measures the response times of square matrices between random locations, computed with RPHAST, the bucket
+# algorithm and the one-to-many Dijkstra (optimized=false). Run it against two builds of the same graph to compare
+# them; the server has to allow size x size routes (matrix.maximum_locations / maximum_routes). When the process id
+# of the server JVM is given, the young collections and the total GC time spent on each request set are read with
+# jstat, which shows the allocation pressure of the search trees, e.g. for a 200 x 200 RPHAST matrix.
+# Usage: benchmark_matrix.sh [base url] [size] [runs] [bbox minlon,minlat,maxlon,maxlat] [server pid]
+URL=${1:-http://localhost:8082/openrouteservice-4.0.0}
+SIZE=${2:-100}
+RUNS=${3:-5}
+BBOX=${4:-6.0,47.5,14.5,54.5}
+PID=$5
+
+# the same seed gives the same locations on every run
+LOCATIONS=$(echo "$BBOX" | awk -F, -v n=$SIZE 'BEGIN { srand(42) } {
+	for (i = 0; i < n; i++)
+		printf "%s%.6f,%.6f", (i > 0 ? "%7C" : ""), $1 + rand() * ($3 - $1), $2 + rand() * ($4 - $2)
+}')
+REQUESTS=(
+"matrix?profile=driving-car&locations=$LOCATIONS&metrics=duration&algorithm=rphast"
+"matrix?profile=driving-car&locations=$LOCATIONS&metrics=duration&algorithm=bucket"
+"matrix?profile=driving-car&locations=$LOCATIONS&metrics=duration&optimized=false"
+)
+
+# prints the young collection count and the total GC seconds of the server
+gc_stats() {
+	jstat -gcutil $PID | awk 'NR == 1 { for (i = 1; i <= NF; i++) col[$i] = i } NR == 2 { print $col["YGC"], $col["GCT"] }'
+}
+
+printf "%10s %10s %6s %8s  %s\n" "avg ms" "max ms" "ygc" "gc s" "request"
+for REQ in "${REQUESTS[@]}"; do
+	[ -n "$PID" ] && GC_BEFORE=($(gc_stats))
+	TOTAL=0
+	MAX=0
+	for i in $(seq 1 $RUNS); do
+		T=$(curl -s -o /dev/null -w '%{time_total}' "$URL/$REQ")
+		TOTAL=$(echo "$TOTAL + $T" | bc -l)
+		MAX=$(echo "if ($T > $MAX) $T else $MAX" | bc -l)
+	done
+	YGC=-
+	GCT=-
+	if [ -n "$PID" ]; then
+		GC_AFTER=($(gc_stats))
+		YGC=$((GC_AFTER[0] - GC_BEFORE[0]))
+		GCT=$(printf "%.3f" $(echo "${GC_AFTER[1]} - ${GC_BEFORE[1]}" | bc -l))
+	fi
+	printf "%10.1f %10.1f %6s %8s  %s\n" $(echo "$TOTAL * 1000 / $RUNS" | bc -l) $(echo "$MAX * 1000" | bc -l) "$YGC" "$GCT" "${REQ%%&locations=*}&${REQ#*&metrics=}"
+done
@@ -0,0 +1,31 @@
+#!/bin/bash
+# Compares the nodes visited by matrix searches with and without the cost bound max_duration. The server has to
+# log heigit.ors at level DEBUG (logs/DEBUG_LOGGING.properties), where every matrix writes a line
+# "... - matrix.visited_nodes - <count>" to its log.
+# Usage: benchmark_matrix_max_duration.sh <server log> [base url] [max_duration]
+LOG=$1
+URL=${2:-http://localhost:8082/openrouteservice-4.0.0}
+MAX_DURATION=${3:-600}
+LOCATIONS="8.681495,49.41461%7C8.686507,49.41943%7C8.687872,49.420318%7C8.694136,49.411985%7C8.705437,49.412337%7C8.709588,49.403744%7C8.634338,49.39164%7C8.773346,49.441856%7C8.553658,49.327563%7C8.920412,49.545632"
+REQUESTS=(
+"matrix?profile=driving-car&locations=$LOCATIONS&sources=0&metrics=duration"
+"matrix?profile=driving-car&locations=$LOCATIONS&metrics=duration&algorithm=bucket"
+"matrix?profile=driving-car&locations=$LOCATIONS&metrics=duration&algorithm=rphast"
+)
+
+if [ ! -f "$LOG" ]; then
+	echo "Usage: benchmark_matrix_max_duration.sh <server log> [base url] [max_duration]"
+	exit 1
+fi
+
+visited_nodes() {
+	local LINES=$(wc -l < "$LOG")
+	curl -s -o /dev/null "$URL/$1"
+	sleep 1
+	tail -n +$((LINES + 1)) "$LOG" | grep "matrix.visited_nodes" | tail -1 | sed 's/.* - //'
+}
+
+printf "%12s %12s  %s\n" "unbounded" "bounded" "request"
+for REQ in "${REQUESTS[@]}"; do
+	printf "%12s %12s  %s\n" "$(visited_nodes "$REQ")" "$(visited_nodes "$REQ&max_duration=$MAX_DURATION")" "$REQ"
+done
@@ -0,0 +1,44 @@
+#!/bin/bash
+# Measures the average response times of a set of routing requests. Run a set against two server configurations
+# or builds of the same graph to compare them:
+#   flexible         avoid features, shortest and recommended weightings. Compare a server with landmarks enabled
+#                    (preparation.methods.lm) to one without, where these requests use dijkstrabi.
+#   hgv_destination  heavy vehicle routes ending inside delivery only zones, where the destination edges are
+#                    explored before routing.
+# No results have been recorded yet; the speed-ups of both sets are not verified.
+# Usage: benchmark_routing.sh <flexible|hgv_destination> [base url] [runs]
+SET=$1
+URL=${2:-http://localhost:8082/openrouteservice-4.0.0}
+RUNS=${3:-20}
+
+case "$SET" in
+flexible)
+	REQUESTS=(
+	"routes?profile=driving-car&coordinates=8.681495,49.41461%7C8.687872,49.420318&preference=shortest&instructions=false&geometry=false"
+	"routes?profile=driving-car&coordinates=8.634338,49.39164%7C8.773346,49.441856&preference=fastest&instructions=false&geometry=false&options=%7B%22avoid_features%22:%22highways%7Ctollways%22%7D"
+	"routes?profile=driving-hgv&coordinates=8.634338,49.39164%7C8.773346,49.441856&preference=recommended&instructions=false&geometry=false"
+	"routes?profile=cycling-regular&coordinates=8.634338,49.39164%7C8.773346,49.441856&preference=recommended&instructions=false&geometry=false"
+	"routes?profile=foot-walking&coordinates=8.681495,49.41461%7C8.709588,49.403744&preference=shortest&instructions=false&geometry=false"
+	)
+	;;
+hgv_destination)
+	REQUESTS=(
+	"routes?profile=driving-hgv&coordinates=8.634338,49.39164%7C8.694136,49.411985&preference=fastest&instructions=false&geometry=false&options=%7B%22vehicle_type%22:%22delivery%22%7D"
+	"routes?profile=driving-hgv&coordinates=8.773346,49.441856%7C8.705437,49.412337&preference=fastest&instructions=false&geometry=false&options=%7B%22vehicle_type%22:%22delivery%22%7D"
+	"routes?profile=driving-hgv&coordinates=8.634338,49.39164%7C8.694136,49.411985%7C8.705437,49.412337&preference=recommended&instructions=false&geometry=false&options=%7B%22vehicle_type%22:%22goods%22%7D"
+	)
+	;;
+*)
+	echo "Usage: benchmark_routing.sh <flexible|hgv_destination> [base url] [runs]"
+	exit 1
+	;;
+esac
+
+for REQ in "${REQUESTS[@]}"; do
+	TOTAL=0
+	for i in $(seq 1 $RUNS); do
+		T=$(curl -s -o /dev/null -w '%{time_total}' "$URL/$REQ")
+		TOTAL=$(echo "$TOTAL + $T" | bc -l)
+	done
+	printf "%8.1f ms  %s\n" $(echo "$TOTAL * 1000 / $RUNS" | bc -l) "$REQ"
+done
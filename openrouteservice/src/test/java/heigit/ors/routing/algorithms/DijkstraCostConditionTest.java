@@ -0,0 +1,107 @@
+/*
+ *  Licensed to GIScience Research Group, Heidelberg University (GIScience)
+ *
+ *   http://www.giscience.uni-hd.de
+ *   http://www.heigit.org
+ *
+ *  under one or more contributor license agreements. See the NOTICE file 
+ *  distributed with this work for additional information regarding copyright 
+ *  ownership. The GIScience licenses this file to you under the Apache License, 
+ *  Version 2.0 (the "License"); you may not use this file except in compliance 
+ *  with the License. You may obtain a copy of the License at
+ * 
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package heigit.ors.routing.algorithms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.util.CarFlagEncoder;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.ShortestWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.GraphExtension;
+import com.graphhopper.storage.GraphHopperStorage;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.storage.SPTEntry;
+
+import junit.framework.Assert;
+
+/**
+ * Compares the weights found by DijkstraCostCondition, which keeps its open
+ * set in an indexed heap, with the stock Dijkstra of GraphHopper on random
+ * graphs with one-way edges.
+ */
+public class DijkstraCostConditionTest {
+	private static final int NODES = 300;
+	private static final int EDGES = 900;
+
+	@Test
+	public void unboundedSearchMatchesDijkstra() {
+		checkSearches(new Random(42), Double.MAX_VALUE);
+	}
+
+	@Test
+	public void boundedSearchMatchesDijkstra() {
+		checkSearches(new Random(7), 3000);
+	}
+
+	private void checkSearches(Random random, double maxCost) {
+		CarFlagEncoder encoder = new CarFlagEncoder();
+		EncodingManager encodingManager = new EncodingManager(encoder);
+		Weighting weighting = new ShortestWeighting(encoder);
+		List<Weighting> weightings = new ArrayList<Weighting>(1);
+		weightings.add(weighting);
+
+		GraphHopperStorage graph = new GraphHopperStorage(weightings, new RAMDirectory(), encodingManager, false, new GraphExtension.NoOpExtension()).create(NODES);
+		for (int i = 0; i < EDGES; i++) {
+			int from = random.nextInt(NODES);
+			int to = random.nextInt(NODES);
+			if (from != to)
+				graph.edge(from, to, 1 + random.nextInt(1000), random.nextInt(4) != 0);
+		}
+
+		for (int source = 0; source < NODES; source += 37) {
+			checkSearch(graph, weighting, source, maxCost, false);
+			checkSearch(graph, weighting, source, maxCost, true);
+		}
+
+		graph.close();
+	}
+
+	private void checkSearch(GraphHopperStorage graph, Weighting weighting, int source, double maxCost, boolean reverseDirection) {
+		DijkstraCostCondition algorithm = new DijkstraCostCondition(graph, weighting, maxCost, reverseDirection, TraversalMode.NODE_BASED);
+		algorithm.calcPath(source, Integer.MIN_VALUE);
+		IntObjectMap<SPTEntry> map = algorithm.getMap();
+
+		for (int node = 0; node < NODES; node++) {
+			// the reverse search finds the paths from the nodes to the source
+			Path path = reverseDirection
+					? new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(node, source)
+					: new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(source, node);
+			SPTEntry entry = map.get(node);
+
+			// entries beyond the bound are only labelled, not settled
+			if (path.isFound() && path.getWeight() <= maxCost) {
+				Assert.assertNotNull("node " + node + " not reached from " + source, entry);
+				Assert.assertEquals("weight of node " + node + " from " + source, path.getWeight(), entry.weight, 1e-6);
+			} else {
+				Assert.assertTrue("node " + node + " reached from " + source, entry == null || entry.weight > maxCost);
+			}
+		}
+	}
+}